@@ -26,14 +26,17 @@ import com.gs.obevo.api.platform.CommandExecutionContext;
 import com.gs.obevo.impl.graph.SortableDependency;
 import com.gs.obevo.impl.graph.SortableDependencyGroup;
 import com.gs.obevo.impl.text.TextDependencyExtractable;
+import com.gs.obevo.util.hash.ContentHashAlgorithm;
 import com.gs.obevo.util.hash.DbChangeHashStrategy;
-import com.gs.obevo.util.hash.ExactDbChangeHashStrategy;
-import com.gs.obevo.util.hash.OldWhitespaceAgnosticDbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingExactDbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingOldWhitespaceAgnosticDbChangeHashStrategy;
 import com.gs.obevo.util.vfs.FileObject;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.function.Function2;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.set.ImmutableSet;
@@ -128,6 +131,7 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
     private String objectName;
 
     private String contentHash;
+    private ContentHashAlgorithm contentHashAlgorithm = ContentHashAlgorithm.MD5;
 
     private transient FileObject fileLocation;
     private transient String reason;
@@ -141,9 +145,14 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
     private ImmutableList<ArtifactRestrictions> restrictions;
 
     private String content;
-    private String convertedContent;
+    private ChangeContentSource contentSource;
+    private int contentOffset;
+    private int contentLength;
+    private volatile String convertedContent;
+    private volatile Function2<String, ? super Change, String> contentConverter;
     private String rollbackContent;
-    private String convertedRollbackContent;
+    private volatile Function<? super Change, String> rollbackContentLoader;
+    private volatile String convertedRollbackContent;
     private int order = DEFAULT_CHANGE_ORDER;
 
     private Environment environment;
@@ -216,6 +225,18 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
         this.contentHash = contentHash;
     }
 
+    /**
+     * The algorithm that the content hash was calculated with; this determines the hashes that
+     * {@link #getAcceptableHashes()} accepts from the audit table. Defaults to MD5.
+     */
+    public ContentHashAlgorithm getContentHashAlgorithm() {
+        return this.contentHashAlgorithm;
+    }
+
+    public void setContentHashAlgorithm(ContentHashAlgorithm contentHashAlgorithm) {
+        this.contentHashAlgorithm = contentHashAlgorithm;
+    }
+
     public PhysicalSchema getPhysicalSchema() {
         return this.environment.getPhysicalSchema(this.schema);
     }
@@ -251,6 +272,9 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
     }
 
     public String getContent() {
+        if (this.contentSource != null) {
+            return this.contentSource.getContent(this.contentOffset, this.contentLength);
+        }
         return this.content;
     }
 
@@ -262,7 +286,7 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
 
     public String getContentForDependencyCalculation() {
         if (this.contentForDependencyCalculation == null) {
-            return this.content;
+            return this.getContent();
         } else {
             return this.contentForDependencyCalculation;
         }
@@ -272,21 +296,51 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
         this.contentForDependencyCalculation = contentForDependencyCalculation;
     }
 
-    private final ImmutableList<DbChangeHashStrategy> CONTENT_HASH_STRATEGIES = Lists.immutable.with(
-            new OldWhitespaceAgnosticDbChangeHashStrategy(),
-            new ExactDbChangeHashStrategy()
+    private static final ImmutableList<DbChangeHashStrategy> MD5_CONTENT_HASH_STRATEGIES = Lists.immutable.<DbChangeHashStrategy>with(
+            new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MD5),
+            new StreamingExactDbChangeHashStrategy(ContentHashAlgorithm.MD5)
+    );
+
+    /**
+     * Besides the variants of its own algorithm, this only accepts the MD5 hash that the change had before switching
+     * {@link ContentHashAlgorithm} for an existing environment, rather than every MD5 variant.
+     */
+    private static final ImmutableList<DbChangeHashStrategy> MURMUR3_CONTENT_HASH_STRATEGIES = Lists.immutable.<DbChangeHashStrategy>with(
+            new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128),
+            new StreamingExactDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128),
+            new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MD5)
     );
 
     public void setContent(String content) {
+        this.contentSource = null;
         this.content = content;
     }
 
+    /**
+     * Sets the content as a reference to the given region of a source file rather than as a string, so that it is only
+     * read into memory when requested and is not retained afterwards (short of the soft reference held by the
+     * {@link ChangeContentSource}). Used for large source trees, where most changes are typically already deployed.
+     */
+    public void setContentSource(ChangeContentSource contentSource, int offset, int length) {
+        this.content = null;
+        this.contentSource = contentSource;
+        this.contentOffset = offset;
+        this.contentLength = length;
+    }
+
     /**
      * TODO rename this to something more appropriate (i.e. not hiding the convertedContent field)
      */
     public String getConvertedContent() {
-        return this.isRollbackActivated() ? this.getRollbackToBeExecutedContent() : this.convertedContent != null ?
-                this.convertedContent : this.content;
+        if (this.isRollbackActivated()) {
+            return this.getRollbackToBeExecutedContent();
+        }
+        String convertedContent = this.convertedContent;
+        if (convertedContent == null && this.contentConverter != null) {
+            convertedContent = this.contentConverter.value(this.getContent(), this);
+            this.convertedContent = convertedContent;
+        }
+        return convertedContent != null ? convertedContent : this.getContent();
     }
 
     public void setConvertedContent(String convertedContent) {
@@ -297,6 +351,27 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
         this.convertedRollbackContent = convertedRollbackContent;
     }
 
+    /**
+     * Defers the conversion of the content and rollback content (e.g. token replacement) until the converted content
+     * is first requested, instead of it being set upfront via {@link #setConvertedContent(String)}. The converter is
+     * given the content to convert and this change.
+     */
+    public void setContentConverter(Function2<String, ? super Change, String> contentConverter) {
+        this.contentConverter = contentConverter;
+    }
+
+    /**
+     * Releases the converted content computed by the {@link #setContentConverter(Function2) content converter}, e.g.
+     * once the change has been executed; it is computed again if it is requested later. Has no effect if the converted
+     * content was set directly.
+     */
+    public void releaseConvertedContent() {
+        if (this.contentConverter != null) {
+            this.convertedContent = null;
+            this.convertedRollbackContent = null;
+        }
+    }
+
     public String getDisplayString() {
         StringBuilder sb = new StringBuilder();
         if (isRollbackActivated()) {
@@ -409,9 +484,17 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
         /**
          * This is here for backwards-compatibility w/ systems that were doing the hashing prior to making all the
          * hashing agnostic of the white-space (before, we only had the table changes be white-space agnostic).
-         * We need the various CONTENT_HASH_STRATEGIES to account for past versions of the algorithm.
+         * We need the various content hash strategies to account for past versions of the algorithm.
          */
-        return this.CONTENT_HASH_STRATEGIES.flatCollect(new Function<DbChangeHashStrategy, Iterable<String>>() {
+        final String content = this.getContent();
+        // the converted content is not retained here, as this is mostly invoked for changes that will not be executed
+        final String convertedContent = this.convertedContent != null || this.contentConverter == null
+                ? this.convertedContent
+                : this.contentConverter.value(content, this);
+        ImmutableList<DbChangeHashStrategy> hashStrategies = this.contentHashAlgorithm == ContentHashAlgorithm.MURMUR3_128
+                ? MURMUR3_CONTENT_HASH_STRATEGIES
+                : MD5_CONTENT_HASH_STRATEGIES;
+        return hashStrategies.flatCollect(new Function<DbChangeHashStrategy, Iterable<String>>() {
             @Override
             public Iterable<String> valueOf(DbChangeHashStrategy hashStrategy) {
                 MutableSet<String> acceptableHashes = UnifiedSet.newSet();
@@ -528,10 +611,17 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
     }
 
     public String getConvertedRollbackContent() {
-        return this.convertedRollbackContent == null ? this.rollbackContent : this.convertedRollbackContent;
+        this.loadRollbackContent();
+        String convertedRollbackContent = this.convertedRollbackContent;
+        if (convertedRollbackContent == null && this.contentConverter != null) {
+            convertedRollbackContent = this.contentConverter.value(this.getRollbackContent(), this);
+            this.convertedRollbackContent = convertedRollbackContent;
+        }
+        return convertedRollbackContent == null ? this.rollbackContent : convertedRollbackContent;
     }
 
     public String getRollbackContent() {
+        this.loadRollbackContent();
         // Setting default as blank space for backwards-compatibility w/ Sybase 11.9 change
         // (Sybase 11.9 requires TEXT data type, which cannot accept null values)
         // This setting would work fine across DBs
@@ -539,10 +629,39 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
     }
 
     public void setRollbackContent(String rollbackContent) {
+        this.rollbackContentLoader = null;
         // Setting default as blank space for backwards-compatibility w/ Sybase 11.9 change
         this.rollbackContent = rollbackContent != null ? rollbackContent : "";
     }
 
+    /**
+     * Defers reading the rollback content until it is first requested; the loader is invoked at most once. Used by the
+     * audit table readers so that the rollback content is not fetched for every deployed change. The loader should only
+     * be set on changes that have rollback content; see {@link #hasRollbackContent()}.
+     */
+    public void setRollbackContentLoader(Function<? super Change, String> rollbackContentLoader) {
+        this.rollbackContentLoader = rollbackContentLoader;
+    }
+
+    /**
+     * Returns whether the change has rollback content, without loading it if it is deferred to a
+     * {@link #setRollbackContentLoader(Function) loader}.
+     */
+    public boolean hasRollbackContent() {
+        return this.rollbackContentLoader != null || StringUtils.isNotBlank(this.rollbackContent);
+    }
+
+    private void loadRollbackContent() {
+        if (this.rollbackContentLoader != null) {
+            synchronized (this) {
+                Function<? super Change, String> loader = this.rollbackContentLoader;
+                if (loader != null) {
+                    this.setRollbackContent(loader.valueOf(this));
+                }
+            }
+        }
+    }
+
     public int getOrderWithinObject() {
         return this.orderWithinObject;
     }
@@ -634,6 +753,7 @@ public abstract class Change implements Restrictable, SortableDependency, Sortab
     }
 
     public boolean isCreateOrReplace() {
+        String content = this.getContent();
         if (content == null) {
             return false;
         }
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.api.appdata;
+
+import java.lang.ref.SoftReference;
+
+import com.gs.obevo.util.vfs.CharsetStrategy;
+import com.gs.obevo.util.vfs.FileObject;
+
+/**
+ * A source file whose text backs the content of the {@link Change}s parsed from it, so that those changes can refer
+ * to their content by offset and length instead of each holding a copy (see
+ * {@link Change#setContentSource(ChangeContentSource, int, int)}).
+ *
+ * The file text is only softly referenced once read; it is read again from the file using the same
+ * {@link CharsetStrategy} if the garbage collector has reclaimed it. The length and hash of the original text are kept
+ * so that a re-read of a file that was modified in the meantime fails instead of yielding content that no longer
+ * matches the offsets and content hashes of the changes.
+ */
+public class ChangeContentSource {
+    private final FileObject file;
+    private final CharsetStrategy charsetStrategy;
+    private final int textLength;
+    private final int textHash;
+    private volatile SoftReference<String> text;
+
+    /**
+     * @param text the text that was read from the file with the given charset strategy
+     */
+    public ChangeContentSource(FileObject file, CharsetStrategy charsetStrategy, String text) {
+        this.file = file;
+        this.charsetStrategy = charsetStrategy;
+        this.textLength = text.length();
+        this.textHash = text.hashCode();
+        this.text = new SoftReference<String>(text);
+    }
+
+    public FileObject getFile() {
+        return this.file;
+    }
+
+    public String getContent(int offset, int length) {
+        return this.getText().substring(offset, offset + length);
+    }
+
+    private String getText() {
+        String value = this.text.get();
+        if (value == null) {
+            value = this.file.getStringContent(this.charsetStrategy);
+            if (value.length() != this.textLength || value.hashCode() != this.textHash) {
+                throw new IllegalStateException("File " + this.file + " was modified after its changes were read; "
+                        + "rerun the deploy against the current file content");
+            }
+            this.text = new SoftReference<String>(value);
+        }
+        return value;
+    }
+}
@@ -54,6 +54,10 @@ public class Environment<T extends Platform> {
     private ImmutableSet<Schema> allSchemas = Sets.immutable.empty();
     private ImmutableMap<String, String> schemaNameOverrides = Maps.immutable.empty();
     private boolean rollbackDetectionEnabled = true;
+    private int numThreads = 5;
+    private boolean parallelDeployEnabled = false;
+    private boolean schemaLaneDeployEnabled = false;
+    private boolean concurrentStartupReadEnabled = false;
 
     public static final Function<Environment, String> TO_NAME = new Function<Environment, String>() {
         @Override
@@ -78,6 +82,10 @@ public class Environment<T extends Platform> {
         this.allSchemas = env.allSchemas;
         this.schemaNameOverrides = env.schemaNameOverrides;
         this.rollbackDetectionEnabled = env.rollbackDetectionEnabled;
+        this.numThreads = env.numThreads;
+        this.parallelDeployEnabled = env.parallelDeployEnabled;
+        this.schemaLaneDeployEnabled = env.schemaLaneDeployEnabled;
+        this.concurrentStartupReadEnabled = env.concurrentStartupReadEnabled;
     }
 
     public String getName() {
@@ -305,4 +313,57 @@ public class Environment<T extends Platform> {
     public void setRollbackDetectionEnabled(boolean rollbackDetectionEnabled) {
         this.rollbackDetectionEnabled = rollbackDetectionEnabled;
     }
+
+    /**
+     * The number of threads to use for the actions that can be done concurrently against the environment, e.g. the
+     * parallel deploy mode or the parallel read of the source files. The connection pool is sized off of this value
+     * as well.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Whether to deploy the changes concurrently based on their dependency graph, i.e. a change will be deployed once
+     * all the changes that it depends on have been deployed, using {@link #getNumThreads()} threads. Defaults to false,
+     * in which case the changes are deployed one at a time in the sorted order.
+     */
+    public boolean isParallelDeployEnabled() {
+        return parallelDeployEnabled;
+    }
+
+    public void setParallelDeployEnabled(boolean parallelDeployEnabled) {
+        this.parallelDeployEnabled = parallelDeployEnabled;
+    }
+
+    /**
+     * Whether to deploy the changes of each schema in its own lane, with the lanes running concurrently (up to
+     * {@link #getNumThreads()} threads) and only waiting on each other for the dependencies across schemas. Within a
+     * schema, the changes are deployed in the sorted order. Defaults to false; {@link #isParallelDeployEnabled()} takes
+     * precedence if both are set.
+     */
+    public boolean isSchemaLaneDeployEnabled() {
+        return schemaLaneDeployEnabled;
+    }
+
+    public void setSchemaLaneDeployEnabled(boolean schemaLaneDeployEnabled) {
+        this.schemaLaneDeployEnabled = schemaLaneDeployEnabled;
+    }
+
+    /**
+     * Whether to read the source changes and the deployed changes from the audit table concurrently at the start of a
+     * deploy, along with prefetching the schema metadata where the platform supports it. Defaults to false, in which
+     * case the reads are done one after the other.
+     */
+    public boolean isConcurrentStartupReadEnabled() {
+        return concurrentStartupReadEnabled;
+    }
+
+    public void setConcurrentStartupReadEnabled(boolean concurrentStartupReadEnabled) {
+        this.concurrentStartupReadEnabled = concurrentStartupReadEnabled;
+    }
 }
@@ -17,6 +17,7 @@ package com.gs.obevo.api.platform;
 
 import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.DeployExecution;
+import com.gs.obevo.api.appdata.PhysicalSchema;
 import org.eclipse.collections.api.list.ImmutableList;
 
 /**
@@ -66,4 +67,18 @@ public interface ChangeAuditDao {
      * Removes all changes related to the incoming changed object based on the {@link Change#getObjectKey()}.
      */
     void deleteObjectChanges(Change change);
+
+    /**
+     * Writes out any audit updates that the implementation has buffered from the insert/update calls. Called by the
+     * deployer after the audit-only changes are marked, after each executed change command, and at the end of the
+     * deployment (including when the deployment fails partway through).
+     */
+    void flush();
+
+    /**
+     * Writes out the audit updates that the implementation has buffered for the given schema only, leaving those of
+     * the other schemas buffered. Called by the deployer after each executed change command, so that concurrent
+     * workers on different schemas write their own audit entries.
+     */
+    void flush(PhysicalSchema physicalSchema);
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ public interface DeployMetrics {
     String WARNINGS_PREFIX = "warnings";  // clients can key off this constant to find all warnings that need to be handled
     String BAD_FILE_FORMAT_WARNINGS = WARNINGS_PREFIX + ".badFileFormat";
     String UNEXPECTED_FILE_EXTENSIONS = WARNINGS_PREFIX + ".unexpectedFileExtensions";
+    String TIMINGS_PREFIX = "timings";  // timing statistics (count, totalMillis, maxMillis, percentiles) are keyed under this prefix
 
     ImmutableMap<String, Object> toSerializedForm();
 }
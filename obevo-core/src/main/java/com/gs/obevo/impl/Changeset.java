@@ -16,25 +16,69 @@
 package com.gs.obevo.impl;
 
 import org.eclipse.collections.api.RichIterable;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
 
 public class Changeset {
     private final ImmutableList<ExecuteChangeCommand> inserts;
     private final ImmutableList<ExecuteChangeCommand> deferredChanges;
     private final RichIterable<AuditChangeCommand> auditChanges;
     private final RichIterable<ChangeCommandWarning> changeWarnings;
+    private Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> insertDependencyGraphFactory;
+    private Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> insertSchemaLaneGraphFactory;
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> insertDependencyGraph;
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> insertSchemaLaneGraph;
 
     public Changeset(ImmutableList<ExecuteChangeCommand> inserts, ImmutableList<ExecuteChangeCommand> deferredChanges, RichIterable<AuditChangeCommand> auditChanges, RichIterable<ChangeCommandWarning> changeWarnings) {
+        this(inserts, deferredChanges, auditChanges, changeWarnings, null, null);
+    }
+
+    /**
+     * The graphs are only needed for the parallel and schema lane deploy modes, so they are created on the first call
+     * to their getters rather than with the changeset.
+     *
+     * @param insertDependencyGraphFactory creates the graph for {@link #getInsertDependencyGraph()}; may be null
+     * @param insertSchemaLaneGraphFactory creates the graph for {@link #getInsertSchemaLaneGraph()}; may be null
+     */
+    public Changeset(ImmutableList<ExecuteChangeCommand> inserts, ImmutableList<ExecuteChangeCommand> deferredChanges, RichIterable<AuditChangeCommand> auditChanges, RichIterable<ChangeCommandWarning> changeWarnings, Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> insertDependencyGraphFactory, Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> insertSchemaLaneGraphFactory) {
         this.inserts = inserts;
         this.deferredChanges = deferredChanges;
         this.auditChanges = auditChanges;
         this.changeWarnings = changeWarnings;
+        this.insertDependencyGraphFactory = insertDependencyGraphFactory;
+        this.insertSchemaLaneGraphFactory = insertSchemaLaneGraphFactory;
     }
 
     public ImmutableList<ExecuteChangeCommand> getInserts() {
         return this.inserts;
     }
 
+    /**
+     * Returns the dependency graph among the {@link #getInserts()} commands, or null if it was not calculated. See
+     * {@link com.gs.obevo.impl.changesorter.SortedChangeCommands} for the semantics of the graph.
+     */
+    public synchronized DirectedGraph<ExecuteChangeCommand, DefaultEdge> getInsertDependencyGraph() {
+        if (insertDependencyGraphFactory != null) {
+            insertDependencyGraph = insertDependencyGraphFactory.value();
+            insertDependencyGraphFactory = null;
+        }
+        return insertDependencyGraph;
+    }
+
+    /**
+     * Returns the schema lane graph among the {@link #getInserts()} commands, or null if it was not calculated. See
+     * {@link com.gs.obevo.impl.changesorter.SortedChangeCommands#getSchemaLaneGraph()} for the semantics of the graph.
+     */
+    public synchronized DirectedGraph<ExecuteChangeCommand, DefaultEdge> getInsertSchemaLaneGraph() {
+        if (insertSchemaLaneGraphFactory != null) {
+            insertSchemaLaneGraph = insertSchemaLaneGraphFactory.value();
+            insertSchemaLaneGraphFactory = null;
+        }
+        return insertSchemaLaneGraph;
+    }
+
     public ImmutableList<ExecuteChangeCommand> getDeferredChanges() {
         return deferredChanges;
     }
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.factory.Sets;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.eclipse.collections.impl.tuple.Tuples;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+
+/**
+ * Executes the vertices of a graph concurrently, such that a vertex is only executed once all the vertices that it
+ * depends on (i.e. the sources of its incoming edges) have completed successfully.
+ *
+ * If a vertex fails, the vertices that depend on it (directly or transitively) are skipped; the other vertices continue
+ * to get executed. This mirrors the serial deploy behavior of continuing past a failure and reporting at the end.
+ *
+ * When many vertices are ready at the same time, they are started in the order of the given comparator so that the
+ * execution is consistent across runs. With a single thread, the execution order is the same as that of
+ * {@link com.gs.obevo.impl.graph.GraphSorter}.
+ *
+ * The graph is expected to have been validated for cycles already, e.g. by the graph enricher.
+ */
+public class ConcurrentGraphExecutor {
+    /**
+     * The action to execute on each vertex of the graph. Will be invoked from multiple threads.
+     */
+    public interface VertexTask<T> {
+        /**
+         * Executes the given vertex.
+         * @return true if successful; false if the vertices depending on this one should be skipped
+         */
+        boolean execute(T vertex);
+
+        /**
+         * Invoked instead of {@link #execute(Object)} for vertices that were not executed due to a failed dependency.
+         */
+        void skip(T vertex);
+    }
+
+    private final int numThreads;
+
+    public ConcurrentGraphExecutor(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be at least 1; got " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    public <T> void execute(DirectedGraph<T, DefaultEdge> graph, Comparator<? super T> comparator, final VertexTask<T> task) {
+        if (graph.vertexSet().isEmpty()) {
+            return;
+        }
+
+        MutableObjectIntMap<T> remainingDependencyCounts = ObjectIntHashMap.newMap();
+        MutableSet<T> blockedVertices = Sets.mutable.empty();
+        PriorityQueue<T> readyVertices = new PriorityQueue<T>(graph.vertexSet().size(), comparator);
+        for (T vertex : graph.vertexSet()) {
+            int inDegree = graph.inDegreeOf(vertex);
+            remainingDependencyCounts.put(vertex, inDegree);
+            if (inDegree == 0) {
+                readyVertices.add(vertex);
+            }
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        CompletionService<Pair<T, Boolean>> completionService = new ExecutorCompletionService<Pair<T, Boolean>>(executorService);
+        int runningCount = 0;
+        int completedCount = 0;
+        RuntimeException unexpectedException = null;
+        try {
+            while (runningCount > 0 || (unexpectedException == null && !readyVertices.isEmpty())) {
+                while (unexpectedException == null && runningCount < numThreads && !readyVertices.isEmpty()) {
+                    final T vertex = readyVertices.poll();
+                    if (blockedVertices.contains(vertex)) {
+                        task.skip(vertex);
+                        completedCount++;
+                        complete(graph, vertex, false, remainingDependencyCounts, blockedVertices, readyVertices);
+                    } else {
+                        completionService.submit(new Callable<Pair<T, Boolean>>() {
+                            @Override
+                            public Pair<T, Boolean> call() throws Exception {
+                                return Tuples.pair(vertex, task.execute(vertex));
+                            }
+                        });
+                        runningCount++;
+                    }
+                }
+
+                if (runningCount > 0) {
+                    Pair<T, Boolean> result;
+                    try {
+                        result = completionService.take().get();
+                    } catch (ExecutionException e) {
+                        // the tasks are expected to handle their own exceptions; anything else is unexpected, so we
+                        // stop submitting tasks, let the running ones finish, and then rethrow
+                        if (unexpectedException == null) {
+                            unexpectedException = e.getCause() instanceof RuntimeException
+                                    ? (RuntimeException) e.getCause()
+                                    : new RuntimeException(e.getCause());
+                        }
+                        continue;
+                    } finally {
+                        runningCount--;
+                    }
+                    completedCount++;
+                    complete(graph, result.getOne(), result.getTwo(), remainingDependencyCounts, blockedVertices, readyVertices);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while executing the graph", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        if (unexpectedException != null) {
+            throw unexpectedException;
+        }
+        if (completedCount != graph.vertexSet().size()) {
+            throw new IllegalStateException("Could not execute all vertices of the graph; it likely has a cycle. Executed " + completedCount + " of " + graph.vertexSet().size());
+        }
+    }
+
+    private <T> void complete(DirectedGraph<T, DefaultEdge> graph, T vertex, boolean success, MutableObjectIntMap<T> remainingDependencyCounts, MutableSet<T> blockedVertices, PriorityQueue<T> readyVertices) {
+        for (DefaultEdge edge : graph.outgoingEdgesOf(vertex)) {
+            T dependent = graph.getEdgeTarget(edge);
+            if (!success) {
+                blockedVertices.add(dependent);
+            }
+            if (remainingDependencyCounts.addToValue(dependent, -1) == 0) {
+                readyVertices.add(dependent);
+            }
+        }
+    }
+}
@@ -38,6 +38,13 @@ public interface DeployMetricsCollector {
      */
     void addListMetric(String key, Serializable value);
 
+    /**
+     * Records the duration of one execution of the given operation (e.g. a deploy phase, a change, or a JDBC
+     * statement). The durations are aggregated into count, total, max, and percentile statistics under the
+     * {@link DeployMetrics#TIMINGS_PREFIX} key; this is cheap enough to call for every statement.
+     */
+    void addTiming(String key, long durationNanos);
+
     /**
      * Ends the request and returns the metrics gathered during the execution.
      */
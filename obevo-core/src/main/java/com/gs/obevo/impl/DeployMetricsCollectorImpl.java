@@ -35,6 +35,11 @@ public class DeployMetricsCollectorImpl implements DeployMetricsCollector {
         deployMetrics.addListMetric(key, value);
     }
 
+    @Override
+    public void addTiming(String key, long durationNanos) {
+        deployMetrics.addTiming(key, durationNanos);
+    }
+
     @Override
     public DeployMetrics getMetrics() {
         return deployMetrics;
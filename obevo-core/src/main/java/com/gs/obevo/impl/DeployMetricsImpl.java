@@ -19,23 +19,34 @@ import java.io.Serializable;
 
 import com.gs.obevo.api.platform.DeployMetrics;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.map.ConcurrentMutableMap;
 import org.eclipse.collections.api.map.ImmutableMap;
+import org.eclipse.collections.api.map.MutableMap;
 import org.eclipse.collections.impl.block.factory.Functions0;
 import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
 /**
  * Implementation of {@link DeployMetrics}. We separate the implementation from interface to hide the addMetric method.
  */
 public class DeployMetricsImpl implements DeployMetrics {
+    private static final Function0<TimingHistogram> NEW_HISTOGRAM = new Function0<TimingHistogram>() {
+        @Override
+        public TimingHistogram value() {
+            return new TimingHistogram();
+        }
+    };
+
     private final ConcurrentMutableMap<String, Object> statMap = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMutableMap<String, TimingHistogram> timingMap = new ConcurrentHashMap<String, TimingHistogram>();
 
     void addMetric(String key, Serializable value) {
         statMap.put(key, value);
     }
 
-    void addListMetric(String key, final Serializable value) {
+    synchronized void addListMetric(String key, final Serializable value) {
         statMap.updateValue(key, Functions0.newFastList(), new Function<Object, MutableList<Serializable>>() {
             @Override
             public MutableList<Serializable> valueOf(Object listObject) {
@@ -46,8 +57,20 @@ public class DeployMetricsImpl implements DeployMetrics {
         });
     }
 
+    void addTiming(String key, long durationNanos) {
+        timingMap.getIfAbsentPut(key, NEW_HISTOGRAM).record(durationNanos);
+    }
+
     @Override
     public ImmutableMap<String, Object> toSerializedForm() {
-        return statMap.toImmutable();
+        if (timingMap.isEmpty()) {
+            return statMap.toImmutable();
+        }
+
+        MutableMap<String, Object> serializedForm = UnifiedMap.newMap(statMap);
+        for (String key : timingMap.keysView()) {
+            serializedForm.put(TIMINGS_PREFIX + "." + key, timingMap.get(key).toSerializedForm());
+        }
+        return serializedForm.toImmutable();
     }
 }
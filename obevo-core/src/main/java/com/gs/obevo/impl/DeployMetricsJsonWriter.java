@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import com.gs.obevo.api.platform.DeployMetrics;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.collections.api.map.MapIterable;
+import org.eclipse.collections.api.map.sorted.MutableSortedMap;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.map.sorted.mutable.TreeSortedMap;
+
+/**
+ * Writes the {@link DeployMetrics} of a deploy as a JSON report, e.g. so that the timings of successive deploys can
+ * be compared by external tooling.
+ *
+ * We write the JSON by hand to avoid adding a JSON library dependency; the metrics only contain strings, numbers,
+ * booleans, lists, and maps. The keys are sorted to keep the reports diffable.
+ */
+public class DeployMetricsJsonWriter {
+    public static final String DEFAULT_FILE_NAME = "obevo-deploy-metrics.json";
+
+    public void write(DeployMetrics deployMetrics, File file) throws IOException {
+        FileUtils.writeStringToFile(file, toJson(deployMetrics), "UTF-8");
+    }
+
+    public String toJson(DeployMetrics deployMetrics) {
+        StringBuilder sb = new StringBuilder();
+        appendValue(sb, deployMetrics.toSerializedForm(), "");
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    private void appendValue(StringBuilder sb, Object value, String indent) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof MapIterable) {
+            MutableSortedMap<String, Object> sortedMap = TreeSortedMap.newMap();
+            for (Pair<?, ?> entry : ((MapIterable<?, ?>) value).keyValuesView()) {
+                sortedMap.put(String.valueOf(entry.getOne()), entry.getTwo());
+            }
+            appendMap(sb, sortedMap, indent);
+        } else if (value instanceof Map) {
+            MutableSortedMap<String, Object> sortedMap = TreeSortedMap.newMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sortedMap.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            appendMap(sb, sortedMap, indent);
+        } else if (value instanceof Iterable) {
+            appendList(sb, (Iterable<?>) value, indent);
+        } else {
+            appendString(sb, String.valueOf(value));
+        }
+    }
+
+    private void appendMap(StringBuilder sb, Map<String, Object> map, String indent) {
+        if (map.isEmpty()) {
+            sb.append("{}");
+            return;
+        }
+        String childIndent = indent + "  ";
+        sb.append("{\n");
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (!first) {
+                sb.append(",\n");
+            }
+            first = false;
+            sb.append(childIndent);
+            appendString(sb, entry.getKey());
+            sb.append(": ");
+            appendValue(sb, entry.getValue(), childIndent);
+        }
+        sb.append("\n").append(indent).append("}");
+    }
+
+    private void appendList(StringBuilder sb, Iterable<?> list, String indent) {
+        sb.append("[");
+        boolean first = true;
+        for (Object item : list) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            appendValue(sb, item, indent);
+        }
+        sb.append("]");
+    }
+
+    private void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
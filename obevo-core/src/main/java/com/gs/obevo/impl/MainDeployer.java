@@ -16,8 +16,18 @@
 package com.gs.obevo.impl;
 
 import java.sql.Timestamp;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.DeployExecution;
@@ -39,20 +49,27 @@ import com.gs.obevo.api.platform.ToolVersion;
 import com.gs.obevo.util.inputreader.ConsoleInputReader;
 import com.gs.obevo.util.inputreader.Credential;
 import com.gs.obevo.util.inputreader.UserInputReader;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.bag.MutableBag;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.procedure.Procedure2;
+import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
 import org.eclipse.collections.api.collection.ImmutableCollection;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.map.MapIterable;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
 import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.tuple.Pair;
 import org.eclipse.collections.impl.block.factory.StringFunctions;
 import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 import org.eclipse.collections.impl.set.mutable.UnifiedSet;
+import org.eclipse.collections.impl.tuple.Tuples;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,7 +88,21 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
     private final Credential credential;
     private final MainInputReader mainInputReader;
     private final ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry;
-
+    /**
+     * Runs the background work of the deploys, i.e. {@link #prefetchMetadata(Environment, RichIterable)} and the
+     * concurrent startup reads. Shared across the deploys of this instance; its threads are daemons and expire when idle,
+     * so it needs no explicit shutdown.
+     */
+    private final ExecutorService backgroundExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "obevo-deploy-background-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     public MainDeployer(ChangeAuditDao artifactDeployerDao,
             MainInputReader mainInputReader,
@@ -109,10 +140,15 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
         changeStopWatch.start();
 
         boolean mainDeploymentSuccess = false;
+        MutableList<Future<?>> backgroundTasks = Lists.mutable.empty();
         try {
-            executeInternal(env, deployerArgs);
+            executeInternal(env, deployerArgs, backgroundTasks);
             mainDeploymentSuccess = true;
         } finally {
+            // the background tasks, e.g. the metadata prefetch, are only of use for this deploy
+            for (Future<?> backgroundTask : backgroundTasks) {
+                backgroundTask.cancel(true);
+            }
             changeStopWatch.stop();
             long deployRuntimeSeconds = TimeUnit.MILLISECONDS.toSeconds(changeStopWatch.getTime());
             deployMetricsCollector.addMetric("runtimeSeconds", deployRuntimeSeconds);
@@ -120,7 +156,11 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
         }
     }
 
-    private void executeInternal(final E env, final MainDeployerArgs deployerArgs) {
+    /**
+     * @param backgroundTasks collects the tasks started in the background for this deploy, so that they can be cancelled
+     * once it completes
+     */
+    private void executeInternal(final E env, final MainDeployerArgs deployerArgs, MutableList<Future<?>> backgroundTasks) {
         LOG.info("Running {} version {}", ToolVersion.getToolName(), ToolVersion.getToolVersion());
 
         if (deployerArgs.getProductVersion() != null) {
@@ -139,21 +179,41 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
             }
         }
 
-        ImmutableList<Change> sourceChanges = mainInputReader.readInternal(env, deployerArgs);
-        for (Change change : sourceChanges) {
-            change.setChangeTypeBehavior(changeTypeBehaviorRegistry.getChangeTypeBehavior(change.getChangeType().getName()));
-
-        }
-
         OnboardingStrategy onboardingStrategy = getOnboardingStrategy(deployerArgs);
         onboardingStrategy.validateSourceDirs(env.getSourceDirs(), env.getSchemaNames());
 
         DeployStrategy deployStrategy = getDeployMode(deployerArgs);
 
-        ImmutableCollection<Change> deployedChanges = readDeployedChanges(deployerArgs);
+        ImmutableList<Change> sourceChanges;
+        ImmutableCollection<Change> deployedChanges;
+        if (env.isConcurrentStartupReadEnabled()) {
+            Pair<ImmutableList<Change>, ImmutableCollection<Change>> changes = readChangesConcurrently(env, deployerArgs);
+            sourceChanges = changes.getOne();
+            deployedChanges = changes.getTwo();
+        } else {
+            sourceChanges = readSourceChanges(env, deployerArgs);
+            deployedChanges = readDeployedChanges(deployerArgs);
+        }
+        for (Change change : sourceChanges) {
+            change.setChangeTypeBehavior(changeTypeBehaviorRegistry.getChangeTypeBehavior(change.getChangeType().getName()));
+
+        }
         mainInputReader.logChanges("deployed", deployedChanges);
 
+        long phaseStartNanos = System.nanoTime();
         Changeset artifactsToProcess = changesetCreator.determineChangeset(deployedChanges, sourceChanges, deployerArgs.isRollback(), deployStrategy.isInitAllowedOnHashExceptions(), deployerArgs.getChangesetPredicate());
+        deployMetricsCollector.addTiming("phase.changesetCalculation", System.nanoTime() - phaseStartNanos);
+
+        // only the schemas with changes to deploy need their metadata
+        MutableSet<PhysicalSchema> changedSchemas = artifactsToProcess.getInserts().collect(new Function<ExecuteChangeCommand, PhysicalSchema>() {
+            @Override
+            public PhysicalSchema valueOf(ExecuteChangeCommand changeCommand) {
+                return env.getPhysicalSchema(changeCommand.getSchema());
+            }
+        }).toSet();
+        if (changedSchemas.notEmpty()) {
+            backgroundTasks.add(startMetadataPrefetch(env, changedSchemas));
+        }
 
         validatePriorToDeployment(env, deployStrategy, sourceChanges, deployedChanges, artifactsToProcess);
 
@@ -202,7 +262,13 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
             boolean mainDeploymentSuccess = false;
             CommandExecutionContext cec = new CommandExecutionContext();
             try {
-                this.doExecute(artifactsToProcess, deployStrategy, onboardingStrategy, executionsBySchema, cec);
+                long executeStartNanos = System.nanoTime();
+                try {
+                    this.doExecute(env, artifactsToProcess, deployStrategy, onboardingStrategy, executionsBySchema, cec);
+                    this.artifactDeployerDao.flush();
+                } finally {
+                    deployMetricsCollector.addTiming("phase.execute", System.nanoTime() - executeStartNanos);
+                }
                 LOG.info(action + " has Completed Successfully!");
                 for (DeployExecution deployExecution : executionsBySchema.valuesView()) {
                     deployExecution.setStatus(DeployExecutionStatus.SUCCEEDED);
@@ -213,6 +279,12 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
             } catch (RuntimeException exc) {
                 LOG.info(action
                         + " has Failed. We will error out, but first complete the post-deploy step");
+                // still record the changes that did succeed so that they are not redeployed on the next attempt
+                try {
+                    this.artifactDeployerDao.flush();
+                } catch (RuntimeException flushExc) {
+                    LOG.error("Failed to write out the pending audit entries; printing it out here, but there was an exception during the regular deploy as well", flushExc);
+                }
                 for (DeployExecution deployExecution : executionsBySchema.valuesView()) {
                     deployExecution.setStatus(DeployExecutionStatus.FAILED);
                     this.deployExecutionDao.update(deployExecution);
@@ -220,9 +292,11 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
                 throw exc;
             } finally {
                 LOG.info("Executing the post-deploy step");
+                long postDeployStartNanos = System.nanoTime();
                 try {
                     doPostDeployAction(env, sourceChanges);
                     this.postDeployAction.value(env);
+                    deployMetricsCollector.addTiming("phase.postDeploy", System.nanoTime() - postDeployStartNanos);
                 } catch (RuntimeException exc) {
                     if (mainDeploymentSuccess) {
                         LOG.info("Exception found in the post-deploy step", exc);
@@ -255,13 +329,94 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
         artifactsToProcess.validateForDeployment();
     }
 
+    private ImmutableList<Change> readSourceChanges(E env, MainDeployerArgs deployerArgs) {
+        long phaseStartNanos = System.nanoTime();
+        ImmutableList<Change> sourceChanges = mainInputReader.readInternal(env, deployerArgs);
+        deployMetricsCollector.addTiming("phase.sourceRead", System.nanoTime() - phaseStartNanos);
+        return sourceChanges;
+    }
+
     private ImmutableCollection<Change> readDeployedChanges(MainDeployerArgs args) {
+        long phaseStartNanos = System.nanoTime();
         ImmutableCollection<Change> deployedChanges = this.artifactDeployerDao.getDeployedChanges()
                 .select(args.getChangeInclusionPredicate());
+        deployMetricsCollector.addTiming("phase.auditRead", System.nanoTime() - phaseStartNanos);
 
         return deployedChanges;
     }
 
+    /**
+     * Starts {@link #prefetchMetadata(Environment, RichIterable)} in the background, so that it overlaps with the
+     * validation and the setup ahead of the deployment. The deploy does not wait for it; lookups that are not yet cached
+     * go to the database as usual. Its failures are only logged.
+     */
+    private Future<?> startMetadataPrefetch(final E env, final RichIterable<PhysicalSchema> physicalSchemas) {
+        return backgroundExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetchMetadata(env, physicalSchemas);
+                } catch (RuntimeException e) {
+                    LOG.debug("Metadata prefetch failed; will look up the metadata on demand", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the source changes and the deployed changes concurrently, as the former is bound by the CPU and file I/O
+     * and the latter by the database round trips.
+     *
+     * Fails as soon as either read fails, without waiting for the other one.
+     */
+    private Pair<ImmutableList<Change>, ImmutableCollection<Change>> readChangesConcurrently(final E env, final MainDeployerArgs deployerArgs) {
+        LOG.info("Reading the source changes and the deployed changes concurrently");
+        long phaseStartNanos = System.nanoTime();
+
+        CompletionService<Object> readCompletionService = new ExecutorCompletionService<Object>(backgroundExecutor);
+        Future<Object> sourceChangesFuture = readCompletionService.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return readSourceChanges(env, deployerArgs);
+            }
+        });
+        Future<Object> deployedChangesFuture = readCompletionService.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return readDeployedChanges(deployerArgs);
+            }
+        });
+
+        try {
+            // take the reads in the order they complete so that a failure in either one is raised immediately
+            for (int i = 0; i < 2; i++) {
+                readCompletionService.take().get();
+            }
+
+            deployMetricsCollector.addTiming("phase.startupRead", System.nanoTime() - phaseStartNanos);
+            return Tuples.pair((ImmutableList<Change>) sourceChangesFuture.get(), (ImmutableCollection<Change>) deployedChangesFuture.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        } finally {
+            // stops the other read if one of them failed; a no-op otherwise
+            sourceChangesFuture.cancel(true);
+            deployedChangesFuture.cancel(true);
+        }
+    }
+
+    /**
+     * Loads the metadata of the given schemas ahead of the deployment, if the implementation caches it. This is invoked
+     * in the background once the changeset is known, for the schemas that have changes to deploy (see
+     * {@link #startMetadataPrefetch(Environment, RichIterable)}); the default is to do nothing.
+     */
+    protected void prefetchMetadata(E env, RichIterable<PhysicalSchema> physicalSchemas) {
+    }
+
 
     private DeployStrategy getDeployMode(MainDeployerArgs deployerArgs) {
         if (deployerArgs.isPerformInitOnly()) {
@@ -300,63 +455,76 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
         }
     }
 
-    private void doExecute(Changeset artifactsToProcess, DeployStrategy deployStrategy, OnboardingStrategy onboardingStrategy, MapIterable<String, DeployExecution> executionsBySchema, CommandExecutionContext cec) {
-        MutableList<FailedChange> failedChanges = Lists.mutable.empty();
-        MutableSet<String> failedDbObjects = UnifiedSet.newSet();
-        MutableSet<String> failedDbObjectNames = UnifiedSet.newSet();  // TODO we should merge the failedDbObjects* variables; depends on fixing the EnabledOnboardingStrategy for detecting prior exceptions
+    private void doExecute(E env, Changeset artifactsToProcess, final DeployStrategy deployStrategy, final OnboardingStrategy onboardingStrategy, final MapIterable<String, DeployExecution> executionsBySchema, final CommandExecutionContext cec) {
+        final MutableList<FailedChange> failedChanges = Lists.mutable.<FailedChange>empty().asSynchronized();
+        final MutableSet<String> failedDbObjects = UnifiedSet.<String>newSet().asSynchronized();
+        final MutableSet<String> failedDbObjectNames = UnifiedSet.<String>newSet().asSynchronized();  // TODO we should merge the failedDbObjects* variables; depends on fixing the EnabledOnboardingStrategy for detecting prior exceptions
 
         for (AuditChangeCommand auditChangeCommand : artifactsToProcess.getAuditChanges()) {
             auditChangeCommand.markAuditTable(this.artifactDeployerDao, executionsBySchema.get(auditChangeCommand.getSchema()));
         }
+        this.artifactDeployerDao.flush();
 
-        for (ExecuteChangeCommand changeCommand : artifactsToProcess.getInserts()) {
-            MutableSet<String> previousFailedObjects = failedDbObjects.intersect(changeCommand.getChanges().toSet()
-                    .collect(Change.TO_DB_OBJECT_KEY));
-            if (previousFailedObjects.notEmpty()) {
-                // We skip subsequent changes in objects that failed as we don't any unexpected activities to happen on
-                // a particular DB object
-                // (e.g. if one change relied on a previous one, and the previous one failed; what if something goes bad
-                // if the first one isn't executed?)
-                LOG.info(String.format(
-                        "Skipping this artifact as a previous change for these DB objects [%s] has failed: %s",
-                        previousFailedObjects.makeString(", "), changeCommand.getCommandDescription()));
-                continue;
-            }
-
-            LOG.info("Attempting to deploy: " + changeCommand.getCommandDescription());
-
-            StopWatch changeStopWatch = new StopWatch();
-            changeStopWatch.start();
-
-            try {
-                deployStrategy.deploy(changeCommand, cec);
-                changeCommand.markAuditTable(this.artifactDeployerDao, executionsBySchema.get(changeCommand.getSchema()));
+        if (env.isParallelDeployEnabled() && artifactsToProcess.getInsertDependencyGraph() != null) {
+            LOG.info("Deploying the changes in parallel mode using {} threads", env.getNumThreads());
 
-                changeStopWatch.stop();
-                long runtimeSeconds = TimeUnit.MILLISECONDS.toSeconds(changeStopWatch.getTime());
-                LOG.info("Successfully " + deployStrategy.getDeployVerbMessage() + " artifact " + changeCommand.getCommandDescription() +
-                        ", took " + runtimeSeconds + " seconds");
-
-                for (Change change : changeCommand.getChanges()) {
-                    onboardingStrategy.handleSuccess(change);
+            new ConcurrentGraphExecutor(env.getNumThreads()).execute(artifactsToProcess.getInsertDependencyGraph(), createCommandOrderComparator(artifactsToProcess.getInserts()), new ConcurrentGraphExecutor.VertexTask<ExecuteChangeCommand>() {
+                @Override
+                public boolean execute(final ExecuteChangeCommand changeCommand) {
+                    return executeWithinDeployContext(new Function0<Boolean>() {
+                        @Override
+                        public Boolean value() {
+                            return deployChangeCommand(changeCommand, deployStrategy, onboardingStrategy, executionsBySchema, cec, failedChanges, failedDbObjects, failedDbObjectNames);
+                        }
+                    });
                 }
-            } catch (Exception exc) {
-                changeStopWatch.stop();
-                long runtimeSeconds = TimeUnit.MILLISECONDS.toSeconds(changeStopWatch.getTime());
 
-                for (Change change : changeCommand.getChanges()) {
-                    onboardingStrategy.handleException(change, exc, failedDbObjectNames);
+                @Override
+                public void skip(ExecuteChangeCommand changeCommand) {
+                    LOG.info("Skipping this artifact as a change that it depends on has failed: " + changeCommand.getCommandDescription());
                 }
+            });
+        } else if (env.isSchemaLaneDeployEnabled() && artifactsToProcess.getInsertSchemaLaneGraph() != null) {
+            int numSchemas = artifactsToProcess.getInserts().collect(new Function<ExecuteChangeCommand, String>() {
+                @Override
+                public String valueOf(ExecuteChangeCommand changeCommand) {
+                    return changeCommand.getSchema();
+                }
+            }).toSet().size();
+            int numLaneThreads = Math.max(1, Math.min(env.getNumThreads(), numSchemas));
+            LOG.info("Deploying the changes of {} schemas in schema lane mode using {} threads", numSchemas, numLaneThreads);
 
-                LOG.info("Failed to deploy artifact " + changeCommand.getCommandDescription() + ", took "
-                        + runtimeSeconds + " seconds");
-
-                LOG.info("We will continue and fail the process at the end. This was the exception: "
-                        + ExceptionUtils.getStackTrace(exc));
-                failedChanges.add(new FailedChange(changeCommand, exc));
+            new ConcurrentGraphExecutor(numLaneThreads).execute(artifactsToProcess.getInsertSchemaLaneGraph(), createCommandOrderComparator(artifactsToProcess.getInserts()), new ConcurrentGraphExecutor.VertexTask<ExecuteChangeCommand>() {
+                @Override
+                public boolean execute(final ExecuteChangeCommand changeCommand) {
+                    executeWithinDeployContext(new Function0<Boolean>() {
+                        @Override
+                        public Boolean value() {
+                            return deployChangeCommand(changeCommand, deployStrategy, onboardingStrategy, executionsBySchema, cec, failedChanges, failedDbObjects, failedDbObjectNames);
+                        }
+                    });
+                    // the lane graph only orders the commands; as in the serial mode, a failure does not skip the
+                    // subsequent commands, other than those on the failed objects (see deployChangeCommand)
+                    return true;
+                }
 
-                failedDbObjectNames.withAll(changeCommand.getChanges().collect(Change.objectName()));
-                failedDbObjects.withAll(changeCommand.getChanges().collect(Change.TO_DB_OBJECT_KEY));
+                @Override
+                public void skip(ExecuteChangeCommand changeCommand) {
+                    throw new IllegalStateException("Not expected to skip commands in schema lane mode: " + changeCommand.getCommandDescription());
+                }
+            });
+        } else {
+            // consecutive commands on the same schema share a context, e.g. so that they can reuse the same connection
+            for (final MutableList<ExecuteChangeCommand> schemaRun : groupConsecutiveBySchema(artifactsToProcess.getInserts())) {
+                executeWithinDeployContext(new Function0<Void>() {
+                    @Override
+                    public Void value() {
+                        for (ExecuteChangeCommand changeCommand : schemaRun) {
+                            deployChangeCommand(changeCommand, deployStrategy, onboardingStrategy, executionsBySchema, cec, failedChanges, failedDbObjects, failedDbObjectNames);
+                        }
+                        return null;
+                    }
+                });
             }
         }
 
@@ -384,6 +552,137 @@ public class MainDeployer<P extends Platform, E extends Environment<P>> {
         }
     }
 
+    /**
+     * Returns the comparator for the commands by the given order, to be used as the tie-breaker in the concurrent deploy
+     * modes so that the execution order is consistent across runs.
+     */
+    private static Comparator<ExecuteChangeCommand> createCommandOrderComparator(ImmutableList<ExecuteChangeCommand> sortedCommands) {
+        final MutableObjectIntMap<ExecuteChangeCommand> commandOrder = ObjectIntHashMap.newMap();
+        sortedCommands.forEachWithIndex(new ObjectIntProcedure<ExecuteChangeCommand>() {
+            @Override
+            public void value(ExecuteChangeCommand changeCommand, int index) {
+                commandOrder.put(changeCommand, index);
+            }
+        });
+        return new Comparator<ExecuteChangeCommand>() {
+            @Override
+            public int compare(ExecuteChangeCommand o1, ExecuteChangeCommand o2) {
+                return Integer.compare(commandOrder.get(o1), commandOrder.get(o2));
+            }
+        };
+    }
+
+    private static MutableList<MutableList<ExecuteChangeCommand>> groupConsecutiveBySchema(ImmutableList<ExecuteChangeCommand> changeCommands) {
+        MutableList<MutableList<ExecuteChangeCommand>> schemaRuns = Lists.mutable.empty();
+        MutableList<ExecuteChangeCommand> currentRun = null;
+        for (ExecuteChangeCommand changeCommand : changeCommands) {
+            if (currentRun == null || !ObjectUtils.equals(currentRun.getLast().getSchema(), changeCommand.getSchema())) {
+                currentRun = Lists.mutable.empty();
+                schemaRuns.add(currentRun);
+            }
+            currentRun.add(changeCommand);
+        }
+        return schemaRuns;
+    }
+
+    /**
+     * Executes the deployment of the change commands given in the function (along with their audit table updates) on
+     * the current thread. Subclasses can override this to execute them within a shared context, e.g. to reuse a
+     * single database connection; the default is to just execute the function.
+     */
+    protected <T> T executeWithinDeployContext(Function0<T> function) {
+        return function.value();
+    }
+
+    /**
+     * Deploys the given command, returning true if successful. Failures are collected in the given failedChanges
+     * collection to be reported at the end of the deployment. This may be invoked concurrently in the parallel deploy
+     * mode; hence, the given collections must be thread-safe.
+     */
+    private boolean deployChangeCommand(ExecuteChangeCommand changeCommand, DeployStrategy deployStrategy, OnboardingStrategy onboardingStrategy, MapIterable<String, DeployExecution> executionsBySchema, CommandExecutionContext cec, MutableList<FailedChange> failedChanges, MutableSet<String> failedDbObjects, MutableSet<String> failedDbObjectNames) {
+        MutableSet<String> previousFailedObjects = failedDbObjects.intersect(changeCommand.getChanges().toSet()
+                .collect(Change.TO_DB_OBJECT_KEY));
+        if (previousFailedObjects.notEmpty()) {
+            // We skip subsequent changes in objects that failed as we don't any unexpected activities to happen on
+            // a particular DB object
+            // (e.g. if one change relied on a previous one, and the previous one failed; what if something goes bad
+            // if the first one isn't executed?)
+            LOG.info(String.format(
+                    "Skipping this artifact as a previous change for these DB objects [%s] has failed: %s",
+                    previousFailedObjects.makeString(", "), changeCommand.getCommandDescription()));
+            return false;
+        }
+
+        LOG.info("Attempting to deploy: " + changeCommand.getCommandDescription());
+
+        StopWatch changeStopWatch = new StopWatch();
+        changeStopWatch.start();
+        long changeStartNanos = System.nanoTime();
+
+        try {
+            deployStrategy.deploy(changeCommand, cec);
+            changeCommand.markAuditTable(this.artifactDeployerDao, executionsBySchema.get(changeCommand.getSchema()));
+            // write the audit entries out as soon as the change is committed, so that a crash later in the deploy does
+            // not cause the change to be executed again on the next run. Only this command's schemas are flushed, so
+            // that the workers on other schemas write their own entries
+            MutableSet<PhysicalSchema> commandSchemas = UnifiedSet.newSet();
+            for (Change change : changeCommand.getChanges()) {
+                commandSchemas.add(change.getPhysicalSchema());
+            }
+            for (PhysicalSchema commandSchema : commandSchemas) {
+                this.artifactDeployerDao.flush(commandSchema);
+            }
+
+            changeStopWatch.stop();
+            deployMetricsCollector.addTiming(getTimingKey(changeCommand), System.nanoTime() - changeStartNanos);
+            long runtimeSeconds = TimeUnit.MILLISECONDS.toSeconds(changeStopWatch.getTime());
+            LOG.info("Successfully " + deployStrategy.getDeployVerbMessage() + " artifact " + changeCommand.getCommandDescription() +
+                    ", took " + runtimeSeconds + " seconds");
+
+            synchronized (onboardingStrategy) {
+                for (Change change : changeCommand.getChanges()) {
+                    onboardingStrategy.handleSuccess(change);
+                }
+            }
+            return true;
+        } catch (Exception exc) {
+            changeStopWatch.stop();
+            deployMetricsCollector.addTiming(getTimingKey(changeCommand) + ".failed", System.nanoTime() - changeStartNanos);
+            long runtimeSeconds = TimeUnit.MILLISECONDS.toSeconds(changeStopWatch.getTime());
+
+            synchronized (onboardingStrategy) {
+                for (Change change : changeCommand.getChanges()) {
+                    onboardingStrategy.handleException(change, exc, failedDbObjectNames);
+                }
+            }
+
+            LOG.info("Failed to deploy artifact " + changeCommand.getCommandDescription() + ", took "
+                    + runtimeSeconds + " seconds");
+
+            LOG.info("We will continue and fail the process at the end. This was the exception: "
+                    + ExceptionUtils.getStackTrace(exc));
+            failedChanges.add(new FailedChange(changeCommand, exc));
+
+            failedDbObjectNames.withAll(changeCommand.getChanges().collect(Change.objectName()));
+            failedDbObjects.withAll(changeCommand.getChanges().collect(Change.TO_DB_OBJECT_KEY));
+            return false;
+        } finally {
+            // only relevant if the content was converted lazily; it is converted again if needed later
+            for (Change change : changeCommand.getChanges()) {
+                change.releaseConvertedContent();
+            }
+        }
+    }
+
+    /**
+     * Change timings are aggregated by change type (e.g. "change.TABLE"), as individual changes are too numerous to
+     * report separately.
+     */
+    private static String getTimingKey(ExecuteChangeCommand changeCommand) {
+        ImmutableList<Change> changes = changeCommand.getChanges();
+        return "change." + (changes.isEmpty() ? changeCommand.getClass().getSimpleName() : changes.getFirst().getChangeType().getName());
+    }
+
     public static void printCommands(RichIterable<? extends ChangeCommand> commands, String message) {
         if (commands.notEmpty()) {
             LOG.info("The following " + message + ":");
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.collections.api.map.ImmutableMap;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.impl.factory.Maps;
+
+/**
+ * Histogram of the durations recorded under a single timing key in {@link DeployMetricsImpl}.
+ *
+ * Recording a duration only takes a few atomic operations and no locks, so that we can time every JDBC statement
+ * without a noticeable overhead. In exchange, the durations are counted in power-of-two microsecond buckets, so the
+ * percentiles are only accurate to within a factor of two (the exact count, total, and max are kept separately).
+ */
+class TimingHistogram {
+    /**
+     * Bucket 0 counts the durations under 1 microsecond; bucket i counts those in [2^(i-1), 2^i) microseconds. The
+     * last bucket also takes anything longer (2^39 microseconds is about 6 days).
+     */
+    private static final int NUM_BUCKETS = 40;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    void record(long durationNanos) {
+        long duration = Math.max(0, durationNanos);
+        count.incrementAndGet();
+        totalNanos.addAndGet(duration);
+        buckets.incrementAndGet(bucketIndex(duration));
+
+        long currentMax = maxNanos.get();
+        while (duration > currentMax && !maxNanos.compareAndSet(currentMax, duration)) {
+            currentMax = maxNanos.get();
+        }
+    }
+
+    static int bucketIndex(long durationNanos) {
+        long micros = durationNanos / 1000;
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), NUM_BUCKETS - 1);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the given percentile, capped at the max duration.
+     */
+    long getPercentileNanos(double percentile) {
+        long totalCount = 0;
+        long[] bucketCounts = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            bucketCounts[i] = buckets.get(i);
+            totalCount += bucketCounts[i];
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long targetCount = (long) Math.ceil(totalCount * percentile / 100.0);
+        long cumulativeCount = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulativeCount += bucketCounts[i];
+            if (cumulativeCount >= targetCount) {
+                return Math.min((1L << i) * 1000, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the statistics in the form exposed via {@link DeployMetricsImpl#toSerializedForm()}; times are in
+     * milliseconds.
+     */
+    ImmutableMap<String, Object> toSerializedForm() {
+        long currentCount = count.get();
+        long currentTotalNanos = totalNanos.get();
+
+        MutableMap<String, Object> stats = Maps.mutable.empty();
+        stats.put("count", currentCount);
+        stats.put("totalMillis", toMillis(currentTotalNanos));
+        stats.put("meanMillis", currentCount == 0 ? 0.0 : toMillis(currentTotalNanos / currentCount));
+        stats.put("maxMillis", toMillis(maxNanos.get()));
+        stats.put("p50Millis", toMillis(getPercentileNanos(50)));
+        stats.put("p90Millis", toMillis(getPercentileNanos(90)));
+        stats.put("p99Millis", toMillis(getPercentileNanos(99)));
+        return stats.toImmutable();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;  // rounded to the microsecond
+    }
+}
@@ -24,11 +24,16 @@ import com.gs.obevo.impl.AuditChangeCommand;
 import com.gs.obevo.impl.ChangeCommandWarning;
 import com.gs.obevo.impl.Changeset;
 import com.gs.obevo.impl.ChangesetCreator;
+import com.gs.obevo.impl.DeployMetricsCollector;
+import com.gs.obevo.impl.DeployMetricsCollectorImpl;
 import com.gs.obevo.impl.ExecuteChangeCommand;
 import com.gs.obevo.impl.changesorter.ChangeCommandSorter;
+import com.gs.obevo.impl.changesorter.SortedChangeCommands;
+import com.gs.obevo.impl.graph.GraphUtil;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.HashingStrategy;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.block.procedure.Procedure2;
 import org.eclipse.collections.api.list.ImmutableList;
@@ -40,6 +45,8 @@ import org.eclipse.collections.api.set.SetIterable;
 import org.eclipse.collections.impl.block.factory.HashingStrategies;
 import org.eclipse.collections.impl.factory.Sets;
 import org.eclipse.collections.impl.map.strategy.mutable.UnifiedMapWithHashingStrategy;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,10 +66,16 @@ public class ChangesetCreatorImpl implements ChangesetCreator {
 
     private final ChangeCommandSorter changeCommandSorter;
     private final ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry;
+    private final DeployMetricsCollector deployMetricsCollector;
 
     public ChangesetCreatorImpl(ChangeCommandSorter changeCommandSorter, ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry) {
+        this(changeCommandSorter, changeTypeBehaviorRegistry, new DeployMetricsCollectorImpl());
+    }
+
+    public ChangesetCreatorImpl(ChangeCommandSorter changeCommandSorter, ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry, DeployMetricsCollector deployMetricsCollector) {
         this.changeCommandSorter = changeCommandSorter;
         this.changeTypeBehaviorRegistry = changeTypeBehaviorRegistry;
+        this.deployMetricsCollector = deployMetricsCollector;
     }
 
     @Override
@@ -111,7 +124,10 @@ public class ChangesetCreatorImpl implements ChangesetCreator {
             throw new IllegalStateException("These changes are not of an expected class type: " + executePartition.getRejected());
         }
 
-        ImmutableList<ExecuteChangeCommand> changeCommands = changeCommandSorter.sort(cast(executePartition.getSelected(), ExecuteChangeCommand.class), rollback);
+        long sortStartNanos = System.nanoTime();
+        final SortedChangeCommands sortedChangeCommands = changeCommandSorter.sortWithDependencies(cast(executePartition.getSelected(), ExecuteChangeCommand.class), rollback);
+        deployMetricsCollector.addTiming("phase.sort", System.nanoTime() - sortStartNanos);
+        ImmutableList<ExecuteChangeCommand> changeCommands = sortedChangeCommands.getSortedCommands();
 
         if (changesetPredicate == null) {
             changesetPredicate = DEFAULT_DEFERRED_PREDICATE;
@@ -120,13 +136,34 @@ public class ChangesetCreatorImpl implements ChangesetCreator {
                 changesetPredicate
         );
 
+        // the graphs are only pruned if the deployer asks for them, i.e. in the parallel or schema lane deploy modes
+        final ImmutableList<ExecuteChangeCommand> deferredCommands = changesetPartition.getRejected();
         return new Changeset(changesetPartition.getSelected(),
-                changesetPartition.getRejected(),
+                deferredCommands,
                 cast(auditPartition.getSelected(), AuditChangeCommand.class),
-                cast(warningPartition.getSelected(), ChangeCommandWarning.class)
+                cast(warningPartition.getSelected(), ChangeCommandWarning.class),
+                new Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>>() {
+                    @Override
+                    public DirectedGraph<ExecuteChangeCommand, DefaultEdge> value() {
+                        return removeDeferredCommands(sortedChangeCommands.getDependencyGraph(), deferredCommands);
+                    }
+                },
+                new Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>>() {
+                    @Override
+                    public DirectedGraph<ExecuteChangeCommand, DefaultEdge> value() {
+                        return removeDeferredCommands(sortedChangeCommands.getSchemaLaneGraph(), deferredCommands);
+                    }
+                }
         );
     }
 
+    private static DirectedGraph<ExecuteChangeCommand, DefaultEdge> removeDeferredCommands(DirectedGraph<ExecuteChangeCommand, DefaultEdge> graph, ImmutableList<ExecuteChangeCommand> deferredCommands) {
+        if (graph != null) {
+            GraphUtil.removeVerticesKeepingPaths(graph, deferredCommands);
+        }
+        return graph;
+    }
+
     /**
      * Casts the collection (needed prior to Java 8).
      * @param collection
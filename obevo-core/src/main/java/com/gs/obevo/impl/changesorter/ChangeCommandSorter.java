@@ -27,4 +27,10 @@ public interface ChangeCommandSorter {
      * Sorts the given commands into an order appropriate for deployment. May differ based on the impact of rollback.
      */
     ImmutableList<ExecuteChangeCommand> sort(RichIterable<ExecuteChangeCommand> changeCommands, boolean rollback);
+
+    /**
+     * Same as {@link #sort(RichIterable, boolean)}, but also returns the dependency graph among the commands so that
+     * clients can deploy independent commands concurrently.
+     */
+    SortedChangeCommands sortWithDependencies(RichIterable<ExecuteChangeCommand> changeCommands, boolean rollback);
 }
@@ -21,25 +21,31 @@ import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.platform.ChangeType;
 import com.gs.obevo.api.platform.Platform;
 import com.gs.obevo.impl.ExecuteChangeCommand;
+import com.gs.obevo.impl.graph.CompactDependencyGraph;
 import com.gs.obevo.impl.graph.GraphEnricher;
 import com.gs.obevo.impl.graph.GraphEnricherImpl;
 import com.gs.obevo.impl.graph.GraphSorter;
 import com.gs.obevo.impl.graph.SortableDependencyGroup;
 import com.gs.obevo.impl.text.TextDependencyExtractor;
 import com.gs.obevo.impl.text.TextDependencyExtractorImpl;
+import org.apache.commons.lang.ObjectUtils;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.ListIterable;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.MutableMap;
 import org.eclipse.collections.api.partition.PartitionIterable;
 import org.eclipse.collections.impl.block.factory.Comparators;
 import org.eclipse.collections.impl.block.factory.Functions;
 import org.eclipse.collections.impl.block.factory.Predicates;
 import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Maps;
 import org.eclipse.collections.impl.factory.Sets;
 import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +75,11 @@ public class ChangeCommandSorterImpl implements ChangeCommandSorter {
 
     @Override
     public ImmutableList<ExecuteChangeCommand> sort(RichIterable<ExecuteChangeCommand> changeCommands, boolean rollback) {
+        return sortWithDependencies(changeCommands, rollback).getSortedCommands();
+    }
+
+    @Override
+    public SortedChangeCommands sortWithDependencies(RichIterable<ExecuteChangeCommand> changeCommands, boolean rollback) {
         final RichIterable<DbCommandSortKey> commandDatas = changeCommands.collect(DbCommandSortKey.CREATE);
 
         PartitionIterable<DbCommandSortKey> dataCommandPartition = commandDatas.partition(
@@ -76,17 +87,150 @@ public class ChangeCommandSorterImpl implements ChangeCommandSorter {
 
         PartitionIterable<DbCommandSortKey> dropPartition = dataCommandPartition.getRejected().partition(Predicates.attributeEqual(DbCommandSortKey.TO_DROP, true));
 
-        ListIterable<DbCommandSortKey> orderedAdds = sortAddCommands(dropPartition.getRejected(), rollback);
-        ListIterable<DbCommandSortKey> orderedDrops = sortDropCommands(dropPartition.getSelected());
-        ListIterable<DbCommandSortKey> orderedDatas = sortDataCommands(dataCommandPartition.getSelected());
+        final CompactDependencyGraph<DbCommandSortKey> addGraph = enricher.createCompactDependencyGraph(dropPartition.getRejected(), rollback);
 
-        return Lists.mutable.withAll(orderedDrops).withAll(orderedAdds).withAll(orderedDatas).collect(DbCommandSortKey.TO_CHANGE_COMMAND).toImmutable();
+        final ListIterable<DbCommandSortKey> orderedAdds = sortAddCommands(addGraph, dropPartition.getRejected());
+        final ListIterable<DbCommandSortKey> orderedDrops = sortDropCommands(dropPartition.getSelected());
+        final ListIterable<DbCommandSortKey> orderedDatas = sortDataCommands(dataCommandPartition.getSelected());
+
+        ImmutableList<ExecuteChangeCommand> sortedCommands = Lists.mutable.withAll(orderedDrops).withAll(orderedAdds).withAll(orderedDatas).collect(DbCommandSortKey.TO_CHANGE_COMMAND).toImmutable();
+
+        // the graphs are only built for the callers that ask for them, i.e. the parallel and schema lane deploy modes
+        return new SortedChangeCommands(sortedCommands,
+                new Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>>() {
+                    @Override
+                    public DirectedGraph<ExecuteChangeCommand, DefaultEdge> value() {
+                        return createCommandGraph(orderedDrops, addGraph, orderedDatas);
+                    }
+                },
+                new Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>>() {
+                    @Override
+                    public DirectedGraph<ExecuteChangeCommand, DefaultEdge> value() {
+                        return createSchemaLaneGraph(orderedDrops, addGraph, orderedAdds, orderedDatas);
+                    }
+                });
     }
 
+    /**
+     * Creates the graph for deploying each schema in its own lane: the commands of a schema are chained in their sorted
+     * order, and commands of different schemas only depend on each other where:
+     * - the object graph has a dependency across the schemas among the adds
+     * - the drops need to keep their order (i.e. if the platform requires ordered drops)
+     * - the static data commands have different change orders, as those orders apply across schemas
+     */
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> createSchemaLaneGraph(ListIterable<DbCommandSortKey> orderedDrops, CompactDependencyGraph<DbCommandSortKey> addGraph, ListIterable<DbCommandSortKey> orderedAdds, ListIterable<DbCommandSortKey> orderedDatas) {
+        DefaultDirectedGraph<ExecuteChangeCommand, DefaultEdge> graph = new DefaultDirectedGraph<ExecuteChangeCommand, DefaultEdge>(DefaultEdge.class);
+
+        MutableMap<String, ExecuteChangeCommand> lastCommandBySchema = Maps.mutable.empty();
+        for (DbCommandSortKey commandKey : Lists.mutable.withAll(orderedDrops).withAll(orderedAdds).withAll(orderedDatas)) {
+            ExecuteChangeCommand command = commandKey.getChangeCommand();
+            graph.addVertex(command);
+            ExecuteChangeCommand previousCommand = lastCommandBySchema.put(command.getSchema(), command);
+            if (previousCommand != null) {
+                graph.addEdge(previousCommand, command);
+            }
+        }
+
+        if (dialect.isDropOrderRequired()) {
+            addChain(graph, orderedDrops, null);
+        }
+
+        for (int addVertex = 0; addVertex < addGraph.size(); addVertex++) {
+            ExecuteChangeCommand addCommand = addGraph.getVertex(addVertex).getChangeCommand();
+            for (int i = 0; i < addGraph.getOutDegree(addVertex); i++) {
+                ExecuteChangeCommand dependent = addGraph.getVertex(addGraph.getDependent(addVertex, i)).getChangeCommand();
+                if (!ObjectUtils.equals(addCommand.getSchema(), dependent.getSchema())) {
+                    graph.addEdge(addCommand, dependent);
+                }
+            }
+        }
+
+        // the data commands of each change order wait for the last command of each schema in the previous order;
+        // the lane chains then take care of the rest
+        MutableMap<String, ExecuteChangeCommand> previousOrderLastCommands = Maps.mutable.empty();
+        MutableMap<String, ExecuteChangeCommand> currentOrderLastCommands = Maps.mutable.empty();
+        Integer currentOrder = null;
+        for (DbCommandSortKey dataKey : orderedDatas) {
+            ExecuteChangeCommand dataCommand = dataKey.getChangeCommand();
+            int order = getDataCommandOrder(dataKey);
+            if (currentOrder == null || order != currentOrder) {
+                if (currentOrder != null) {
+                    previousOrderLastCommands = currentOrderLastCommands;
+                    currentOrderLastCommands = Maps.mutable.empty();
+                }
+                currentOrder = order;
+            }
+            for (ExecuteChangeCommand previousOrderCommand : previousOrderLastCommands.valuesView()) {
+                if (!ObjectUtils.equals(previousOrderCommand.getSchema(), dataCommand.getSchema())) {
+                    graph.addEdge(previousOrderCommand, dataCommand);
+                }
+            }
+            currentOrderLastCommands.put(dataCommand.getSchema(), dataCommand);
+        }
+
+        return graph;
+    }
 
-    private ListIterable<DbCommandSortKey> sortAddCommands(RichIterable<DbCommandSortKey> addCommands, boolean rollback) {
-        DirectedGraph<DbCommandSortKey, DefaultEdge> addGraph = enricher.createDependencyGraph(addCommands, rollback);
+    /**
+     * Creates the dependency graph across all the commands. Only the add commands have their dependencies derived from
+     * the object graph; the drops and the static data commands are kept in their sorted order, with the drops
+     * completing before any add and the static data commands starting only after all adds complete.
+     */
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> createCommandGraph(ListIterable<DbCommandSortKey> orderedDrops, CompactDependencyGraph<DbCommandSortKey> addGraph, ListIterable<DbCommandSortKey> orderedDatas) {
+        DefaultDirectedGraph<ExecuteChangeCommand, DefaultEdge> graph = new DefaultDirectedGraph<ExecuteChangeCommand, DefaultEdge>(DefaultEdge.class);
 
+        ExecuteChangeCommand previousCommand = addChain(graph, orderedDrops, null);
+
+        MutableList<ExecuteChangeCommand> addSinks = Lists.mutable.empty();
+        for (int addVertex = 0; addVertex < addGraph.size(); addVertex++) {
+            graph.addVertex(addGraph.getVertex(addVertex).getChangeCommand());
+        }
+        for (int addVertex = 0; addVertex < addGraph.size(); addVertex++) {
+            ExecuteChangeCommand addCommand = addGraph.getVertex(addVertex).getChangeCommand();
+            for (int i = 0; i < addGraph.getOutDegree(addVertex); i++) {
+                graph.addEdge(addCommand, addGraph.getVertex(addGraph.getDependent(addVertex, i)).getChangeCommand());
+            }
+            if (previousCommand != null && addGraph.getInDegree(addVertex) == 0) {
+                graph.addEdge(previousCommand, addCommand);
+            }
+            if (addGraph.getOutDegree(addVertex) == 0) {
+                addSinks.add(addCommand);
+            }
+        }
+
+        if (orderedDatas.notEmpty()) {
+            ExecuteChangeCommand firstData = orderedDatas.getFirst().getChangeCommand();
+            graph.addVertex(firstData);
+            if (addSinks.notEmpty()) {
+                for (ExecuteChangeCommand addSink : addSinks) {
+                    graph.addEdge(addSink, firstData);
+                }
+            } else if (previousCommand != null) {
+                graph.addEdge(previousCommand, firstData);
+            }
+            addChain(graph, orderedDatas, null);
+        }
+
+        return graph;
+    }
+
+    /**
+     * Adds the given commands to the graph such that each one depends on the one before it. Returns the last command in
+     * the chain.
+     */
+    private ExecuteChangeCommand addChain(DirectedGraph<ExecuteChangeCommand, DefaultEdge> graph, ListIterable<DbCommandSortKey> orderedCommands, ExecuteChangeCommand previousCommand) {
+        for (DbCommandSortKey commandKey : orderedCommands) {
+            ExecuteChangeCommand command = commandKey.getChangeCommand();
+            graph.addVertex(command);
+            if (previousCommand != null) {
+                graph.addEdge(previousCommand, command);
+            }
+            previousCommand = command;
+        }
+        return previousCommand;
+    }
+
+    private ListIterable<DbCommandSortKey> sortAddCommands(CompactDependencyGraph<DbCommandSortKey> addGraph, RichIterable<DbCommandSortKey> addCommands) {
         ListIterable<DbCommandSortKey> addChanges = graphSorter.sortChanges(addGraph, SortableDependencyGroup.GRAPH_SORTER_COMPARATOR);
         addChanges.forEachWithIndex(new ObjectIntProcedure<DbCommandSortKey>() {
             @Override
@@ -124,7 +268,7 @@ public class ChangeCommandSorterImpl implements ChangeCommandSorter {
             }));
 
             // enrichment is needed here
-            DirectedGraph<DbCommandSortKey, DefaultEdge> dropGraph = enricher.createDependencyGraph(rerunnableDrops, false);
+            CompactDependencyGraph<DbCommandSortKey> dropGraph = enricher.createCompactDependencyGraph(rerunnableDrops, false);
 
             ListIterable<DbCommandSortKey> dropChanges = graphSorter.sortChanges(dropGraph, SortableDependencyGroup.GRAPH_SORTER_COMPARATOR);
             dropChanges.forEachWithIndex(new ObjectIntProcedure<DbCommandSortKey>() {
@@ -166,12 +310,7 @@ public class ChangeCommandSorterImpl implements ChangeCommandSorter {
         MutableList<DbCommandSortKey> sortedDataCommands = dataCommands.toSortedListBy(new Function<DbCommandSortKey, Comparable>() {
             @Override
             public Comparable valueOf(DbCommandSortKey dbCommandSortKey) {
-                ListIterable<Change> changes = dbCommandSortKey.getChangeCommand().getChanges();
-                if (changes.isEmpty() || changes.size() > 1) {
-                    return Change.DEFAULT_CHANGE_ORDER;
-                } else {
-                    return changes.getFirst().getOrder();
-                }
+                return getDataCommandOrder(dbCommandSortKey);
             }
         });
 
@@ -184,4 +323,13 @@ public class ChangeCommandSorterImpl implements ChangeCommandSorter {
 
         return dataCommands.toSortedListBy(DbCommandSortKey.TO_ORDER);
     }
+
+    private static int getDataCommandOrder(DbCommandSortKey dataCommand) {
+        ListIterable<Change> changes = dataCommand.getChangeCommand().getChanges();
+        if (changes.isEmpty() || changes.size() > 1) {
+            return Change.DEFAULT_CHANGE_ORDER;
+        } else {
+            return changes.getFirst().getOrder();
+        }
+    }
 }
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl.changesorter;
+
+import com.gs.obevo.impl.ExecuteChangeCommand;
+import org.eclipse.collections.api.block.function.Function0;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+
+/**
+ * The output of {@link ChangeCommandSorter}: the commands in their deployment order, along with the dependency graph
+ * that the order was derived from.
+ *
+ * An edge from command A to command B in the graph means that A must be deployed before B. Hence, any topological
+ * order of the graph is a valid deployment order, and commands without a path between them can be deployed
+ * concurrently.
+ *
+ * The schema lane graph is a variant of the dependency graph in which the commands of each schema are chained in their
+ * sorted order and commands across schemas only depend on each other where required; see
+ * {@link #getSchemaLaneGraph()}.
+ *
+ * Most callers only need the sorted commands, so the graphs are created on the first call to their getters.
+ */
+public class SortedChangeCommands {
+    private final ImmutableList<ExecuteChangeCommand> sortedCommands;
+    private Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> dependencyGraphFactory;
+    private Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> schemaLaneGraphFactory;
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> dependencyGraph;
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> schemaLaneGraph;
+
+    /**
+     * @param dependencyGraphFactory creates the graph for {@link #getDependencyGraph()}
+     * @param schemaLaneGraphFactory creates the graph for {@link #getSchemaLaneGraph()}; may be null
+     */
+    public SortedChangeCommands(ImmutableList<ExecuteChangeCommand> sortedCommands, Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> dependencyGraphFactory, Function0<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> schemaLaneGraphFactory) {
+        this.sortedCommands = sortedCommands;
+        this.dependencyGraphFactory = dependencyGraphFactory;
+        this.schemaLaneGraphFactory = schemaLaneGraphFactory;
+    }
+
+    public ImmutableList<ExecuteChangeCommand> getSortedCommands() {
+        return sortedCommands;
+    }
+
+    public synchronized DirectedGraph<ExecuteChangeCommand, DefaultEdge> getDependencyGraph() {
+        if (dependencyGraphFactory != null) {
+            dependencyGraph = dependencyGraphFactory.value();
+            dependencyGraphFactory = null;
+        }
+        return dependencyGraph;
+    }
+
+    /**
+     * Returns the graph for deploying each schema in its own lane, or null if it was not computed. The commands of a
+     * schema are chained in their sorted order; edges across schemas only exist for cross-schema object dependencies,
+     * for the drops on platforms that require ordered drops, and between static data commands of different change
+     * orders.
+     */
+    public synchronized DirectedGraph<ExecuteChangeCommand, DefaultEdge> getSchemaLaneGraph() {
+        if (schemaLaneGraphFactory != null) {
+            schemaLaneGraph = schemaLaneGraphFactory.value();
+            schemaLaneGraphFactory = null;
+        }
+        return schemaLaneGraph;
+    }
+}
@@ -173,7 +173,15 @@ public class IncrementalChangeTypeCommandCalculator implements ChangeTypeCommand
                         changeset.add(changeCommandFactory.createCurrentDeactivationWarning(incrementalDeployed));
                     }
 
-                    if (!ObjectUtils.equals(DAStringUtil.normalizeWhiteSpaceFromString(incrementalSource.getRollbackContent()),
+                    // The deployed rollback content is loaded lazily from the audit table. If the source has none, we only
+                    // need to know whether the deployed change has any to clear it, which does not require that load.
+                    if (StringUtils.isBlank(incrementalSource.getRollbackContent())) {
+                        if (incrementalDeployed.hasRollbackContent()) {
+                            incrementalDeployed.setRollbackContent("");
+                            changeset.add(changeCommandFactory.createUpdateAuditTableOnly(incrementalDeployed,
+                                    "Updating rollback script"));
+                        }
+                    } else if (!ObjectUtils.equals(DAStringUtil.normalizeWhiteSpaceFromString(incrementalSource.getRollbackContent()),
                             DAStringUtil.normalizeWhiteSpaceFromString(incrementalDeployed.getRollbackContent()))) {
                         incrementalDeployed.setRollbackContent(incrementalSource.getRollbackContent());
                         changeset.add(changeCommandFactory.createUpdateAuditTableOnly(incrementalDeployed,
@@ -30,6 +30,10 @@ public class UpdateAuditTableOnlyCommand extends AuditOnlyChangeCommand {
         this.message = message;
     }
 
+    public String getMessage() {
+        return this.message;
+    }
+
     @Override
     public void markAuditTable(ChangeAuditDao artifactDeployerDao, DeployExecution deployExecution) {
         LOG.info("Marking audit table due to reason: {}", this.message);
@@ -0,0 +1,420 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl.graph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.gs.obevo.api.appdata.CodeDependencyType;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.impl.block.factory.Functions;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.list.mutable.primitive.ByteArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+
+/**
+ * Dependency graph whose vertices are referred to by their int index, i.e. the order in which they were added, and whose
+ * edges are kept in primitive arrays instead of as objects. This is used for building and sorting the graphs of large
+ * changesets (e.g. the full rebuild of a large schema), for which the per-vertex and per-edge objects of a JGraphT graph
+ * take up much of the heap and time.
+ *
+ * An edge from A to B means that A must be deployed before B, as in the JGraphT graphs. The edges are kept in the order
+ * they were added and are indexed by their source vertex in compressed sparse row form, i.e. the outgoing edges of vertex
+ * v are outEdges[outOffsets[v]] to outEdges[outOffsets[v + 1] - 1].
+ *
+ * Use {@link #toDirectedGraph()} for callers that need the JGraphT API.
+ */
+public final class CompactDependencyGraph<T> {
+    private static final byte NO_EDGE_TYPE = -1;
+    private static final CodeDependencyType[] EDGE_TYPES = CodeDependencyType.values();
+
+    private final MutableList<T> vertices;
+    private final MutableObjectIntMap<T> vertexIndexes;
+    private final Function<? super T, String> vertexToString;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final byte[] edgeTypes;
+    private final int[] outOffsets;
+    private final int[] outEdges;
+    private final int[] inDegrees;
+
+    private CompactDependencyGraph(Builder<T> builder) {
+        this.vertices = builder.vertices;
+        this.vertexIndexes = builder.vertexIndexes;
+        this.vertexToString = builder.vertexToString;
+        this.edgeSources = builder.edgeSources.toArray();
+        this.edgeTargets = builder.edgeTargets.toArray();
+        this.edgeTypes = builder.edgeTypes.toArray();
+
+        int numVertices = vertices.size();
+        this.outOffsets = new int[numVertices + 1];
+        this.inDegrees = new int[numVertices];
+        for (int edge = 0; edge < edgeSources.length; edge++) {
+            outOffsets[edgeSources[edge] + 1]++;
+            inDegrees[edgeTargets[edge]]++;
+        }
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            outOffsets[vertex + 1] += outOffsets[vertex];
+        }
+
+        // counting sort of the edges by their source; this keeps the edges of each source in the order they were added
+        this.outEdges = new int[edgeSources.length];
+        int[] nextOutEdge = Arrays.copyOf(outOffsets, numVertices);
+        for (int edge = 0; edge < edgeSources.length; edge++) {
+            outEdges[nextOutEdge[edgeSources[edge]]++] = edge;
+        }
+    }
+
+    /**
+     * @param vertexToString used for describing the vertices in the cycle error messages
+     */
+    public static <T> Builder<T> newBuilder(Function<? super T, String> vertexToString) {
+        return new Builder<T>(vertexToString);
+    }
+
+    /**
+     * Copies the given JGraphT graph, keeping the order of its vertices and edges.
+     */
+    public static <T, E> CompactDependencyGraph<T> fromDirectedGraph(DirectedGraph<T, E> graph) {
+        Builder<T> builder = newBuilder(Functions.getToString());
+        for (T vertex : graph.vertexSet()) {
+            builder.addVertex(vertex);
+        }
+        for (E edge : graph.edgeSet()) {
+            builder.addEdge(builder.getVertexIndex(graph.getEdgeSource(edge)), builder.getVertexIndex(graph.getEdgeTarget(edge)), null);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return vertices.size();
+    }
+
+    public T getVertex(int vertex) {
+        return vertices.get(vertex);
+    }
+
+    /**
+     * Returns the index of the given vertex, or -1 if it is not in the graph.
+     */
+    public int getVertexIndex(T vertex) {
+        return vertexIndexes.getIfAbsent(vertex, -1);
+    }
+
+    public int getInDegree(int vertex) {
+        return inDegrees[vertex];
+    }
+
+    public int getOutDegree(int vertex) {
+        return outOffsets[vertex + 1] - outOffsets[vertex];
+    }
+
+    /**
+     * Returns the i-th dependent of the vertex (i.e. the target of its i-th outgoing edge), where i is less than
+     * {@link #getOutDegree(int)}.
+     */
+    public int getDependent(int vertex, int i) {
+        return edgeTargets[outEdges[outOffsets[vertex] + i]];
+    }
+
+    /**
+     * Returns the vertices in a topological order, i.e. each vertex comes after all the vertices it depends on. Among
+     * the vertices that are ready to be added at a given point, the lowest one by the comparator is added first, with
+     * ties broken by the order in which the vertices were added to the graph; hence, the order is deterministic.
+     *
+     * This is a single pass of Kahn's algorithm, which also detects the cycles: if any vertices were left unsorted, a
+     * {@link GraphCycleException} is thrown describing the cycles among them.
+     */
+    public ImmutableList<T> topologicalSort(Comparator<? super T> comparator) {
+        int numVertices = size();
+
+        // the comparator is applied once up front, so that the queue only needs to compare ints
+        int[] vertexRanks = rankVertices(comparator);
+        int[] verticesByRank = new int[numVertices];
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            verticesByRank[vertexRanks[vertex]] = vertex;
+        }
+
+        int[] remainingInDegrees = inDegrees.clone();
+        IntMinHeap readyRanks = new IntMinHeap(numVertices);
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            if (remainingInDegrees[vertex] == 0) {
+                readyRanks.push(vertexRanks[vertex]);
+            }
+        }
+
+        MutableList<T> sortedVertices = FastList.newList(numVertices);
+        while (readyRanks.notEmpty()) {
+            int vertex = verticesByRank[readyRanks.pop()];
+            sortedVertices.add(vertices.get(vertex));
+            for (int i = outOffsets[vertex]; i < outOffsets[vertex + 1]; i++) {
+                int dependent = edgeTargets[outEdges[i]];
+                if (--remainingInDegrees[dependent] == 0) {
+                    readyRanks.push(vertexRanks[dependent]);
+                }
+            }
+        }
+
+        if (sortedVertices.size() < numVertices) {
+            throwCycleException(remainingInDegrees);
+        }
+
+        return sortedVertices.toImmutable();
+    }
+
+    /**
+     * Throws a {@link GraphCycleException} if the graph has cycles.
+     */
+    public void validateNoCycles() {
+        int[] remainingInDegrees = inDegrees.clone();
+        IntArrayList readyVertices = new IntArrayList();
+        for (int vertex = 0; vertex < remainingInDegrees.length; vertex++) {
+            if (remainingInDegrees[vertex] == 0) {
+                readyVertices.add(vertex);
+            }
+        }
+
+        int numVisited = 0;
+        while (readyVertices.notEmpty()) {
+            int vertex = readyVertices.removeAtIndex(readyVertices.size() - 1);
+            numVisited++;
+            for (int i = outOffsets[vertex]; i < outOffsets[vertex + 1]; i++) {
+                int dependent = edgeTargets[outEdges[i]];
+                if (--remainingInDegrees[dependent] == 0) {
+                    readyVertices.add(dependent);
+                }
+            }
+        }
+
+        if (numVisited < remainingInDegrees.length) {
+            throwCycleException(remainingInDegrees);
+        }
+    }
+
+    /**
+     * Returns a JGraphT copy of this graph, with the vertices and edges in the same order.
+     */
+    public DirectedGraph<T, DefaultEdge> toDirectedGraph() {
+        return toDirectedGraph(null);
+    }
+
+    /**
+     * Returns the JGraphT copy of the graph; if remainingInDegrees is given, only the vertices with a positive value in it
+     * are copied.
+     */
+    private DirectedGraph<T, DefaultEdge> toDirectedGraph(int[] remainingInDegrees) {
+        DefaultDirectedGraph<T, DefaultEdge> graph = new DefaultDirectedGraph<T, DefaultEdge>(DefaultEdge.class);
+        for (int vertex = 0; vertex < vertices.size(); vertex++) {
+            if (remainingInDegrees == null || remainingInDegrees[vertex] > 0) {
+                graph.addVertex(vertices.get(vertex));
+            }
+        }
+        for (int edge = 0; edge < edgeSources.length; edge++) {
+            if (remainingInDegrees == null || (remainingInDegrees[edgeSources[edge]] > 0 && remainingInDegrees[edgeTargets[edge]] > 0)) {
+                T source = vertices.get(edgeSources[edge]);
+                T target = vertices.get(edgeTargets[edge]);
+                if (edgeTypes[edge] == NO_EDGE_TYPE) {
+                    graph.addEdge(source, target);
+                } else {
+                    graph.addEdge(source, target, new DependencyEdge<T>(source, target, EDGE_TYPES[edgeTypes[edge]]));
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the rank of each vertex by the comparator, with ties broken by the vertex index.
+     */
+    private int[] rankVertices(final Comparator<? super T> comparator) {
+        Integer[] rankedVertices = new Integer[size()];
+        for (int vertex = 0; vertex < rankedVertices.length; vertex++) {
+            rankedVertices[vertex] = vertex;
+        }
+        // the sort is stable, so the ties keep the vertex order
+        Arrays.sort(rankedVertices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer vertex1, Integer vertex2) {
+                return comparator.compare(vertices.get(vertex1), vertices.get(vertex2));
+            }
+        });
+
+        int[] vertexRanks = new int[rankedVertices.length];
+        for (int rank = 0; rank < rankedVertices.length; rank++) {
+            vertexRanks[rankedVertices[rank]] = rank;
+        }
+        return vertexRanks;
+    }
+
+    /**
+     * The vertices that could not be sorted are those in the cycles and those that depend on them; we only pay for the
+     * cycle analysis and message on that remaining subgraph.
+     */
+    private void throwCycleException(int[] remainingInDegrees) {
+        GraphUtil.validateNoCycles(toDirectedGraph(remainingInDegrees), vertexToString, null);
+        throw new IllegalStateException("Should not get here; the graph could not be fully sorted, but no cycles were found");
+    }
+
+    public static final class Builder<T> {
+        private final MutableList<T> vertices = Lists.mutable.empty();
+        private final MutableObjectIntMap<T> vertexIndexes = ObjectIntHashMap.newMap();
+        private final Function<? super T, String> vertexToString;
+        private final IntArrayList edgeSources = new IntArrayList();
+        private final IntArrayList edgeTargets = new IntArrayList();
+        private final ByteArrayList edgeTypes = new ByteArrayList();
+        private final LongHashSet edgeKeys = new LongHashSet();
+
+        private Builder(Function<? super T, String> vertexToString) {
+            this.vertexToString = vertexToString;
+        }
+
+        /**
+         * Adds the vertex if it is not already in the graph, and returns its index.
+         */
+        public int addVertex(T vertex) {
+            int index = vertexIndexes.getIfAbsent(vertex, -1);
+            if (index < 0) {
+                index = vertices.size();
+                vertices.add(vertex);
+                vertexIndexes.put(vertex, index);
+            }
+            return index;
+        }
+
+        public T getVertex(int vertex) {
+            return vertices.get(vertex);
+        }
+
+        /**
+         * Returns the index of the given vertex, or -1 if it is not in the graph.
+         */
+        public int getVertexIndex(T vertex) {
+            return vertexIndexes.getIfAbsent(vertex, -1);
+        }
+
+        /**
+         * Adds the edge from source to target, unless the graph already has an edge between them (i.e. as in the
+         * JGraphT graphs, the first edge added between two vertices is kept). Returns true if the edge was added.
+         *
+         * @param edgeType the type to report for the edge in the cycle error messages; may be null
+         */
+        public boolean addEdge(int source, int target, CodeDependencyType edgeType) {
+            if (!edgeKeys.add(((long) source << 32) | target)) {
+                return false;
+            }
+            edgeSources.add(source);
+            edgeTargets.add(target);
+            edgeTypes.add(edgeType == null ? NO_EDGE_TYPE : (byte) edgeType.ordinal());
+            return true;
+        }
+
+        public CompactDependencyGraph<T> build() {
+            return new CompactDependencyGraph<T>(this);
+        }
+    }
+
+    /**
+     * Binary min-heap of ints, to avoid boxing the vertices in a {@link java.util.PriorityQueue}.
+     */
+    private static final class IntMinHeap {
+        private final int[] heap;
+        private int size;
+
+        IntMinHeap(int capacity) {
+            this.heap = new int[capacity];
+        }
+
+        boolean notEmpty() {
+            return size > 0;
+        }
+
+        void push(int value) {
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = value;
+        }
+
+        int pop() {
+            int result = heap[0];
+            int last = heap[--size];
+            int index = 0;
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = last;
+            return result;
+        }
+    }
+
+    /**
+     * Custom edge type to allow for better error logging for cycles, namely to show the dependency edge type.
+     */
+    private static class DependencyEdge<T> extends DefaultEdge {
+        private final T source;
+        private final T target;
+        private final CodeDependencyType edgeType;
+
+        public DependencyEdge(T source, T target, CodeDependencyType edgeType) {
+            this.source = source;
+            this.target = target;
+            this.edgeType = edgeType;
+        }
+
+        @Override
+        public T getSource() {
+            return source;
+        }
+
+        @Override
+        public T getTarget() {
+            return target;
+        }
+
+        public CodeDependencyType getEdgeType() {
+            return edgeType;
+        }
+
+        @Override
+        public String toString() {
+            return edgeType.name();
+        }
+    }
+}
@@ -31,4 +31,11 @@ public interface GraphEnricher {
      *                 (thus, reverse order for incremental changes)
      */
     <T extends SortableDependencyGroup> DirectedGraph<T, DefaultEdge> createDependencyGraph(RichIterable<T> inputs, boolean rollback);
+
+    /**
+     * Same as {@link #createDependencyGraph(RichIterable, boolean)}, but returns the graph in the compact form and
+     * without validating it for cycles; the cycles are instead reported when sorting the graph. Prefer this for
+     * callers that only need to sort the graph or walk its edges, as it avoids building the JGraphT objects.
+     */
+    <T extends SortableDependencyGroup> CompactDependencyGraph<T> createCompactDependencyGraph(RichIterable<T> inputs, boolean rollback);
 }
@@ -18,19 +18,14 @@ package com.gs.obevo.impl.graph;
 import com.gs.obevo.api.appdata.CodeDependency;
 import com.gs.obevo.api.appdata.CodeDependencyType;
 import com.gs.obevo.api.platform.ChangeType;
-import org.apache.commons.collections.map.MultiKeyMap;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
-import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
-import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.map.MutableMap;
-import org.eclipse.collections.api.multimap.Multimap;
-import org.eclipse.collections.api.tuple.Pair;
-import org.eclipse.collections.impl.block.factory.Functions;
-import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
 import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 import org.jgrapht.DirectedGraph;
-import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +36,18 @@ import org.slf4j.LoggerFactory;
 public class GraphEnricherImpl implements GraphEnricher {
     private static final Logger LOG = LoggerFactory.getLogger(GraphEnricherImpl.class);
 
+    private static final Function<SortableDependencyGroup, String> GROUP_TO_STRING = new Function<SortableDependencyGroup, String>() {
+        @Override
+        public String valueOf(SortableDependencyGroup group) {
+            return group.getComponents().collect(new Function<SortableDependency, String>() {
+                @Override
+                public String valueOf(SortableDependency sortableDependency) {
+                    return "[" + sortableDependency.getObjectKey().getObjectName() + "." + sortableDependency.getChangeName() + "]";
+                }
+            }).makeString(", ");
+        }
+    };
+
     private final Function<String, String> convertDbObjectName;
 
     public GraphEnricherImpl(Function<String, String> convertDbObjectName) {
@@ -49,39 +56,46 @@ public class GraphEnricherImpl implements GraphEnricher {
 
     @Override
     public <T extends SortableDependencyGroup> DirectedGraph<T, DefaultEdge> createDependencyGraph(RichIterable<T> inputs, boolean rollback) {
-        final RichIterable<ChangeIndex<T>> changeIndexes = Lists.mutable.of(
-                new ObjectIndex<T>(),
-                new SchemaObjectIndex<T>(),
-                new ObjectChangeIndex<T>(),
-                new SchemaChangeObjectIndex<T>()
-        );
-
-        for (ChangeIndex<T> changeIndex : changeIndexes) {
-            for (T change : inputs) {
-                changeIndex.add(change);
-            }
-        }
-
+        CompactDependencyGraph<T> graph = createCompactDependencyGraph(inputs, rollback);
+        graph.validateNoCycles();
+        return graph.toDirectedGraph();
+    }
 
-        final DefaultDirectedGraph<T, DefaultEdge> graph = new DefaultDirectedGraph<T, DefaultEdge>(DefaultEdge.class);
+    @Override
+    public <T extends SortableDependencyGroup> CompactDependencyGraph<T> createCompactDependencyGraph(RichIterable<T> inputs, boolean rollback) {
+        final CompactDependencyGraph.Builder<T> graph = CompactDependencyGraph.newBuilder(GROUP_TO_STRING);
 
         // First - add the core objects to the graph
         for (T change : inputs) {
             graph.addVertex(change);
         }
 
+        final ChangeIndex[] changeIndexes = new ChangeIndex[] {
+                new ObjectIndex<T>(graph),
+                new SchemaObjectIndex<T>(graph),
+                new ObjectChangeIndex(),
+                new SchemaChangeObjectIndex()
+        };
+
+        for (ChangeIndex changeIndex : changeIndexes) {
+            for (T change : inputs) {
+                changeIndex.add(change, graph.getVertexIndex(change));
+            }
+        }
+
         // Now add the declared dependencies to the graph
         for (T changeGroup : inputs) {
+            int changeVertex = graph.getVertexIndex(changeGroup);
             for (SortableDependency change : changeGroup.getComponents()) {
                 if (change.getCodeDependencies() != null) {
                     for (CodeDependency dependency : change.getCodeDependencies()) {
-                        T dependencyVertex = null;
-                        for (ChangeIndex<T> changeIndex : changeIndexes) {
+                        int dependencyVertex = -1;
+                        for (ChangeIndex changeIndex : changeIndexes) {
                             dependencyVertex = changeIndex.retrieve(change.getObjectKey().getSchema(), dependency.getTarget());
-                            if (dependencyVertex != null) {
+                            if (dependencyVertex >= 0) {
                                 if (LOG.isTraceEnabled()) {
                                     LOG.trace("Discovered dependency from {} to {} using index {}",
-                                            dependencyVertex,
+                                            graph.getVertex(dependencyVertex),
                                             change.getObjectKey() + "-" + change.getChangeName(),
                                             changeIndex);
                                 }
@@ -89,10 +103,10 @@ public class GraphEnricherImpl implements GraphEnricher {
                             }
                         }
 
-                        if (dependencyVertex == null) {
+                        if (dependencyVertex < 0) {
                             LOG.trace("Dependency not found; likely due to not enriching the full graph in source. Should be OK to ignore: {} - {}", dependency, change);
                         } else {
-                            graph.addEdge(dependencyVertex, changeGroup, new DependencyEdge(dependencyVertex, changeGroup, dependency.getCodeDependencyType()));
+                            graph.addEdge(dependencyVertex, changeVertex, dependency.getCodeDependencyType());
                         }
                     }
                 }
@@ -101,187 +115,202 @@ public class GraphEnricherImpl implements GraphEnricher {
 
 
         // Add in changes within incremental files to ensure proper order
-        RichIterable<Pair<T, SortableDependency>> groupToComponentPairs = inputs.flatCollect(new Function<T, Iterable<Pair<T, SortableDependency>>>() {
-            @Override
-            public Iterable<Pair<T, SortableDependency>> valueOf(T group) {
-                return group.getComponents().collect(Functions.pair(Functions.getFixedValue(group), Functions.<SortableDependency>getPassThru()));
-            }
-        });
-
-        final Multimap<String, Pair<T, SortableDependency>> incrementalChangeByObjectMap = groupToComponentPairs.groupBy(new Function<Pair<T, SortableDependency>, String>() {
-            @Override
-            public String valueOf(Pair<T, SortableDependency> pair) {
-                SortableDependency tSortMetadata = pair.getTwo();
-                String changeType = tSortMetadata.getObjectKey().getChangeType().getName();
+        // Each entry packs the order within the object (high bits) and the vertex (low bits), so that sorting the
+        // entries sorts them by the order, with ties kept in the input order
+        MutableMap<IncrementalObjectKey, LongArrayList> incrementalChangesByObject = UnifiedMap.newMap();
+        for (T changeGroup : inputs) {
+            int changeVertex = graph.getVertexIndex(changeGroup);
+            for (SortableDependency change : changeGroup.getComponents()) {
+                String changeType = change.getObjectKey().getChangeType().getName();
                 if (changeType.equals(ChangeType.TRIGGER_INCREMENTAL_OLD_STR) || changeType.equals(ChangeType.FOREIGN_KEY_STR)) {
                     changeType = ChangeType.TABLE_STR;
                 }
-                return changeType + ":" + tSortMetadata.getObjectKey().getSchema() + ":" + convertDbObjectName.valueOf(tSortMetadata.getObjectKey().getObjectName());
-            }
-        });
-
-        for (RichIterable<Pair<T, SortableDependency>> sortMetadataPairs : incrementalChangeByObjectMap.multiValuesView()) {
-            final MutableList<Pair<T, SortableDependency>> sortedChanges = sortMetadataPairs.toSortedListBy(Functions.chain(Functions.<SortableDependency>secondOfPair(), SortableDependency.TO_ORDER_WITHIN_OBJECT));
-            if (sortedChanges.size() > 1) {
-                if (rollback) {
-                    sortedChanges.forEachWithIndex(0, sortedChanges.size() - 2, new ObjectIntProcedure<Pair<T, SortableDependency>>() {
-                        @Override
-                        public void value(Pair<T, SortableDependency> each, int index) {
-                            // for rollback, we go in reverse-order (each change follows the one after it in the file)
-                            Pair<T, SortableDependency> nextChange = sortedChanges.get(index + 1);
-
-                            graph.addEdge(nextChange.getOne(), each.getOne(), new DependencyEdge(nextChange.getOne(), each.getOne(), CodeDependencyType.IMPLICIT));
-                        }
-                    });
-                } else {
-                    sortedChanges.forEachWithIndex(1, sortedChanges.size() - 1, new ObjectIntProcedure<Pair<T, SortableDependency>>() {
-                        @Override
-                        public void value(Pair<T, SortableDependency> each, int index) {
-                            // for regular mode, we go in regular-order (each change follows the one before it in the file)
-                            Pair<T, SortableDependency> previousChange = sortedChanges.get(index - 1);
-
-                            graph.addEdge(previousChange.getOne(), each.getOne(), new DependencyEdge(previousChange.getOne(), each.getOne(), CodeDependencyType.IMPLICIT));
-                        }
-                    });
+                IncrementalObjectKey objectKey = new IncrementalObjectKey(changeType, change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()));
+                LongArrayList incrementalChanges = incrementalChangesByObject.get(objectKey);
+                if (incrementalChanges == null) {
+                    incrementalChanges = new LongArrayList();
+                    incrementalChangesByObject.put(objectKey, incrementalChanges);
                 }
+                incrementalChanges.add(((long) change.getOrderWithinObject() << 32) | changeVertex);
             }
         }
 
-        // validate
-        GraphUtil.validateNoCycles(graph, new Function<T, String>() {
-            @Override
-            public String valueOf(T t) {
-                return t.getComponents().collect(new Function<SortableDependency, String>() {
-                    @Override
-                    public String valueOf(SortableDependency sortableDependency) {
-                        return "[" + sortableDependency.getObjectKey().getObjectName() + "." + sortableDependency.getChangeName() + "]";
+        for (LongArrayList incrementalChanges : incrementalChangesByObject.valuesView()) {
+            if (incrementalChanges.size() > 1) {
+                incrementalChanges.sortThis();
+                for (int i = 1; i < incrementalChanges.size(); i++) {
+                    int previousChange = (int) incrementalChanges.get(i - 1);
+                    int change = (int) incrementalChanges.get(i);
+                    if (rollback) {
+                        // for rollback, we go in reverse-order (each change follows the one after it in the file)
+                        graph.addEdge(change, previousChange, CodeDependencyType.IMPLICIT);
+                    } else {
+                        // for regular mode, we go in regular-order (each change follows the one before it in the file)
+                        graph.addEdge(previousChange, change, CodeDependencyType.IMPLICIT);
                     }
-                }).makeString(", ");
-            }
-        }, new Function<DefaultEdge, String>() {
-            @Override
-            public String valueOf(DefaultEdge dependencyEdge) {
-                return "-" + ((DependencyEdge)dependencyEdge).getEdgeType();
+                }
             }
-        });
+        }
 
-        return graph;
+        return graph.build();
     }
 
-    private interface ChangeIndex<T> {
-        void add(T change);
-        T retrieve(String schema, String dependency);
+    /**
+     * Index of the changes by the names that dependencies may refer to them with, returning the vertex indexes of the
+     * changes.
+     */
+    private interface ChangeIndex {
+        void add(SortableDependencyGroup change, int vertex);
+
+        /**
+         * Returns the vertex index of the dependency, or -1 if not found.
+         */
+        int retrieve(String schema, String dependency);
     }
 
 
     /**
      * Looks for the given dependency/object
      */
-    private class ObjectIndex<T extends SortableDependencyGroup> implements ChangeIndex<T> {
-        private final MultiKeyMap schemaToObjectMap = new MultiKeyMap();
+    private class ObjectIndex<T extends SortableDependencyGroup> implements ChangeIndex {
+        private final CompactDependencyGraph.Builder<T> graph;
+        private final SchemaToObjectMap schemaToObjectMap = new SchemaToObjectMap();
+
+        ObjectIndex(CompactDependencyGraph.Builder<T> graph) {
+            this.graph = graph;
+        }
 
         @Override
-        public void add(T changeGroup) {
+        public void add(SortableDependencyGroup changeGroup, int vertex) {
             for (SortableDependency change : changeGroup.getComponents()) {
-                T existingChange = retrieve(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()));
+                int existingChange = retrieve(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()));
                 // TODO getFirst is not ideal here
-                if (existingChange == null || existingChange.getComponents().getFirst().getOrderWithinObject() < change.getOrderWithinObject()) {
+                if (existingChange < 0 || graph.getVertex(existingChange).getComponents().getFirst().getOrderWithinObject() < change.getOrderWithinObject()) {
                     // only keep the latest (why latest vs earliest?)
-                    schemaToObjectMap.put(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()), changeGroup);
+                    schemaToObjectMap.put(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()), vertex);
                 }
             }
         }
 
         @Override
-        public T retrieve(String schema, String dependency) {
-            return (T) schemaToObjectMap.get(schema, convertDbObjectName.valueOf(dependency));
+        public int retrieve(String schema, String dependency) {
+            return schemaToObjectMap.get(schema, convertDbObjectName.valueOf(dependency));
         }
     }
 
-    private class SchemaObjectIndex<T extends SortableDependencyGroup> implements ChangeIndex<T> {
-        private final MutableMap<String, T> objectMap = UnifiedMap.newMap();
+    private class SchemaObjectIndex<T extends SortableDependencyGroup> implements ChangeIndex {
+        private final CompactDependencyGraph.Builder<T> graph;
+        private final MutableObjectIntMap<String> objectMap = ObjectIntHashMap.newMap();
+
+        SchemaObjectIndex(CompactDependencyGraph.Builder<T> graph) {
+            this.graph = graph;
+        }
 
         @Override
-        public void add(T changeGroup) {
+        public void add(SortableDependencyGroup changeGroup, int vertex) {
             for (SortableDependency change : changeGroup.getComponents()) {
-                T existingChange = retrieve(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()));
+                int existingChange = retrieve(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName()));
                 // TODO getFirst is not ideal here
-                if (existingChange == null || existingChange.getComponents().getFirst().getOrderWithinObject() < change.getOrderWithinObject()) {
+                if (existingChange < 0 || graph.getVertex(existingChange).getComponents().getFirst().getOrderWithinObject() < change.getOrderWithinObject()) {
                     // only keep the latest (why latest vs earliest?)
-                    objectMap.put(convertDbObjectName.valueOf(change.getObjectKey().getSchema() + "." + change.getObjectKey().getObjectName()), changeGroup);
+                    objectMap.put(convertDbObjectName.valueOf(change.getObjectKey().getSchema() + "." + change.getObjectKey().getObjectName()), vertex);
                 }
             }
         }
 
         @Override
-        public T retrieve(String schema, String dependency) {
-            return objectMap.get(convertDbObjectName.valueOf(dependency));
+        public int retrieve(String schema, String dependency) {
+            return objectMap.getIfAbsent(convertDbObjectName.valueOf(dependency), -1);
         }
     }
 
-    private class ObjectChangeIndex<T extends SortableDependencyGroup> implements ChangeIndex<T> {
-        private final MultiKeyMap schemaToObjectMap = new MultiKeyMap();
+    private class ObjectChangeIndex implements ChangeIndex {
+        private final SchemaToObjectMap schemaToObjectMap = new SchemaToObjectMap();
 
         @Override
-        public void add(T changeGroup) {
+        public void add(SortableDependencyGroup changeGroup, int vertex) {
             for (SortableDependency change : changeGroup.getComponents()) {
-                schemaToObjectMap.put(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName() + "." + change.getChangeName()), changeGroup);
+                schemaToObjectMap.put(change.getObjectKey().getSchema(), convertDbObjectName.valueOf(change.getObjectKey().getObjectName() + "." + change.getChangeName()), vertex);
             }
         }
 
         @Override
-        public T retrieve(String schema, String dependency) {
-            return (T) schemaToObjectMap.get(schema, convertDbObjectName.valueOf(dependency));
+        public int retrieve(String schema, String dependency) {
+            return schemaToObjectMap.get(schema, convertDbObjectName.valueOf(dependency));
         }
     }
 
-    private class SchemaChangeObjectIndex<T extends SortableDependencyGroup> implements ChangeIndex<T> {
-        private final MutableMap<String, T> objectMap = UnifiedMap.newMap();
+    private class SchemaChangeObjectIndex implements ChangeIndex {
+        private final MutableObjectIntMap<String> objectMap = ObjectIntHashMap.newMap();
 
         @Override
-        public void add(T changeGroup) {
+        public void add(SortableDependencyGroup changeGroup, int vertex) {
             for (SortableDependency change : changeGroup.getComponents()) {
-                objectMap.put(convertDbObjectName.valueOf(change.getObjectKey().getSchema() + "." + change.getObjectKey().getObjectName() + "." + change.getChangeName()), changeGroup);
+                objectMap.put(convertDbObjectName.valueOf(change.getObjectKey().getSchema() + "." + change.getObjectKey().getObjectName() + "." + change.getChangeName()), vertex);
             }
         }
 
         @Override
-        public T retrieve(String schema, String dependency) {
-            return objectMap.get(convertDbObjectName.valueOf(dependency));
+        public int retrieve(String schema, String dependency) {
+            return objectMap.getIfAbsent(convertDbObjectName.valueOf(dependency), -1);
         }
     }
 
     /**
-     * Custom edge type to allow for better error logging for cycles, namely to show the dependency edge type.
+     * Map of (schema, name) to vertex index, keyed by the schema first so that no composite key object is needed.
      */
-    private static class DependencyEdge<T extends SortableDependencyGroup> extends DefaultEdge {
-        private final T source;
-        private final T target;
-        private final CodeDependencyType edgeType;
-
-        public DependencyEdge(T source, T target, CodeDependencyType edgeType) {
-            this.source = source;
-            this.target = target;
-            this.edgeType = edgeType;
+    private static class SchemaToObjectMap {
+        private final MutableMap<String, MutableObjectIntMap<String>> objectMapsBySchema = UnifiedMap.newMap();
+
+        void put(String schema, String name, int vertex) {
+            MutableObjectIntMap<String> objectMap = objectMapsBySchema.get(schema);
+            if (objectMap == null) {
+                objectMap = ObjectIntHashMap.newMap();
+                objectMapsBySchema.put(schema, objectMap);
+            }
+            objectMap.put(name, vertex);
         }
 
-        @Override
-        public T getSource() {
-            return source;
+        int get(String schema, String name) {
+            MutableObjectIntMap<String> objectMap = objectMapsBySchema.get(schema);
+            return objectMap == null ? -1 : objectMap.getIfAbsent(name, -1);
         }
+    }
 
-        @Override
-        public T getTarget() {
-            return target;
+    /**
+     * Key for the changes of an object whose incremental changes need to be kept in order.
+     */
+    private static class IncrementalObjectKey {
+        private final String changeType;
+        private final String schema;
+        private final String objectName;
+
+        IncrementalObjectKey(String changeType, String schema, String objectName) {
+            this.changeType = changeType;
+            this.schema = schema;
+            this.objectName = objectName;
         }
 
-        public CodeDependencyType getEdgeType() {
-            return edgeType;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IncrementalObjectKey)) {
+                return false;
+            }
+            IncrementalObjectKey that = (IncrementalObjectKey) o;
+            return changeType.equals(that.changeType)
+                    && (schema == null ? that.schema == null : schema.equals(that.schema))
+                    && (objectName == null ? that.objectName == null : objectName.equals(that.objectName));
         }
 
         @Override
-        public String toString() {
-            return edgeType.name();
+        public int hashCode() {
+            int result = changeType.hashCode();
+            result = 31 * result + (schema != null ? schema.hashCode() : 0);
+            result = 31 * result + (objectName != null ? objectName.hashCode() : 0);
+            return result;
         }
     }
 }
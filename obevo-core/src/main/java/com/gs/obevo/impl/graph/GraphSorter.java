@@ -16,17 +16,14 @@
 package com.gs.obevo.impl.graph;
 
 import java.util.Comparator;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
-import org.apache.commons.collections.IteratorUtils;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.impl.block.factory.Comparators;
 import org.eclipse.collections.impl.factory.Lists;
 import org.jgrapht.DirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DirectedSubgraph;
-import org.jgrapht.traverse.TopologicalOrderIterator;
 
 /**
  * Iterates through the inputs and graph to come up w/ a proper topological sorting.
@@ -94,22 +91,31 @@ public class GraphSorter {
             return Lists.immutable.empty();
         }
 
-        GraphUtil.validateNoCycles(graph);
-
-        TopologicalOrderIterator<T, DefaultEdge> iterator = getTopologicalOrderIterator(graph, comparator);
-
-        return Lists.immutable.withAll(IteratorUtils.toList(iterator));
+        return sortChanges(CompactDependencyGraph.fromDirectedGraph(graph), comparator);
     }
 
-    private <T> TopologicalOrderIterator<T, DefaultEdge> getTopologicalOrderIterator(DirectedGraph<T, DefaultEdge> graph, Comparator<? super T> comparator) {
-        if (comparator != null) {
-            Queue<T> queue = new PriorityQueue<T>(10, comparator);
-            return new TopologicalOrderIterator<T, DefaultEdge>(graph, queue);
-        } else if (graph.vertexSet().iterator().next() instanceof Comparable) {
-            Queue<T> queue = new PriorityQueue<T>();
-            return new TopologicalOrderIterator<T, DefaultEdge>(graph, queue);
-        } else {
-            throw new IllegalArgumentException("Unsortable graph elements - either need to provide a Comparator or have Comparable vertices to guarantee a consistent topological order");
+    /**
+     * Sorts the graph to provide a consistent topological ordering, validating it for cycles in the same pass. See
+     * {@link CompactDependencyGraph#topologicalSort(Comparator)}.
+     *
+     * @param graph      The input graph - all vertices in the graph will be returned in the output list
+     * @param comparator The comparator on which to order the vertices to guarantee a consistent topological ordering;
+     *                   if null, the vertices must implement {@link Comparable}
+     */
+    public <T> ImmutableList<T> sortChanges(CompactDependencyGraph<T> graph, Comparator<? super T> comparator) {
+        if (graph.size() == 0) {
+            return Lists.immutable.empty();
+        }
+
+        if (comparator == null) {
+            if (!(graph.getVertex(0) instanceof Comparable)) {
+                // report any cycles first, as those are the more useful error to the user
+                graph.validateNoCycles();
+                throw new IllegalArgumentException("Unsortable graph elements - either need to provide a Comparator or have Comparable vertices to guarantee a consistent topological order");
+            }
+            comparator = (Comparator<? super T>) Comparators.naturalOrder();
         }
+
+        return graph.topologicalSort(comparator);
     }
 }
@@ -72,6 +72,23 @@ public class GraphUtil {
         });
     }
 
+    /**
+     * Removes the given vertices from the graph while keeping the ordering constraints that went through them, i.e. the
+     * dependencies of a removed vertex get connected directly to its dependents.
+     */
+    public static <T> void removeVerticesKeepingPaths(DirectedGraph<T, DefaultEdge> graph, Iterable<? extends T> vertices) {
+        for (T vertex : vertices) {
+            for (T dependency : getDependencyNodes(graph, vertex)) {
+                for (T dependent : getDependentNodes(graph, vertex)) {
+                    if (!graph.containsEdge(dependency, dependent)) {
+                        graph.addEdge(dependency, dependent);
+                    }
+                }
+            }
+            graph.removeVertex(vertex);
+        }
+    }
+
     public static <T> void validateNoCycles(final DirectedGraph<T, DefaultEdge> graph) {
         validateNoCycles(graph, Functions.getToString(), null);
     }
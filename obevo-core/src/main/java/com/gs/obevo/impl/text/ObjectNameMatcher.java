@@ -0,0 +1,219 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl.text;
+
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.impl.factory.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the occurrences of a fixed set of object names in text content in a single pass.
+ *
+ * The names are compiled into a case-insensitive trie over the word characters [A-Za-z0-9_]. Each run of word
+ * characters in the content walks the trie as it is read; a run that ends on a terminal node is then confirmed by
+ * checking its converted value against the object names. This gives the same result as splitting the content on
+ * non-word characters and looking up every converted token, but without allocating for the tokens that do not match.
+ *
+ * Comments are skipped during the scan using the same rules as {@link CommentRemover} (i.e. //, -- and block
+ * comments, with quoted text still searched, and a line comment may end at the end of the content without a newline);
+ * if a quote or block comment is not terminated, the content is searched as is, as CommentRemover would return it
+ * unchanged.
+ *
+ * Instances are immutable after construction and can be shared across threads.
+ */
+class ObjectNameMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectNameMatcher.class);
+
+    private static final int ALPHABET_SIZE = 26 + 10 + 1;
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+
+    private final Function<String, String> convertDbObjectName;
+    private final MutableSet<String> objectNames;
+
+    /**
+     * The child of node n for symbol s is at transitions[n * ALPHABET_SIZE + s]; 0 means no child, as the root cannot
+     * be a child.
+     */
+    private int[] transitions = new int[ALPHABET_SIZE * 64];
+    private boolean[] terminal = new boolean[64];
+    private int numNodes = 1;
+
+    /**
+     * @param convertDbObjectName the conversion applied to the tokens before checking them against the object names
+     * @param objectNames the object names to look for, already converted
+     */
+    ObjectNameMatcher(Function<String, String> convertDbObjectName, MutableSet<String> objectNames) {
+        this.convertDbObjectName = convertDbObjectName;
+        this.objectNames = objectNames;
+        for (String objectName : objectNames) {
+            this.addName(objectName);
+        }
+    }
+
+    private void addName(String objectName) {
+        if (objectName == null || objectName.isEmpty()) {
+            return;
+        }
+
+        // validate first so that names that can never be matched by a token don't leave partial paths in the trie
+        for (int i = 0; i < objectName.length(); i++) {
+            if (symbolOf(objectName.charAt(i)) < 0) {
+                return;
+            }
+        }
+
+        int node = ROOT;
+        for (int i = 0; i < objectName.length(); i++) {
+            int index = node * ALPHABET_SIZE + symbolOf(objectName.charAt(i));
+            if (transitions[index] == 0) {
+                int child = this.newNode();  // note - assign separately, as newNode() may replace the array
+                transitions[index] = child;
+            }
+            node = transitions[index];
+        }
+        terminal[node] = true;
+    }
+
+    private int newNode() {
+        if (numNodes == terminal.length) {
+            int[] newTransitions = new int[transitions.length * 2];
+            System.arraycopy(transitions, 0, newTransitions, 0, transitions.length);
+            transitions = newTransitions;
+
+            boolean[] newTerminal = new boolean[terminal.length * 2];
+            System.arraycopy(terminal, 0, newTerminal, 0, terminal.length);
+            terminal = newTerminal;
+        }
+        return numNodes++;
+    }
+
+    /**
+     * Returns the symbol index for the given char if it is a word character, or -1 otherwise. Upper and lower case
+     * letters map to the same symbol.
+     */
+    private static int symbolOf(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        } else if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= '0' && c <= '9') {
+            return 26 + c - '0';
+        } else if (c == '_') {
+            return 36;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the object names (in their converted form) that appear as tokens in the given content, ignoring comments.
+     */
+    MutableSet<String> findObjectNames(String content, String logMessage) {
+        MutableSet<String> matches = Sets.mutable.empty();
+        if (content == null) {
+            return matches;
+        }
+
+        if (!this.scan(content, true, matches)) {
+            LOG.warn("Error in removing comments from [{}] due to an unclosed quote or block comment; will search the original string", logMessage);
+            matches.clear();
+            this.scan(content, false, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * Scans the content for the object names, adding them to the matches.
+     *
+     * @return false if skipComments is set and the content ends within a quote or block comment; true otherwise
+     */
+    private boolean scan(String content, boolean skipComments, MutableSet<String> matches) {
+        int length = content.length();
+        int wordStart = -1;  // start of the word run in progress, or -1 if not within a word run
+        int node = ROOT;  // trie node for the word run in progress, or NO_NODE if the run cannot match any name
+        char quote = 0;  // the quote char if within a quoted string, 0 otherwise
+
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            int symbol = symbolOf(c);
+            if (symbol >= 0) {
+                if (wordStart < 0) {
+                    wordStart = i;
+                    node = ROOT;
+                }
+                if (node != NO_NODE) {
+                    int next = transitions[node * ALPHABET_SIZE + symbol];
+                    node = next == 0 ? NO_NODE : next;
+                }
+                i++;
+                continue;
+            }
+
+            if (wordStart >= 0) {
+                this.checkMatch(content, wordStart, i, node, matches);
+                wordStart = -1;
+            }
+
+            if (!skipComments) {
+                i++;
+            } else if (quote != 0) {
+                if (c == '\'' && i + 1 < length && content.charAt(i + 1) == '\'') {
+                    i += 2;  // escaped quote
+                } else {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                    i++;
+                }
+            } else if ((c == '/' || c == '-') && i + 1 < length && content.charAt(i + 1) == c) {
+                i += 2;
+                while (i < length && content.charAt(i) != '\n' && content.charAt(i) != '\r') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && content.charAt(i + 1) == '*') {
+                int blockEnd = content.indexOf("*/", i + 2);
+                if (blockEnd < 0) {
+                    return false;
+                }
+                i = blockEnd + 2;
+            } else {
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                i++;
+            }
+        }
+
+        if (wordStart >= 0) {
+            this.checkMatch(content, wordStart, length, node, matches);
+        }
+
+        return quote == 0;
+    }
+
+    private void checkMatch(String content, int start, int end, int node, MutableSet<String> matches) {
+        if (node != NO_NODE && terminal[node]) {
+            String objectName = convertDbObjectName.valueOf(content.substring(start, end));
+            if (objectNames.contains(objectName)) {
+                matches.add(objectName);
+            }
+        }
+    }
+}
@@ -15,23 +15,31 @@
  */
 package com.gs.obevo.impl.text;
 
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.gs.obevo.api.appdata.CodeDependency;
 import com.gs.obevo.api.appdata.CodeDependencyType;
 import com.gs.obevo.api.appdata.ObjectKey;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.predicate.Predicate;
+import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.impl.block.factory.Functions;
 import org.eclipse.collections.impl.block.factory.Predicates;
-import org.eclipse.collections.impl.factory.Sets;
 
 /**
  * Standard implementationt of {@link TextDependencyExtractor} going forward. Looks across all object types.
+ *
+ * The object names are compiled once into an {@link ObjectNameMatcher} that scans each change's content in a single
+ * pass; for larger inputs, the changes are then processed in parallel using fork/join.
  */
 public class TextDependencyExtractorImpl implements TextDependencyExtractor {
-    private static final Pattern SPACE_PATTERN = Pattern.compile("\\W+", Pattern.DOTALL);
+    /**
+     * Max number of changes to process in a single fork/join task; below this, there's no point going parallel.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 100;
 
     private final Function<String, String> convertDbObjectName;
 
@@ -42,36 +50,79 @@ public class TextDependencyExtractorImpl implements TextDependencyExtractor {
     @Override
     public <T extends TextDependencyExtractable> void calculateDependencies(RichIterable<T> changes) {
         MutableSet<String> objectNames = changes.collect(Functions.chain(TextDependencyExtractable.TO_OBJECT_KEY, ObjectKey.TO_OBJECT_NAME)).collect(convertDbObjectName).toSet();
+        ObjectNameMatcher objectNameMatcher = new ObjectNameMatcher(convertDbObjectName, objectNames);
 
-        for (T change : changes) {
-            // note - only check for nulls here; we may set dependencies to blank explicitly in the overrides
-            if (change.getCodeDependencies() == null && change.getObjectKey().getChangeType().isEnrichableForDependenciesInText()) {
-                // we use getContentForDependencyCalculation() instead of just getContent() due to the staticData
-                // objects needing to have its dependency calculated differently.
+        // note - only check for nulls here; we may set dependencies to blank explicitly in the overrides
+        MutableList<T> changesToCalculate = changes.select(new Predicate<T>() {
+            @Override
+            public boolean accept(T change) {
+                return change.getCodeDependencies() == null && change.getObjectKey().getChangeType().isEnrichableForDependenciesInText();
+            }
+        }).toList();
 
-                // TODO go via objectNames and physicalSchema+objectName combo
-                MutableSet<CodeDependency> codeDependencies = calculateDependencies(change.getObjectKey().toString(), change.getContentForDependencyCalculation(), objectNames)
-                        .reject(Predicates.equal(convertDbObjectName.valueOf(change.getObjectKey().getObjectName())))
-                        .reject(Predicates.in(change.getExcludeDependencies()))
-                        .collectWith(CodeDependency.CREATE_WITH_TYPE, CodeDependencyType.DISCOVERED);
+        CalculateDependenciesTask<T> task = new CalculateDependenciesTask<T>(changesToCalculate, 0, changesToCalculate.size(), objectNameMatcher);
+        if (changesToCalculate.size() <= SEQUENTIAL_THRESHOLD) {
+            task.compute();
+        } else {
+            ForkJoinPoolHolder.POOL.invoke(task);
+        }
+    }
 
-                codeDependencies.withAll(change.getIncludeDependencies().collectWith(CodeDependency.CREATE_WITH_TYPE, CodeDependencyType.EXPLICIT));
+    private void calculateDependencies(TextDependencyExtractable change, ObjectNameMatcher objectNameMatcher) {
+        // we use getContentForDependencyCalculation() instead of just getContent() due to the staticData
+        // objects needing to have its dependency calculated differently.
 
-                change.setCodeDependencies(codeDependencies.toImmutable());
-            }
-        }
+        // TODO go via objectNames and physicalSchema+objectName combo
+        MutableSet<CodeDependency> codeDependencies = objectNameMatcher.findObjectNames(change.getContentForDependencyCalculation(), change.getObjectKey().toString())
+                .reject(Predicates.equal(convertDbObjectName.valueOf(change.getObjectKey().getObjectName())))
+                .reject(Predicates.in(change.getExcludeDependencies()))
+                .collectWith(CodeDependency.CREATE_WITH_TYPE, CodeDependencyType.DISCOVERED);
+
+        codeDependencies.withAll(change.getIncludeDependencies().collectWith(CodeDependency.CREATE_WITH_TYPE, CodeDependencyType.EXPLICIT));
+
+        change.setCodeDependencies(codeDependencies.toImmutable());
     }
 
     MutableSet<String> calculateDependencies(String logMessage, String content, MutableSet<String> objectNames) {
-        String[] tokens = SPACE_PATTERN.split(CommentRemover.removeComments(content, logMessage));
-        MutableSet<String> dependencies = Sets.mutable.with();
-        for (String token : tokens) {
-            if (objectNames.contains(convertDbObjectName.valueOf(token))) {
-                dependencies.add(convertDbObjectName.valueOf(token));
-            }
-        }
-        return dependencies;
+        return new ObjectNameMatcher(convertDbObjectName, objectNames).findObjectNames(content, logMessage);
+    }
+
+    /**
+     * Holds the pool shared by all the extractor instances, created on first use. Its worker threads are daemons and
+     * are released when idle, so the pool is never shut down.
+     */
+    private static class ForkJoinPoolHolder {
+        private static final ForkJoinPool POOL = new ForkJoinPool();
     }
 
+    /**
+     * Calculates the dependencies for the changes in the [start, end) range of the list, splitting the range in half
+     * until it is within {@link #SEQUENTIAL_THRESHOLD}. Each change is only touched by a single task.
+     */
+    private class CalculateDependenciesTask<T extends TextDependencyExtractable> extends RecursiveAction {
+        private final MutableList<T> changes;
+        private final int start;
+        private final int end;
+        private final ObjectNameMatcher objectNameMatcher;
+
+        CalculateDependenciesTask(MutableList<T> changes, int start, int end, ObjectNameMatcher objectNameMatcher) {
+            this.changes = changes;
+            this.start = start;
+            this.end = end;
+            this.objectNameMatcher = objectNameMatcher;
+        }
 
+        @Override
+        protected void compute() {
+            if (end - start <= SEQUENTIAL_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    calculateDependencies(changes.get(i), objectNameMatcher);
+                }
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new CalculateDependenciesTask<T>(changes, start, mid, objectNameMatcher),
+                        new CalculateDependenciesTask<T>(changes, mid, end, objectNameMatcher));
+            }
+        }
+    }
 }
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+/**
+ * Hash functions available to the {@link StreamingDbChangeHashStrategy} implementations. The output of each is a
+ * 32-character lowercase hex string, so either fits the existing audit table columns.
+ */
+public enum ContentHashAlgorithm {
+    /**
+     * The hash used by Obevo historically; compatible with the hashes already persisted in the audit tables.
+     */
+    MD5 {
+        @Override
+        ContentHasher createHasher() {
+            return new ContentHasher.Md5ContentHasher();
+        }
+    },
+    /**
+     * MurmurHash3 (x64, 128-bit, seed 0); not cryptographic, but a few times faster than MD5 and sufficient for
+     * detecting changes to the source content.
+     */
+    MURMUR3_128 {
+        @Override
+        ContentHasher createHasher() {
+            return new ContentHasher.Murmur3ContentHasher();
+        }
+    },
+    ;
+
+    /**
+     * Creates a new hasher; hashers are not thread-safe, but can be reused after each {@link ContentHasher#finishHex()}.
+     */
+    abstract ContentHasher createHasher();
+}
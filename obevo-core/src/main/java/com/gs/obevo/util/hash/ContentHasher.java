@@ -0,0 +1,197 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Incremental hash function as used by {@link StreamingDbChangeHashStrategy}. Instances are not thread-safe, and are
+ * reset by {@link #finishHex()} so that they can be reused.
+ */
+abstract class ContentHasher {
+    abstract void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Returns the hex string of the hash of the bytes passed in since the last reset, and resets this hasher.
+     */
+    abstract String finishHex();
+
+    abstract void reset();
+
+    static class Md5ContentHasher extends ContentHasher {
+        private final MessageDigest digest;
+
+        Md5ContentHasher() {
+            try {
+                this.digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is required to be supported by all JVMs", e);
+            }
+        }
+
+        @Override
+        void update(byte[] bytes, int offset, int length) {
+            digest.update(bytes, offset, length);
+        }
+
+        @Override
+        String finishHex() {
+            return Hex.encodeHexString(digest.digest());
+        }
+
+        @Override
+        void reset() {
+            digest.reset();
+        }
+    }
+
+    /**
+     * MurmurHash3 x64 128-bit variant (seed 0), following the reference implementation by Austin Appleby. The hex
+     * output is of the 16 hash bytes in little-endian order (h1 then h2), as most other implementations print it.
+     */
+    static class Murmur3ContentHasher extends ContentHasher {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        private final byte[] block = new byte[16];
+        private int blockLength;
+        private long totalLength;
+        private long h1;
+        private long h2;
+
+        @Override
+        void update(byte[] bytes, int offset, int length) {
+            totalLength += length;
+            if (blockLength > 0) {
+                int numToCopy = Math.min(16 - blockLength, length);
+                System.arraycopy(bytes, offset, block, blockLength, numToCopy);
+                blockLength += numToCopy;
+                offset += numToCopy;
+                length -= numToCopy;
+                if (blockLength < 16) {
+                    return;
+                }
+                mixBlock(getLong(block, 0), getLong(block, 8));
+                blockLength = 0;
+            }
+
+            while (length >= 16) {
+                mixBlock(getLong(bytes, offset), getLong(bytes, offset + 8));
+                offset += 16;
+                length -= 16;
+            }
+
+            System.arraycopy(bytes, offset, block, 0, length);
+            blockLength = length;
+        }
+
+        private void mixBlock(long k1, long k2) {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        @Override
+        String finishHex() {
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = blockLength - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (block[i] & 0xffL);
+            }
+            for (int i = Math.min(blockLength, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (block[i] & 0xffL);
+            }
+            if (blockLength > 8) {
+                h2 ^= mixK2(k2);
+            }
+            if (blockLength > 0) {
+                h1 ^= mixK1(k1);
+            }
+
+            h1 ^= totalLength;
+            h2 ^= totalLength;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            char[] hex = new char[32];
+            appendLittleEndianHex(hex, 0, h1);
+            appendLittleEndianHex(hex, 16, h2);
+            reset();
+            return new String(hex);
+        }
+
+        @Override
+        void reset() {
+            blockLength = 0;
+            totalLength = 0;
+            h1 = 0;
+            h2 = 0;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        private static long getLong(byte[] bytes, int offset) {
+            long value = 0;
+            for (int i = offset + 7; i >= offset; i--) {
+                value = (value << 8) | (bytes[i] & 0xffL);
+            }
+            return value;
+        }
+
+        private static void appendLittleEndianHex(char[] hex, int offset, long value) {
+            for (int i = 0; i < 8; i++) {
+                int b = (int) (value >>> (8 * i)) & 0xff;
+                hex[offset + 2 * i] = HEX_DIGITS[b >>> 4];
+                hex[offset + 2 * i + 1] = HEX_DIGITS[b & 0xf];
+            }
+        }
+    }
+}
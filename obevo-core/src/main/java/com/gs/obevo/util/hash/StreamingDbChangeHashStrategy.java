@@ -0,0 +1,157 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+/**
+ * Base class for the {@link DbChangeHashStrategy} implementations that normalize the content while feeding it to the
+ * hash function, i.e. without building the normalized string or its byte array. The content is encoded to UTF-8 into
+ * a buffer and the hash function instance is reused; both are kept per thread.
+ *
+ * For the same {@link ContentHashAlgorithm#MD5} algorithm, subclasses produce the same hashes as their string-based
+ * counterparts, so they can be used to validate the hashes already persisted in the audit tables.
+ */
+public abstract class StreamingDbChangeHashStrategy implements DbChangeHashStrategy {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ContentHashAlgorithm algorithm;
+    private final ThreadLocal<Utf8HashSink> sinks = new ThreadLocal<Utf8HashSink>() {
+        @Override
+        protected Utf8HashSink initialValue() {
+            return new Utf8HashSink(algorithm.createHasher());
+        }
+    };
+
+    protected StreamingDbChangeHashStrategy(ContentHashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public ContentHashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the hash of the content; null content is hashed as the empty string.
+     */
+    @Override
+    public final String hashContent(String content) {
+        Utf8HashSink sink = sinks.get();
+        sink.reset();
+        if (content != null) {
+            this.writeContent(content, sink);
+        }
+        return sink.finishHex();
+    }
+
+    /**
+     * Writes the content to hash (i.e. after any normalization) to the sink.
+     */
+    protected abstract void writeContent(String content, Utf8HashSink sink);
+
+    /**
+     * Whether the character is whitespace per the \s regular expression class, i.e. what
+     * {@link com.gs.obevo.util.DAStringUtil} replaces.
+     */
+    protected static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Whether the character is removed by {@link String#trim()}.
+     */
+    protected static boolean isTrimmable(char c) {
+        return c <= ' ';
+    }
+
+    /**
+     * Encodes the chars written to it to UTF-8 and feeds them to the hash function, as {@link String#getBytes(String)}
+     * would encode them (i.e. unpaired surrogates are written as '?').
+     */
+    protected static final class Utf8HashSink {
+        private final ContentHasher hasher;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private char pendingHighSurrogate;
+
+        private Utf8HashSink(ContentHasher hasher) {
+            this.hasher = hasher;
+        }
+
+        public void write(char c) {
+            if (pendingHighSurrogate != 0) {
+                char highSurrogate = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    writeCodePoint(Character.toCodePoint(highSurrogate, c));
+                    return;
+                }
+                writeByte('?');
+            }
+
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                writeByte('?');
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        private void writeCodePoint(int codePoint) {
+            ensureCapacity(4);
+            buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+        }
+
+        private void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        private void ensureCapacity(int numBytes) {
+            if (position + numBytes > buffer.length) {
+                hasher.update(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private void reset() {
+            position = 0;
+            pendingHighSurrogate = 0;
+            hasher.reset();
+        }
+
+        private String finishHex() {
+            if (pendingHighSurrogate != 0) {
+                pendingHighSurrogate = 0;
+                writeByte('?');
+            }
+            hasher.update(buffer, 0, position);
+            position = 0;
+            return hasher.finishHex();
+        }
+    }
+}
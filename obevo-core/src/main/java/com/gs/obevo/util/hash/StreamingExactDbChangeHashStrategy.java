@@ -0,0 +1,36 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+/**
+ * Streaming counterpart of {@link ExactDbChangeHashStrategy}, i.e. hashes the content as is.
+ */
+public class StreamingExactDbChangeHashStrategy extends StreamingDbChangeHashStrategy {
+    public StreamingExactDbChangeHashStrategy() {
+        this(ContentHashAlgorithm.MD5);
+    }
+
+    public StreamingExactDbChangeHashStrategy(ContentHashAlgorithm algorithm) {
+        super(algorithm);
+    }
+
+    @Override
+    protected void writeContent(String content, Utf8HashSink sink) {
+        for (int i = 0; i < content.length(); i++) {
+            sink.write(content.charAt(i));
+        }
+    }
+}
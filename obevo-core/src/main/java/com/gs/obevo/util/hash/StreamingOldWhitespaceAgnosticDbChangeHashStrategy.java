@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+/**
+ * Streaming counterpart of {@link OldWhitespaceAgnosticDbChangeHashStrategy}, which is the strategy used for the
+ * hashes persisted in the audit tables: each line is trimmed, blank lines are skipped, each run of whitespace within a
+ * line is hashed as a single space, and the lines are joined with a single space.
+ */
+public class StreamingOldWhitespaceAgnosticDbChangeHashStrategy extends StreamingDbChangeHashStrategy {
+    public StreamingOldWhitespaceAgnosticDbChangeHashStrategy() {
+        this(ContentHashAlgorithm.MD5);
+    }
+
+    public StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm algorithm) {
+        super(algorithm);
+    }
+
+    @Override
+    protected void writeContent(String content, Utf8HashSink sink) {
+        boolean lineWritten = false;
+        int lineStart = 0;
+        while (lineStart <= content.length()) {
+            int newlineIndex = content.indexOf('\n', lineStart);
+            int nextLineStart = newlineIndex >= 0 ? newlineIndex + 1 : content.length() + 1;
+            int lineEnd = newlineIndex >= 0 ? newlineIndex : content.length();
+            if (newlineIndex >= 0 && lineEnd > lineStart && content.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;  // the original splits on \r?\n
+            }
+
+            while (lineStart < lineEnd && isTrimmable(content.charAt(lineStart))) {
+                lineStart++;
+            }
+            while (lineEnd > lineStart && isTrimmable(content.charAt(lineEnd - 1))) {
+                lineEnd--;
+            }
+
+            if (lineStart < lineEnd) {
+                if (lineWritten) {
+                    sink.write(' ');
+                }
+                StreamingWhitespaceAgnosticDbChangeHashStrategy.writeCollapsingWhitespace(content, lineStart, lineEnd, sink);
+                lineWritten = true;
+            }
+
+            lineStart = nextLineStart;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+/**
+ * Streaming counterpart of {@link WhitespaceAgnosticDbChangeHashStrategy}: the content is trimmed and each run of
+ * whitespace is hashed as a single space.
+ *
+ * Unlike the original, blank content is hashed as the empty string rather than failing.
+ */
+public class StreamingWhitespaceAgnosticDbChangeHashStrategy extends StreamingDbChangeHashStrategy {
+    public StreamingWhitespaceAgnosticDbChangeHashStrategy() {
+        this(ContentHashAlgorithm.MD5);
+    }
+
+    public StreamingWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm algorithm) {
+        super(algorithm);
+    }
+
+    @Override
+    protected void writeContent(String content, Utf8HashSink sink) {
+        int start = 0;
+        int end = content.length();
+        while (start < end && isTrimmable(content.charAt(start))) {
+            start++;
+        }
+        while (end > start && isTrimmable(content.charAt(end - 1))) {
+            end--;
+        }
+
+        writeCollapsingWhitespace(content, start, end, sink);
+    }
+
+    /**
+     * Writes the given range of the content, replacing each run of whitespace with a single space.
+     */
+    static void writeCollapsingWhitespace(String content, int start, int end, Utf8HashSink sink) {
+        boolean inWhitespace = false;
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (isWhitespace(c)) {
+                if (!inWhitespace) {
+                    sink.write(' ');
+                    inWhitespace = true;
+                }
+            } else {
+                sink.write(c);
+                inWhitespace = false;
+            }
+        }
+    }
+}
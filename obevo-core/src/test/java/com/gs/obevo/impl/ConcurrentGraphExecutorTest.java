@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl;
+
+import com.gs.obevo.impl.graph.GraphSorter;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.impl.block.factory.Comparators;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Sets;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ConcurrentGraphExecutorTest {
+    @Test
+    public void testDependenciesAreRespected() {
+        DirectedGraph<String, DefaultEdge> graph = createGraph();
+
+        MutableList<String> executed = Lists.mutable.<String>empty().asSynchronized();
+        new ConcurrentGraphExecutor(4).execute(graph, Comparators.naturalOrder(), new RecordingTask(executed, Sets.mutable.<String>empty(), Lists.mutable.<String>empty()));
+
+        assertEquals(6, executed.size());
+        assertThat(executed.indexOf("sp1"), greaterThan(executed.indexOf("sp2")));
+        assertThat(executed.indexOf("sp5"), greaterThan(executed.indexOf("sp1")));
+        assertThat(executed.indexOf("sp5"), greaterThan(executed.indexOf("sp3")));
+        assertThat(executed.indexOf("sp4"), greaterThan(executed.indexOf("sp5")));
+    }
+
+    @Test
+    public void testSingleThreadMatchesGraphSorter() {
+        DirectedGraph<String, DefaultEdge> graph = createGraph();
+
+        MutableList<String> executed = Lists.mutable.empty();
+        new ConcurrentGraphExecutor(1).execute(graph, Comparators.naturalOrder(), new RecordingTask(executed, Sets.mutable.<String>empty(), Lists.mutable.<String>empty()));
+
+        assertEquals(new GraphSorter().sortChanges(graph, Comparators.naturalOrder()), executed);
+    }
+
+    @Test
+    public void testFailureSkipsDependents() {
+        DirectedGraph<String, DefaultEdge> graph = createGraph();
+
+        MutableList<String> executed = Lists.mutable.<String>empty().asSynchronized();
+        MutableList<String> skipped = Lists.mutable.<String>empty().asSynchronized();
+        new ConcurrentGraphExecutor(4).execute(graph, Comparators.naturalOrder(), new RecordingTask(executed, Sets.mutable.with("sp1"), skipped));
+
+        // sp5 and sp4 depend on the failed sp1; the others are not impacted
+        assertEquals(Sets.mutable.with("sp1", "sp2", "sp3", "sp6"), executed.toSet());
+        assertEquals(Lists.mutable.with("sp5", "sp4"), skipped);
+    }
+
+    /**
+     * sp2 -> sp1 -> sp5 -> sp4, sp3 -> sp5, and sp6 standalone.
+     */
+    private DirectedGraph<String, DefaultEdge> createGraph() {
+        DirectedGraph<String, DefaultEdge> graph = new DefaultDirectedGraph<String, DefaultEdge>(DefaultEdge.class);
+        for (String vertex : Lists.mutable.with("sp1", "sp2", "sp3", "sp4", "sp5", "sp6")) {
+            graph.addVertex(vertex);
+        }
+
+        graph.addEdge("sp1", "sp5");
+        graph.addEdge("sp3", "sp5");
+        graph.addEdge("sp2", "sp1");
+        graph.addEdge("sp5", "sp4");
+        return graph;
+    }
+
+    private static class RecordingTask implements ConcurrentGraphExecutor.VertexTask<String> {
+        private final MutableList<String> executed;
+        private final MutableSet<String> verticesToFail;
+        private final MutableList<String> skipped;
+
+        RecordingTask(MutableList<String> executed, MutableSet<String> verticesToFail, MutableList<String> skipped) {
+            this.executed = executed;
+            this.verticesToFail = verticesToFail;
+            this.skipped = skipped;
+        }
+
+        @Override
+        public boolean execute(String vertex) {
+            executed.add(vertex);
+            return !verticesToFail.contains(vertex);
+        }
+
+        @Override
+        public void skip(String vertex) {
+            skipped.add(vertex);
+        }
+    }
+}
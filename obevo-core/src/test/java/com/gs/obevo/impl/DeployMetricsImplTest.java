@@ -0,0 +1,90 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gs.obevo.api.platform.DeployMetrics;
+import org.eclipse.collections.api.map.ImmutableMap;
+import org.eclipse.collections.api.map.MapIterable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeployMetricsImplTest {
+    @Test
+    public void testTimings() {
+        DeployMetricsCollector collector = new DeployMetricsCollectorImpl();
+        collector.addMetric("success", true);
+        for (int i = 1; i <= 100; i++) {
+            collector.addTiming("jdbc.update", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        collector.addTiming("phase.execute", TimeUnit.SECONDS.toNanos(3));
+
+        ImmutableMap<String, Object> metrics = collector.getMetrics().toSerializedForm();
+        assertEquals(true, metrics.get("success"));
+
+        MapIterable<String, Object> updateTiming = (MapIterable<String, Object>) metrics.get(DeployMetrics.TIMINGS_PREFIX + ".jdbc.update");
+        assertEquals(100L, updateTiming.get("count"));
+        assertEquals(5050.0, updateTiming.get("totalMillis"));
+        assertEquals(50.5, updateTiming.get("meanMillis"));
+        assertEquals(100.0, updateTiming.get("maxMillis"));
+
+        // the percentiles are reported as the upper bound of their power-of-two microsecond bucket
+        double p50 = (Double) updateTiming.get("p50Millis");
+        assertTrue("p50 was " + p50, p50 >= 50.0 && p50 <= 100.0);
+        assertEquals(100.0, updateTiming.get("p99Millis"));
+
+        MapIterable<String, Object> executeTiming = (MapIterable<String, Object>) metrics.get(DeployMetrics.TIMINGS_PREFIX + ".phase.execute");
+        assertEquals(1L, executeTiming.get("count"));
+        assertEquals(3000.0, executeTiming.get("p50Millis"));
+    }
+
+    @Test
+    public void testBucketIndex() {
+        assertEquals(0, TimingHistogram.bucketIndex(999));
+        assertEquals(1, TimingHistogram.bucketIndex(1000));
+        assertEquals(2, TimingHistogram.bucketIndex(2000));
+        assertEquals(2, TimingHistogram.bucketIndex(3999));
+        assertEquals(3, TimingHistogram.bucketIndex(4000));
+        assertEquals(39, TimingHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testJsonReport() {
+        DeployMetricsCollector collector = new DeployMetricsCollectorImpl();
+        collector.addMetric("success", true);
+        collector.addMetric("name", "a \"quoted\"\nvalue");
+        collector.addListMetric(DeployMetrics.UNEXPECTED_FILE_EXTENSIONS, "file.txt");
+        collector.addTiming("phase.sort", TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals("{\n"
+                + "  \"name\": \"a \\\"quoted\\\"\\nvalue\",\n"
+                + "  \"success\": true,\n"
+                + "  \"timings.phase.sort\": {\n"
+                + "    \"count\": 1,\n"
+                + "    \"maxMillis\": 2.0,\n"
+                + "    \"meanMillis\": 2.0,\n"
+                + "    \"p50Millis\": 2.0,\n"
+                + "    \"p90Millis\": 2.0,\n"
+                + "    \"p99Millis\": 2.0,\n"
+                + "    \"totalMillis\": 2.0\n"
+                + "  },\n"
+                + "  \"warnings.unexpectedFileExtensions\": [\"file.txt\"]\n"
+                + "}\n", new DeployMetricsJsonWriter().toJson(collector.getMetrics()));
+    }
+}
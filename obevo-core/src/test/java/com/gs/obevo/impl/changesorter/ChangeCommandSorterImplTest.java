@@ -23,16 +23,21 @@ import com.gs.obevo.api.appdata.ObjectKey;
 import com.gs.obevo.api.platform.ChangeType;
 import com.gs.obevo.api.platform.Platform;
 import com.gs.obevo.impl.ExecuteChangeCommand;
+import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.ListIterable;
 import org.eclipse.collections.api.set.ImmutableSet;
 import org.eclipse.collections.impl.block.factory.Functions;
 import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.collections.impl.factory.Sets;
 import org.hamcrest.Matchers;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -95,6 +100,56 @@ public class ChangeCommandSorterImplTest {
         assertThat("bTab.2 must come after aTab.1 and before aTab.2 as aTab.2 depends explicitly on bTab2.", sortedCommands.indexOf(bTab2), Matchers.lessThan(sortedCommands.indexOf(aTab2)));
     }
 
+    @Test
+    public void testDependencyGraph() throws Exception {
+        final ExecuteChangeCommand aTab1 = newIncrementalCommand(tableChangeType(), "ATab", "1", Sets.immutable.<String>of(), 1);
+        final ExecuteChangeCommand aTab2 = newIncrementalCommand(tableChangeType(), "ATab", "2", Sets.immutable.<String>of(), 2);
+        final ExecuteChangeCommand bTab1 = newIncrementalCommand(tableChangeType(), "BTab", "1", Sets.immutable.<String>of(), 1);
+        final ExecuteChangeCommand view1 = newCommand(viewChangeType(), "View1", "n/a", Sets.immutable.<String>of("ATab"));
+        final ExecuteChangeCommand view2 = newCommand(viewChangeType(), "View2", "n/a", Sets.immutable.<String>of());
+
+        SortedChangeCommands sortedChangeCommands = sorter.sortWithDependencies(Lists.mutable.of(
+                aTab1, aTab2, bTab1, view1, view2
+        ), false);
+
+        assertEquals(sorter.sort(Lists.mutable.of(aTab1, aTab2, bTab1, view1, view2), false).size(), sortedChangeCommands.getSortedCommands().size());
+
+        DirectedGraph<ExecuteChangeCommand, DefaultEdge> graph = sortedChangeCommands.getDependencyGraph();
+        assertEquals(5, graph.vertexSet().size());
+        assertTrue(graph.containsEdge(aTab1, aTab2));
+        assertTrue(graph.containsEdge(aTab2, view1));
+        assertEquals(0, graph.inDegreeOf(bTab1));
+        assertEquals(0, graph.inDegreeOf(view2));
+        assertEquals(0, graph.outDegreeOf(view2));
+    }
+
+    @Test
+    public void testSchemaLaneGraph() throws Exception {
+        final ExecuteChangeCommand s1Tab = newCommand("s1", tableChangeType(), "S1Tab", "n/a", Sets.immutable.<String>of());
+        final ExecuteChangeCommand s1View = newCommand("s1", viewChangeType(), "S1View", "n/a", Sets.immutable.<String>of("s2.S2Tab"));
+        final ExecuteChangeCommand s2Tab = newCommand("s2", tableChangeType(), "S2Tab", "n/a", Sets.immutable.<String>of());
+        final ExecuteChangeCommand s2View = newCommand("s2", viewChangeType(), "S2View", "n/a", Sets.immutable.<String>of("S2Tab"));
+
+        SortedChangeCommands sortedChangeCommands = sorter.sortWithDependencies(Lists.mutable.of(
+                s1Tab, s1View, s2Tab, s2View
+        ), false);
+
+        DirectedGraph<ExecuteChangeCommand, DefaultEdge> graph = sortedChangeCommands.getSchemaLaneGraph();
+        assertEquals(4, graph.vertexSet().size());
+        assertEquals(3, graph.edgeSet().size());
+
+        // each schema is chained in the sorted order
+        ImmutableList<ExecuteChangeCommand> sortedCommands = sortedChangeCommands.getSortedCommands();
+        assertThat(sortedCommands.indexOf(s1Tab), Matchers.lessThan(sortedCommands.indexOf(s1View)));
+        assertTrue(graph.containsEdge(s1Tab, s1View));
+        assertTrue(graph.containsEdge(s2Tab, s2View));
+
+        // the only edge across the schemas is for the cross-schema dependency
+        assertTrue(graph.containsEdge(s2Tab, s1View));
+        assertEquals(0, graph.inDegreeOf(s1Tab));
+        assertEquals(0, graph.inDegreeOf(s2Tab));
+    }
+
 //    @Test
 //    public void addTestForDropOrderToo() {
 //        // -Consider that drop order is needed on DB2 functions (i.e. across functions, func depend on table depend on func), though no such restrictions exist for views and sps
@@ -121,9 +176,13 @@ public class ChangeCommandSorterImplTest {
     }
 
     private ExecuteChangeCommand newCommand(ChangeType changeType, String objectName, String changeName, ImmutableSet<String> dependencies) {
+        return newCommand("schema", changeType, objectName, changeName, dependencies);
+    }
+
+    private ExecuteChangeCommand newCommand(String schema, ChangeType changeType, String objectName, String changeName, ImmutableSet<String> dependencies) {
         Change change = mock(Change.class);
-        when(change.getObjectKey()).thenReturn(new ObjectKey("schema", changeType, objectName));
-        when(change.getSchema()).thenReturn("schema");
+        when(change.getObjectKey()).thenReturn(new ObjectKey(schema, changeType, objectName));
+        when(change.getSchema()).thenReturn(schema);
         when(change.getChangeType()).thenReturn(changeType);
         when(change.getObjectName()).thenReturn(objectName);
         when(change.getChangeName()).thenReturn(changeName);
@@ -134,6 +193,7 @@ public class ChangeCommandSorterImplTest {
         ExecuteChangeCommand command = mock(ExecuteChangeCommand.class);
         when(command.isDrop()).thenReturn(false);
         when(command.getChanges()).thenReturn(Lists.immutable.of(change));
+        when(command.getSchema()).thenReturn(schema);
 
         return command;
     }
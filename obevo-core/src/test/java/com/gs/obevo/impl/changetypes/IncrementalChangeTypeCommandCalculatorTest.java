@@ -32,6 +32,7 @@ import com.gs.obevo.impl.command.IncompleteBaselineWarning;
 import com.gs.obevo.impl.command.UndeployChangeCommand;
 import com.gs.obevo.impl.command.UnrolledbackChangeWarning;
 import com.gs.obevo.impl.command.UpdateAuditTableOnlyCommand;
+import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.ListIterable;
@@ -159,6 +160,66 @@ public class IncrementalChangeTypeCommandCalculatorTest {
         Verify.assertAnySatisfy(changeset, assertValue(UpdateAuditTableOnlyCommand.class, tabE1Dep));
     }
 
+    @Test
+    public void testDeployedRollbackContentIsOnlyLoadedWhenSourceDeclaresIt() {
+        final AtomicInteger loadCount = new AtomicInteger(0);
+        Function<Change, String> rollbackLoader = new Function<Change, String>() {
+            @Override
+            public String valueOf(Change change) {
+                loadCount.incrementAndGet();
+                return "oldRollback";
+            }
+        };
+
+        Change tabF0Dep = new ChangeIncremental(tableChangeType(), "schema", "tabF", "0", 0, "chng0NoRollback", CONTENT);
+        Change tabF0Src = new ChangeIncremental(tableChangeType(), "schema", "tabF", "0", 0, "chng0NoRollback", CONTENT);
+
+        ListIterable<ChangeCommand> changeset = cmdCalc.calculateCommands(tableChangeType(), Lists.mutable.of(
+                new ChangePair(tabF0Src, tabF0Dep)
+        ), unusedChangesArg, false, false);
+
+        assertEquals(0, changeset.size());
+        assertEquals(0, loadCount.get());
+
+        Change tabF1Dep = new ChangeIncremental(tableChangeType(), "schema", "tabF", "1", 1, "chng1NewRollback", CONTENT);
+        tabF1Dep.setRollbackContentLoader(rollbackLoader);
+        Change tabF1Src = new ChangeIncremental(tableChangeType(), "schema", "tabF", "1", 1, "chng1NewRollback", CONTENT);
+        tabF1Src.setRollbackContent("newRollback");
+
+        changeset = cmdCalc.calculateCommands(tableChangeType(), Lists.mutable.of(
+                new ChangePair(tabF1Src, tabF1Dep)
+        ), unusedChangesArg, false, false);
+
+        assertEquals(1, loadCount.get());
+        assertEquals(1, changeset.size());
+        Verify.assertAnySatisfy(changeset, assertValue(UpdateAuditTableOnlyCommand.class, tabF1Dep));
+        assertEquals("newRollback", tabF1Dep.getRollbackContent());
+    }
+
+    @Test
+    public void testRemovedRollbackSectionClearsDeployedRollbackContent() {
+        final AtomicInteger loadCount = new AtomicInteger(0);
+        Change tabG0Dep = new ChangeIncremental(tableChangeType(), "schema", "tabG", "0", 0, "chng0RollbackRemoved", CONTENT);
+        tabG0Dep.setRollbackContentLoader(new Function<Change, String>() {
+            @Override
+            public String valueOf(Change change) {
+                loadCount.incrementAndGet();
+                return "oldRollback";
+            }
+        });
+        Change tabG0Src = new ChangeIncremental(tableChangeType(), "schema", "tabG", "0", 0, "chng0RollbackRemoved", CONTENT);
+
+        ListIterable<ChangeCommand> changeset = cmdCalc.calculateCommands(tableChangeType(), Lists.mutable.of(
+                new ChangePair(tabG0Src, tabG0Dep)
+        ), unusedChangesArg, false, false);
+
+        assertEquals(1, changeset.size());
+        Verify.assertAnySatisfy(changeset, assertValue(UpdateAuditTableOnlyCommand.class, tabG0Dep));
+        assertEquals("Updating rollback script", ((UpdateAuditTableOnlyCommand) changeset.getFirst()).getMessage());
+        assertEquals("", tabG0Dep.getRollbackContent());
+        assertEquals(0, loadCount.get());
+    }
+
     @Test
     public void testImproperlyDroppedSourceChange() {
         Change tabE0Dep = new ChangeIncremental(tableChangeType(), "schema", "tabE", "0", 0, "chng0", CONTENT);
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl.graph;
+
+import com.gs.obevo.api.appdata.CodeDependencyType;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.impl.block.factory.Comparators;
+import org.eclipse.collections.impl.block.factory.Functions;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Sets;
+import org.eclipse.collections.impl.set.mutable.SetAdapter;
+import org.eclipse.collections.impl.test.Verify;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactDependencyGraphTest {
+    @Test
+    public void testEdgesAndDegrees() {
+        CompactDependencyGraph.Builder<String> builder = CompactDependencyGraph.newBuilder(Functions.getStringPassThru());
+        int a = builder.addVertex("a");
+        int b = builder.addVertex("b");
+        int c = builder.addVertex("c");
+        assertEquals(a, builder.addVertex("a"));
+
+        assertTrue(builder.addEdge(a, c, CodeDependencyType.EXPLICIT));
+        assertTrue(builder.addEdge(b, c, null));
+        assertTrue(builder.addEdge(a, b, CodeDependencyType.IMPLICIT));
+        assertFalse(builder.addEdge(a, c, CodeDependencyType.IMPLICIT));
+
+        CompactDependencyGraph<String> graph = builder.build();
+        assertEquals(3, graph.size());
+        assertEquals(b, graph.getVertexIndex("b"));
+        assertEquals(-1, graph.getVertexIndex("d"));
+        assertEquals(2, graph.getOutDegree(a));
+        assertEquals(c, graph.getDependent(a, 0));
+        assertEquals(b, graph.getDependent(a, 1));
+        assertEquals(0, graph.getInDegree(a));
+        assertEquals(2, graph.getInDegree(c));
+
+        DirectedGraph<String, DefaultEdge> directedGraph = graph.toDirectedGraph();
+        assertEquals(Sets.mutable.with("a", "b", "c"), directedGraph.vertexSet());
+        assertEquals(3, directedGraph.edgeSet().size());
+        assertTrue(directedGraph.containsEdge("a", "c"));
+        assertTrue(directedGraph.containsEdge("b", "c"));
+        assertTrue(directedGraph.containsEdge("a", "b"));
+    }
+
+    @Test
+    public void testTopologicalSort() {
+        CompactDependencyGraph.Builder<String> builder = CompactDependencyGraph.newBuilder(Functions.getStringPassThru());
+        for (String vertex : Lists.mutable.with("sp5", "sp4", "sp3", "sp2", "sp1")) {
+            builder.addVertex(vertex);
+        }
+        builder.addEdge(builder.getVertexIndex("sp1"), builder.getVertexIndex("sp5"), null);
+        builder.addEdge(builder.getVertexIndex("sp3"), builder.getVertexIndex("sp5"), null);
+        builder.addEdge(builder.getVertexIndex("sp2"), builder.getVertexIndex("sp1"), null);
+        builder.addEdge(builder.getVertexIndex("sp5"), builder.getVertexIndex("sp4"), null);
+
+        ImmutableList<String> sorted = builder.build().topologicalSort(Comparators.<String>naturalOrder());
+        assertEquals(Lists.immutable.with("sp2", "sp1", "sp3", "sp5", "sp4"), sorted);
+    }
+
+    @Test
+    public void testTopologicalSortBreaksTiesByVertexOrder() {
+        CompactDependencyGraph.Builder<String> builder = CompactDependencyGraph.newBuilder(Functions.getStringPassThru());
+        for (String vertex : Lists.mutable.with("b2", "a1", "b1", "a2")) {
+            builder.addVertex(vertex);
+        }
+
+        // compares only by the first character, so that a1/a2 and b1/b2 are ties
+        ImmutableList<String> sorted = builder.build().topologicalSort(Comparators.byFunction(new Function<String, Character>() {
+            @Override
+            public Character valueOf(String vertex) {
+                return vertex.charAt(0);
+            }
+        }));
+        assertEquals(Lists.immutable.with("a1", "a2", "b2", "b1"), sorted);
+    }
+
+    @Test
+    public void testCycleDetection() {
+        CompactDependencyGraph.Builder<String> builder = CompactDependencyGraph.newBuilder(Functions.getStringPassThru());
+        for (String vertex : Lists.mutable.with("sp1", "sp2", "sp3", "sp4", "sp5", "sp6")) {
+            builder.addVertex(vertex);
+        }
+        builder.addEdge(builder.getVertexIndex("sp1"), builder.getVertexIndex("sp2"), CodeDependencyType.EXPLICIT);
+        builder.addEdge(builder.getVertexIndex("sp2"), builder.getVertexIndex("sp3"), CodeDependencyType.EXPLICIT);
+        builder.addEdge(builder.getVertexIndex("sp3"), builder.getVertexIndex("sp4"), CodeDependencyType.IMPLICIT);
+        builder.addEdge(builder.getVertexIndex("sp4"), builder.getVertexIndex("sp2"), CodeDependencyType.EXPLICIT);
+        builder.addEdge(builder.getVertexIndex("sp4"), builder.getVertexIndex("sp5"), CodeDependencyType.EXPLICIT);
+        CompactDependencyGraph<String> graph = builder.build();
+
+        try {
+            graph.topologicalSort(Comparators.<String>naturalOrder());
+            fail("Expecting exception here: " + GraphCycleException.class);
+        } catch (GraphCycleException e) {
+            Verify.assertSize(1, e.getCycleComponents());
+            assertEquals(Sets.mutable.with("sp2", "sp3", "sp4"), SetAdapter.adapt(e.<String>getCycleComponents().getFirst()));
+            Verify.assertContains("(IMPLICIT)", e.getMessage());
+        }
+
+        try {
+            graph.validateNoCycles();
+            fail("Expecting exception here: " + GraphCycleException.class);
+        } catch (GraphCycleException e) {
+            Verify.assertSize(1, e.getCycleComponents());
+        }
+    }
+}
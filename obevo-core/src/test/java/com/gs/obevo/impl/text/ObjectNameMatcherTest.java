@@ -0,0 +1,96 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.impl.text;
+
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.impl.block.factory.Functions;
+import org.eclipse.collections.impl.block.factory.StringFunctions;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Sets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ObjectNameMatcherTest {
+    private final ObjectNameMatcher passThruMatcher = new ObjectNameMatcher(Functions.getStringPassThru(),
+            Sets.mutable.with("sp1", "sp2", "sp_3", "SP4", "tab", "table1", "bad-name"));
+
+    @Test
+    public void testMatchesWholeTokensOnly() {
+        assertEquals(Sets.mutable.with("tab", "sp1"),
+                passThruMatcher.findObjectNames("select * from tab, table12, sp1x, xsp1, tab.col where sp1(tabl) = 1", "test"));
+    }
+
+    @Test
+    public void testCaseHandledByConversion() {
+        assertEquals(Sets.mutable.with("SP4"), passThruMatcher.findObjectNames("call sp4 SP4 Sp1", "test"));
+
+        ObjectNameMatcher upperCaseMatcher = new ObjectNameMatcher(StringFunctions.toUpperCase(), Sets.mutable.with("SP1", "TABLE1"));
+        assertEquals(Sets.mutable.with("SP1", "TABLE1"), upperCaseMatcher.findObjectNames("call sp1 from Table1", "test"));
+    }
+
+    @Test
+    public void testNamesWithNonWordCharsAreNotMatched() {
+        assertEquals(Sets.mutable.with("sp1"), passThruMatcher.findObjectNames("bad-name sp1", "test"));
+    }
+
+    @Test
+    public void testQuotedTextIsSearched() {
+        assertEquals(Sets.mutable.with("sp1", "sp2", "sp_3"),
+                passThruMatcher.findObjectNames("exec('sp1 ''sp2''') \"sp_3 -- not a comment\" /* tab */", "test"));
+    }
+
+    @Test
+    public void testCommentsAreSkipped() {
+        assertEquals(Sets.mutable.with("sp1", "table1"), passThruMatcher.findObjectNames("sp1 // sp2\r" +
+                "-- sp_3 'unclosed quote in comment\n" +
+                "/* SP4\n" +
+                "-- tab */ table1", "test"));
+    }
+
+    @Test
+    public void testUnclosedQuoteSearchesOriginalContent() {
+        assertEquals(Sets.mutable.with("sp1", "sp2"), passThruMatcher.findObjectNames("sp1 'unclosed /* sp2 */", "test"));
+    }
+
+    @Test
+    public void testUnclosedBlockCommentSearchesOriginalContent() {
+        assertEquals(Sets.mutable.with("sp1", "sp2"), passThruMatcher.findObjectNames("sp1 /* sp2", "test"));
+    }
+
+    @Test
+    public void testLineCommentAtEndOfContent() {
+        // CommentRemover also drops a line comment that is not followed by a newline
+        for (String content : Lists.mutable.with("sp1 -- sp2", "sp1 // sp2", "sp1 --", "sp1 -- sp2 'unclosed", "sp1\r\n-- sp2 /* sp2")) {
+            assertEquals(content, Sets.mutable.with("sp1"), passThruMatcher.findObjectNames(content, "test"));
+            assertEquals(content, Sets.mutable.with("sp1"), passThruMatcher.findObjectNames(CommentRemover.removeComments(content, "test"), "test"));
+        }
+    }
+
+    @Test
+    public void testManyNames() {
+        // enough names for the trie to grow a few times
+        MutableSet<String> objectNames = Sets.mutable.empty();
+        for (int i = 0; i < 1000; i++) {
+            objectNames.add("sp" + i);
+        }
+        ObjectNameMatcher matcher = new ObjectNameMatcher(Functions.getStringPassThru(), objectNames);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Sets.mutable.with("sp" + i), matcher.findObjectNames("call sp" + i + " sp" + i + "0000", "test"));
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.gs.obevo.api.appdata.CodeDependency;
 import com.gs.obevo.api.appdata.CodeDependencyType;
 import com.gs.obevo.api.appdata.ObjectKey;
 import com.gs.obevo.api.platform.ChangeType;
+import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.set.ImmutableSet;
 import org.eclipse.collections.api.set.SetIterable;
 import org.eclipse.collections.impl.block.factory.Functions;
@@ -68,6 +69,23 @@ public class TextDependencyExtractorImplTest {
         verifyExpectedDependencies(spA, Sets.mutable.with(new CodeDependency("sp3", CodeDependencyType.DISCOVERED)));
     }
 
+    @Test
+    public void testCalculateDependenciesInParallel() {
+        // enough objects to go over the threshold for splitting the work across threads; we use a plain implementation
+        // here as the mocks are not safe to call from multiple threads
+        int numObjects = 1000;
+        MutableList<SimpleExtractable> objects = Lists.mutable.empty();
+        for (int i = 0; i < numObjects; i++) {
+            objects.add(new SimpleExtractable("sp" + i, "sp" + i + " call sp" + (i + 1) % numObjects + " -- sp" + (i + 2) % numObjects));
+        }
+
+        enricher.calculateDependencies(objects);
+
+        for (int i = 0; i < numObjects; i++) {
+            assertEquals(Sets.mutable.with(new CodeDependency("sp" + (i + 1) % numObjects, CodeDependencyType.DISCOVERED)), objects.get(i).getCodeDependencies());
+        }
+    }
+
     @Test
     public void testCalculateDependenciesForChange() {
         SetIterable<String> dependencies = enricher.calculateDependencies("test1", "create procedure sp1\n" +
@@ -121,4 +139,57 @@ public class TextDependencyExtractorImplTest {
 
         return item;
     }
+
+    private static class SimpleExtractable implements TextDependencyExtractable {
+        private final ObjectKey objectKey;
+        private final String content;
+        private ImmutableSet<CodeDependency> codeDependencies;
+
+        SimpleExtractable(String objectName, String content) {
+            ChangeType changeType = mock(ChangeType.class);
+            when(changeType.isEnrichableForDependenciesInText()).thenReturn(true);
+            this.objectKey = new ObjectKey(SCHEMA1, changeType, objectName);
+            this.content = content;
+        }
+
+        @Override
+        public ObjectKey getObjectKey() {
+            return objectKey;
+        }
+
+        @Override
+        public ImmutableSet<CodeDependency> getCodeDependencies() {
+            return codeDependencies;
+        }
+
+        @Override
+        public ImmutableSet<String> getDependencies() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setCodeDependencies(ImmutableSet<CodeDependency> codeDependencies) {
+            this.codeDependencies = codeDependencies;
+        }
+
+        @Override
+        public void setDependencies(ImmutableSet<String> dependencies) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ImmutableSet<String> getExcludeDependencies() {
+            return Sets.immutable.empty();
+        }
+
+        @Override
+        public ImmutableSet<String> getIncludeDependencies() {
+            return Sets.immutable.empty();
+        }
+
+        @Override
+        public String getContentForDependencyCalculation() {
+            return content;
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.util.hash;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.ChangeIncremental;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Sets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingDbChangeHashStrategyTest {
+    private static String longContent() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("\u00e9\u20ac\ud834\udd1ex");
+        }
+        return sb.toString();
+    }
+
+    private static MutableList<String> sampleContents() {
+        StringBuilder longWhitespaceContent = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            longWhitespaceContent.append("  create table T").append(i).append(" (\r\n\tID int\t\t)\r\n\r\n");
+        }
+
+        return Lists.mutable.with(
+                "abc",
+                "\n  abc    \n     \t    def    \tghi\t\t\rj\rk\nl\n",
+                "          \n  abc    \n     \t     \n\n\r  def    \tghi\t\t\rj\r    k    \nl\n",
+                "line1\r\nline2\r\n\r\n   line3   ",
+                "\u0001 ctrl \u0002chars\u0003\n\u0000",
+                "a\u000Bb\fc\u001Cd",
+                "unicode \u00e9\u00e8 \u20ac \u4e2d\u6587 and \ud834\udd1e",
+                "unpaired \ud834 high and \udd1e low surrogates\ud834",
+                "trailing CR\r",
+                longContent(),
+                longWhitespaceContent.toString()
+        );
+    }
+
+    @Test
+    public void testSameHashesAsOriginalStrategies() {
+        ExactDbChangeHashStrategy exact = new ExactDbChangeHashStrategy();
+        WhitespaceAgnosticDbChangeHashStrategy whitespaceAgnostic = new WhitespaceAgnosticDbChangeHashStrategy();
+        OldWhitespaceAgnosticDbChangeHashStrategy oldWhitespaceAgnostic = new OldWhitespaceAgnosticDbChangeHashStrategy();
+        StreamingExactDbChangeHashStrategy streamingExact = new StreamingExactDbChangeHashStrategy();
+        StreamingWhitespaceAgnosticDbChangeHashStrategy streamingWhitespaceAgnostic = new StreamingWhitespaceAgnosticDbChangeHashStrategy();
+        StreamingOldWhitespaceAgnosticDbChangeHashStrategy streamingOldWhitespaceAgnostic = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy();
+
+        for (String content : sampleContents()) {
+            assertEquals(exact.hashContent(content), streamingExact.hashContent(content));
+            assertEquals(whitespaceAgnostic.hashContent(content), streamingWhitespaceAgnostic.hashContent(content));
+            assertEquals(oldWhitespaceAgnostic.hashContent(content), streamingOldWhitespaceAgnostic.hashContent(content));
+        }
+    }
+
+    @Test
+    public void testBlankContent() {
+        StreamingOldWhitespaceAgnosticDbChangeHashStrategy hashStrategy = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy();
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", hashStrategy.hashContent("\n      \n     \t        \t\t\t\r\r\n\n"));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", hashStrategy.hashContent(null));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", new StreamingWhitespaceAgnosticDbChangeHashStrategy().hashContent("  \t\r\n "));
+    }
+
+    @Test
+    public void testMurmur3() {
+        StreamingExactDbChangeHashStrategy hashStrategy = new StreamingExactDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128);
+        assertEquals("00000000000000000000000000000000", hashStrategy.hashContent(""));
+        assertEquals("897859f6655555855a890e51483ab5e6", hashStrategy.hashContent("a"));
+        assertEquals("a7d14acf946de04bda08a7635c5bc387", hashStrategy.hashContent("0123456789abcdef"));
+        assertEquals("75c0a58587ae24ebca283131b368fb73", hashStrategy.hashContent("0123456789abcdef0"));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hashStrategy.hashContent("The quick brown fox jumps over the lazy dog"));
+        assertEquals("7582e4b270475bfcfd1f3c5cd0821133", hashStrategy.hashContent(longContent()));
+
+        assertEquals("6fe3874ac5eb00c5198745286ee22831", new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128)
+                .hashContent("\n  abc    \n     \t    def    \tghi\t\t\rj\rk\nl\n"));
+    }
+
+    @Test
+    public void testAcceptableHashesPerAlgorithm() {
+        String content = "create table T (\n\tID int\n)";
+        String md5Hash = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MD5).hashContent(content);
+        String md5ExactHash = new StreamingExactDbChangeHashStrategy(ContentHashAlgorithm.MD5).hashContent(content);
+        String murmur3Hash = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128).hashContent(content);
+        String murmur3ExactHash = new StreamingExactDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128).hashContent(content);
+
+        Change md5Change = new ChangeIncremental(null, "schema", "T", "chng1", 0, md5Hash, content);
+        assertEquals(Sets.mutable.with(md5Hash, md5ExactHash), md5Change.getAcceptableHashes());
+
+        // after switching the algorithm, only the MD5 hash that the change had before is accepted besides the murmur ones
+        Change murmur3Change = new ChangeIncremental(null, "schema", "T", "chng1", 0, murmur3Hash, content);
+        murmur3Change.setContentHashAlgorithm(ContentHashAlgorithm.MURMUR3_128);
+        assertEquals(Sets.mutable.with(murmur3Hash, murmur3ExactHash, md5Hash), murmur3Change.getAcceptableHashes());
+        assertTrue(murmur3Change.getAcceptableHashes().contains(md5Hash));
+        assertFalse(murmur3Change.getAcceptableHashes().contains(md5ExactHash));
+    }
+}
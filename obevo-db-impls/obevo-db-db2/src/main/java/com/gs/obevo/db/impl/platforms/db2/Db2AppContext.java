@@ -45,7 +45,7 @@ public class Db2AppContext extends DbDeployerAppContextImpl {
             public PostDeployAction value() {
                 // Doing this cast here as Srping Java Config works better w/ interfaces directly.
                 // I'd like to avoid having this cast though
-                return new Db2PostDeployAction((Db2SqlExecutor) Db2AppContext.this.getSqlExecutor(), deployStatsTracker());
+                return new Db2PostDeployAction((Db2SqlExecutor) Db2AppContext.this.getSqlExecutor(), deployStatsTracker(), env.getNumThreads());
             }
         });
     }
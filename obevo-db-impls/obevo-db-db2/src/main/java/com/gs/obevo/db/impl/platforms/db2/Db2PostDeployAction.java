@@ -16,6 +16,12 @@
 package com.gs.obevo.db.impl.platforms.db2;
 
 import java.sql.Connection;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.api.platform.DeployMetrics;
@@ -29,10 +35,14 @@ import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.procedure.Procedure;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.multimap.list.MutableListMultimap;
 import org.eclipse.collections.api.set.ImmutableSet;
+import org.eclipse.collections.impl.block.factory.Functions;
+import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
 import org.eclipse.collections.impl.collection.mutable.CollectionAdapter;
 import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.collections.impl.list.mutable.ListAdapter;
+import org.eclipse.collections.impl.multimap.list.FastListMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +52,11 @@ import org.slf4j.LoggerFactory;
  *     <li>Checking for invalid views</li>
  *     <li>Checking for tables requiring reorg</li>
  * </ul>
+ *
+ * The schemas are revalidated concurrently and the reorgs are executed on a pool of up to numThreads connections,
+ * with at most {@link DbEnvironment#getMaxReorgsPerTablespace()} reorgs running against the same tablespace at once.
+ * The connection used for the checks is released before that work starts, as the data source only has numThreads
+ * connections to give out.
  */
 public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
     private static final Logger LOG = LoggerFactory.getLogger(Db2PostDeployAction.class);
@@ -49,40 +64,56 @@ public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
     static final String POST_DEPLOY_WARNINGS = DeployMetrics.WARNINGS_PREFIX + ".postDeployWarnings";
     private final Db2SqlExecutor stmtExecutor;
     private final DeployMetricsCollector deployMetricsCollector;
+    private final int numThreads;
 
     public Db2PostDeployAction(Db2SqlExecutor stmtExec, DeployMetricsCollector deployMetricsCollector) {
+        this(stmtExec, deployMetricsCollector, 1);
+    }
+
+    public Db2PostDeployAction(Db2SqlExecutor stmtExec, DeployMetricsCollector deployMetricsCollector, int numThreads) {
         this.stmtExecutor = stmtExec;
         this.deployMetricsCollector = deployMetricsCollector;
+        this.numThreads = Math.max(1, numThreads);
     }
 
     @Override
     public void value(final DbEnvironment env) {
-        // TODO would prefer to avoid this hack w/ the "executeWithinContext" here and picking a schema arbitrarily
-        stmtExecutor.executeWithinContext(env.getPhysicalSchemas().getFirst(), new Procedure<Connection>() {
-            @Override
-            public void value(Connection conn) {
-                // TODO refactor these into separate components that can be chained together (GITHUB#5)
-
-                // TODO measure how long each of these takes: GITHUB#6
-                if (env.isInvalidObjectCheckEnabled()) {
-                    checkForInvalidObjects(conn, env.getPhysicalSchemas());
-                } else {
-                    LOG.info("Skipping invalid object check as configured in your environment");
-                }
+        // TODO refactor these into separate components that can be chained together (GITHUB#5)
 
-                if (env.isReorgCheckEnabled()) {
-                    checkForTablesNeedingReorg(conn, env);
-                } else {
-                    LOG.info("Skipping check for tables pending reorg as configured in your environment");
-                }
-                LOG.info("Done in DB2 post-deploy action:");
-            }
-        });
+        if (env.isInvalidObjectCheckEnabled()) {
+            long startNanos = System.nanoTime();
+            checkForInvalidObjects(env.getPhysicalSchemas());
+            deployMetricsCollector.addTiming("postDeploy.invalidObjectCheck", System.nanoTime() - startNanos);
+        } else {
+            LOG.info("Skipping invalid object check as configured in your environment");
+        }
+
+        if (env.isReorgCheckEnabled()) {
+            long startNanos = System.nanoTime();
+            checkForTablesNeedingReorg(env);
+            deployMetricsCollector.addTiming("postDeploy.reorgCheck", System.nanoTime() - startNanos);
+        } else {
+            LOG.info("Skipping check for tables pending reorg as configured in your environment");
+        }
+        LOG.info("Done in DB2 post-deploy action:");
+    }
+
+    /**
+     * Runs the query on a single connection, which is released before the caller fans out onto the pool.
+     */
+    private <T> T queryWithinContext(RichIterable<PhysicalSchema> physicalSchemas, ThrowingFunction<Connection, T> query) {
+        // TODO would prefer to avoid this hack w/ the "executeWithinContext" here and picking a schema arbitrarily
+        return stmtExecutor.executeWithinContext(physicalSchemas.getFirst(), query);
     }
 
     @VisibleForTesting
-    void checkForInvalidObjects(Connection conn, RichIterable<PhysicalSchema> physicalSchemas) {
-        MutableList<ReorgQueryResult> invalidObjects = this.getInvalidObjects(conn, physicalSchemas);
+    void checkForInvalidObjects(final RichIterable<PhysicalSchema> physicalSchemas) {
+        MutableList<ReorgQueryResult> invalidObjects = queryWithinContext(physicalSchemas, new ThrowingFunction<Connection, MutableList<ReorgQueryResult>>() {
+            @Override
+            public MutableList<ReorgQueryResult> safeValueOf(Connection conn) {
+                return getInvalidObjects(conn, physicalSchemas);
+            }
+        });
         if (!invalidObjects.isEmpty()) {
             LOG.info("Found invalid objects, will attempt to recompile: {}", invalidObjects);
             recompileInvalidObjects(physicalSchemas);
@@ -107,29 +138,47 @@ public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
     }
 
     private void recompileInvalidObjects(RichIterable<PhysicalSchema> physicalSchemas) {
-        MutableList<String> warnings = Lists.mutable.empty();
+        final MutableList<String> warnings = Lists.mutable.<String>empty().asSynchronized();
+        MutableList<Callable<Void>> tasks = Lists.mutable.empty();
         for (final PhysicalSchema physicalSchema : physicalSchemas) {
-            try {
-                this.stmtExecutor.executeWithinContext(physicalSchema, new Procedure<Connection>() {
-                    @Override
-                    public void value(Connection conn) {
-                        stmtExecutor.getJdbcTemplate().update(conn, "CALL SYSPROC.ADMIN_REVALIDATE_DB_OBJECTS(NULL, '" + physicalSchema.getPhysicalName() + "', NULL)");
-                    }
-                });
-                LOG.info("Successfully recompiled objects in schema", physicalSchema);
-            } catch (DataAccessException e) {
-                warnings.add(physicalSchema.getPhysicalName() + ": " + e.getMessage());
-                LOG.warn("Failed to recompile objects on schema {}; will not fail the overall deployment due to this", physicalSchema, e);
-            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    recompileInvalidObjects(physicalSchema, warnings);
+                    return null;
+                }
+            });
         }
 
+        executeConcurrently(tasks);
+
         if (warnings.notEmpty()) {
             deployMetricsCollector.addMetric(POST_DEPLOY_WARNINGS, "Failures on recompiling invalid objects: " + warnings.makeString("\n"));
         }
     }
 
-    private void checkForTablesNeedingReorg(Connection conn, DbEnvironment env) {
-        RichIterable<ReorgQueryResult> results = this.getTablesNeedingReorg(conn, env);
+    private void recompileInvalidObjects(final PhysicalSchema physicalSchema, MutableList<String> warnings) {
+        try {
+            this.stmtExecutor.executeWithinContext(physicalSchema, new Procedure<Connection>() {
+                @Override
+                public void value(Connection conn) {
+                    stmtExecutor.getJdbcTemplate().update(conn, "CALL SYSPROC.ADMIN_REVALIDATE_DB_OBJECTS(NULL, '" + physicalSchema.getPhysicalName() + "', NULL)");
+                }
+            });
+            LOG.info("Successfully recompiled objects in schema {}", physicalSchema);
+        } catch (DataAccessException e) {
+            warnings.add(physicalSchema.getPhysicalName() + ": " + e.getMessage());
+            LOG.warn("Failed to recompile objects on schema {}; will not fail the overall deployment due to this", physicalSchema, e);
+        }
+    }
+
+    private void checkForTablesNeedingReorg(final DbEnvironment env) {
+        RichIterable<ReorgQueryResult> results = queryWithinContext(env.getPhysicalSchemas(), new ThrowingFunction<Connection, ImmutableSet<ReorgQueryResult>>() {
+            @Override
+            public ImmutableSet<ReorgQueryResult> safeValueOf(Connection conn) {
+                return getTablesNeedingReorg(conn, env);
+            }
+        });
 
         if (results.isEmpty()) {
             LOG.info("No tables to reorg.");
@@ -141,16 +190,99 @@ public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
 
             if (env.isAutoReorgEnabled()) {
                 LOG.info("autoReorg is enabled; executing the reorgs now...");
-                for (ReorgQueryResult result : results) {
-                    LOG.info("Reorging table: " + result.getPhysicalSchema() + "." + result.getName());
-                    Db2SqlExecutor.executeReorg(this.stmtExecutor.getJdbcTemplate(), conn, result.getPhysicalSchema(), result.getName());
-                }
+                executeReorgs(results, env.getMaxReorgsPerTablespace());
             } else {
                 LOG.warn("autoReorg is disabled; please remember to manually execute reorgs on these tables: {}", results);
             }
         }
     }
 
+    private void executeReorgs(RichIterable<ReorgQueryResult> results, int maxReorgsPerTablespace) {
+        MutableList<Callable<Void>> tasks = Lists.mutable.empty();
+        for (final MutableList<ReorgQueryResult> lane : createReorgLanes(results, maxReorgsPerTablespace)) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    stmtExecutor.executeWithinContext(lane.getFirst().getPhysicalSchema(), new Procedure<Connection>() {
+                        @Override
+                        public void value(Connection conn) {
+                            for (ReorgQueryResult result : lane) {
+                                LOG.info("Reorging table: " + result.getPhysicalSchema() + "." + result.getName());
+                                Db2SqlExecutor.executeReorg(stmtExecutor.getJdbcTemplate(), conn, result.getPhysicalSchema(), result.getName());
+                            }
+                        }
+                    });
+                    return null;
+                }
+            });
+        }
+
+        executeConcurrently(tasks);
+    }
+
+    /**
+     * Splits the tables to reorg into lanes that are each executed serially on a single connection. Each tablespace
+     * gets at most maxReorgsPerTablespace lanes, so that running the lanes concurrently never puts more than that many
+     * reorgs onto one tablespace. The lanes of the tablespaces with the most tables come first so that the longest
+     * work starts earliest.
+     */
+    @VisibleForTesting
+    static MutableList<MutableList<ReorgQueryResult>> createReorgLanes(RichIterable<ReorgQueryResult> results, int maxReorgsPerTablespace) {
+        final MutableListMultimap<String, ReorgQueryResult> resultsByTablespace = results
+                .toSortedListBy(Functions.getToString())
+                .groupBy(ReorgQueryResult.TO_TABLESPACE, FastListMultimap.<String, ReorgQueryResult>newMultimap());
+
+        MutableList<String> tablespaces = resultsByTablespace.keysView().toSortedList(new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                int sizeCompare = resultsByTablespace.get(o2).size() - resultsByTablespace.get(o1).size();
+                return sizeCompare != 0 ? sizeCompare : o1.compareTo(o2);
+            }
+        });
+
+        MutableList<MutableList<ReorgQueryResult>> lanes = Lists.mutable.empty();
+        for (String tablespace : tablespaces) {
+            MutableList<ReorgQueryResult> tablespaceResults = resultsByTablespace.get(tablespace);
+            int numLanes = Math.min(Math.max(1, maxReorgsPerTablespace), tablespaceResults.size());
+            MutableList<MutableList<ReorgQueryResult>> tablespaceLanes = Lists.mutable.empty();
+            for (int i = 0; i < numLanes; i++) {
+                tablespaceLanes.add(Lists.mutable.<ReorgQueryResult>empty());
+            }
+            for (int i = 0; i < tablespaceResults.size(); i++) {
+                tablespaceLanes.get(i % numLanes).add(tablespaceResults.get(i));
+            }
+            lanes.addAll(tablespaceLanes);
+        }
+
+        return lanes;
+    }
+
+    private void executeConcurrently(MutableList<Callable<Void>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+        try {
+            MutableList<Future<Void>> futures = Lists.mutable.empty();
+            for (Callable<Void> task : tasks) {
+                futures.add(executorService.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     ImmutableSet<ReorgQueryResult> getTablesNeedingReorg(final Connection conn, final DbEnvironment env) {
         // keeping as system.out for now to facilitate output to maven output
         LOG.info("Starting DB2 post-deploy action: Querying for tables in reorg-ending state (this may take a minute)");
@@ -158,26 +290,32 @@ public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
         // work w/out the spaces)
 
         try {
-            return env.getPhysicalSchemas().flatCollect(new Function<PhysicalSchema, Iterable<ReorgQueryResult>>() {
+            // one round-trip for all the schemas; each branch still scopes ADMIN_GET_TAB_INFO to its schema so that we
+            // do not scan the tables of the whole database
+            String sql = env.getPhysicalSchemas().toSortedListBy(PhysicalSchema.TO_PHYSICAL_NAME).collect(new Function<PhysicalSchema, String>() {
                 @Override
-                public Iterable<ReorgQueryResult> valueOf(PhysicalSchema physicalSchema) {
-                    final String sql = String.format(
-                            "select '%1$s' schema, trim(TABNAME) name, NUM_REORG_REC_ALTERS, REORG_PENDING\n" +
-                                    "FROM TABLE (SYSPROC.ADMIN_GET_TAB_INFO('%1$s', null)) WHERE REORG_PENDING = 'Y'"
+                public String valueOf(PhysicalSchema physicalSchema) {
+                    return String.format(
+                            "select '%1$s' schema, trim(a.TABNAME) name, t.TBSPACE tablespace, a.NUM_REORG_REC_ALTERS, a.REORG_PENDING\n" +
+                                    "FROM TABLE (SYSPROC.ADMIN_GET_TAB_INFO('%1$s', null)) a\n" +
+                                    "LEFT JOIN SYSCAT.TABLES t ON t.TABSCHEMA = a.TABSCHEMA AND t.TABNAME = a.TABNAME\n" +
+                                    "WHERE a.REORG_PENDING = 'Y'"
                             , physicalSchema.getPhysicalName());
-                    LOG.debug("Executing SQL: " + sql);
-
-                    return stmtExecutor.getJdbcTemplate()
-                            .query(conn, sql, new BeanListHandler<ReorgQueryResult>(ReorgQueryResult.class));
                 }
-            });
+            }).makeString("\nUNION ALL\n");
+            LOG.debug("Executing SQL: " + sql);
+
+            return CollectionAdapter.wrapSet(stmtExecutor.getJdbcTemplate()
+                    .query(conn, sql, new BeanListHandler<ReorgQueryResult>(ReorgQueryResult.class))).toImmutable();
         } catch (RuntimeException e) {
             // TODO would like a better way to decide on using this SQL apart from catching the exception
             LOG.info("Query in new >= 9.7 syntax didn't work: {} (debug log shows the full stack trace). Falling back to older (and slower) syntax", e.getMessage());
             LOG.debug("Full exception stack trace", e);
-            String sql = "SELECT TRIM(TABSCHEMA) schema, TABNAME name, NUM_REORG_REC_ALTERS, REORG_PENDING\n" +
-                    "FROM SYSIBMADM.ADMINTABINFO WHERE REORG_PENDING = 'Y'\n" +
-                    "AND TABSCHEMA IN ('" + env.getPhysicalSchemas().makeString("','") + "')";
+            String sql = "SELECT TRIM(a.TABSCHEMA) schema, a.TABNAME name, t.TBSPACE tablespace, a.NUM_REORG_REC_ALTERS, a.REORG_PENDING\n" +
+                    "FROM SYSIBMADM.ADMINTABINFO a\n" +
+                    "LEFT JOIN SYSCAT.TABLES t ON t.TABSCHEMA = a.TABSCHEMA AND t.TABNAME = a.TABNAME\n" +
+                    "WHERE a.REORG_PENDING = 'Y'\n" +
+                    "AND a.TABSCHEMA IN ('" + env.getPhysicalSchemas().makeString("','") + "')";
             return CollectionAdapter.wrapSet(Db2PostDeployAction.this.stmtExecutor.getJdbcTemplate()
                     .query(conn, sql, new BeanListHandler<ReorgQueryResult>(ReorgQueryResult.class))).toImmutable();
         }
@@ -196,9 +334,19 @@ public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
                 return object.getName();
             }
         };
+        /**
+         * Tables whose tablespace could not be determined are treated as sharing a single tablespace.
+         */
+        public static final Function<ReorgQueryResult, String> TO_TABLESPACE = new Function<ReorgQueryResult, String>() {
+            @Override
+            public String valueOf(ReorgQueryResult object) {
+                return object.getTablespace() != null ? object.getTablespace().trim() : "";
+            }
+        };
         private String schema;
         private String name;
         private String objecttype;
+        private String tablespace;
 
         public PhysicalSchema getPhysicalSchema() {
             return PhysicalSchema.parseFromString(this.schema);
@@ -228,6 +376,14 @@ public class Db2PostDeployAction implements PostDeployAction<DbEnvironment> {
             this.objecttype = objecttype;
         }
 
+        public String getTablespace() {
+            return tablespace;
+        }
+
+        public void setTablespace(String tablespace) {
+            this.tablespace = tablespace;
+        }
+
         @Override
         public String toString() {
             return this.schema + "." + this.name;
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.platforms.db2;
+
+import java.sql.Connection;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.api.appdata.Schema;
+import com.gs.obevo.db.api.appdata.DbEnvironment;
+import com.gs.obevo.db.impl.core.jdbc.JdbcDataSourceFactory;
+import com.gs.obevo.db.impl.platforms.db2.Db2PostDeployAction.ReorgQueryResult;
+import com.gs.obevo.impl.DeployMetricsCollectorImpl;
+import com.gs.obevo.util.inputreader.Credential;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.procedure.Procedure;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.set.ImmutableSet;
+import org.eclipse.collections.impl.block.factory.Functions;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Sets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Db2PostDeployActionReorgLanesTest {
+    private static final MutableList<String> ADMIN_COMMANDS = Lists.mutable.<String>empty().asSynchronized();
+
+    /**
+     * Stands in for the SYSPROC.ADMIN_CMD procedure of DB2 in the in-memory database.
+     */
+    public static void adminCmd(String command) {
+        ADMIN_COMMANDS.add(command);
+    }
+
+    private static final Function<MutableList<ReorgQueryResult>, MutableList<String>> TO_TABLE_NAMES = new Function<MutableList<ReorgQueryResult>, MutableList<String>>() {
+        @Override
+        public MutableList<String> valueOf(MutableList<ReorgQueryResult> lane) {
+            return lane.collect(Functions.getToString());
+        }
+    };
+
+    @Test
+    public void testLanesAreLimitedPerTablespace() {
+        MutableList<MutableList<ReorgQueryResult>> lanes = Db2PostDeployAction.createReorgLanes(Sets.mutable.with(
+                result("SCH1", "TAB_A", "TS1"),
+                result("SCH1", "TAB_B", "TS1"),
+                result("SCH2", "TAB_C", "TS1"),
+                result("SCH1", "TAB_D", "TS2"),
+                result("SCH2", "TAB_E", null)
+        ), 2);
+
+        assertEquals(Lists.mutable.with(
+                Lists.mutable.with("SCH1.TAB_A", "SCH2.TAB_C"),
+                Lists.mutable.with("SCH1.TAB_B"),
+                Lists.mutable.with("SCH2.TAB_E"),
+                Lists.mutable.with("SCH1.TAB_D")
+        ), lanes.collect(TO_TABLE_NAMES));
+    }
+
+    @Test
+    public void testSingleReorgPerTablespace() {
+        MutableList<MutableList<ReorgQueryResult>> lanes = Db2PostDeployAction.createReorgLanes(Sets.mutable.with(
+                result("SCH1", "TAB_A", "TS1"),
+                result("SCH1", "TAB_B", "TS1"),
+                result("SCH1", "TAB_C", "TS2")
+        ), 1);
+
+        assertEquals(Lists.mutable.with(
+                Lists.mutable.with("SCH1.TAB_A", "SCH1.TAB_B"),
+                Lists.mutable.with("SCH1.TAB_C")
+        ), lanes.collect(TO_TABLE_NAMES));
+    }
+
+    @Test
+    public void testReorgsWithSingleThread() throws Exception {
+        DbEnvironment env = new DbEnvironment();
+        env.setSchemas(Sets.immutable.with(new Schema("SCH1")));
+        env.setInvalidObjectCheckEnabled(false);
+        env.setReorgCheckEnabled(true);
+        env.setAutoReorgEnabled(true);
+        env.setMaxReorgsPerTablespace(2);
+
+        // numThreads=1 gives a pool of a single connection; fail instead of waiting forever if a second one is requested
+        BasicDataSource ds = (BasicDataSource) JdbcDataSourceFactory.createFromJdbcUrl(org.h2.Driver.class,
+                "jdbc:h2:mem:Db2PostDeployActionReorgLanesTest;DB_CLOSE_DELAY=-1", new Credential("sa", ""), 1);
+        ds.setMaxWait(5000);
+        try {
+            final Db2SqlExecutor sqlExecutor = new Db2SqlExecutor(ds, env) {
+                @Override
+                public void setDataSourceSchema(Connection conn, PhysicalSchema schema) {
+                    // the DB2 path and schema statements do not apply to the in-memory database
+                }
+            };
+            sqlExecutor.executeWithinContext(new PhysicalSchema("SCH1"), new Procedure<Connection>() {
+                @Override
+                public void value(Connection conn) {
+                    sqlExecutor.getJdbcTemplate().update(conn, "CREATE SCHEMA IF NOT EXISTS SYSPROC");
+                    sqlExecutor.getJdbcTemplate().update(conn, "CREATE ALIAS IF NOT EXISTS SYSPROC.ADMIN_CMD FOR \""
+                            + Db2PostDeployActionReorgLanesTest.class.getName() + ".adminCmd\"");
+                }
+            });
+
+            final ImmutableSet<ReorgQueryResult> results = Sets.immutable.with(
+                    result("SCH1", "TAB_A", "TS1"),
+                    result("SCH1", "TAB_B", "TS1"),
+                    result("SCH1", "TAB_C", "TS2")
+            );
+            Db2PostDeployAction postDeployAction = new Db2PostDeployAction(sqlExecutor, new DeployMetricsCollectorImpl(), 1) {
+                @Override
+                ImmutableSet<ReorgQueryResult> getTablesNeedingReorg(Connection conn, DbEnvironment env) {
+                    return results;
+                }
+            };
+            ADMIN_COMMANDS.clear();
+            postDeployAction.value(env);
+        } finally {
+            ds.close();
+        }
+
+        assertEquals(Sets.mutable.with("reorg table SCH1.TAB_A", "reorg table SCH1.TAB_B", "reorg table SCH1.TAB_C"), ADMIN_COMMANDS.toSet());
+    }
+
+    private ReorgQueryResult result(String schema, String name, String tablespace) {
+        ReorgQueryResult result = new ReorgQueryResult();
+        result.setSchema(schema);
+        result.setName(name);
+        result.setTablespace(tablespace);
+        return result;
+    }
+}
@@ -19,6 +19,7 @@ import com.gs.obevo.db.api.platform.SqlExecutor;
 import com.gs.obevo.db.impl.core.DbDeployerAppContextImpl;
 import com.gs.obevo.db.impl.core.envinfrasetup.EnvironmentInfraSetup;
 import com.gs.obevo.db.impl.core.jdbc.DataSourceFactory;
+import com.gs.obevo.db.impl.core.snapshot.DbSnapshotter;
 import org.eclipse.collections.api.block.function.Function0;
 
 public class H2AppContext extends DbDeployerAppContextImpl {
@@ -36,6 +37,11 @@ public class H2AppContext extends DbDeployerAppContextImpl {
         return new H2EnvironmentSetupInfra(this.getEnvironment(), this.getManagedDataSource(), this.getDbMetadataManager());
     }
 
+    @Override
+    public DbSnapshotter getDbSnapshotter() {
+        return new H2DbSnapshotter(this.getEnvironment(), this.getManagedDataSource());
+    }
+
     @Override
     protected DataSourceFactory getDataSourceFactory() {
         return new H2JdbcDataSourceFactory();
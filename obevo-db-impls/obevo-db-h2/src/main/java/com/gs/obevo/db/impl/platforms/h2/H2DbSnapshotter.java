@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.platforms.h2;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.db.api.appdata.DbEnvironment;
+import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
+import com.gs.obevo.db.impl.core.snapshot.DbSnapshotter;
+import org.apache.commons.dbutils.DbUtils;
+
+/**
+ * Snapshots the environment schemas using the H2 SCRIPT and RUNSCRIPT commands. The script is limited to the
+ * environment schemas so that other schemas sharing the same in-memory database are not affected by a restore.
+ */
+public class H2DbSnapshotter implements DbSnapshotter {
+    private final DbEnvironment env;
+    private final DataSource ds;
+
+    public H2DbSnapshotter(DbEnvironment env, DataSource ds) {
+        this.env = env;
+        this.ds = ds;
+    }
+
+    @Override
+    public boolean isSnapshotSupported() {
+        return true;
+    }
+
+    @Override
+    public void takeSnapshot(File snapshotFile) {
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            snapshotFile.getAbsoluteFile().getParentFile().mkdirs();
+            executeScriptCommand(conn, "SCRIPT TO " + toSqlLiteral(snapshotFile) + " SCHEMA "
+                    + env.getPhysicalSchemas().collect(PhysicalSchema.TO_PHYSICAL_NAME).makeString(", "));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(File snapshotFile) {
+        JdbcHelper jdbc = new JdbcHelper();
+
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            // dropping a schema drops all its objects, including foreign keys referenced from the other schemas
+            for (PhysicalSchema schema : env.getPhysicalSchemas()) {
+                jdbc.update(conn, "DROP SCHEMA IF EXISTS " + schema.getPhysicalName());
+            }
+            executeScriptCommand(conn, "RUNSCRIPT FROM " + toSqlLiteral(snapshotFile));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * SCRIPT returns a result set, so this cannot go through {@link JdbcHelper#update(Connection, String)}, which
+     * uses executeUpdate.
+     */
+    private static void executeScriptCommand(Connection conn, String sql) throws SQLException {
+        Statement statement = conn.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            DbUtils.closeQuietly(statement);
+        }
+    }
+
+    private static String toSqlLiteral(File file) {
+        return "'" + file.getAbsolutePath().replace("'", "''") + "'";
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.gs.obevo.db.impl.platforms.h2;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.Timestamp;
 import java.util.HashSet;
@@ -24,17 +25,37 @@ import java.util.Set;
 
 import javax.sql.DataSource;
 
+import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.api.appdata.Schema;
+import com.gs.obevo.api.platform.DeployMetrics;
 import com.gs.obevo.db.api.appdata.DbEnvironment;
 import com.gs.obevo.db.api.platform.DbDeployerAppContext;
+import com.gs.obevo.db.impl.core.DbDeployerAppContextImpl;
+import com.gs.obevo.db.impl.core.changeauditdao.SameSchemaChangeAuditDao;
+import com.gs.obevo.db.impl.core.checksum.ChecksumBreak;
+import com.gs.obevo.db.impl.core.checksum.ChecksumBreakType;
+import com.gs.obevo.db.impl.core.checksum.ChecksumEntry;
+import com.gs.obevo.db.impl.core.checksum.DbChecksumManagerImpl;
 import com.gs.obevo.db.impl.core.jdbc.JdbcDataSourceFactory;
 import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
+import com.gs.obevo.db.impl.core.reader.CachingTextMarkupDocumentReader;
 import com.gs.obevo.db.unittest.UnitTestDbBuilder;
+import com.gs.obevo.dbmetadata.api.DaCatalog;
+import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
+import com.gs.obevo.impl.DeployMetricsJsonWriter;
 import com.gs.obevo.util.inputreader.Credential;
 import com.gs.obevo.util.vfs.FileRetrievalMode;
 import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.collections.api.block.predicate.Predicate;
+import org.eclipse.collections.api.block.procedure.Procedure;
+import org.eclipse.collections.api.collection.ImmutableCollection;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.map.ImmutableMap;
+import org.eclipse.collections.api.map.MapIterable;
+import org.eclipse.collections.impl.block.factory.Predicates;
 import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.collections.impl.factory.Maps;
 import org.eclipse.collections.impl.factory.Sets;
@@ -46,6 +67,7 @@ import org.slf4j.LoggerFactory;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class H2DeployerTest {
     private static final Logger LOG = LoggerFactory.getLogger(H2DeployerTest.class);
@@ -68,6 +90,369 @@ public class H2DeployerTest {
 
     @Test
     public void testDeploy() throws Exception {
+        deployAndValidate(null);
+    }
+
+    @Test
+    public void testDeployInParallelMode() throws Exception {
+        deployAndValidate(new Procedure<DbEnvironment>() {
+            @Override
+            public void value(DbEnvironment dbEnv) {
+                dbEnv.setParallelDeployEnabled(true);
+            }
+        });
+    }
+
+    @Test
+    public void testDeployInSchemaLaneMode() throws Exception {
+        deployAndValidate(new Procedure<DbEnvironment>() {
+            @Override
+            public void value(DbEnvironment dbEnv) {
+                dbEnv.setSchemaLaneDeployEnabled(true);
+            }
+        });
+    }
+
+    @Test
+    public void testDeployWithConcurrentStartupRead() throws Exception {
+        deployAndValidate(new Procedure<DbEnvironment>() {
+            @Override
+            public void value(DbEnvironment dbEnv) {
+                dbEnv.setConcurrentStartupReadEnabled(true);
+            }
+        });
+    }
+
+    @Test
+    public void testDeployWithLazyChangeContent() throws Exception {
+        deployAndValidate(new Procedure<DbEnvironment>() {
+            @Override
+            public void value(DbEnvironment dbEnv) {
+                dbEnv.setLazyChangeContentEnabled(true);
+            }
+        });
+    }
+
+    @Test
+    public void testDeployWithBatchedAudit() throws Exception {
+        // the executed changes are flushed as each one completes, while the audit-only changes are written in batches
+        deployAndValidate(new Procedure<DbEnvironment>() {
+            @Override
+            public void value(DbEnvironment dbEnv) {
+                dbEnv.setAuditBatchSize(3);
+            }
+        });
+    }
+
+    @Test
+    public void testDeployWithBatchedAuditInSchemaLaneMode() throws Exception {
+        // each lane flushes the audit entries of its own schema
+        deployAndValidate(new Procedure<DbEnvironment>() {
+            @Override
+            public void value(DbEnvironment dbEnv) {
+                dbEnv.setAuditBatchSize(3);
+                dbEnv.setSchemaLaneDeployEnabled(true);
+            }
+        });
+    }
+
+    @Test
+    public void testReadSourceInParallelMode() throws Exception {
+        ImmutableList<Change> sequentialChanges = readSource(false);
+        ImmutableList<Change> parallelChanges = readSource(true);
+
+        assertTrue(sequentialChanges.notEmpty());
+        assertEquals(sequentialChanges.collect(Change.TO_CHANGE_KEY), parallelChanges.collect(Change.TO_CHANGE_KEY));
+        assertEquals(sequentialChanges.collect(Change.TO_CONTENT), parallelChanges.collect(Change.TO_CONTENT));
+    }
+
+    @Test
+    public void testReadSourceWithLazyChangeContent() throws Exception {
+        ImmutableList<Change> eagerChanges = readSource(false, null, false);
+        ImmutableList<Change> lazyChanges = readSource(false, null, true);
+
+        assertTrue(eagerChanges.notEmpty());
+        assertEquals(eagerChanges.collect(Change.TO_CHANGE_KEY), lazyChanges.collect(Change.TO_CHANGE_KEY));
+        assertEquals(eagerChanges.collect(Change.TO_CONTENT), lazyChanges.collect(Change.TO_CONTENT));
+        assertEquals(eagerChanges.collect(Change.contentHash()), lazyChanges.collect(Change.contentHash()));
+        for (int i = 0; i < eagerChanges.size(); i++) {
+            Change lazyChange = lazyChanges.get(i);
+            assertEquals(eagerChanges.get(i).getConvertedContent(), lazyChange.getConvertedContent());
+            assertEquals(eagerChanges.get(i).getAcceptableHashes(), lazyChange.getAcceptableHashes());
+
+            // the released content is converted again on demand
+            lazyChange.releaseConvertedContent();
+            assertEquals(eagerChanges.get(i).getConvertedContent(), lazyChange.getConvertedContent());
+        }
+    }
+
+    @Test
+    public void testReadSourceWithParseCache() throws Exception {
+        File workDir = new File("./target/H2DeployerTest/parseCache");
+        FileUtils.deleteQuietly(workDir);
+
+        ImmutableList<Change> uncachedChanges = readSource(false);
+        ImmutableList<Change> firstRunChanges = readSource(false, workDir);
+        assertTrue(new File(workDir, CachingTextMarkupDocumentReader.CACHE_FILE_NAME).exists());
+        ImmutableList<Change> secondRunChanges = readSource(false, workDir);
+
+        assertEquals(uncachedChanges.collect(Change.TO_CHANGE_KEY), firstRunChanges.collect(Change.TO_CHANGE_KEY));
+        assertEquals(uncachedChanges.collect(Change.TO_CHANGE_KEY), secondRunChanges.collect(Change.TO_CHANGE_KEY));
+        assertEquals(uncachedChanges.collect(Change.TO_CONTENT), secondRunChanges.collect(Change.TO_CONTENT));
+    }
+
+    @Test
+    public void testDeployMetricsReport() throws Exception {
+        File workDir = new File("./target/H2DeployerTest/metricsReport");
+        FileUtils.deleteQuietly(workDir);
+
+        DbEnvironment dbEnv = new DbEnvironment();
+        dbEnv.setSourceDirs(Lists.mutable.with(FileRetrievalMode.FILE_SYSTEM.resolveSingleFileObject("./src/test/resources/platforms/h2/step1")));
+        dbEnv.setName("test");
+        dbEnv.setPlatform(new H2DbPlatform());
+        dbEnv.setSchemas(Sets.immutable.with(new Schema("SCHEMA1"), new Schema("SCHEMA2")));
+        dbEnv.setDbServer("metricsTest");
+        dbEnv.setNullToken("(null)");
+        dbEnv.setDataDelimiter('^');
+        dbEnv.setCleanBuildAllowed(true);
+
+        DbDeployerAppContext context = dbEnv.getAppContextBuilder()
+                .setCredential(new Credential("sa", ""))
+                .setWorkDir(workDir)
+                .build();
+        context.setupEnvInfra();
+        context.cleanEnvironment();
+        context.deploy();
+
+        ImmutableMap<String, Object> metrics = context.getDeployMetrics().toSerializedForm();
+        for (String timingKey : Lists.mutable.with("phase.sourceRead", "phase.auditRead", "phase.sort", "phase.changesetCalculation", "phase.execute", "phase.postDeploy", "change.TABLE", "jdbc.update", "metadata.getTableInfo")) {
+            MapIterable<String, Object> timing = (MapIterable<String, Object>) metrics.get(DeployMetrics.TIMINGS_PREFIX + "." + timingKey);
+            assertNotNull("Expecting timing " + timingKey + " in " + metrics.keysView(), timing);
+            assertTrue(((Long) timing.get("count")) > 0);
+        }
+
+        String report = FileUtils.readFileToString(new File(workDir, DeployMetricsJsonWriter.DEFAULT_FILE_NAME));
+        assertTrue(report.contains("\"timings.phase.execute\": {"));
+        assertTrue(report.contains("\"p99Millis\": "));
+    }
+
+    @Test
+    public void testCleanInParallelMode() throws Exception {
+        DbEnvironment dbEnv = new DbEnvironment();
+        dbEnv.setSourceDirs(Lists.mutable.with(FileRetrievalMode.FILE_SYSTEM.resolveSingleFileObject("./src/test/resources/platforms/h2/step1")));
+        dbEnv.setName("test");
+        dbEnv.setPlatform(new H2DbPlatform());
+        dbEnv.setSchemas(Sets.immutable.with(new Schema("SCHEMA1"), new Schema("SCHEMA2")));
+        dbEnv.setDbServer("parallelCleanTest");
+        dbEnv.setNullToken("(null)");
+        dbEnv.setDataDelimiter('^');
+        dbEnv.setCleanBuildAllowed(true);
+        dbEnv.setParallelCleanEnabled(true);
+        dbEnv.setNumThreads(4);
+
+        DbDeployerAppContext context = dbEnv.getAppContextBuilder()
+                .setCredential(new Credential("sa", ""))
+                .build();
+        context.setupEnvInfra();
+        context.cleanEnvironment();
+        context.deploy();
+
+        DaSchemaInfoLevel schemaInfoLevel = new DaSchemaInfoLevel().setRetrieveAllObjectsMinimum();
+        assertTrue(context.getDbMetadataManager().getDatabase(new PhysicalSchema("SCHEMA1"), schemaInfoLevel, true, true).getTables().notEmpty());
+
+        context.cleanEnvironment();
+
+        for (String schema : Lists.mutable.with("SCHEMA1", "SCHEMA2")) {
+            DaCatalog database = context.getDbMetadataManager().getDatabase(new PhysicalSchema(schema), schemaInfoLevel, true, true);
+            assertTrue("Remaining tables in " + schema + ": " + database.getTables(), database.getTables().isEmpty());
+            assertTrue("Remaining sequences in " + schema + ": " + database.getSequences(), database.getSequences().isEmpty());
+        }
+
+        // the environment can be deployed again after the clean
+        context.deploy();
+    }
+
+    @Test
+    public void testDeployWithAuditSnapshot() throws Exception {
+        File workDir = new File("./target/H2DeployerTest/auditSnapshot");
+        FileUtils.deleteQuietly(workDir);
+
+        DbDeployerAppContext step1Context = getAuditSnapshotContext("step1", workDir);
+        step1Context.setupEnvInfra();
+        step1Context.cleanEnvironment();
+        step1Context.deploy();
+        assertSnapshotReadMatchesFullRead(step1Context);
+        assertTrue(new File(workDir, SameSchemaChangeAuditDao.AUDIT_SNAPSHOT_FILE_PREFIX + "test-SCHEMA1.bin").exists());
+
+        // step2 is deployed on top of the snapshot, which only fetches the rows written since
+        DbDeployerAppContext step2Context = getAuditSnapshotContext("step2", workDir);
+        step2Context.deploy();
+        assertSnapshotReadMatchesFullRead(step2Context);
+
+        // rows rewritten without a newer deploy execution id (e.g. a manual fix of the audit table) are below the
+        // watermark; the latest update time per execution should catch those
+        final JdbcHelper contextJdbc = step2Context.getSqlExecutor().getJdbcTemplate();
+        step2Context.getSqlExecutor().executeWithinContext(new PhysicalSchema("SCHEMA1"), new Procedure<Connection>() {
+            @Override
+            public void value(Connection conn) {
+                assertTrue(contextJdbc.update(conn, "UPDATE SCHEMA1.ARTIFACTDEPLOYMENT SET CONTENTHASH = 'manuallyFixedHash'"
+                        + ", TIME_UPDATED = DATEADD('DAY', 1, CURRENT_TIMESTAMP) WHERE OBJECTNAME = 'TABLE_A'") > 0);
+            }
+        });
+        assertSnapshotReadMatchesFullRead(step2Context);
+
+        // deletes are not stamped with a deploy execution id; the row count check should catch those
+        step2Context.getSqlExecutor().executeWithinContext(new PhysicalSchema("SCHEMA1"), new Procedure<Connection>() {
+            @Override
+            public void value(Connection conn) {
+                assertTrue(contextJdbc.update(conn, "DELETE FROM SCHEMA1.ARTIFACTDEPLOYMENT WHERE OBJECTNAME = 'TABLE_B'") > 0);
+            }
+        });
+        assertSnapshotReadMatchesFullRead(step2Context);
+    }
+
+    private DbDeployerAppContext getAuditSnapshotContext(String sourceDir, File workDir) {
+        DbEnvironment dbEnv = new DbEnvironment();
+        dbEnv.setSourceDirs(Lists.mutable.with(FileRetrievalMode.FILE_SYSTEM.resolveSingleFileObject("./src/test/resources/platforms/h2/" + sourceDir)));
+        dbEnv.setName("test");
+        dbEnv.setPlatform(new H2DbPlatform());
+        dbEnv.setSchemas(Sets.immutable.with(new Schema("SCHEMA1"), new Schema("SCHEMA2")));
+        dbEnv.setDbServer("auditSnapshotTest");
+        dbEnv.setNullToken("(null)");
+        dbEnv.setDataDelimiter('^');
+        dbEnv.setCleanBuildAllowed(true);
+        dbEnv.setAuditSnapshotEnabled(workDir != null);
+
+        return dbEnv.getAppContextBuilder()
+                .setCredential(new Credential("sa", ""))
+                .setWorkDir(workDir)
+                .build();
+    }
+
+    private void assertSnapshotReadMatchesFullRead(DbDeployerAppContext context) {
+        DbDeployerAppContextImpl fullReadContext = (DbDeployerAppContextImpl) getAuditSnapshotContext("step1", null);
+        ImmutableList<Change> fullReadChanges = fullReadContext.getArtifactDeployerDao().getDeployedChanges();
+        ImmutableList<Change> snapshotChanges = ((DbDeployerAppContextImpl) context).getArtifactDeployerDao().getDeployedChanges();
+
+        assertTrue(fullReadChanges.notEmpty());
+        assertEquals(toAuditStrings(fullReadChanges), toAuditStrings(snapshotChanges));
+    }
+
+    private Set<String> toAuditStrings(ImmutableList<Change> changes) {
+        Set<String> auditStrings = new HashSet<String>();
+        for (Change change : changes) {
+            auditStrings.add(change.getSchema() + ":" + change.getObjectName() + ":" + change.getChangeName() + ":" + change.getContentHash()
+                    + ":" + change.isActive() + ":" + change.getChangeType().getName() + ":" + change.getTimeInserted() + ":" + change.getTimeUpdated());
+        }
+        return auditStrings;
+    }
+
+    @Test
+    public void testChecksumReconciliation() throws Exception {
+        DbEnvironment dbEnv = new DbEnvironment();
+        dbEnv.setSourceDirs(Lists.mutable.with(FileRetrievalMode.FILE_SYSTEM.resolveSingleFileObject("./src/test/resources/platforms/h2/step1")));
+        dbEnv.setName("test");
+        dbEnv.setPlatform(new H2DbPlatform());
+        dbEnv.setSchemas(Sets.immutable.with(new Schema("SCHEMA1"), new Schema("SCHEMA2")));
+        dbEnv.setDbServer("checksumTest");
+        dbEnv.setNullToken("(null)");
+        dbEnv.setDataDelimiter('^');
+        dbEnv.setCleanBuildAllowed(true);
+        dbEnv.setChecksumDetectionEnabled(true);
+        dbEnv.setNumThreads(4);
+
+        DbDeployerAppContext context = dbEnv.getAppContextBuilder()
+                .setCredential(new Credential("sa", ""))
+                .build();
+        context.setupEnvInfra();
+        context.cleanEnvironment();
+        context.deploy();
+
+        DbChecksumManagerImpl checksumManager = new DbChecksumManagerImpl(context.getDbMetadataManager(), context.getDbChecksumDao(), dbEnv.getPhysicalSchemas(), 4);
+
+        // the deploy only records the objects in the source; bring in the rest (e.g. the audit tables) as well
+        checksumManager.applyChecksumDiffs(Predicates.alwaysTrue());
+        assertTrue(checksumManager.determineChecksumDifferences(Predicates.alwaysTrue()).isEmpty());
+
+        // go through the context's executor so that its metadata cache sees the changes
+        final JdbcHelper contextJdbc = context.getSqlExecutor().getJdbcTemplate();
+        context.getSqlExecutor().executeWithinContext(new PhysicalSchema("SCHEMA1"), new Procedure<Connection>() {
+            @Override
+            public void value(Connection conn) {
+                contextJdbc.execute(conn, "ALTER TABLE SCHEMA1.TABLE_A ADD COLUMN CHECKSUM_NEW INT NULL");
+                contextJdbc.execute(conn, "ALTER TABLE SCHEMA1.TABLE_A ALTER COLUMN C_ID BIGINT");
+                contextJdbc.execute(conn, "ALTER TABLE SCHEMA2.PRODUCT DROP COLUMN DESC");
+            }
+        });
+
+        ImmutableCollection<ChecksumBreak> checksumBreaks = checksumManager.determineChecksumDifferences(Predicates.alwaysTrue());
+        assertEquals(3, checksumBreaks.size());
+        assertEquals(ChecksumBreakType.IN_DB_BUT_NOT_AUDIT, getChecksumBreakType(checksumBreaks, ":TABLE:TABLE_A:CHECKSUM_NEW"));
+        assertEquals(ChecksumBreakType.DIFFERENCE, getChecksumBreakType(checksumBreaks, ":TABLE:TABLE_A:C_ID"));
+        assertEquals(ChecksumBreakType.IN_AUDIT_BUT_NOT_DB, getChecksumBreakType(checksumBreaks, ":TABLE:PRODUCT:DESC"));
+
+        checksumManager.applyChecksumDiffs(Predicates.alwaysTrue());
+        assertTrue(checksumManager.determineChecksumDifferences(Predicates.alwaysTrue()).isEmpty());
+
+        // an entry to update whose row was removed in the meantime is inserted instead
+        PhysicalSchema schema1 = new PhysicalSchema("SCHEMA1");
+        final ChecksumEntry removedEntry = context.getDbChecksumDao().getPersistedEntries(schema1).detect(new Predicate<ChecksumEntry>() {
+            @Override
+            public boolean accept(ChecksumEntry entry) {
+                return entry.getKey().endsWith(":TABLE:TABLE_A:C_ID");
+            }
+        });
+        assertNotNull(removedEntry);
+        context.getSqlExecutor().executeWithinContext(schema1, new Procedure<Connection>() {
+            @Override
+            public void value(Connection conn) {
+                contextJdbc.update(conn, "DELETE FROM SCHEMA1.ARTIFACTDBCHECKSUM WHERE OBJECTNAME1 = ? AND OBJECTNAME2 = ?", removedEntry.getName1(), removedEntry.getName2());
+            }
+        });
+        context.getDbChecksumDao().applyEntryChanges(schema1, Lists.immutable.<ChecksumEntry>empty(), Lists.immutable.with(removedEntry), Lists.immutable.<ChecksumEntry>empty());
+        assertTrue(checksumManager.determineChecksumDifferences(Predicates.alwaysTrue()).isEmpty());
+    }
+
+    private ChecksumBreakType getChecksumBreakType(ImmutableCollection<ChecksumBreak> checksumBreaks, String keySuffix) {
+        for (ChecksumBreak checksumBreak : checksumBreaks) {
+            if (checksumBreak.getKey().endsWith(keySuffix)) {
+                return checksumBreak.getChecksumBreakType();
+            }
+        }
+        return null;
+    }
+
+    private ImmutableList<Change> readSource(boolean parallelSourceReadEnabled) {
+        return readSource(parallelSourceReadEnabled, null);
+    }
+
+    private ImmutableList<Change> readSource(boolean parallelSourceReadEnabled, File workDir) {
+        return readSource(parallelSourceReadEnabled, workDir, false);
+    }
+
+    private ImmutableList<Change> readSource(boolean parallelSourceReadEnabled, File workDir, boolean lazyChangeContentEnabled) {
+        DbEnvironment dbEnv = new DbEnvironment();
+        dbEnv.setSourceDirs(Lists.mutable.with(FileRetrievalMode.FILE_SYSTEM.resolveSingleFileObject("./src/test/resources/platforms/h2/step1")));
+        dbEnv.setName("test");
+        dbEnv.setPlatform(new H2DbPlatform());
+        dbEnv.setSchemas(Sets.immutable.with(new Schema("SCHEMA1"), new Schema("SCHEMA2")));
+        dbEnv.setDbServer("BLAH");
+        dbEnv.setParallelSourceReadEnabled(parallelSourceReadEnabled);
+        dbEnv.setNumThreads(4);
+        dbEnv.setSourceParseCacheEnabled(workDir != null);
+        dbEnv.setLazyChangeContentEnabled(lazyChangeContentEnabled);
+
+        return dbEnv.getAppContextBuilder()
+                .setCredential(new Credential("sa", ""))
+                .setWorkDir(workDir)
+                .build()
+                .readChangesFromSource();
+    }
+
+    /**
+     * @param envCustomizer sets the deploy options to test on the environment; may be null to use the defaults
+     */
+    private void deployAndValidate(Procedure<DbEnvironment> envCustomizer) throws Exception {
         // First, test out the new inserts, including strings that look like numbers (the 0006 case)
 
         DbEnvironment dbEnv = new DbEnvironment();
@@ -81,6 +466,9 @@ public class H2DeployerTest {
         dbEnv.setNullToken("(null)");
         dbEnv.setDataDelimiter('^');
         dbEnv.setCleanBuildAllowed(true);
+        if (envCustomizer != null) {
+            envCustomizer.value(dbEnv);
+        }
 
         LOG.info("Step 1 - Setup context");
         DbDeployerAppContext context = dbEnv.getAppContextBuilder()
@@ -163,6 +551,32 @@ public class H2DeployerTest {
         assertEquals(4, result);
     }
 
+    @Test
+    public void testUnitTestDeployWithSnapshot() throws Exception {
+        DbDeployerAppContext context = new UnitTestDbBuilder()
+                .setReferenceEnvName("test")
+                .setEnvName("testSnapshot")
+                .setSourcePath("./src/test/resources/platforms/h2/step1")
+                .setDbPlatform(new H2DbPlatform())
+                .setDbServer("SNAPSHOTDB")
+                .setSnapshotEnabled(true)
+                .buildContext();
+        context.setupEnvInfra();
+        context.cleanAndDeploy();  // first call deploys and takes the snapshot
+
+        this.setupVerification(context);
+        this.conn = context.getDataSource().getConnection();
+        this.jdbc.update(conn, "delete from bogusSchema.TABLE_A");
+        this.jdbc.update(conn, "create table bogusSchema.EXTRA_TABLE (ID INT)");
+        assertEquals(0, this.jdbc.queryForInt(conn, "select count(*) from bogusSchema.TABLE_A"));
+
+        context.cleanAndDeploy();  // second call restores the snapshot
+
+        assertEquals(4, this.jdbc.queryForInt(conn, "select count(*) from bogusSchema.TABLE_A"));
+        assertEquals(4, this.jdbc.queryForInt(conn, "select count(*) from bogusSchema.VIEW1"));
+        assertEquals(0, this.jdbc.queryForInt(conn, "select count(*) from INFORMATION_SCHEMA.TABLES where TABLE_NAME = 'EXTRA_TABLE'"));
+    }
+
     @Test
     public void testUnitTestDeployLimitTablesAndViews() throws Exception {
         Set<String> tables = new HashSet<String>();
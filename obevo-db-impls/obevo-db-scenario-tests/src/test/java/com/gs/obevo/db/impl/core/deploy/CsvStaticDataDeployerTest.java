@@ -30,6 +30,7 @@ import com.gs.obevo.db.api.platform.SqlExecutor;
 import com.gs.obevo.db.impl.core.changetypes.CsvStaticDataDeployer;
 import com.gs.obevo.db.impl.core.jdbc.JdbcDataSourceFactory;
 import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
+import com.gs.obevo.db.impl.core.jdbc.JdbcUpdateListener;
 import com.gs.obevo.db.impl.core.reader.TextMarkupDocumentReader;
 import com.gs.obevo.db.impl.platforms.h2.H2DbPlatform;
 import com.gs.obevo.db.impl.platforms.h2.H2JdbcDataSourceFactory;
@@ -37,10 +38,12 @@ import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import com.gs.obevo.dbmetadata.impl.DbMetadataDialect;
 import com.gs.obevo.dbmetadata.impl.DbMetadataManagerImpl;
 import com.gs.obevo.dbmetadata.impl.dialects.H2MetadataDialect;
+import com.gs.obevo.impl.DeployMetricsCollector;
 import com.gs.obevo.impl.ExecuteChangeCommand;
 import com.gs.obevo.util.inputreader.Credential;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.handlers.MapListHandler;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.procedure.Procedure;
 import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
 import org.joda.time.LocalDateTime;
@@ -91,10 +94,15 @@ public class CsvStaticDataDeployerTest {
      */
     @Test
     public void testPrimaryKey() {
-        this.testPrimaryKeyOverride();
+        this.testPrimaryKeyOverride(false);
     }
 
-    private void testPrimaryKeyOverride() {
+    @Test
+    public void testPrimaryKeyStreaming() {
+        this.testPrimaryKeyOverride(true);
+    }
+
+    private void testPrimaryKeyOverride(boolean streaming) {
         this.jdbc.execute(conn, "CREATE TABLE " + schema + "." + table + " (\n" +
                 "AID    INT NOT NULL,\n" +
                 "BID    INT NOT NULL,\n" +
@@ -108,6 +116,7 @@ public class CsvStaticDataDeployerTest {
         env.setPlatform(PLATFORM);
         env.setNullToken("(null)");
         env.setDataDelimiter('^');
+        env.setStaticDataStreamingEnabled(streaming);
 
         Change artifact = mock(Change.class);
         when(artifact.getPhysicalSchema()).thenReturn(new PhysicalSchema(schema));
@@ -143,18 +152,24 @@ public class CsvStaticDataDeployerTest {
 
     @Test
     public void testNormalInsertAndDeleteUseCase() {
-        this.testNormalInsertAndDeleteUseCase(false);
+        this.testNormalInsertAndDeleteUseCase(false, false);
     }
+
+    @Test
+    public void testNormalInsertAndDeleteUseCaseStreaming() {
+        this.testNormalInsertAndDeleteUseCase(false, true);
+    }
+
     /**
      * This use case is here to simulate if we wrote the CSV files for a case-sensitive DB like Sybase ASE, but then
      * we do the translation to run in H2, which is case-INsensitive. So we need to ensure that this still works
      */
     @Test
     public void testCaseSensitivity() {
-        this.testNormalInsertAndDeleteUseCase(true);
+        this.testNormalInsertAndDeleteUseCase(true, false);
     }
 
-    private void testNormalInsertAndDeleteUseCase(boolean caseSensitiveCsv) {
+    private void testNormalInsertAndDeleteUseCase(boolean caseSensitiveCsv, boolean streaming) {
         this.jdbc.execute(conn, "CREATE TABLE " + schema + "." + table + " (\n" +
                 "AID    INT NOT NULL,\n" +
                 "BID    INT NOT NULL,\n" +
@@ -169,6 +184,7 @@ public class CsvStaticDataDeployerTest {
         env.setPlatform(PLATFORM);
         env.setNullToken("(null)");
         env.setDataDelimiter('^');
+        env.setStaticDataStreamingEnabled(streaming);
 
         Change artifact = mock(Change.class);
         when(artifact.getPhysicalSchema()).thenReturn(new PhysicalSchema(schema));
@@ -226,6 +242,159 @@ public class CsvStaticDataDeployerTest {
         this.verifyRow(results.get(3), 5, 5, "ABCD", null, 9, preDeployTime, true);
     }
 
+    /**
+     * Updates that change different sets of columns go into separate batches; this verifies that each row still gets
+     * its own values.
+     */
+    @Test
+    public void testBatchedUpdatesAndDeletes() {
+        this.jdbc.execute(conn, "CREATE TABLE " + schema + "." + table + " (\n" +
+                "AID    INT NOT NULL,\n" +
+                "STRINGFIELD VARCHAR(30)\tNULL,\n" +
+                "CID    INT NULL,\n" +
+                "PRIMARY KEY (AID)\n" +
+                ")\n");
+
+        DbEnvironment env = new DbEnvironment();
+        env.setPlatform(PLATFORM);
+        env.setNullToken("(null)");
+        env.setDataDelimiter('^');
+
+        Change artifact = mock(Change.class);
+        when(artifact.getPhysicalSchema()).thenReturn(new PhysicalSchema(schema));
+        when(artifact.getObjectName()).thenReturn(table);
+
+        StringBuilder initialContent = new StringBuilder("AID^STRINGFIELD^CID\n");
+        for (int i = 1; i <= 300; i++) {
+            initialContent.append(i).append("^A").append(i).append("^").append(i).append("\n");
+        }
+        when(artifact.getConvertedContent()).thenReturn(initialContent.toString());
+
+        CsvStaticDataDeployer csvStaticDataDeployer = new CsvStaticDataDeployer(env, getSqlExecutor(), this.ds, metadataManager, new H2DbPlatform());
+        csvStaticDataDeployer.deployArtifact(artifact);
+
+        // even rows: update STRINGFIELD only; rows divisible by 3: update CID only (and both if divisible by 6);
+        // rows above 250 are deleted
+        StringBuilder updatedContent = new StringBuilder("AID^STRINGFIELD^CID\n");
+        for (int i = 1; i <= 250; i++) {
+            String stringField = i % 2 == 0 ? "B" + i : "A" + i;
+            int cId = i % 3 == 0 ? -i : i;
+            updatedContent.append(i).append("^").append(stringField).append("^").append(cId).append("\n");
+        }
+        when(artifact.getConvertedContent()).thenReturn(updatedContent.toString());
+        csvStaticDataDeployer.deployArtifact(artifact);
+
+        List<Map<String, Object>> results = this.jdbc.query(conn, "select * from " + schema + "." + table + " order by AID",
+                new MapListHandler());
+        assertEquals(250, results.size());
+        for (int i = 1; i <= 250; i++) {
+            Map<String, Object> row = results.get(i - 1);
+            assertEquals(i, row.get("AID"));
+            assertEquals(i % 2 == 0 ? "B" + i : "A" + i, row.get("STRINGFIELD"));
+            assertEquals(i % 3 == 0 ? -i : i, row.get("CID"));
+        }
+    }
+
+    /**
+     * H2 sorts nulls first while the comparator sorts them last, so the streaming mode must detect the ordering
+     * difference on the nullable unique key and fall back to the in-memory comparison.
+     */
+    @Test
+    public void testStreamingFallsBackOnSortOrderMismatch() {
+        this.jdbc.execute(conn, "CREATE TABLE " + schema + "." + table + " (\n" +
+                "AID    INT NOT NULL,\n" +
+                "STRINGFIELD VARCHAR(30)\tNULL,\n" +
+                ")\n");
+        this.jdbc.execute(conn, "CREATE UNIQUE INDEX " + table + "_UIDX ON " + schema + "." + table + " (STRINGFIELD)");
+
+        DbEnvironment env = new DbEnvironment();
+        env.setPlatform(PLATFORM);
+        env.setNullToken("(null)");
+        env.setDataDelimiter('^');
+        env.setStaticDataStreamingEnabled(true);
+
+        Change artifact = mock(Change.class);
+        when(artifact.getPhysicalSchema()).thenReturn(new PhysicalSchema(schema));
+        when(artifact.getObjectName()).thenReturn(table);
+        when(artifact.getConvertedContent()).thenReturn(
+                "AID^STRINGFIELD\n" +
+                        "1^A\n" +
+                        "2^(null)\n" +
+                        "3^C\n"
+        );
+
+        CsvStaticDataDeployer csvStaticDataDeployer = new CsvStaticDataDeployer(env, getSqlExecutor(), this.ds, metadataManager, new H2DbPlatform());
+        csvStaticDataDeployer.deployArtifact(artifact);
+
+        when(artifact.getConvertedContent()).thenReturn(
+                "AID^STRINGFIELD\n" +
+                        "1^A\n" +
+                        "2^(null)\n" +
+                        "5^D\n"
+        );
+        csvStaticDataDeployer.deployArtifact(artifact);
+
+        List<Map<String, Object>> results = this.jdbc.query(conn, "select * from " + schema + "." + table + " order by AID",
+                new MapListHandler());
+        assertEquals(3, results.size());
+        assertEquals(1, results.get(0).get("AID"));
+        assertEquals("A", results.get(0).get("STRINGFIELD"));
+        assertEquals(2, results.get(1).get("AID"));
+        assertEquals(null, results.get(1).get("STRINGFIELD"));
+        assertEquals(5, results.get(2).get("AID"));
+        assertEquals("D", results.get(2).get("STRINGFIELD"));
+    }
+
+    /**
+     * A file that is not in key order cannot be merged as is; the streaming mode should then sort the file side in
+     * memory and still stream the table.
+     */
+    @Test
+    public void testStreamingWithUnsortedFile() {
+        this.jdbc.execute(conn, "CREATE TABLE " + schema + "." + table + " (\n" +
+                "AID    INT NOT NULL,\n" +
+                "STRINGFIELD VARCHAR(30)\tNULL,\n" +
+                "PRIMARY KEY (AID)\n" +
+                ")\n");
+
+        DbEnvironment env = new DbEnvironment();
+        env.setPlatform(PLATFORM);
+        env.setNullToken("(null)");
+        env.setDataDelimiter('^');
+        env.setStaticDataStreamingEnabled(true);
+
+        Change artifact = mock(Change.class);
+        when(artifact.getPhysicalSchema()).thenReturn(new PhysicalSchema(schema));
+        when(artifact.getObjectName()).thenReturn(table);
+        when(artifact.getConvertedContent()).thenReturn(
+                "AID^STRINGFIELD\n" +
+                        "3^C\n" +
+                        "1^A\n" +
+                        "2^B\n"
+        );
+
+        CsvStaticDataDeployer csvStaticDataDeployer = new CsvStaticDataDeployer(env, getSqlExecutor(), this.ds, metadataManager, new H2DbPlatform());
+        csvStaticDataDeployer.deployArtifact(artifact);
+
+        when(artifact.getConvertedContent()).thenReturn(
+                "AID^STRINGFIELD\n" +
+                        "4^D\n" +
+                        "2^BB\n" +
+                        "1^A\n"
+        );
+        csvStaticDataDeployer.deployArtifact(artifact);
+
+        List<Map<String, Object>> results = this.jdbc.query(conn, "select * from " + schema + "." + table + " order by AID",
+                new MapListHandler());
+        assertEquals(3, results.size());
+        assertEquals(1, results.get(0).get("AID"));
+        assertEquals("A", results.get(0).get("STRINGFIELD"));
+        assertEquals(2, results.get(1).get("AID"));
+        assertEquals("BB", results.get(1).get("STRINGFIELD"));
+        assertEquals(4, results.get(2).get("AID"));
+        assertEquals("D", results.get(2).get("STRINGFIELD"));
+    }
+
     private void verifyRow(Map<String, Object> stringObjectMap, Integer aId, Integer bId, String stringField,
             LocalDateTime timestampField, Integer cId, LocalDateTime startTime, boolean greater) {
         assertEquals(aId, stringObjectMap.get("AID"));
@@ -416,6 +585,24 @@ public class CsvStaticDataDeployerTest {
                 }
             }
 
+            @Override
+            public <T> T executeWithPinnedConnection(Function0<T> function) {
+                return function.value();
+            }
+
+            @Override
+            public void addUpdateListener(JdbcUpdateListener updateListener) {
+            }
+
+            @Override
+            public PhysicalSchema getContextSchema(Connection conn) {
+                return null;
+            }
+
+            @Override
+            public void setDeployMetricsCollector(DeployMetricsCollector deployMetricsCollector) {
+            }
+
             @Override
             public void performExtraCleanOperation(ExecuteChangeCommand command, DbMetadataManager metaDataMgr) {
 
@@ -36,4 +36,12 @@ public class IqSqlExecutor extends AbstractSqlExecutor {
     public void setDataSourceSchema(Connection conn, PhysicalSchema schema) {
         iqDs.setCurrentSchema(schema);
     }
+
+    /**
+     * The schema switch changes the data source to get the connections from rather than acting on the connection.
+     */
+    @Override
+    protected boolean isSchemaTrackingSupported() {
+        return false;
+    }
 }
@@ -24,6 +24,7 @@ import com.gs.obevo.db.api.factory.DbPlatformConfiguration;
 import com.gs.obevo.db.api.platform.DbDeployerAppContext;
 import com.gs.obevo.db.api.platform.DbPlatform;
 import com.gs.obevo.db.api.platform.DbTranslationDialect;
+import com.gs.obevo.util.hash.ContentHashAlgorithm;
 import com.gs.obevo.util.inputreader.Credential;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.list.ImmutableList;
@@ -46,6 +47,16 @@ public class DbEnvironment extends Environment<DbPlatform> {
     private boolean autoReorgEnabled;
     private boolean persistToFile;
     private boolean disableAuditTracking;
+    private int auditBatchSize = 1;
+    private boolean metadataCacheEnabled = true;
+    private boolean staticDataStreamingEnabled = false;
+    private boolean parallelSourceReadEnabled = false;
+    private boolean lazyChangeContentEnabled = false;
+    private boolean sourceParseCacheEnabled = false;
+    private boolean parallelCleanEnabled = false;
+    private boolean auditSnapshotEnabled = false;
+    private boolean translationCacheEnabled = false;
+    private ContentHashAlgorithm contentHashAlgorithm = ContentHashAlgorithm.MD5;
     private ImmutableList<Permission> permissions = Lists.immutable.empty();
 
     private String jdbcUrl;
@@ -62,6 +73,7 @@ public class DbEnvironment extends Environment<DbPlatform> {
     private boolean checksumDetectionEnabled = false;
     private boolean invalidObjectCheckEnabled = true;
     private boolean reorgCheckEnabled = true;
+    private int maxReorgsPerTablespace = 1;
     private int metadataLineReaderVersion = DbPlatformConfiguration.getInstance().getFeatureToggleVersion("metadataLineReaderVersion");
     private int csvVersion = DbPlatformConfiguration.getInstance().getFeatureToggleVersion("csvVersion");
     private String sourceEncoding = DbPlatformConfiguration.getInstance().getSourceEncoding();
@@ -92,6 +104,16 @@ public class DbEnvironment extends Environment<DbPlatform> {
         this.autoReorgEnabled = env.autoReorgEnabled;
         this.persistToFile = env.persistToFile;
         this.disableAuditTracking = env.disableAuditTracking;
+        this.auditBatchSize = env.auditBatchSize;
+        this.metadataCacheEnabled = env.metadataCacheEnabled;
+        this.staticDataStreamingEnabled = env.staticDataStreamingEnabled;
+        this.parallelSourceReadEnabled = env.parallelSourceReadEnabled;
+        this.lazyChangeContentEnabled = env.lazyChangeContentEnabled;
+        this.sourceParseCacheEnabled = env.sourceParseCacheEnabled;
+        this.parallelCleanEnabled = env.parallelCleanEnabled;
+        this.auditSnapshotEnabled = env.auditSnapshotEnabled;
+        this.translationCacheEnabled = env.translationCacheEnabled;
+        this.contentHashAlgorithm = env.contentHashAlgorithm;
         this.permissions = env.permissions;
         this.jdbcUrl = env.jdbcUrl;
         this.dbDataSourceName = env.dbDataSourceName;
@@ -105,6 +127,7 @@ public class DbEnvironment extends Environment<DbPlatform> {
         this.checksumDetectionEnabled = env.checksumDetectionEnabled;
         this.invalidObjectCheckEnabled = env.invalidObjectCheckEnabled;
         this.reorgCheckEnabled = env.reorgCheckEnabled;
+        this.maxReorgsPerTablespace = env.maxReorgsPerTablespace;
         this.metadataLineReaderVersion = env.metadataLineReaderVersion;
         this.csvVersion = env.csvVersion;
         this.sourceEncoding = env.sourceEncoding;
@@ -255,6 +278,140 @@ public class DbEnvironment extends Environment<DbPlatform> {
         this.disableAuditTracking = disableAuditTracking;
     }
 
+    /**
+     * Number of audit table writes to buffer per schema before sending them to the database as a single JDBC batch.
+     * Buffered writes are also flushed once each change command has been executed (so that a change that was deployed
+     * is never left unaudited if the process dies), once the audit-only changes have been marked, and before the audit
+     * table is read. Hence, the batching mainly applies to the audit-only changes and to commands covering several
+     * changes. Defaults to 1, i.e. each change is audited as soon as it is deployed.
+     */
+    public int getAuditBatchSize() {
+        return this.auditBatchSize;
+    }
+
+    public void setAuditBatchSize(int auditBatchSize) {
+        this.auditBatchSize = auditBatchSize;
+    }
+
+    /**
+     * Whether the schema metadata should be cached across lookups within a deployer operation. The cache is
+     * invalidated whenever DDL is executed by the tool. Defaults to true.
+     */
+    public boolean isMetadataCacheEnabled() {
+        return this.metadataCacheEnabled;
+    }
+
+    public void setMetadataCacheEnabled(boolean metadataCacheEnabled) {
+        this.metadataCacheEnabled = metadataCacheEnabled;
+    }
+
+    /**
+     * Whether CSV static data should be reconciled by streaming the table contents sorted by its key columns, instead
+     * of reading the whole table into memory. Only the rows that differ are kept in memory. Falls back to the in-memory
+     * comparison if the database sort order does not match the comparison order (e.g. due to collation settings).
+     * Defaults to false.
+     */
+    public boolean isStaticDataStreamingEnabled() {
+        return this.staticDataStreamingEnabled;
+    }
+
+    public void setStaticDataStreamingEnabled(boolean staticDataStreamingEnabled) {
+        this.staticDataStreamingEnabled = staticDataStreamingEnabled;
+    }
+
+    /**
+     * Whether the source files should be read and parsed concurrently, using {@link #getNumThreads()} threads. The
+     * changes are returned in the same order as for the sequential read. Mainly useful for large source trees on slow
+     * (e.g. network) file systems. Defaults to false.
+     */
+    public boolean isParallelSourceReadEnabled() {
+        return this.parallelSourceReadEnabled;
+    }
+
+    public void setParallelSourceReadEnabled(boolean parallelSourceReadEnabled) {
+        this.parallelSourceReadEnabled = parallelSourceReadEnabled;
+    }
+
+    /**
+     * Whether the source changes should refer to their content by its location in the source files instead of holding
+     * it in memory, and only convert it (e.g. token replacement) when it is requested. The converted content is
+     * released once a change has been executed. Reduces the heap usage for large source trees, where most changes are
+     * typically already deployed, at the cost of reading the files again on demand. Defaults to false.
+     */
+    public boolean isLazyChangeContentEnabled() {
+        return this.lazyChangeContentEnabled;
+    }
+
+    public void setLazyChangeContentEnabled(boolean lazyChangeContentEnabled) {
+        this.lazyChangeContentEnabled = lazyChangeContentEnabled;
+    }
+
+    /**
+     * Whether the parsed form of the source files should be cached in the work directory across runs, so that
+     * unchanged files are not parsed again. Only takes effect if a work directory is given, and that directory should
+     * be kept across runs (e.g. via the workDir argument). Defaults to false.
+     */
+    public boolean isSourceParseCacheEnabled() {
+        return this.sourceParseCacheEnabled;
+    }
+
+    public void setSourceParseCacheEnabled(boolean sourceParseCacheEnabled) {
+        this.sourceParseCacheEnabled = sourceParseCacheEnabled;
+    }
+
+    /**
+     * Whether the environment cleaner should crawl the schemas and drop the objects concurrently, using
+     * {@link #getNumThreads()} threads. The foreign keys are dropped first, then the views, routines, and other
+     * rerunnable objects (following their dependencies), then the tables. Defaults to false.
+     */
+    public boolean isParallelCleanEnabled() {
+        return this.parallelCleanEnabled;
+    }
+
+    public void setParallelCleanEnabled(boolean parallelCleanEnabled) {
+        this.parallelCleanEnabled = parallelCleanEnabled;
+    }
+
+    /**
+     * Whether a snapshot of the audit table should be kept in the work directory, so that subsequent runs only read the
+     * audit rows written by the deploy executions since the snapshot was taken. Only takes effect if a work directory
+     * is given. Defaults to false.
+     */
+    public boolean isAuditSnapshotEnabled() {
+        return this.auditSnapshotEnabled;
+    }
+
+    public void setAuditSnapshotEnabled(boolean auditSnapshotEnabled) {
+        this.auditSnapshotEnabled = auditSnapshotEnabled;
+    }
+
+    /**
+     * Whether the SQL translations to the in-memory database dialects should be saved in the work directory, so that
+     * subsequent runs (e.g. other test JVMs using the same work directory) do not translate the same statements again.
+     * Translations are always cached in memory within a JVM; this only controls the on-disk copy. Only takes effect if
+     * a work directory is given. Defaults to false.
+     */
+    public boolean isTranslationCacheEnabled() {
+        return this.translationCacheEnabled;
+    }
+
+    public void setTranslationCacheEnabled(boolean translationCacheEnabled) {
+        this.translationCacheEnabled = translationCacheEnabled;
+    }
+
+    /**
+     * The hash function used for the content hashes of the changes read from the source. After switching to
+     * MURMUR3_128, the MD5 hashes already in the audit table are still accepted, so existing changes are not
+     * redeployed. Defaults to MD5.
+     */
+    public ContentHashAlgorithm getContentHashAlgorithm() {
+        return this.contentHashAlgorithm;
+    }
+
+    public void setContentHashAlgorithm(ContentHashAlgorithm contentHashAlgorithm) {
+        this.contentHashAlgorithm = contentHashAlgorithm;
+    }
+
     public String getJdbcUrl() {
         return this.jdbcUrl;
     }
@@ -436,6 +593,18 @@ public class DbEnvironment extends Environment<DbPlatform> {
         this.reorgCheckEnabled = reorgCheckEnabled;
     }
 
+    /**
+     * The maximum number of reorgs that the post-deploy action may run at the same time against tables in the same
+     * tablespace. The overall reorg concurrency is still bounded by {@link #getNumThreads()}. Defaults to 1.
+     */
+    public int getMaxReorgsPerTablespace() {
+        return maxReorgsPerTablespace;
+    }
+
+    public void setMaxReorgsPerTablespace(int maxReorgsPerTablespace) {
+        this.maxReorgsPerTablespace = maxReorgsPerTablespace;
+    }
+
     public int getMetadataLineReaderVersion() {
         return metadataLineReaderVersion;
     }
@@ -33,6 +33,7 @@ import com.gs.obevo.db.api.platform.DbPlatform;
 import com.gs.obevo.util.CollectionUtil;
 import com.gs.obevo.util.Tokenizer;
 import com.gs.obevo.util.VisibleForTesting;
+import com.gs.obevo.util.hash.ContentHashAlgorithm;
 import com.gs.obevo.util.vfs.FileObject;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
@@ -280,10 +281,52 @@ public class DbEnvironmentXmlEnricher implements EnvironmentEnricher<DbEnvironme
 
             dbEnv.setPersistToFile(envCfg.getBoolean("[@persistToFile]", false));
             dbEnv.setDisableAuditTracking(envCfg.getBoolean("[@disableAuditTracking]", false));
+            dbEnv.setAuditBatchSize(
+                    envCfg.getInt("[@auditBatchSize]", sysCfg.getInt("[@auditBatchSize]", dbEnv.getAuditBatchSize()))
+            );
 
             dbEnv.setRollbackDetectionEnabled(
                     envCfg.getBoolean("[@rollbackDetectionEnabled]", sysCfg.getBoolean("[@rollbackDetectionEnabled]", true))
             );
+            dbEnv.setNumThreads(
+                    envCfg.getInt("[@numThreads]", sysCfg.getInt("[@numThreads]", dbEnv.getNumThreads()))
+            );
+            dbEnv.setParallelDeployEnabled(
+                    envCfg.getBoolean("[@parallelDeployEnabled]", sysCfg.getBoolean("[@parallelDeployEnabled]", false))
+            );
+            dbEnv.setSchemaLaneDeployEnabled(
+                    envCfg.getBoolean("[@schemaLaneDeployEnabled]", sysCfg.getBoolean("[@schemaLaneDeployEnabled]", false))
+            );
+            dbEnv.setConcurrentStartupReadEnabled(
+                    envCfg.getBoolean("[@concurrentStartupReadEnabled]", sysCfg.getBoolean("[@concurrentStartupReadEnabled]", false))
+            );
+            dbEnv.setMetadataCacheEnabled(
+                    envCfg.getBoolean("[@metadataCacheEnabled]", sysCfg.getBoolean("[@metadataCacheEnabled]", true))
+            );
+            dbEnv.setStaticDataStreamingEnabled(
+                    envCfg.getBoolean("[@staticDataStreamingEnabled]", sysCfg.getBoolean("[@staticDataStreamingEnabled]", false))
+            );
+            dbEnv.setParallelSourceReadEnabled(
+                    envCfg.getBoolean("[@parallelSourceReadEnabled]", sysCfg.getBoolean("[@parallelSourceReadEnabled]", false))
+            );
+            dbEnv.setLazyChangeContentEnabled(
+                    envCfg.getBoolean("[@lazyChangeContentEnabled]", sysCfg.getBoolean("[@lazyChangeContentEnabled]", false))
+            );
+            dbEnv.setSourceParseCacheEnabled(
+                    envCfg.getBoolean("[@sourceParseCacheEnabled]", sysCfg.getBoolean("[@sourceParseCacheEnabled]", false))
+            );
+            dbEnv.setParallelCleanEnabled(
+                    envCfg.getBoolean("[@parallelCleanEnabled]", sysCfg.getBoolean("[@parallelCleanEnabled]", false))
+            );
+            dbEnv.setAuditSnapshotEnabled(
+                    envCfg.getBoolean("[@auditSnapshotEnabled]", sysCfg.getBoolean("[@auditSnapshotEnabled]", false))
+            );
+            dbEnv.setTranslationCacheEnabled(
+                    envCfg.getBoolean("[@translationCacheEnabled]", sysCfg.getBoolean("[@translationCacheEnabled]", false))
+            );
+            dbEnv.setContentHashAlgorithm(ContentHashAlgorithm.valueOf(
+                    envCfg.getString("[@contentHashAlgorithm]", sysCfg.getString("[@contentHashAlgorithm]", ContentHashAlgorithm.MD5.name())).toUpperCase()
+            ));
             dbEnv.setAutoReorgEnabled(
                     envCfg.getBoolean("[@autoReorgEnabled]", sysCfg.getBoolean("[@autoReorgEnabled]", true))
             );
@@ -293,6 +336,9 @@ public class DbEnvironmentXmlEnricher implements EnvironmentEnricher<DbEnvironme
             dbEnv.setReorgCheckEnabled(
                     envCfg.getBoolean("[@reorgCheckEnabled]", sysCfg.getBoolean("[@reorgCheckEnabled]", true))
             );
+            dbEnv.setMaxReorgsPerTablespace(
+                    envCfg.getInt("[@maxReorgsPerTablespace]", sysCfg.getInt("[@maxReorgsPerTablespace]", dbEnv.getMaxReorgsPerTablespace()))
+            );
             dbEnv.setChecksumDetectionEnabled(
                     envCfg.getBoolean("[@checksumDetectionEnabled]", sysCfg.getBoolean("[@checksumDetectionEnabled]", false))
             );
@@ -116,4 +116,10 @@ public interface DbPlatform extends Platform {
     AbstractDdlReveng getDdlReveng();
 
     String getTableSuffixSql(DbEnvironment env);
+
+    /**
+     * Returns the number of rows to send in each JDBC batch when writing rows in bulk, e.g. when deploying static data
+     * changes or persisting the checksum entries.
+     */
+    int getBulkWriteBatchSize();
 }
@@ -19,8 +19,11 @@ import java.sql.Connection;
 
 import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
+import com.gs.obevo.db.impl.core.jdbc.JdbcUpdateListener;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
+import com.gs.obevo.impl.DeployMetricsCollector;
 import com.gs.obevo.impl.ExecuteChangeCommand;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.procedure.Procedure;
 import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
 
@@ -57,6 +60,31 @@ public interface SqlExecutor {
      */
     <T> T executeWithinContext(PhysicalSchema schema, ThrowingFunction<Connection, T> callable);
 
+    /**
+     * Executes the given function while pinning a connection to the current thread, so that the executeWithinContext
+     * calls within it reuse that connection (and skip the schema switch if the connection is already on the requested
+     * schema) instead of borrowing a connection from the pool on each call.
+     */
+    <T> T executeWithPinnedConnection(Function0<T> function);
+
+    /**
+     * Registers a listener to be notified of the update statements executed via the {@link JdbcHelper} instances
+     * returned from {@link #getJdbcTemplate()}.
+     */
+    void addUpdateListener(JdbcUpdateListener updateListener);
+
+    /**
+     * Returns the schema that the given connection was set to by the enclosing executeWithinContext call, or null if
+     * the connection is not in use by such a call or if a statement on it may have switched its schema since.
+     */
+    PhysicalSchema getContextSchema(Connection conn);
+
+    /**
+     * Sets the collector that the {@link JdbcHelper} instances returned from {@link #getJdbcTemplate()} will record
+     * their statement timings into; no timings are recorded if this is not set.
+     */
+    void setDeployMetricsCollector(DeployMetricsCollector deployMetricsCollector);
+
     /**
      * Unused operation.
      * @param command
@@ -35,6 +35,7 @@ import com.gs.obevo.db.impl.core.checksum.ChecksumBreak;
 import com.gs.obevo.db.impl.core.checksum.ChecksumEntry;
 import com.gs.obevo.db.impl.core.checksum.ChecksumEntryInclusionPredicate;
 import com.gs.obevo.db.impl.core.checksum.DbChecksumManager;
+import com.gs.obevo.db.impl.core.metadata.CachingDbMetadataManager;
 import com.gs.obevo.dbmetadata.api.DaCatalog;
 import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
 import com.gs.obevo.dbmetadata.api.DaTable;
@@ -48,7 +49,9 @@ import com.gs.obevo.impl.MainInputReader;
 import com.gs.obevo.impl.PostDeployAction;
 import com.gs.obevo.util.inputreader.Credential;
 import com.gs.obevo.util.lookuppredicate.LookupIndex;
+import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.function.Function2;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.block.procedure.Procedure;
@@ -96,6 +99,27 @@ public class DbDeployer extends MainDeployer<DbPlatform, DbEnvironment> {
         });
     }
 
+    /**
+     * Pins a connection for the deployment so that the change statements and audit writes reuse it, skipping the
+     * schema switch when the connection is already on the schema of the change.
+     */
+    @Override
+    protected <T> T executeWithinDeployContext(Function0<T> function) {
+        return this.sqlExecutor.executeWithPinnedConnection(function);
+    }
+
+    /**
+     * Crawls the tables of the given schemas into the metadata cache, if enabled, so that the validations and audit
+     * lookups ahead of the deployment are served from it.
+     */
+    @Override
+    protected void prefetchMetadata(DbEnvironment env, RichIterable<PhysicalSchema> physicalSchemas) {
+        if (dbMetadataManager instanceof CachingDbMetadataManager) {
+            ((CachingDbMetadataManager) dbMetadataManager).prefetch(physicalSchemas,
+                    new DaSchemaInfoLevel().setRetrieveTables(true).setRetrieveTableColumns(true));
+        }
+    }
+
     @Override
     protected void printArtifactsToProcessForUser(Changeset artifactsToProcess, DeployStrategy deployStrategy, DbEnvironment env, ImmutableCollection<Change> deployedChanges, ImmutableCollection<Change> sourceChanges) {
         this.env = env;  // setting this as a kludge here until proper subsequent refactoring
@@ -16,10 +16,13 @@
 package com.gs.obevo.db.impl.core;
 
 import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
 
 import javax.sql.DataSource;
 
 import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.api.platform.ChangeAuditDao;
 import com.gs.obevo.api.platform.ChangeType;
 import com.gs.obevo.api.platform.ChangeTypeBehavior;
@@ -49,17 +52,25 @@ import com.gs.obevo.db.impl.core.envinfrasetup.EnvironmentInfraSetup;
 import com.gs.obevo.db.impl.core.envinfrasetup.NoOpEnvironmentInfraSetup;
 import com.gs.obevo.db.impl.core.jdbc.DataSourceFactory;
 import com.gs.obevo.db.impl.core.jdbc.SingleConnectionDataSource;
+import com.gs.obevo.db.impl.core.metadata.CachingDbMetadataManager;
+import com.gs.obevo.db.impl.core.metadata.TimedDbMetadataManager;
 import com.gs.obevo.db.impl.core.reader.CachedDbChangeReader;
+import com.gs.obevo.db.impl.core.reader.CachingTextMarkupDocumentReader;
 import com.gs.obevo.db.impl.core.reader.DbChangeReader;
 import com.gs.obevo.db.impl.core.reader.DbDirectoryChangesetReader;
 import com.gs.obevo.db.impl.core.reader.PrepareDbChange;
 import com.gs.obevo.db.impl.core.reader.PrepareDbChangeForDb;
 import com.gs.obevo.db.impl.core.reader.SourceChangeReaderImpl;
 import com.gs.obevo.db.impl.core.reader.TextMarkupDocumentReader;
+import com.gs.obevo.db.impl.core.reader.TranslationCache;
+import com.gs.obevo.db.impl.core.snapshot.DbSnapshotter;
+import com.gs.obevo.db.impl.core.snapshot.UnsupportedDbSnapshotter;
+import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import com.gs.obevo.impl.ChangesetCreator;
 import com.gs.obevo.impl.DeployMetricsCollector;
 import com.gs.obevo.impl.DeployMetricsCollectorImpl;
+import com.gs.obevo.impl.DeployMetricsJsonWriter;
 import com.gs.obevo.impl.MainDeployer;
 import com.gs.obevo.impl.NoOpPostDeployAction;
 import com.gs.obevo.impl.PostDeployAction;
@@ -75,6 +86,7 @@ import com.gs.obevo.impl.text.TextDependencyExtractorImpl;
 import com.gs.obevo.util.CollectionUtil;
 import com.gs.obevo.util.inputreader.Credential;
 import org.apache.commons.lang3.Validate;
+import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.list.ImmutableList;
@@ -84,8 +96,12 @@ import org.eclipse.collections.api.set.ImmutableSet;
 import org.eclipse.collections.impl.block.factory.Predicates;
 import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.collections.impl.factory.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
+    private static final Logger LOG = LoggerFactory.getLogger(DbDeployerAppContextImpl.class);
+
     protected Credential credential;
     private File workDir;
     protected DbEnvironment env;
@@ -176,6 +192,7 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
 
         getEnvironmentCleaner();
         getManagedDataSource();
+        getSqlExecutor().setDeployMetricsCollector(deployStatsTracker());
 
         return this;
     }
@@ -268,8 +285,21 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
         return this.singleton("getDbChangeReader", new Function0<DbChangeReader>() {
             @Override
             public DbChangeReader value() {
-                DbDirectoryChangesetReader underlyingChangesetReader = new DbDirectoryChangesetReader(getEnvironment().getPlatform().convertDbObjectName(), getEnvironment(), deployStatsTracker(), true, textMarkupDocumentReader());
-                return new CachedDbChangeReader(underlyingChangesetReader);
+                final TextMarkupDocumentReader textMarkupDocumentReader = textMarkupDocumentReader();
+                final DbDirectoryChangesetReader underlyingChangesetReader = new DbDirectoryChangesetReader(getEnvironment().getPlatform().convertDbObjectName(), getEnvironment(), deployStatsTracker(), true, textMarkupDocumentReader);
+                if (!(textMarkupDocumentReader instanceof CachingTextMarkupDocumentReader)) {
+                    return new CachedDbChangeReader(underlyingChangesetReader);
+                }
+
+                // save the parse cache once the files are read so that the next run can use it
+                return new CachedDbChangeReader(new DbChangeReader() {
+                    @Override
+                    public ImmutableList<Change> readChanges(boolean useBaseline) {
+                        ImmutableList<Change> changes = underlyingChangesetReader.readChanges(useBaseline);
+                        ((CachingTextMarkupDocumentReader) textMarkupDocumentReader).saveCache();
+                        return changes;
+                    }
+                });
             }
         });
     }
@@ -279,7 +309,14 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
             @Override
             public TextMarkupDocumentReader value() {
                 int metadataLineReaderVersion = env.getMetadataLineReaderVersion();
-                return new TextMarkupDocumentReader(metadataLineReaderVersion < 3);  // legacy mode is 2 and below
+                boolean legacyMode = metadataLineReaderVersion < 3;  // legacy mode is 2 and below
+                if (env.isSourceParseCacheEnabled()) {
+                    if (workDir != null) {
+                        return new CachingTextMarkupDocumentReader(legacyMode, new File(workDir, CachingTextMarkupDocumentReader.CACHE_FILE_NAME));
+                    }
+                    LOG.info("Not using the source parse cache as no work directory was given");
+                }
+                return new TextMarkupDocumentReader(legacyMode);
             }
         });
     }
@@ -297,7 +334,7 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
         return this.singleton("getChangesetCreator", new Function0<ChangesetCreator>() {
             @Override
             public ChangesetCreator value() {
-                return new ChangesetCreatorImpl(changeCommandSorter(), changeTypeBehaviorRegistry);
+                return new ChangesetCreatorImpl(changeCommandSorter(), changeTypeBehaviorRegistry, deployStatsTracker());
             }
         });
     }
@@ -321,7 +358,15 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
                 if (env.isDisableAuditTracking()) {
                     return new NoOpChangeAuditDao();
                 } else {
-                    return new SameSchemaChangeAuditDao(env, getSqlExecutor(), getDbMetadataManager(), credential.getUsername(), getDeployExecutionDao(), changeTypeBehaviorRegistry);
+                    File auditSnapshotDir = null;
+                    if (env.isAuditSnapshotEnabled()) {
+                        if (workDir != null) {
+                            auditSnapshotDir = workDir;
+                        } else {
+                            LOG.info("Not using the audit snapshot as no work directory was given");
+                        }
+                    }
+                    return new SameSchemaChangeAuditDao(env, getSqlExecutor(), getDbMetadataManager(), credential.getUsername(), getDeployExecutionDao(), changeTypeBehaviorRegistry, auditSnapshotDir);
                 }
             }
         });
@@ -332,9 +377,20 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
         return this.singleton("getDbMetadataManager", new Function0<DbMetadataManager>() {
             @Override
             public DbMetadataManager value() {
-                DbMetadataManager dbMetadataManager = env.getPlatform().getDbMetadataManager();
+                DbMetadataManager dbMetadataManager = new TimedDbMetadataManager(env.getPlatform().getDbMetadataManager(), deployStatsTracker());
                 dbMetadataManager.setDataSource(getManagedDataSource());
-                return dbMetadataManager;
+                if (!env.isMetadataCacheEnabled()) {
+                    return dbMetadataManager;
+                }
+
+                CachingDbMetadataManager cachingDbMetadataManager = new CachingDbMetadataManager(dbMetadataManager, getNumThreads(), new Function<Connection, PhysicalSchema>() {
+                    @Override
+                    public PhysicalSchema valueOf(Connection conn) {
+                        return getSqlExecutor().getContextSchema(conn);
+                    }
+                });
+                getSqlExecutor().addUpdateListener(cachingDbMetadataManager);
+                return cachingDbMetadataManager;
             }
         });
     }
@@ -346,7 +402,8 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
                 return new DbChecksumManagerImpl(
                         getDbMetadataManager(),
                         getDbChecksumDao(),
-                        env.getPhysicalSchemas()
+                        env.getPhysicalSchemas(),
+                        getNumThreads()
                 );
             }
         });
@@ -425,7 +482,15 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
         return this.singleton("getSourceChangeReader", new Function0<SourceChangeReader>() {
             @Override
             public SourceChangeReader value() {
-                return new SourceChangeReaderImpl(env, getDbChangeReader(), getTextDependencyExtractor(), getArtifactTranslators());
+                File translationCacheFile = null;
+                if (env.isTranslationCacheEnabled()) {
+                    if (workDir != null) {
+                        translationCacheFile = new File(workDir, TranslationCache.CACHE_FILE_NAME);
+                    } else {
+                        LOG.info("Not using the translation cache file as no work directory was given");
+                    }
+                }
+                return new SourceChangeReaderImpl(env, getDbChangeReader(), getTextDependencyExtractor(), getArtifactTranslators(), translationCacheFile);
             }
         });
     }
@@ -446,6 +511,14 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
         return new NoOpEnvironmentInfraSetup();
     }
 
+    /**
+     * Returns the snapshotter for this platform; platforms that can cheaply capture and restore their schemas (e.g.
+     * in-memory databases) should override this.
+     */
+    public DbSnapshotter getDbSnapshotter() {
+        return new UnsupportedDbSnapshotter();
+    }
+
     public Predicate<? super Change> getDbChangeFilter() {
         ImmutableSet<String> disabledChangeTypeNames = this.env.getDbTranslationDialect().getDisabledChangeTypeNames();
         if (disabledChangeTypeNames.isEmpty()) {
@@ -507,7 +580,7 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
     }
 
     private int getNumThreads() {
-        return 5;
+        return env.getNumThreads();
     }
 
     public DbDeployerAppContext setupEnvInfra() {
@@ -516,12 +589,14 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
 
     @Override
     public DbDeployerAppContext setupEnvInfra(boolean strictSetupEnvInfra) {
+        resetMetadataCache();
         getEnvironmentInfraSetup().setupEnvInfra(strictSetupEnvInfra);
         return this;
     }
 
     @Override
     public DbDeployerAppContextImpl cleanEnvironment() {
+        resetMetadataCache();
         getEnvironmentCleaner().cleanEnvironment(MainDeployerArgs.DEFAULT_NOPROMPT_VALUE_FOR_API);
         return this;
     }
@@ -533,10 +608,46 @@ public abstract class DbDeployerAppContextImpl implements DbDeployerAppContext {
 
     @Override
     public DbDeployerAppContextImpl deploy(MainDeployerArgs deployerArgs) {
-        getDeployer().execute(env, deployerArgs);
+        resetMetadataCache();
+        if (deployerArgs.isPreview() && getDbMetadataManager() instanceof CachingDbMetadataManager) {
+            // previews only read the schemas, so we can crawl them upfront in parallel and serve all lookups from the cache
+            ((CachingDbMetadataManager) getDbMetadataManager()).prefetch(env.getPhysicalSchemas(),
+                    new DaSchemaInfoLevel().setRetrieveTables(true).setRetrieveTableColumns(true));
+        }
+        try {
+            getDeployer().execute(env, deployerArgs);
+        } finally {
+            writeDeployMetricsReport();
+        }
         return this;
     }
 
+    /**
+     * Writes the metrics (notably the phase, change, JDBC, and metadata timings) of the deploy into the work
+     * directory, so that they can be compared across deploys. Failures to write the report do not fail the deploy.
+     */
+    private void writeDeployMetricsReport() {
+        if (workDir == null) {
+            return;
+        }
+        File reportFile = new File(workDir, DeployMetricsJsonWriter.DEFAULT_FILE_NAME);
+        try {
+            new DeployMetricsJsonWriter().write(deployStatsTracker().getMetrics(), reportFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to write the deploy metrics report to {}", reportFile, e);
+        }
+    }
+
+    /**
+     * The schemas may have been modified outside of this context since the last operation; hence, we start each
+     * operation with a clear metadata cache.
+     */
+    private void resetMetadataCache() {
+        if (getDbMetadataManager() instanceof CachingDbMetadataManager) {
+            ((CachingDbMetadataManager) getDbMetadataManager()).reset();
+        }
+    }
+
     @Override
     public void readSource(MainDeployerArgs deployerArgs) {
         getInputReader().read(env, deployerArgs);
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.changeauditdao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.collections.api.RichIterable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.eclipse.collections.impl.tuple.Tuples;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local copy of the audit table rows of a logical schema, kept in the work directory so that subsequent reads only
+ * need to fetch the rows written by recent deploy executions.
+ *
+ * Every insert and update of the audit table stamps the deploy execution id on the row, and those ids increase
+ * monotonically. Hence the rows whose insert or update id is at or above the highest id in the snapshot (the
+ * watermark) are all the rows that may have changed since the snapshot was taken; the watermark itself is included in
+ * case the snapshot was taken while that execution was still writing.
+ *
+ * Deletes are not stamped, and a row can be rewritten with an id below the watermark (e.g. by a concurrent deploy that
+ * started earlier, or by a manual fix of the audit table). Hence the caller is expected to verify the merged rows
+ * against the table using {@link #summarize(RichIterable)}, i.e. the row count and latest update time per pair of
+ * deploy execution ids.
+ *
+ * The snapshot is discarded if it was written for a different format or database identity (e.g. a different JDBC URL
+ * or physical schema).
+ */
+class AuditTableSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(AuditTableSnapshot.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Increment this whenever the format of the snapshot file or the meaning of its values changes. We cannot rely on
+     * the Obevo version for this, as the jar manifest does not carry an implementation version.
+     */
+    private static final int SNAPSHOT_FORMAT_VERSION = 2;
+
+    private final File snapshotFile;
+    private final String snapshotVersion;
+
+    AuditTableSnapshot(File snapshotFile, String identity) {
+        this.snapshotFile = snapshotFile;
+        this.snapshotVersion = SNAPSHOT_FORMAT_VERSION + ":" + identity;
+    }
+
+    File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Returns the rows of the snapshot, or null if there is no usable snapshot.
+     */
+    MutableList<Row> load() {
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            String fileVersion = in.readUTF();
+            if (!snapshotVersion.equals(fileVersion)) {
+                LOG.info("Ignoring the audit snapshot at {} as it was written for {}; expecting {}", snapshotFile, fileVersion, snapshotVersion);
+                return null;
+            }
+
+            int numRows = in.readInt();
+            MutableList<Row> rows = Lists.mutable.empty();
+            for (int i = 0; i < numRows; i++) {
+                rows.add(readRow(in));
+            }
+            return rows;
+        } catch (IOException e) {
+            LOG.warn("Could not read the audit snapshot at {}; will read the full audit table", snapshotFile, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the rows to the snapshot file. Failures are logged rather than thrown, as the snapshot is only an
+     * optimization.
+     */
+    void save(RichIterable<Row> rows) {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            File snapshotDir = snapshotFile.getAbsoluteFile().getParentFile();
+            if (!snapshotDir.exists() && !snapshotDir.mkdirs()) {
+                throw new IOException("Could not create directory " + snapshotDir);
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeUTF(snapshotVersion);
+            out.writeInt(rows.size());
+            for (Row row : rows) {
+                writeRow(out, row);
+            }
+            out.close();
+            out = null;
+
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Could not write the audit snapshot to {}; the next run will read the full audit table", snapshotFile, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (tempFile.exists() && !tempFile.delete()) {
+                LOG.debug("Could not delete {}", tempFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the highest deploy execution id found in the rows, or 0 if none of the rows have one.
+     */
+    static long getWatermark(RichIterable<Row> rows) {
+        long watermark = 0L;
+        for (Row row : rows) {
+            watermark = Math.max(watermark, row.getMaxDeployExecutionId());
+        }
+        return watermark;
+    }
+
+    /**
+     * Applies the rows fetched since the watermark on top of the snapshot rows, keyed on the primary key of the audit
+     * table (the change name and object name).
+     */
+    static MutableList<Row> merge(RichIterable<Row> snapshotRows, RichIterable<Row> recentRows) {
+        MutableMap<Pair<String, String>, Row> rowsByKey = UnifiedMap.newMap(snapshotRows.size());
+        for (Row row : snapshotRows) {
+            rowsByKey.put(row.getKey(), row);
+        }
+        for (Row row : recentRows) {
+            rowsByKey.put(row.getKey(), row);
+        }
+        return rowsByKey.valuesView().toList();
+    }
+
+    /**
+     * Summarizes the rows as the row count and latest update time for each pair of insert and update deploy execution
+     * ids. Comparing this against the same aggregation on the audit table detects deleted rows and rows that were
+     * rewritten below the watermark, which the watermark read would otherwise miss.
+     */
+    static MutableMap<Pair<Long, Long>, Pair<Integer, Timestamp>> summarize(RichIterable<Row> rows) {
+        MutableMap<Pair<Long, Long>, Pair<Integer, Timestamp>> summary = UnifiedMap.newMap();
+        for (Row row : rows) {
+            Pair<Long, Long> executionKey = Tuples.pair(row.insertDeployId, row.updateDeployId);
+            Pair<Integer, Timestamp> executionSummary = summary.get(executionKey);
+            if (executionSummary == null) {
+                summary.put(executionKey, Tuples.pair(1, row.timeUpdated));
+            } else {
+                Timestamp maxTimeUpdated = executionSummary.getTwo();
+                if (maxTimeUpdated == null || row.timeUpdated != null && row.timeUpdated.after(maxTimeUpdated)) {
+                    maxTimeUpdated = row.timeUpdated;
+                }
+                summary.put(executionKey, Tuples.pair(executionSummary.getOne() + 1, maxTimeUpdated));
+            }
+        }
+        return summary;
+    }
+
+    private static Row readRow(DataInputStream in) throws IOException {
+        Row row = new Row();
+        row.artfType = readString(in);
+        row.changeName = readString(in);
+        row.objectName = readString(in);
+        row.active = in.readInt();
+        row.changeType = readString(in);
+        row.contentHash = readString(in);
+        row.dbSchema = readString(in);
+        row.timeInserted = readTimestamp(in);
+        row.timeUpdated = readTimestamp(in);
+        row.insertDeployId = readLong(in);
+        row.updateDeployId = readLong(in);
+        row.hasRollbackContent = in.readBoolean();
+        return row;
+    }
+
+    private static void writeRow(DataOutputStream out, Row row) throws IOException {
+        writeString(out, row.artfType);
+        writeString(out, row.changeName);
+        writeString(out, row.objectName);
+        out.writeInt(row.active);
+        writeString(out, row.changeType);
+        writeString(out, row.contentHash);
+        writeString(out, row.dbSchema);
+        writeTimestamp(out, row.timeInserted);
+        writeTimestamp(out, row.timeUpdated);
+        writeLong(out, row.insertDeployId);
+        writeLong(out, row.updateDeployId);
+        out.writeBoolean(row.hasRollbackContent);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = str.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeTimestamp(DataOutputStream out, Timestamp timestamp) throws IOException {
+        out.writeBoolean(timestamp != null);
+        if (timestamp != null) {
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        }
+    }
+
+    private static Timestamp readTimestamp(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Timestamp timestamp = new Timestamp(in.readLong());
+        timestamp.setNanos(in.readInt());
+        return timestamp;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    /**
+     * The values of an audit table row that are needed to rebuild the deployed {@link com.gs.obevo.api.appdata.Change}.
+     */
+    static class Row {
+        String artfType;
+        String changeName;
+        String objectName;
+        int active;
+        String changeType;
+        String contentHash;
+        String dbSchema;
+        Timestamp timeInserted;
+        Timestamp timeUpdated;
+        Long insertDeployId;
+        Long updateDeployId;
+        boolean hasRollbackContent;
+
+        Pair<String, String> getKey() {
+            return Tuples.pair(changeName, objectName);
+        }
+
+        long getMaxDeployExecutionId() {
+            return Math.max(insertDeployId != null ? insertDeployId : 0L, updateDeployId != null ? updateDeployId : 0L);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.gs.obevo.db.impl.core.changeauditdao;
 
 import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.DeployExecution;
+import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.api.platform.ChangeAuditDao;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.impl.factory.Lists;
@@ -55,4 +56,12 @@ public class NoOpChangeAuditDao implements ChangeAuditDao {
     @Override
     public void deleteObjectChanges(Change change) {
     }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void flush(PhysicalSchema physicalSchema) {
+    }
 }
@@ -15,9 +15,13 @@
  */
 package com.gs.obevo.db.impl.core.changeauditdao;
 
+import java.io.File;
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
-import java.util.Map;
+import java.util.List;
 
 import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.ChangeIncremental;
@@ -44,20 +48,26 @@ import com.gs.obevo.dbmetadata.api.DaTable;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import com.gs.obevo.util.VisibleForTesting;
 import com.gs.obevo.util.knex.InternMap;
-import org.apache.commons.dbutils.handlers.MapListHandler;
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.dbutils.handlers.ArrayListHandler;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.procedure.Procedure;
 import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.MutableMap;
 import org.eclipse.collections.api.multimap.list.MutableListMultimap;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.tuple.Pair;
 import org.eclipse.collections.impl.block.factory.Predicates;
 import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
 import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Maps;
 import org.eclipse.collections.impl.factory.Multimaps;
 import org.eclipse.collections.impl.factory.Sets;
-import org.eclipse.collections.impl.list.mutable.ListAdapter;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.eclipse.collections.impl.tuple.Tuples;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -77,6 +87,9 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
     protected final String deployUserId;
     private final SameSchemaDeployExecutionDao deployExecutionDao;
     private final ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry;
+    private final int auditBatchSize;
+    private final MutableMap<PhysicalSchema, MutableList<PendingAuditWrite>> pendingWrites = Maps.mutable.empty();
+    private final File auditSnapshotDir;
 
     protected final String dbChangeTable;
     protected final String changeNameColumn;
@@ -91,14 +104,27 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
     // older version of static data
     protected static final String OLD_STATICDATA_CHANGETYPE = "METADATA";
 
+    public static final String AUDIT_SNAPSHOT_FILE_PREFIX = "obevo-audit-snapshot-";
+
     public SameSchemaChangeAuditDao(DbEnvironment env, SqlExecutor sqlExecutor, DbMetadataManager dbMetadataManager,
             String deployUserId, DeployExecutionDao deployExecutionDao, ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry) {
+        this(env, sqlExecutor, dbMetadataManager, deployUserId, deployExecutionDao, changeTypeBehaviorRegistry, null);
+    }
+
+    /**
+     * @param auditSnapshotDir The directory to keep the audit snapshots in (see {@link AuditTableSnapshot}), or null to
+     *                         always read the full audit table.
+     */
+    public SameSchemaChangeAuditDao(DbEnvironment env, SqlExecutor sqlExecutor, DbMetadataManager dbMetadataManager,
+            String deployUserId, DeployExecutionDao deployExecutionDao, ChangeTypeBehaviorRegistry changeTypeBehaviorRegistry, File auditSnapshotDir) {
         this.sqlExecutor = sqlExecutor;
         this.env = env;
         this.dbMetadataManager = dbMetadataManager;
         this.deployUserId = deployUserId;
         this.deployExecutionDao = (SameSchemaDeployExecutionDao) deployExecutionDao;
         this.changeTypeBehaviorRegistry = changeTypeBehaviorRegistry;
+        this.auditBatchSize = env.getAuditBatchSize();
+        this.auditSnapshotDir = auditSnapshotDir;
 
         Function<String, String> convertDbObjectName = env.getPlatform().convertDbObjectName();
         this.dbChangeTable = convertDbObjectName.valueOf(CHANGE_AUDIT_TABLE_NAME);  // for backwards-compatibility, the dbChange table is named "ARTIFACTDEPLOYMENT". We hope to migrate existing tables eventually
@@ -249,6 +275,11 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
 
     @Override
     public void insertNewChange(final Change change, final DeployExecution deployExecution) {
+        if (auditBatchSize > 1) {
+            bufferWrite(new PendingAuditWrite(change, getInsertArgs(change, deployExecution), null));
+            return;
+        }
+
         sqlExecutor.executeWithinContext(change.getPhysicalSchema(), new Procedure<Connection>() {
             @Override
             public void value(Connection conn) {
@@ -258,16 +289,21 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
     }
 
     private void insertNewChangeInternal(Connection conn, Change change, DeployExecution deployExecution) {
-        JdbcHelper jdbcTemplate = sqlExecutor.getJdbcTemplate();
+        sqlExecutor.getJdbcTemplate().update(conn, getInsertSql(change.getPhysicalSchema()), getInsertArgs(change, deployExecution));
+    }
 
+    private String getInsertSql(PhysicalSchema physicalSchema) {
+        return "INSERT INTO " + env.getPlatform().getSchemaPrefix(physicalSchema)
+                + dbChangeTable +
+                " (ARTFTYPE, DBSCHEMA, ACTIVE, CHANGETYPE, CONTENTHASH, " + changeNameColumn + ", OBJECTNAME, "
+                + rollbackContentColumn + ", " + deployUserIdColumn + ", " + timeInsertedColumn + ", " + timeUpdatedColumn + ", " + insertDeployExecutionIdColumn + ", " + updateDeployExecutionIdColumn + ") " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    private Object[] getInsertArgs(Change change, DeployExecution deployExecution) {
         Timestamp currentTimestamp = getCurrentTimestamp();
-        jdbcTemplate.update(
-                conn, "INSERT INTO " + env.getPlatform().getSchemaPrefix(change.getPhysicalSchema())
-                        + dbChangeTable +
-                        " (ARTFTYPE, DBSCHEMA, ACTIVE, CHANGETYPE, CONTENTHASH, " + changeNameColumn + ", OBJECTNAME, "
-                        + rollbackContentColumn + ", " + deployUserIdColumn + ", " + timeInsertedColumn + ", " + timeUpdatedColumn + ", " + insertDeployExecutionIdColumn + ", " + updateDeployExecutionIdColumn + ") " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
-                , change instanceof ChangeIncremental ? "I" : "R"
+        return new Object[] {
+                change instanceof ChangeIncremental ? "I" : "R"
                 , change.getSchema()
                 , change.isActive() ? 1 : 0
                 , change.getChangeType().getName()
@@ -280,11 +316,16 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
                 , currentTimestamp
                 , deployExecution.getId()
                 , deployExecution.getId()
-        );
+        };
     }
 
     @Override
     public void updateOrInsertChange(final Change change, final DeployExecution deployExecution) {
+        if (auditBatchSize > 1) {
+            bufferWrite(new PendingAuditWrite(change, getInsertArgs(change, deployExecution), getUpdateArgs(change, deployExecution)));
+            return;
+        }
+
         sqlExecutor.executeWithinContext(change.getPhysicalSchema(), new Procedure<Connection>() {
             @Override
             public void value(Connection conn) {
@@ -296,9 +337,121 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
         });
     }
 
+    /**
+     * Buffers the audit write for its physical schema; the buffer is written out once it reaches the configured
+     * {@link DbEnvironment#getAuditBatchSize()}, or when {@link #flush()} is called.
+     *
+     * The lock on {@link #pendingWrites} is only held to take the buffered writes out; they are written outside of it,
+     * so that the workers of different schemas write their audit entries concurrently.
+     */
+    private void bufferWrite(PendingAuditWrite pendingWrite) {
+        PhysicalSchema physicalSchema = pendingWrite.change.getPhysicalSchema();
+        MutableList<PendingAuditWrite> writesToFlush = null;
+        synchronized (pendingWrites) {
+            MutableList<PendingAuditWrite> schemaWrites = pendingWrites.getIfAbsentPut(physicalSchema, Lists.mutable.<PendingAuditWrite>empty());
+            schemaWrites.add(pendingWrite);
+            if (schemaWrites.size() >= auditBatchSize) {
+                writesToFlush = pendingWrites.remove(physicalSchema);
+            }
+        }
+        if (writesToFlush != null) {
+            writePending(physicalSchema, writesToFlush);
+        }
+    }
+
+    @Override
+    public void flush() {
+        MutableMap<PhysicalSchema, MutableList<PendingAuditWrite>> writesToFlush;
+        synchronized (pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            writesToFlush = UnifiedMap.newMap(pendingWrites);
+            pendingWrites.clear();
+        }
+        for (Pair<PhysicalSchema, MutableList<PendingAuditWrite>> schemaWrites : writesToFlush.keyValuesView()) {
+            writePending(schemaWrites.getOne(), schemaWrites.getTwo());
+        }
+    }
+
+    @Override
+    public void flush(PhysicalSchema physicalSchema) {
+        MutableList<PendingAuditWrite> writesToFlush;
+        synchronized (pendingWrites) {
+            writesToFlush = pendingWrites.remove(physicalSchema);
+        }
+        if (writesToFlush != null) {
+            writePending(physicalSchema, writesToFlush);
+        }
+    }
+
+    private void writePending(PhysicalSchema physicalSchema, final MutableList<PendingAuditWrite> schemaWrites) {
+        final String insertSql = getInsertSql(physicalSchema);
+        final String updateSql = getUpdateSql(physicalSchema);
+        try {
+            sqlExecutor.executeWithinContext(physicalSchema, new Procedure<Connection>() {
+                @Override
+                public void value(Connection conn) {
+                    // Preserve the order of the writes by batching consecutive runs of the same kind of write. A run is
+                    // also split if a change key repeats, as an update-or-insert batch cannot see its own inserts
+                    int runStart = 0;
+                    while (runStart < schemaWrites.size()) {
+                        boolean upsert = schemaWrites.get(runStart).updateArgs != null;
+                        MutableSet<Pair<String, String>> runChangeKeys = Sets.mutable.empty();
+                        int runEnd = runStart;
+                        while (runEnd < schemaWrites.size()
+                                && (schemaWrites.get(runEnd).updateArgs != null) == upsert
+                                && runChangeKeys.add(schemaWrites.get(runEnd).getAuditKey())) {
+                            runEnd++;
+                        }
+
+                        MutableList<PendingAuditWrite> run = schemaWrites.subList(runStart, runEnd);
+                        if (upsert) {
+                            updateOrInsertBatch(conn, insertSql, updateSql, run);
+                        } else {
+                            sqlExecutor.getJdbcTemplate().batchUpdate(conn, insertSql, run.collect(PendingAuditWrite.TO_INSERT_ARGS).toArray(new Object[run.size()][]));
+                        }
+                        runStart = runEnd;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.error("Failed to write the audit entries for these changes in schema {}; they will need to be reconciled on the next deploy: {}",
+                    physicalSchema, schemaWrites.collect(new Function<PendingAuditWrite, String>() {
+                        @Override
+                        public String valueOf(PendingAuditWrite pendingWrite) {
+                            return pendingWrite.change.getDisplayString();
+                        }
+                    }).makeString("; "));
+            throw e;
+        }
+    }
+
+    private void updateOrInsertBatch(Connection conn, String insertSql, String updateSql, MutableList<PendingAuditWrite> run) {
+        JdbcHelper jdbcTemplate = sqlExecutor.getJdbcTemplate();
+        int[] updateCounts = jdbcTemplate.batchUpdate(conn, updateSql, run.collect(PendingAuditWrite.TO_UPDATE_ARGS).toArray(new Object[run.size()][]));
+
+        MutableList<Object[]> insertArgs = Lists.mutable.empty();
+        for (int i = 0; i < run.size(); i++) {
+            PendingAuditWrite pendingWrite = run.get(i);
+            if (updateCounts[i] == 0) {
+                insertArgs.add(pendingWrite.insertArgs);
+            } else if (updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                // the driver did not report the row count; fall back to the row-level update to check for existence
+                if (jdbcTemplate.update(conn, updateSql, pendingWrite.updateArgs) == 0) {
+                    insertArgs.add(pendingWrite.insertArgs);
+                }
+            }
+        }
+
+        if (insertArgs.notEmpty()) {
+            jdbcTemplate.batchUpdate(conn, insertSql, insertArgs.toArray(new Object[insertArgs.size()][]));
+        }
+    }
+
     @Override
     public ImmutableList<Change> getDeployedChanges() {
-        final Function<String, String> convertDbObjectName = env.getPlatform().convertDbObjectName();
+        flush();
 
         MutableList<Change> artfs = env.getSchemaNames().toList().flatCollect(new Function<String, MutableList<Change>>() {
             @Override
@@ -307,7 +460,6 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
                 return sqlExecutor.executeWithinContext(physicalSchema, new ThrowingFunction<Connection, MutableList<Change>>() {
                     @Override
                     public MutableList<Change> safeValueOf(Connection conn) throws Exception {
-                        JdbcHelper jdbcTemplate = sqlExecutor.getJdbcTemplate();
                         final DaTable artifactTable = dbMetadataManager.getTableInfo(physicalSchema,
                                 dbChangeTable, new DaSchemaInfoLevel().setRetrieveTableColumns(true));
 
@@ -316,48 +468,7 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
                             return Lists.mutable.empty();
                         }
 
-                        return ListAdapter.adapt(jdbcTemplate.query(
-                                conn, "SELECT * FROM " + env.getPlatform().getSchemaPrefix(physicalSchema) + dbChangeTable
-                                        + " WHERE DBSCHEMA = '" + schema + "'", new MapListHandler())).collect(new Function<Map<String, Object>, Change>() {
-                            @Override
-                            public Change valueOf(Map<String, Object> resultSet) {
-                                String artfType = (String) resultSet.get(convertDbObjectName.valueOf(resolveColumnName("ARTFTYPE")));
-                                Change artf;
-                                if (artfType.equals("I")) {
-                                    artf = new ChangeIncremental();
-                                } else if (artfType.equals("R")) {
-                                    artf = new ChangeRerunnable();
-                                } else {
-                                    throw new IllegalArgumentException("This type does not exist " + artfType);
-                                }
-
-                                artf.setChangeName((String) resultSet.get(convertDbObjectName.valueOf(resolveColumnName(changeNameColumn))));
-                                // these are repeated semi-often; hence the intern
-                                artf.setObjectName(InternMap.instance().intern((String) resultSet.get(
-                                        convertDbObjectName.valueOf(resolveColumnName("OBJECTNAME")))));
-
-                                artf.setActive(env.getPlatform().getIntegerValue(resultSet.get(convertDbObjectName.valueOf(resolveColumnName("ACTIVE")))) == 1);
-                                // change METADATA to STATICDATA for backward compatability
-                                String changeType = (String) resultSet.get(convertDbObjectName.valueOf(resolveColumnName("CHANGETYPE")));
-                                changeType = changeType.equals(OLD_STATICDATA_CHANGETYPE) ? ChangeType.STATICDATA_STR : changeType;
-                                artf.setChangeType(env.getPlatform().getChangeType(changeType));
-                                artf.setChangeTypeBehavior(changeTypeBehaviorRegistry.getChangeTypeBehavior(changeType));
-
-                                artf.setContentHash((String) resultSet.get(convertDbObjectName.valueOf(resolveColumnName("CONTENTHASH"))));
-                                // these are repeated often
-                                artf.setSchema(InternMap.instance().intern((String) resultSet.get(
-                                        convertDbObjectName.valueOf(resolveColumnName("DBSCHEMA")))));
-
-                                artf.setTimeInserted(env.getPlatform().getTimestampValue(resultSet.get(convertDbObjectName.valueOf(resolveColumnName(timeInsertedColumn)))));
-                                artf.setTimeUpdated(env.getPlatform().getTimestampValue(resultSet.get(convertDbObjectName.valueOf(resolveColumnName(timeUpdatedColumn)))));
-
-                                // for backward compatibility, make sure the ROLLBACKCONTENT column exists
-                                if (artifactTable.getColumn(rollbackContentColumn) != null) {
-                                    artf.setRollbackContent((String) resultSet.get(rollbackContentColumn));
-                                }
-                                return artf;
-                            }
-                        });
+                        return readDeployedChanges(conn, schema, physicalSchema, artifactTable);
                     }
                 });
             }
@@ -383,6 +494,269 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
                 .select(Predicates.attributeIn(Change.TO_SCHEMA, env.getSchemaNames())).toImmutable();
     }
 
+    /**
+     * Reads only the columns needed to calculate the changeset, resolving the column positions once for the whole result
+     * set rather than building a map per row. The rollback content is not selected here, only whether the row has any;
+     * it is loaded on demand by {@link RollbackContentLoader}, as only the changes that get rolled back or compared
+     * against a source change need it.
+     */
+    private MutableList<Change> readDeployedChanges(Connection conn, String schema, PhysicalSchema physicalSchema, DaTable artifactTable) {
+        final Function<String, String> convertDbObjectName = env.getPlatform().convertDbObjectName();
+        Function<String, String> toColumnName = new Function<String, String>() {
+            @Override
+            public String valueOf(String colName) {
+                return convertDbObjectName.valueOf(resolveColumnName(colName));
+            }
+        };
+
+        final MutableList<String> columns = Lists.mutable.with("ARTFTYPE", changeNameColumn, "OBJECTNAME", "ACTIVE", "CHANGETYPE", "CONTENTHASH", "DBSCHEMA").collect(toColumnName);
+        // these columns were added in later versions of the audit table, so we only select them if they exist
+        for (String optionalColumn : Lists.mutable.with(timeInsertedColumn, timeUpdatedColumn, insertDeployExecutionIdColumn, updateDeployExecutionIdColumn).collect(toColumnName)) {
+            if (artifactTable.getColumn(optionalColumn) != null) {
+                columns.add(optionalColumn);
+            }
+        }
+
+        // for backward compatibility, make sure the ROLLBACKCONTENT column exists. The rollback content is written as an
+        // empty string if the change has none, hence the LIKE rather than an IS NULL check (LIKE also works on the
+        // text/clob types, unlike the comparison operators)
+        boolean hasRollbackContentColumn = artifactTable.getColumn(rollbackContentColumn) != null;
+        String hasRollbackContentExpr = "CASE WHEN " + toColumnName.valueOf(rollbackContentColumn) + " LIKE '_%' THEN 1 ELSE 0 END";
+        if (hasRollbackContentColumn) {
+            columns.add(hasRollbackContentExpr);
+        }
+
+        String selectSql = "SELECT " + columns.makeString(", ") + " FROM " + env.getPlatform().getSchemaPrefix(physicalSchema) + dbChangeTable
+                + " WHERE DBSCHEMA = '" + schema + "'";
+        AuditRowHandler rowHandler = new AuditRowHandler(
+                columns.indexOf(toColumnName.valueOf(timeInsertedColumn)) + 1,
+                columns.indexOf(toColumnName.valueOf(timeUpdatedColumn)) + 1,
+                columns.indexOf(toColumnName.valueOf(insertDeployExecutionIdColumn)) + 1,
+                columns.indexOf(toColumnName.valueOf(updateDeployExecutionIdColumn)) + 1,
+                columns.indexOf(hasRollbackContentExpr) + 1
+        );
+
+        MutableList<AuditTableSnapshot.Row> rows;
+        if (auditSnapshotDir != null && rowHandler.insertDeployIdIndex > 0 && rowHandler.updateDeployIdIndex > 0) {
+            rows = readAuditRowsWithSnapshot(conn, schema, physicalSchema, selectSql, rowHandler);
+        } else {
+            rows = sqlExecutor.getJdbcTemplate().query(conn, selectSql, rowHandler);
+        }
+
+        RollbackContentLoader rollbackContentLoader = hasRollbackContentColumn
+                ? new RollbackContentLoader(schema, physicalSchema, toColumnName)
+                : null;
+
+        MutableList<Change> changes = Lists.mutable.empty();
+        for (AuditTableSnapshot.Row row : rows) {
+            changes.add(toChange(row, rollbackContentLoader));
+        }
+        return changes;
+    }
+
+    /**
+     * Reads the audit rows of the schema using the snapshot in the work directory, only fetching the rows written since
+     * the snapshot was taken. The merged rows are checked against the row count and max deploy ids of the table, e.g.
+     * to detect deleted rows; if they do not match, we fall back to reading the whole table.
+     */
+    private MutableList<AuditTableSnapshot.Row> readAuditRowsWithSnapshot(Connection conn, String schema, PhysicalSchema physicalSchema, String selectSql, AuditRowHandler rowHandler) {
+        JdbcHelper jdbc = sqlExecutor.getJdbcTemplate();
+        AuditTableSnapshot snapshot = new AuditTableSnapshot(
+                new File(auditSnapshotDir, AUDIT_SNAPSHOT_FILE_PREFIX + toFileNamePart(env.getName()) + "-" + toFileNamePart(schema) + ".bin"),
+                env.getJdbcUrl() + "|" + env.getDbServer() + "|" + env.getDbHost() + ":" + env.getDbPort() + "|" + physicalSchema.getPhysicalName() + "|" + dbChangeTable
+        );
+
+        MutableList<AuditTableSnapshot.Row> snapshotRows = snapshot.load();
+        if (snapshotRows != null) {
+            long watermark = AuditTableSnapshot.getWatermark(snapshotRows);
+            MutableList<AuditTableSnapshot.Row> recentRows = jdbc.query(conn, selectSql
+                    + " AND (" + insertDeployExecutionIdColumn + " >= " + watermark + " OR " + updateDeployExecutionIdColumn + " >= " + watermark + ")", rowHandler);
+            MutableList<AuditTableSnapshot.Row> rows = AuditTableSnapshot.merge(snapshotRows, recentRows);
+
+            if (isConsistentWithAuditTable(conn, schema, physicalSchema, rows, rowHandler)) {
+                LOG.info("Read {} rows from the audit snapshot for schema {} and {} rows written since deploy execution {}", snapshotRows.size(), schema, recentRows.size(), watermark);
+                if (recentRows.notEmpty()) {
+                    snapshot.save(rows);
+                }
+                return rows;
+            }
+            LOG.info("The audit snapshot for schema {} does not match the audit table (e.g. due to deleted rows or rows updated by an earlier deploy execution); reading the full table", schema);
+        }
+
+        MutableList<AuditTableSnapshot.Row> rows = jdbc.query(conn, selectSql, rowHandler);
+        snapshot.save(rows);
+        return rows;
+    }
+
+    /**
+     * Compares the row count and latest update time per pair of deploy execution ids between the merged rows and the
+     * audit table; see {@link AuditTableSnapshot#summarize(RichIterable)}.
+     */
+    private boolean isConsistentWithAuditTable(Connection conn, String schema, PhysicalSchema physicalSchema, MutableList<AuditTableSnapshot.Row> rows, AuditRowHandler rowHandler) {
+        // the time updated column was added in a later version of the audit table
+        boolean hasTimeUpdated = rowHandler.timeUpdatedIndex > 0;
+        List<Object[]> results = sqlExecutor.getJdbcTemplate().query(conn, "SELECT " + insertDeployExecutionIdColumn + ", " + updateDeployExecutionIdColumn + ", COUNT(*)"
+                + (hasTimeUpdated ? ", MAX(" + timeUpdatedColumn + ")" : "")
+                + " FROM " + env.getPlatform().getSchemaPrefix(physicalSchema) + dbChangeTable
+                + " WHERE DBSCHEMA = '" + schema + "'"
+                + " GROUP BY " + insertDeployExecutionIdColumn + ", " + updateDeployExecutionIdColumn, new ArrayListHandler());
+
+        MutableMap<Pair<Long, Long>, Pair<Integer, Timestamp>> tableSummary = UnifiedMap.newMap(results.size());
+        for (Object[] result : results) {
+            tableSummary.put(
+                    Tuples.pair(rowHandler.toLong(result[0]), rowHandler.toLong(result[1])),
+                    Tuples.pair(env.getPlatform().getIntegerValue(result[2]), hasTimeUpdated ? env.getPlatform().getTimestampValue(result[3]) : null)
+            );
+        }
+
+        return tableSummary.equals(AuditTableSnapshot.summarize(rows));
+    }
+
+    private static String toFileNamePart(String str) {
+        return String.valueOf(str).replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private Change toChange(AuditTableSnapshot.Row row, RollbackContentLoader rollbackContentLoader) {
+        Change artf;
+        if (row.artfType.equals("I")) {
+            artf = new ChangeIncremental();
+        } else if (row.artfType.equals("R")) {
+            artf = new ChangeRerunnable();
+        } else {
+            throw new IllegalArgumentException("This type does not exist " + row.artfType);
+        }
+
+        artf.setChangeName(row.changeName);
+        // these are repeated semi-often; hence the intern
+        artf.setObjectName(InternMap.instance().intern(row.objectName));
+
+        artf.setActive(row.active == 1);
+        // change METADATA to STATICDATA for backward compatability
+        String changeType = row.changeType.equals(OLD_STATICDATA_CHANGETYPE) ? ChangeType.STATICDATA_STR : row.changeType;
+        artf.setChangeType(env.getPlatform().getChangeType(changeType));
+        artf.setChangeTypeBehavior(changeTypeBehaviorRegistry.getChangeTypeBehavior(changeType));
+
+        artf.setContentHash(row.contentHash);
+        // these are repeated often
+        artf.setSchema(InternMap.instance().intern(row.dbSchema));
+
+        artf.setTimeInserted(row.timeInserted);
+        artf.setTimeUpdated(row.timeUpdated);
+
+        // the rows without rollback content need no load; their rollback content is left blank
+        if (rollbackContentLoader != null && row.hasRollbackContent) {
+            artf.setRollbackContentLoader(rollbackContentLoader);
+        }
+        return artf;
+    }
+
+    /**
+     * Maps the rows selected by {@link #readDeployedChanges(Connection, String, PhysicalSchema, DaTable)} by column
+     * position; the optional columns have an index of 0 if they are not selected.
+     */
+    private class AuditRowHandler implements ResultSetHandler<MutableList<AuditTableSnapshot.Row>> {
+        private final int timeInsertedIndex;
+        private final int timeUpdatedIndex;
+        private final int insertDeployIdIndex;
+        private final int updateDeployIdIndex;
+        private final int hasRollbackContentIndex;
+
+        AuditRowHandler(int timeInsertedIndex, int timeUpdatedIndex, int insertDeployIdIndex, int updateDeployIdIndex, int hasRollbackContentIndex) {
+            this.timeInsertedIndex = timeInsertedIndex;
+            this.timeUpdatedIndex = timeUpdatedIndex;
+            this.insertDeployIdIndex = insertDeployIdIndex;
+            this.updateDeployIdIndex = updateDeployIdIndex;
+            this.hasRollbackContentIndex = hasRollbackContentIndex;
+        }
+
+        @Override
+        public MutableList<AuditTableSnapshot.Row> handle(ResultSet rs) throws SQLException {
+            MutableList<AuditTableSnapshot.Row> rows = Lists.mutable.empty();
+            while (rs.next()) {
+                AuditTableSnapshot.Row row = new AuditTableSnapshot.Row();
+                row.artfType = rs.getString(1);
+                row.changeName = rs.getString(2);
+                row.objectName = rs.getString(3);
+                row.active = env.getPlatform().getIntegerValue(rs.getObject(4));
+                row.changeType = rs.getString(5);
+                row.contentHash = rs.getString(6);
+                row.dbSchema = rs.getString(7);
+                if (timeInsertedIndex > 0) {
+                    row.timeInserted = env.getPlatform().getTimestampValue(rs.getObject(timeInsertedIndex));
+                }
+                if (timeUpdatedIndex > 0) {
+                    row.timeUpdated = env.getPlatform().getTimestampValue(rs.getObject(timeUpdatedIndex));
+                }
+                if (insertDeployIdIndex > 0) {
+                    row.insertDeployId = toLong(rs.getObject(insertDeployIdIndex));
+                }
+                if (updateDeployIdIndex > 0) {
+                    row.updateDeployId = toLong(rs.getObject(updateDeployIdIndex));
+                }
+                if (hasRollbackContentIndex > 0) {
+                    row.hasRollbackContent = env.getPlatform().getIntegerValue(rs.getObject(hasRollbackContentIndex)) == 1;
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        private Long toLong(Object value) {
+            return value != null ? env.getPlatform().getLongValue(value) : null;
+        }
+    }
+
+    /**
+     * Loads the rollback content of the deployed changes of a schema the first time that any of them is requested, in a
+     * single query that skips the rows without rollback content.
+     */
+    private class RollbackContentLoader implements Function<Change, String> {
+        private final String schema;
+        private final PhysicalSchema physicalSchema;
+        private final Function<String, String> toColumnName;
+        private MutableMap<Pair<String, String>, String> rollbackContents;
+
+        RollbackContentLoader(String schema, PhysicalSchema physicalSchema, Function<String, String> toColumnName) {
+            this.schema = schema;
+            this.physicalSchema = physicalSchema;
+            this.toColumnName = toColumnName;
+        }
+
+        @Override
+        public synchronized String valueOf(Change change) {
+            if (rollbackContents == null) {
+                rollbackContents = sqlExecutor.executeWithinContext(physicalSchema, new ThrowingFunction<Connection, MutableMap<Pair<String, String>, String>>() {
+                    @Override
+                    public MutableMap<Pair<String, String>, String> safeValueOf(Connection conn) throws Exception {
+                        return readRollbackContents(conn);
+                    }
+                });
+            }
+            return rollbackContents.get(Tuples.pair(change.getChangeName(), change.getObjectName()));
+        }
+
+        private MutableMap<Pair<String, String>, String> readRollbackContents(Connection conn) {
+            String rollbackColumn = toColumnName.valueOf(rollbackContentColumn);
+            String sql = "SELECT " + toColumnName.valueOf(changeNameColumn) + ", " + toColumnName.valueOf("OBJECTNAME") + ", " + rollbackColumn
+                    + " FROM " + env.getPlatform().getSchemaPrefix(physicalSchema) + dbChangeTable
+                    + " WHERE DBSCHEMA = '" + schema + "' AND " + rollbackColumn + " IS NOT NULL";
+
+            return sqlExecutor.getJdbcTemplate().query(conn, sql, new ResultSetHandler<MutableMap<Pair<String, String>, String>>() {
+                @Override
+                public MutableMap<Pair<String, String>, String> handle(ResultSet rs) throws SQLException {
+                    MutableMap<Pair<String, String>, String> rollbackContents = Maps.mutable.empty();
+                    while (rs.next()) {
+                        String rollbackContent = rs.getString(3);
+                        if (rollbackContent != null && !rollbackContent.isEmpty()) {
+                            rollbackContents.put(Tuples.pair(rs.getString(1), rs.getString(2)), rollbackContent);
+                        }
+                    }
+                    return rollbackContents;
+                }
+            });
+        }
+    }
+
     private int updateDeployedArtifactVersionInternal(Connection conn, Change artifact, String newHash, DeployExecution deployExecution) {
         artifact.setContentHash(newHash);
         return updateInternal(conn, artifact, deployExecution);
@@ -390,6 +764,7 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
 
     @Override
     public void deleteChange(final Change change) {
+        flush();
         sqlExecutor.executeWithinContext(change.getPhysicalSchema(), new Procedure<Connection>() {
             @Override
             public void value(Connection conn) {
@@ -403,6 +778,7 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
 
     @Override
     public void deleteObjectChanges(final Change change) {
+        flush();
         sqlExecutor.executeWithinContext(change.getPhysicalSchema(), new Procedure<Connection>() {
             @Override
             public void value(Connection conn) {
@@ -425,20 +801,27 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
     }
 
     private int updateInternal(Connection conn, Change artifact, DeployExecution deployExecution) {
-        return sqlExecutor.getJdbcTemplate().update(
-                conn, "UPDATE " + env.getPlatform().getSchemaPrefix(artifact.getPhysicalSchema()) + dbChangeTable
-                        + " SET " +
-                        "ARTFTYPE = ?, " +
-                        "DBSCHEMA = ?, " +
-                        "ACTIVE = ?, " +
-                        "CHANGETYPE = ?, " +
-                        "CONTENTHASH = ?, " +
-                        rollbackContentColumn + " = ?, " +
-                        deployUserIdColumn + " = ?, " +
-                        timeUpdatedColumn + " = ?, " +
-                        updateDeployExecutionIdColumn + " = ? " +
-                        "WHERE " + changeNameColumn + " = ? AND OBJECTNAME = ?"
-                , artifact instanceof ChangeIncremental ? "I" : "R"
+        return sqlExecutor.getJdbcTemplate().update(conn, getUpdateSql(artifact.getPhysicalSchema()), getUpdateArgs(artifact, deployExecution));
+    }
+
+    private String getUpdateSql(PhysicalSchema physicalSchema) {
+        return "UPDATE " + env.getPlatform().getSchemaPrefix(physicalSchema) + dbChangeTable
+                + " SET " +
+                "ARTFTYPE = ?, " +
+                "DBSCHEMA = ?, " +
+                "ACTIVE = ?, " +
+                "CHANGETYPE = ?, " +
+                "CONTENTHASH = ?, " +
+                rollbackContentColumn + " = ?, " +
+                deployUserIdColumn + " = ?, " +
+                timeUpdatedColumn + " = ?, " +
+                updateDeployExecutionIdColumn + " = ? " +
+                "WHERE " + changeNameColumn + " = ? AND OBJECTNAME = ?";
+    }
+
+    private Object[] getUpdateArgs(Change artifact, DeployExecution deployExecution) {
+        return new Object[] {
+                artifact instanceof ChangeIncremental ? "I" : "R"
                 , artifact.getSchema()
                 , artifact.isActive() ? 1 : 0
                 , artifact.getChangeType().getName()
@@ -449,7 +832,45 @@ public class SameSchemaChangeAuditDao implements ChangeAuditDao {
                 , deployExecution.getId()
                 , artifact.getChangeName()
                 , artifact.getObjectName()
-        );
+        };
+    }
+
+    /**
+     * An audit write that has been buffered for batching. The statement arguments are captured when the write is
+     * requested so that later changes to the {@link Change} object do not leak into the audit record.
+     */
+    private static class PendingAuditWrite {
+        private static final Function<PendingAuditWrite, Object[]> TO_INSERT_ARGS = new Function<PendingAuditWrite, Object[]>() {
+            @Override
+            public Object[] valueOf(PendingAuditWrite pendingWrite) {
+                return pendingWrite.insertArgs;
+            }
+        };
+
+        private static final Function<PendingAuditWrite, Object[]> TO_UPDATE_ARGS = new Function<PendingAuditWrite, Object[]>() {
+            @Override
+            public Object[] valueOf(PendingAuditWrite pendingWrite) {
+                return pendingWrite.updateArgs;
+            }
+        };
+
+        private final Change change;
+        private final Object[] insertArgs;
+        /** Only set for update-or-insert writes; null for plain inserts. */
+        private final Object[] updateArgs;
+
+        PendingAuditWrite(Change change, Object[] insertArgs, Object[] updateArgs) {
+            this.change = change;
+            this.insertArgs = insertArgs;
+            this.updateArgs = updateArgs;
+        }
+
+        /**
+         * The primary key of the audit row, i.e. the change name and object name.
+         */
+        Pair<String, String> getAuditKey() {
+            return Tuples.pair(change.getChangeName(), change.getObjectName());
+        }
     }
 
     protected Timestamp getCurrentTimestamp() {
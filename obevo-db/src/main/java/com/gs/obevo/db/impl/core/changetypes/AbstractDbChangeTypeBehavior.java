@@ -113,37 +113,56 @@ public abstract class AbstractDbChangeTypeBehavior implements DbChangeTypeBehavi
 
     /**
      * To avoid irrecoverable deploy state, we allow the deploy to succeed even if grant fails, and we will simply log out warnings.
+     *
+     * The grants of an object are sent to the database as a single JDBC batch. If the batch fails, we execute the grants
+     * individually (grants are idempotent) so that each failing statement is reported in its own warning.
      */
     private void applyGrants(Connection conn, PhysicalSchema schema, String objectName, RichIterable<Permission> permsToApply, CommandExecutionContext cec) {
-        String lastExecutedSql = null;
+        ImmutableList<String> grants;
         try {
             Pair<Boolean, RichIterable<String>> qualifiedObjectNames = getQualifiedObjectNames(conn, schema, objectName);
-            ImmutableList<String> grants = this.grantChangeParser.generateGrantChanges(permsToApply, dbChangeType, schema, objectName, qualifiedObjectNames.getTwo(), qualifiedObjectNames.getOne());
-
-            LOG.info(String.format("Applying grants on db object [%s]: found %d total SQL statements to apply",
-                    objectName, grants.size()));
-
-            for (String grant : grants) {
-                if (!StringUtils.isBlank(grant)) {
-                    // need to check for blank in case it gets tokenized away during the in-memory conversion
-                    LOG.debug("Executing grant: {}", grant);
-                    lastExecutedSql = grant;
+            // need to check for blank in case it gets tokenized away during the in-memory conversion
+            grants = this.grantChangeParser.generateGrantChanges(permsToApply, dbChangeType, schema, objectName, qualifiedObjectNames.getTwo(), qualifiedObjectNames.getOne())
+                    .select(StringPredicates.notBlank());
+        } catch (Exception exc) {
+            addGrantWarning(cec, schema, objectName, null, exc);
+            return;
+        }
 
-                    // grants are automatically included as part of the original change, so we don't track the deployment in the
-                    // audit table
-                    sqlExecutor.getJdbcTemplate().update(conn, grant);
-                }
+        LOG.info(String.format("Applying grants on db object [%s]: found %d total SQL statements to apply",
+                objectName, grants.size()));
+
+        // grants are automatically included as part of the original change, so we don't track the deployment in the
+        // audit table
+        if (grants.size() > 1) {
+            try {
+                LOG.debug("Executing grants as a batch: {}", grants);
+                sqlExecutor.getJdbcTemplate().batchExecute(conn, grants);
+                return;
+            } catch (Exception exc) {
+                LOG.debug("Batched grants failed on object [{}]; will execute them individually to find the failing statements", objectName, exc);
             }
-        } catch (Exception exc) {
-            String warningMessage = "Failed executing grant on schema [" + schema + "] and object [" + objectName + "]";
-            if (lastExecutedSql != null) {
-                warningMessage += " on SQL " + lastExecutedSql + ":";
+        }
+
+        for (String grant : grants) {
+            try {
+                LOG.debug("Executing grant: {}", grant);
+                sqlExecutor.getJdbcTemplate().update(conn, grant);
+            } catch (Exception exc) {
+                addGrantWarning(cec, schema, objectName, grant, exc);
             }
-            cec.addWarning(warningMessage + exc.getMessage() + "\n        Proceeding with deploy. Please use a /migration script to correct this. Watch https://github.com/goldmansachs/obevo/issues/3 to see when we improve this logic.");
-            LOG.error(warningMessage, exc);
         }
     }
 
+    private void addGrantWarning(CommandExecutionContext cec, PhysicalSchema schema, String objectName, String grant, Exception exc) {
+        String warningMessage = "Failed executing grant on schema [" + schema + "] and object [" + objectName + "]";
+        if (grant != null) {
+            warningMessage += " on SQL " + grant + ":";
+        }
+        cec.addWarning(warningMessage + exc.getMessage() + "\n        Proceeding with deploy. Please use a /migration script to correct this. Watch https://github.com/goldmansachs/obevo/issues/3 to see when we improve this logic.");
+        LOG.error(warningMessage, exc);
+    }
+
     @Override
     public void dropObject(final Change change, final boolean dropForRecreate) {
         sqlExecutor.executeWithinContext(change.getPhysicalSchema(), new Procedure<Connection>() {
@@ -20,6 +20,9 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -41,6 +44,7 @@ import com.gs.obevo.api.platform.DeployerRuntimeException;
 import com.gs.obevo.db.api.appdata.DbEnvironment;
 import com.gs.obevo.db.api.platform.DbPlatform;
 import com.gs.obevo.db.api.platform.SqlExecutor;
+import com.gs.obevo.db.impl.core.changetypes.SortOrderVerifyingDataSource.SortOrderMismatchException;
 import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
 import com.gs.obevo.db.impl.core.reader.TextMarkupDocumentReader;
 import com.gs.obevo.dbmetadata.api.DaColumn;
@@ -53,7 +57,6 @@ import org.apache.commons.lang3.Validate;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.procedure.Procedure;
-import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.ListIterable;
 import org.eclipse.collections.api.list.MutableList;
@@ -156,8 +159,7 @@ public class CsvStaticDataDeployer {
                 ),
                 "Could not find table %1$s.%2$s", artifact.getPhysicalSchema(), artifact.getObjectName());
 
-        CsvReaderDataSource fileSource = new CsvStaticDataReader().getFileDataSource(env.getCsvVersion(), table, artifact.getConvertedContent(),
-                env.getDataDelimiter(), env.getNullToken(), dbPlatform.convertDbObjectName());
+        CsvReaderDataSource fileSource = this.getFileDataSource(env, artifact, table);
 
         // we check this here to ensure that in case there are more fields in the DB than in the csv file
         // (i.e. for default columns), that we exclude them later on
@@ -186,9 +188,36 @@ public class CsvStaticDataDeployer {
         MutableSet<String> excludeFields = dbColumnNames.select(Predicates.notIn(fileColumnNames));
 
         CatoProperties reconFields = new SimpleCatoProperties(keyFields.castToList(), excludeFields);
+        if (env.isStaticDataStreamingEnabled()) {
+            // CSV files are usually written in key order, so we first try to stream the file as well; if it is not in
+            // order, then we only sort the file side in memory
+            boolean streamFile = true;
+            while (true) {
+                try {
+                    return this.parseReconChangesStreaming(artifact, table, fileSource, streamFile, reconFields, fileColumnNames, updateTimeColumn);
+                } catch (SortOrderMismatchException e) {
+                    // the file source has already been consumed, so we need a new one
+                    fileSource = this.getFileDataSource(env, artifact, table);
+                    if (streamFile && e.getDataSourceName().equals(fileSource.getName())) {
+                        LOG.debug("The static data file for table {} is not in key order; sorting it in memory. Details: {}",
+                                table.getName(), e.getMessage());
+                        streamFile = false;
+                    } else {
+                        LOG.warn("Could not stream the static data for table {} as the database sort order differs from the " +
+                                "comparison order; falling back to the in-memory comparison. Details: {}", table.getName(), e.getMessage());
+                        break;
+                    }
+                }
+            }
+        }
         return this.parseReconChanges(artifact, table, fileSource, reconFields, fileColumnNames, updateTimeColumn);
     }
 
+    private CsvReaderDataSource getFileDataSource(DbEnvironment env, Change artifact, DaTable table) {
+        return new CsvStaticDataReader().getFileDataSource(env.getCsvVersion(), table, artifact.getConvertedContent(),
+                env.getDataDelimiter(), env.getNullToken(), dbPlatform.convertDbObjectName());
+    }
+
     private ImmutableList<String> getUniqueIndexColumnNames(Change artifact, DaTable table) {
         String keySpecified = artifact.getMetadataAttribute(TextMarkupDocumentReader.ATTR_PRIMARY_KEYS);
         boolean overrideKeys = keySpecified != null;
@@ -215,19 +244,83 @@ public class CsvStaticDataDeployer {
     private StaticDataChangeRows parseReconChanges(Change artifact, DaTable table,
             CatoDataSource fileSource,
             CatoProperties reconFields, final MutableSet<String> fileColumnNames, String updateTimeColumn) {
-        CatoDataSource dbSource = this.getQueryDataSource(artifact.getPhysicalSchema(), table);
+        CatoDataSource dbSource = this.getQueryDataSource(artifact.getPhysicalSchema(), table, null);
 
         CatoComparison recon = CatoBaseUtil.compare("name", fileSource, dbSource, reconFields);
 
-        MutableList<StaticDataInsertRow> inserts = Lists.mutable.empty();
-        MutableList<StaticDataUpdateRow> updates = Lists.mutable.empty();
-        MutableList<StaticDataDeleteRow> deletes = Lists.mutable.empty();
+        ReconBreakCollector breakCollector = new ReconBreakCollector(reconFields.getKeyFields(), fileColumnNames, updateTimeColumn);
+        for (Break reconBreak : recon.getBreaks()) {
+            breakCollector.value(reconBreak);
+        }
+
+        return breakCollector.toChangeRows(artifact, table);
+    }
+
+    /**
+     * Streaming variant of {@link #parseReconChanges(Change, DaTable, CatoDataSource, CatoProperties, MutableSet, String)}:
+     * the table is read in key order and merged against the file, and only the breaks are kept rather than the full
+     * table contents.
+     *
+     * @param streamFile true if the file rows should be merged as they are read (i.e. assuming that the file is already
+     * in key order); false if the file side should be sorted in memory first
+     * @throws SortOrderMismatchException if the rows from either source are not in the order the comparator expects
+     */
+    private StaticDataChangeRows parseReconChangesStreaming(Change artifact, DaTable table,
+            CatoDataSource fileSource, boolean streamFile,
+            CatoProperties reconFields, final MutableSet<String> fileColumnNames, String updateTimeColumn) {
+        CatoDataSource leftSource = streamFile ? new SortOrderVerifyingDataSource(fileSource) : fileSource;
+        CatoDataSource dbSource = new SortOrderVerifyingDataSource(
+                this.getQueryDataSource(artifact.getPhysicalSchema(), table, reconFields.getKeyFields()));
+
+        ReconBreakCollector breakCollector = new ReconBreakCollector(reconFields.getKeyFields(), fileColumnNames, updateTimeColumn);
+        boolean completed = false;
+        try {
+            CatoBaseUtil.compare("name", leftSource, dbSource, new StreamingStaticDataConfiguration(reconFields, breakCollector));
+            completed = true;
+        } finally {
+            if (!completed) {
+                // the comparator only closes the sources once it completes; hence, we close them here so that the
+                // db cursor is released before the caller retries
+                closeQuietly(leftSource);
+                closeQuietly(dbSource);
+            }
+        }
+
+        return breakCollector.toChangeRows(artifact, table);
+    }
+
+    private static void closeQuietly(CatoDataSource dataSource) {
+        try {
+            dataSource.close();
+        } catch (RuntimeException e) {
+            // the source may not have been opened yet; there is nothing else to release in that case
+            LOG.debug("Could not close data source {}: {}", dataSource.getName(), e.getMessage());
+        }
+    }
 
+    /**
+     * Converts the breaks from the comparison into the rows to insert, update, or delete.
+     */
+    private class ReconBreakCollector implements Procedure<Break> {
+        private final List<String> keyFields;
+        private final MutableSet<String> fileColumnNames;
+        private final String updateTimeColumn;
         // must be java.sql.Timestamp, not Date, as that is correct JDBC (and Sybase ASE isn't forgiving of taking in
         // Date for jdbc batch updates)
-        Timestamp updateTime = new Timestamp(new Date().getTime());
+        private final Timestamp updateTime = new Timestamp(new Date().getTime());
 
-        for (Break reconBreak : recon.getBreaks()) {
+        private final MutableList<StaticDataInsertRow> inserts = Lists.mutable.empty();
+        private final MutableList<StaticDataUpdateRow> updates = Lists.mutable.empty();
+        private final MutableList<StaticDataDeleteRow> deletes = Lists.mutable.empty();
+
+        ReconBreakCollector(List<String> keyFields, MutableSet<String> fileColumnNames, String updateTimeColumn) {
+            this.keyFields = keyFields;
+            this.fileColumnNames = fileColumnNames;
+            this.updateTimeColumn = updateTimeColumn;
+        }
+
+        @Override
+        public void value(Break reconBreak) {
             if (reconBreak instanceof FieldBreak) {
                 LOG.debug("Found as diff {}", reconBreak);
                 final FieldBreak fieldBreak = (FieldBreak) reconBreak;
@@ -251,14 +344,14 @@ public class CsvStaticDataDeployer {
                 if (params.isEmpty()) {
                     // nothing to do - only diff was in a default column
                     // see the "DEFAULT_FIELD TIMESTAMP NOT NULL DEFAULT CURRENT TIMESTAMP," use case
-                    continue;
+                    return;
                 }
 
                 if (updateTimeColumn != null) {
                     params.put(updateTimeColumn, updateTime);
                 }
 
-                for (String keyField : recon.getKeyFields()) {
+                for (String keyField : keyFields) {
                     whereParams.put(keyField, reconBreak.getDataObject().getValue(keyField));
                 }
 
@@ -272,7 +365,7 @@ public class CsvStaticDataDeployer {
 
                     MutableMap<String, Object> params = UnifiedMap.newMap();
                     for (String field : dataBreak.getDataObject().getFields()) {
-                        String fieldToCompare = this.dbPlatform.convertDbObjectName().valueOf(field);
+                        String fieldToCompare = CsvStaticDataDeployer.this.dbPlatform.convertDbObjectName().valueOf(field);
                         if (!fileColumnNames.contains(fieldToCompare)) {
                             continue;
                         }
@@ -290,7 +383,7 @@ public class CsvStaticDataDeployer {
                     LOG.debug("Found as delete {}", dataBreak);
 
                     MutableMap<String, Object> whereParams = UnifiedMap.newMap();
-                    for (String keyField : recon.getKeyFields()) {
+                    for (String keyField : keyFields) {
                         whereParams.put(keyField, reconBreak.getDataObject().getValue(keyField));
                     }
 
@@ -307,7 +400,9 @@ public class CsvStaticDataDeployer {
             }
         }
 
-        return new StaticDataChangeRows(artifact.getPhysicalSchema(), table, inserts.toImmutable(), updates.toImmutable(), deletes.toImmutable());
+        StaticDataChangeRows toChangeRows(Change artifact, DaTable table) {
+            return new StaticDataChangeRows(artifact.getPhysicalSchema(), table, inserts.toImmutable(), updates.toImmutable(), deletes.toImmutable());
+        }
     }
 
     /**
@@ -316,9 +411,6 @@ public class CsvStaticDataDeployer {
      *
      * Also - this can be overridable in case we want to support bulk-inserts for specific database types,
      * e.g. Sybase IQ
-     *
-     * We only use batching for "executeInserts" as that is the 90% case of the performance
-     * (updates may vary the kinds of sqls that are needed, and deletes I'd assume are rare)
      */
     protected void executeInserts(Connection conn, StaticDataChangeRows changeRows) {
         if (changeRows.getInsertRows().isEmpty()) {
@@ -336,33 +428,21 @@ public class CsvStaticDataDeployer {
                 " VALUES " + insertValues.makeString("(", ", ", ")");
         LOG.info("Executing the insert " + sql);
 
-        // TODO parameterize this chunk value - sybase sometimes cannot take a large chunk
-        for (RichIterable<StaticDataInsertRow> chunkInsertRows : changeRows.getInsertRows().chunk(25)) {
-            final Object[][] paramArrays = new Object[chunkInsertRows.size()][];
-            chunkInsertRows.forEachWithIndex(new ObjectIntProcedure<StaticDataInsertRow>() {
-                @Override
-                public void value(StaticDataInsertRow insert, int i) {
-                    MutableList<Object> paramVals = insert.getParamVals();
-                    paramArrays[i] = paramVals.toArray(new Object[0]);
-                }
-            });
-
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("for " + paramArrays.length + " rows with params: " + Arrays.deepToString(paramArrays));
-            }
-            try {
-                this.jdbcTemplate.batchUpdate(conn, sql, paramArrays);
-            } catch (RuntimeException e) {
-                e.printStackTrace();
-                throw e;
-            }
+        MutableList<Object[]> paramArrays = Lists.mutable.empty();
+        for (StaticDataInsertRow insert : changeRows.getInsertRows()) {
+            paramArrays.add(insert.getParamVals().toArray(new Object[0]));
         }
+
+        this.executeBatches(conn, sql, paramArrays);
     }
 
     /**
-     * See executeInserts javadoc for why we don't leverage batching here
+     * Rows that set and filter on the same columns share the same SQL, so we group them and execute each group as a
+     * batch.
      */
     protected void executeUpdates(Connection conn, StaticDataChangeRows changeRows) {
+        Map<String, MutableList<Object[]>> paramsBySql = new LinkedHashMap<String, MutableList<Object[]>>();
+
         for (StaticDataUpdateRow update : changeRows.getUpdateRows()) {
             MutableList<String> updatePieces = Lists.mutable.empty();
             MutableList<String> whereClauseParts = Lists.mutable.empty();
@@ -382,16 +462,21 @@ public class CsvStaticDataDeployer {
                     " SET " + updatePieces.makeString(", ") +
                     " WHERE " + whereClauseParts.makeString(" AND ");
 
-            LOG.info("Executing this break: [" + sql + "] with params [" + paramVals + "]");
+            addToSqlGroup(paramsBySql, sql, paramVals);
+        }
 
-            this.jdbcTemplate.update(conn, sql, paramVals.toArray());
+        for (Map.Entry<String, MutableList<Object[]>> sqlGroup : paramsBySql.entrySet()) {
+            LOG.info("Executing the update [" + sqlGroup.getKey() + "] for " + sqlGroup.getValue().size() + " rows");
+            this.executeBatches(conn, sqlGroup.getKey(), sqlGroup.getValue());
         }
     }
 
     /**
-     * See executeInserts javadoc for why we don't leverage batching here
+     * See executeUpdates javadoc for how the deletes are batched.
      */
     protected void executeDeletes(Connection conn, StaticDataChangeRows changeRows) {
+        Map<String, MutableList<Object[]>> paramsBySql = new LinkedHashMap<String, MutableList<Object[]>>();
+
         for (StaticDataDeleteRow delete : changeRows.getDeleteRows()) {
             MutableList<Object> paramVals = Lists.mutable.empty();
             MutableList<String> whereClauseParts = Lists.mutable.empty();
@@ -405,15 +490,50 @@ public class CsvStaticDataDeployer {
 
             String sql = "DELETE FROM " + dbPlatform.getSchemaPrefix(changeRows.getSchema()) + changeRows.getTable().getName() +
                     " WHERE " + whereClauseParts.makeString(" AND ");
-            LOG.info("DELETING: " + sql + ":" + paramVals.makeString(", "));
-            this.jdbcTemplate.update(conn, sql, paramVals.toArray());
+
+            addToSqlGroup(paramsBySql, sql, paramVals);
+        }
+
+        for (Map.Entry<String, MutableList<Object[]>> sqlGroup : paramsBySql.entrySet()) {
+            LOG.info("DELETING: " + sqlGroup.getKey() + " for " + sqlGroup.getValue().size() + " rows");
+            this.executeBatches(conn, sqlGroup.getKey(), sqlGroup.getValue());
+        }
+    }
+
+    private static void addToSqlGroup(Map<String, MutableList<Object[]>> paramsBySql, String sql, MutableList<Object> paramVals) {
+        MutableList<Object[]> sqlParams = paramsBySql.get(sql);
+        if (sqlParams == null) {
+            sqlParams = Lists.mutable.empty();
+            paramsBySql.put(sql, sqlParams);
+        }
+        sqlParams.add(paramVals.toArray());
+    }
+
+    /**
+     * Executes the sql for the given params in batches of {@link DbPlatform#getBulkWriteBatchSize()} rows, as some
+     * platforms (e.g. Sybase ASE) cannot take a large batch.
+     */
+    private void executeBatches(Connection conn, String sql, MutableList<Object[]> paramArrays) {
+        for (RichIterable<Object[]> chunkParams : paramArrays.chunk(dbPlatform.getBulkWriteBatchSize())) {
+            Object[][] chunkParamArrays = chunkParams.toArray(new Object[chunkParams.size()][]);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("for " + chunkParamArrays.length + " rows with params: " + Arrays.deepToString(chunkParamArrays));
+            }
+            this.jdbcTemplate.batchUpdate(conn, sql, chunkParamArrays);
         }
     }
 
-    private CatoDataSource getQueryDataSource(PhysicalSchema physicalSchema, DaTable table) {
+    /**
+     * @param orderByColumns the columns to sort the rows by, or null if the order does not matter
+     */
+    private CatoDataSource getQueryDataSource(PhysicalSchema physicalSchema, DaTable table, List<String> orderByColumns) {
         ImmutableList<DaColumn> cols = table.getColumns();
         String colNameStr = cols.collect(DaNamedObject.TO_NAME).collect(this.dbPlatform.convertDbObjectName()).makeString(", ");
         String query = "select " + colNameStr + " from " + this.dbPlatform.getSchemaPrefix(physicalSchema) + table.getName();
+        if (orderByColumns != null) {
+            query += " order by " + Lists.mutable.withAll(orderByColumns).makeString(", ");
+        }
 
         try {
             Connection conn = this.dataSource.getConnection();
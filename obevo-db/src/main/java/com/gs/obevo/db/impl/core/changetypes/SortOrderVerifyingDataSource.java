@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.changetypes;
+
+import java.util.Comparator;
+
+import com.gs.obevocomparer.data.CatoDataObject;
+import com.gs.obevocomparer.input.AbstractCatoWrapperDataSource;
+import com.gs.obevocomparer.input.CatoDataSource;
+import com.gs.obevocomparer.util.CatoConfiguration;
+
+/**
+ * Wraps a data source whose rows are expected to be sorted already (e.g. via an ORDER BY in the query, or a CSV file
+ * written in key order) so that the comparator can merge it without sorting it in memory.
+ *
+ * The source may not be sorted the same way as the comparator expects (e.g. case-insensitive collations or where nulls
+ * are placed), and a merge over rows in the wrong order would give incorrect diffs. Hence, we check each row against
+ * the previous one and throw {@link SortOrderMismatchException} as soon as the order differs so that the caller can
+ * fall back to sorting in memory. The caller is responsible for closing the sources in that case, as the
+ * comparator only closes them once it completes.
+ */
+public class SortOrderVerifyingDataSource extends AbstractCatoWrapperDataSource {
+    private Comparator<CatoDataObject> comparator;
+    private CatoDataObject previous;
+
+    public SortOrderVerifyingDataSource(CatoDataSource baseDataSource) {
+        super(baseDataSource);
+        baseDataSource.setSorted(true);
+    }
+
+    @Override
+    public void setCatoConfiguration(CatoConfiguration configuration) {
+        super.setCatoConfiguration(configuration);
+        this.comparator = configuration.dataObjectComparator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.baseDataSource.hasNext();
+    }
+
+    @Override
+    public CatoDataObject next() {
+        CatoDataObject current = this.baseDataSource.next();
+        if (this.previous != null && this.comparator.compare(this.previous, current) > 0) {
+            throw new SortOrderMismatchException(getName(), "Rows from data source " + getName() + " are not in the expected order: "
+                    + this.previous + " precedes " + current);
+        }
+        this.previous = current;
+        return current;
+    }
+
+    public static class SortOrderMismatchException extends RuntimeException {
+        private final String dataSourceName;
+
+        public SortOrderMismatchException(String dataSourceName, String message) {
+            super(message);
+            this.dataSourceName = dataSourceName;
+        }
+
+        /**
+         * Returns the name of the data source whose rows were out of order.
+         */
+        public String getDataSourceName() {
+            return this.dataSourceName;
+        }
+    }
+}
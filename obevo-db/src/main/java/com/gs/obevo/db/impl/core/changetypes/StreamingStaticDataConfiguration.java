@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.changetypes;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+import com.gs.obevocomparer.compare.CatoProperties;
+import com.gs.obevocomparer.compare.breaks.Break;
+import com.gs.obevocomparer.data.CatoDataObject;
+import com.gs.obevocomparer.spring.CatoSimpleJavaConfiguration;
+import com.gs.obevocomparer.util.Factory;
+import org.eclipse.collections.api.block.procedure.Procedure;
+
+/**
+ * Comparison configuration for the streaming static data mode. Instead of collecting all the breaks and compared rows
+ * in memory, each break is handed to the given procedure as soon as the comparator finds it and the compared rows are
+ * discarded. Hence, the memory used is only bounded by the rows that need to be changed.
+ *
+ * The sources being compared are expected to be sorted by the key fields (see {@link SortOrderVerifyingDataSource}).
+ */
+public class StreamingStaticDataConfiguration extends CatoSimpleJavaConfiguration {
+    private final Procedure<Break> breakProcedure;
+
+    public StreamingStaticDataConfiguration(CatoProperties properties, Procedure<Break> breakProcedure) {
+        super(properties);
+        this.breakProcedure = breakProcedure;
+    }
+
+    @Override
+    public Factory<Collection<Break>> breakCollectionFactory() {
+        return new Factory<Collection<Break>>() {
+            @Override
+            public Collection<Break> create() {
+                return new ForwardingCollection<Break>(breakProcedure);
+            }
+        };
+    }
+
+    @Override
+    public Factory<Collection<CatoDataObject>> dataCollectionFactory() {
+        return new Factory<Collection<CatoDataObject>>() {
+            @Override
+            public Collection<CatoDataObject> create() {
+                return new ForwardingCollection<CatoDataObject>(null);
+            }
+        };
+    }
+
+    /**
+     * Write-only collection that passes each added element to the procedure (if any) without retaining it.
+     */
+    private static class ForwardingCollection<T> extends AbstractCollection<T> {
+        private final Procedure<T> procedure;
+        private int size = 0;
+
+        ForwardingCollection(Procedure<T> procedure) {
+            this.procedure = procedure;
+        }
+
+        @Override
+        public boolean add(T element) {
+            if (this.procedure != null) {
+                this.procedure.value(element);
+            }
+            this.size++;
+            return true;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Collections.<T>emptyList().iterator();
+        }
+
+        /**
+         * Returns the number of elements that were passed through, for logging purposes.
+         */
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+}
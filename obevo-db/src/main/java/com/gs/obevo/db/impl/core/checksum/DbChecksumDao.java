@@ -16,6 +16,7 @@
 package com.gs.obevo.db.impl.core.checksum;
 
 import com.gs.obevo.api.appdata.PhysicalSchema;
+import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.collection.ImmutableCollection;
 
 /**
@@ -31,6 +32,14 @@ public interface DbChecksumDao {
 
     void deleteEntry(ChecksumEntry entry);
 
+    /**
+     * Applies the given entry changes for a single schema in bulk, as opposed to calling {@link #persistEntry(ChecksumEntry)}
+     * and {@link #deleteEntry(ChecksumEntry)} for each entry. Unlike persistEntry, the caller must tell which entries
+     * are new and which already exist in the schema; an entry to update whose row is gone by the time of the write is
+     * inserted instead.
+     */
+    void applyEntryChanges(PhysicalSchema physicalSchema, RichIterable<ChecksumEntry> entriesToInsert, RichIterable<ChecksumEntry> entriesToUpdate, RichIterable<ChecksumEntry> entriesToDelete);
+
     boolean isInitialized();
 
     void initialize();
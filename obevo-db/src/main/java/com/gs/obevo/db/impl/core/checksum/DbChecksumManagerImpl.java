@@ -15,15 +15,23 @@
  */
 package com.gs.obevo.db.impl.core.checksum;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.dbmetadata.api.DaCatalog;
 import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import org.apache.commons.lang.Validate;
+import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.collection.ImmutableCollection;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.map.MapIterable;
+import org.eclipse.collections.api.multimap.list.ImmutableListMultimap;
 import org.eclipse.collections.api.set.ImmutableSet;
 import org.eclipse.collections.api.set.SetIterable;
 import org.eclipse.collections.impl.block.factory.Functions;
@@ -33,45 +41,92 @@ public class DbChecksumManagerImpl implements DbChecksumManager {
     private final DbMetadataManager dbMetadataManager;
     private final DbChecksumDao dbChecksumDao;
     private final ImmutableSet<PhysicalSchema> physicalSchemas;
+    private final int numThreads;
     private final DbChecksumCalculator checksumCalculator = new DbChecksumCalculator();
 
     public DbChecksumManagerImpl(DbMetadataManager dbMetadataManager, DbChecksumDao dbChecksumDao, ImmutableSet<PhysicalSchema> physicalSchemas) {
+        this(dbMetadataManager, dbChecksumDao, physicalSchemas, 1);
+    }
+
+    /**
+     * @param numThreads The number of schemas whose checksums are calculated concurrently.
+     */
+    public DbChecksumManagerImpl(DbMetadataManager dbMetadataManager, DbChecksumDao dbChecksumDao, ImmutableSet<PhysicalSchema> physicalSchemas, int numThreads) {
         this.dbMetadataManager = dbMetadataManager;
         this.dbChecksumDao = dbChecksumDao;
         this.physicalSchemas = physicalSchemas;
+        this.numThreads = numThreads;
     }
 
     @Override
-    public ImmutableCollection<ChecksumBreak> determineChecksumDifferences(Predicate<? super ChecksumEntry> checksumEntryInclusionPredicate) {
+    public ImmutableCollection<ChecksumBreak> determineChecksumDifferences(final Predicate<? super ChecksumEntry> checksumEntryInclusionPredicate) {
         MutableList<ChecksumBreak> checksumBreaks = Lists.mutable.empty();
 
-        for (PhysicalSchema physicalSchema : physicalSchemas) {
-            DaCatalog catalog = dbMetadataManager.getDatabase(physicalSchema, new DaSchemaInfoLevel().setMaximum(), true, true);
+        if (numThreads <= 1 || physicalSchemas.size() <= 1) {
+            for (PhysicalSchema physicalSchema : physicalSchemas) {
+                checksumBreaks.addAllIterable(determineChecksumDifferences(physicalSchema, checksumEntryInclusionPredicate));
+            }
+            return checksumBreaks.toImmutable();
+        }
 
-            ImmutableCollection<ChecksumEntry> newChecksums = checksumCalculator.getChecksums(catalog)
-                    .select(checksumEntryInclusionPredicate);
-            MapIterable<String, ChecksumEntry> newChecksumMap = newChecksums.toMap(ChecksumEntry.TO_KEY, Functions.<ChecksumEntry>getPassThru());
+        // the catalog crawl dominates the time here, so we crawl the schemas concurrently
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(numThreads, physicalSchemas.size()));
+        try {
+            MutableList<Future<MutableList<ChecksumBreak>>> futures = Lists.mutable.empty();
+            for (final PhysicalSchema physicalSchema : physicalSchemas) {
+                futures.add(executorService.submit(new Callable<MutableList<ChecksumBreak>>() {
+                    @Override
+                    public MutableList<ChecksumBreak> call() {
+                        return determineChecksumDifferences(physicalSchema, checksumEntryInclusionPredicate);
+                    }
+                }));
+            }
 
-            ImmutableCollection<ChecksumEntry> existingChecksums = dbChecksumDao.getPersistedEntries(physicalSchema);
-            MapIterable<String, ChecksumEntry> existingChecksumMap = existingChecksums.toMap(ChecksumEntry.TO_KEY, Functions.<ChecksumEntry>getPassThru());
+            for (Future<MutableList<ChecksumBreak>> future : futures) {
+                checksumBreaks.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
 
-            SetIterable<String> allChecksumKeys = newChecksumMap.keysView().toSet().withAll(existingChecksumMap.keysView());
+        return checksumBreaks.toImmutable();
+    }
 
-            for (String checksumKey : allChecksumKeys) {
-                ChecksumEntry newChecksum = newChecksumMap.get(checksumKey);
-                ChecksumEntry existingChecksum = existingChecksumMap.get(checksumKey);
+    private MutableList<ChecksumBreak> determineChecksumDifferences(PhysicalSchema physicalSchema, Predicate<? super ChecksumEntry> checksumEntryInclusionPredicate) {
+        MutableList<ChecksumBreak> checksumBreaks = Lists.mutable.empty();
 
-                if (newChecksum == null && existingChecksum != null) {
-                    checksumBreaks.add(new ChecksumBreak(existingChecksum.getKey(), existingChecksum, newChecksum, ChecksumBreakType.IN_AUDIT_BUT_NOT_DB, checksumEntryInclusionPredicate.accept(existingChecksum)));
-                } else if (newChecksum != null && existingChecksum == null) {
-                    checksumBreaks.add(new ChecksumBreak(newChecksum.getKey(), existingChecksum, newChecksum, ChecksumBreakType.IN_DB_BUT_NOT_AUDIT, false));
-                } else if (!newChecksum.getChecksum().equalsIgnoreCase(existingChecksum.getChecksum())) {
-                    checksumBreaks.add(new ChecksumBreak(newChecksum.getKey(), existingChecksum, newChecksum, ChecksumBreakType.DIFFERENCE, false));
-                }
+        DaCatalog catalog = dbMetadataManager.getDatabase(physicalSchema, new DaSchemaInfoLevel().setMaximum(), true, true);
+
+        ImmutableCollection<ChecksumEntry> newChecksums = checksumCalculator.getChecksums(catalog)
+                .select(checksumEntryInclusionPredicate);
+        MapIterable<String, ChecksumEntry> newChecksumMap = newChecksums.toMap(ChecksumEntry.TO_KEY, Functions.<ChecksumEntry>getPassThru());
+
+        ImmutableCollection<ChecksumEntry> existingChecksums = dbChecksumDao.getPersistedEntries(physicalSchema);
+        MapIterable<String, ChecksumEntry> existingChecksumMap = existingChecksums.toMap(ChecksumEntry.TO_KEY, Functions.<ChecksumEntry>getPassThru());
+
+        SetIterable<String> allChecksumKeys = newChecksumMap.keysView().toSet().withAll(existingChecksumMap.keysView());
+
+        for (String checksumKey : allChecksumKeys) {
+            ChecksumEntry newChecksum = newChecksumMap.get(checksumKey);
+            ChecksumEntry existingChecksum = existingChecksumMap.get(checksumKey);
+
+            if (newChecksum == null && existingChecksum != null) {
+                checksumBreaks.add(new ChecksumBreak(existingChecksum.getKey(), existingChecksum, newChecksum, ChecksumBreakType.IN_AUDIT_BUT_NOT_DB, checksumEntryInclusionPredicate.accept(existingChecksum)));
+            } else if (newChecksum != null && existingChecksum == null) {
+                checksumBreaks.add(new ChecksumBreak(newChecksum.getKey(), existingChecksum, newChecksum, ChecksumBreakType.IN_DB_BUT_NOT_AUDIT, false));
+            } else if (!newChecksum.getChecksum().equalsIgnoreCase(existingChecksum.getChecksum())) {
+                checksumBreaks.add(new ChecksumBreak(newChecksum.getKey(), existingChecksum, newChecksum, ChecksumBreakType.DIFFERENCE, false));
             }
         }
 
-        return checksumBreaks.toImmutable();
+        return checksumBreaks;
     }
 
     @Override
@@ -80,17 +135,38 @@ public class DbChecksumManagerImpl implements DbChecksumManager {
         applyChecksumDiffs(checksumBreaks);
     }
 
+    /**
+     * Applies the breaks for each schema as a single bulk operation, as the number of breaks can be large (e.g. when
+     * checksums are first turned on for an existing schema).
+     */
     private void applyChecksumDiffs(ImmutableCollection<ChecksumBreak> checksumBreaks) {
-        for (ChecksumBreak checksumBreak : checksumBreaks) {
-            if (checksumBreak.getExistingChecksum() == null) {
-                Validate.notNull(checksumBreak.getNewChecksum());
-                dbChecksumDao.persistEntry(checksumBreak.getNewChecksum());
-            } else if (checksumBreak.getNewChecksum() == null) {
-                Validate.notNull(checksumBreak.getExistingChecksum());
-                dbChecksumDao.deleteEntry(checksumBreak.getExistingChecksum());
-            } else {
-                dbChecksumDao.persistEntry(checksumBreak.getNewChecksum());
+        ImmutableListMultimap<PhysicalSchema, ChecksumBreak> breaksBySchema = checksumBreaks.toList().toImmutable().groupBy(new Function<ChecksumBreak, PhysicalSchema>() {
+            @Override
+            public PhysicalSchema valueOf(ChecksumBreak checksumBreak) {
+                return checksumBreak.getExistingChecksum() != null
+                        ? checksumBreak.getExistingChecksum().getPhysicalSchema()
+                        : checksumBreak.getNewChecksum().getPhysicalSchema();
             }
+        });
+
+        for (PhysicalSchema physicalSchema : breaksBySchema.keysView()) {
+            MutableList<ChecksumEntry> entriesToInsert = Lists.mutable.empty();
+            MutableList<ChecksumEntry> entriesToUpdate = Lists.mutable.empty();
+            MutableList<ChecksumEntry> entriesToDelete = Lists.mutable.empty();
+
+            for (ChecksumBreak checksumBreak : breaksBySchema.get(physicalSchema)) {
+                if (checksumBreak.getExistingChecksum() == null) {
+                    Validate.notNull(checksumBreak.getNewChecksum());
+                    entriesToInsert.add(checksumBreak.getNewChecksum());
+                } else if (checksumBreak.getNewChecksum() == null) {
+                    Validate.notNull(checksumBreak.getExistingChecksum());
+                    entriesToDelete.add(checksumBreak.getExistingChecksum());
+                } else {
+                    entriesToUpdate.add(checksumBreak.getNewChecksum());
+                }
+            }
+
+            dbChecksumDao.applyEntryChanges(physicalSchema, entriesToInsert, entriesToUpdate, entriesToDelete);
         }
     }
 
@@ -16,7 +16,9 @@
 package com.gs.obevo.db.impl.core.checksum;
 
 import java.sql.Connection;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.gs.obevo.api.appdata.PhysicalSchema;
@@ -34,21 +36,29 @@ import com.gs.obevo.dbmetadata.api.DaTable;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import org.apache.commons.dbutils.handlers.MapListHandler;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.procedure.Procedure;
 import org.eclipse.collections.api.collection.ImmutableCollection;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
 import org.eclipse.collections.api.set.ImmutableSet;
 import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
 import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.collections.impl.factory.Multimaps;
 import org.eclipse.collections.impl.list.mutable.ListAdapter;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * {@link DbChecksumDao} implementation that writes the checksums into the same schemas as the checksum entries
  * themselves.
  */
 public class SameSchemaDbChecksumDao implements DbChecksumDao {
+    private static final Logger LOG = LoggerFactory.getLogger(SameSchemaDbChecksumDao.class);
+
     // input param
     private final SqlExecutor sqlExecutor;
     private final JdbcHelper jdbc;
@@ -174,30 +184,11 @@ public class SameSchemaDbChecksumDao implements DbChecksumDao {
     }
 
     private void insertEntry(Connection conn, ChecksumEntry entry) {
-        jdbc.update(conn, "INSERT INTO " + platform.getSchemaPrefix(entry.getPhysicalSchema()) + checksumTableName + " " +
-                        "(OBJECTTYPE, OBJECTNAME1, OBJECTNAME2, CHECKSUM, TIME_UPDATED) " +
-                        "VALUES (?, ?, ?, ?, ?)",
-                entry.getObjectType(),
-                entry.getName1(),
-                entry.getName2() != null ? entry.getName2() : "",
-                entry.getChecksum(),
-                new Timestamp(new DateTime().getMillis())
-        );
+        jdbc.update(conn, getInsertSql(entry.getPhysicalSchema()), getInsertParams(entry, new Timestamp(new DateTime().getMillis())));
     }
 
     private int updateEntry(Connection conn, ChecksumEntry entry) {
-        return jdbc.update(conn, "UPDATE " + platform.getSchemaPrefix(entry.getPhysicalSchema()) + checksumTableName + " " +
-                        "SET CHECKSUM = ?, " +
-                        "TIME_UPDATED = ? " +
-                        "WHERE OBJECTTYPE = ? " +
-                        "AND OBJECTNAME1 = ? " +
-                        "AND OBJECTNAME2 = ?",
-                entry.getChecksum(),
-                new Timestamp(new DateTime().getMillis()),
-                entry.getObjectType(),
-                entry.getName1(),
-                entry.getName2() != null ? entry.getName2() : ""
-        );
+        return jdbc.update(conn, getUpdateSql(entry.getPhysicalSchema()), getUpdateParams(entry, new Timestamp(new DateTime().getMillis())));
     }
 
     @Override
@@ -205,15 +196,137 @@ public class SameSchemaDbChecksumDao implements DbChecksumDao {
         sqlExecutor.executeWithinContext(entry.getPhysicalSchema(), new Procedure<Connection>() {
             @Override
             public void value(Connection conn) {
-                jdbc.update(conn, "DELETE FROM " + platform.getSchemaPrefix(entry.getPhysicalSchema()) + checksumTableName + " " +
-                                "WHERE OBJECTTYPE = ? " +
-                                "AND OBJECTNAME1 = ? " +
-                                "AND OBJECTNAME2 = ?",
-                        entry.getObjectType(),
-                        entry.getName1(),
-                        entry.getName2() != null ? entry.getName2() : ""
-                );
+                jdbc.update(conn, getDeleteSql(entry.getPhysicalSchema()), getDeleteParams(entry));
+            }
+        });
+    }
+
+    /**
+     * We use separate batched inserts and updates instead of MERGE statements; the caller already knows which entries
+     * exist, and the MERGE syntax varies too much across the platforms.
+     */
+    @Override
+    public void applyEntryChanges(final PhysicalSchema physicalSchema, final RichIterable<ChecksumEntry> entriesToInsert, final RichIterable<ChecksumEntry> entriesToUpdate, final RichIterable<ChecksumEntry> entriesToDelete) {
+        if (entriesToInsert.isEmpty() && entriesToUpdate.isEmpty() && entriesToDelete.isEmpty()) {
+            return;
+        }
+
+        final Timestamp timeUpdated = new Timestamp(new DateTime().getMillis());
+        sqlExecutor.executeWithinContext(physicalSchema, new Procedure<Connection>() {
+            @Override
+            public void value(Connection conn) {
+                executeBatches(conn, getDeleteSql(physicalSchema), entriesToDelete.collect(new Function<ChecksumEntry, Object[]>() {
+                    @Override
+                    public Object[] valueOf(ChecksumEntry entry) {
+                        return getDeleteParams(entry);
+                    }
+                }));
+                MutableList<ChecksumEntry> missingEntries = updateEntries(conn, physicalSchema, entriesToUpdate.toList(), timeUpdated);
+                executeBatches(conn, getInsertSql(physicalSchema), Lists.mutable.withAll(entriesToInsert).withAll(missingEntries).collect(new Function<ChecksumEntry, Object[]>() {
+                    @Override
+                    public Object[] valueOf(ChecksumEntry entry) {
+                        return getInsertParams(entry, timeUpdated);
+                    }
+                }));
             }
         });
     }
+
+    /**
+     * Updates the given entries in batches and returns those whose row was not found, e.g. as it was removed by a clean
+     * or manually after the checksums were read. The caller inserts those instead, as {@link #persistEntry(ChecksumEntry)}
+     * does for a single entry.
+     */
+    private MutableList<ChecksumEntry> updateEntries(Connection conn, PhysicalSchema physicalSchema, MutableList<ChecksumEntry> entries, final Timestamp timeUpdated) {
+        String updateSql = getUpdateSql(physicalSchema);
+        MutableList<Object[]> updateParams = entries.collect(new Function<ChecksumEntry, Object[]>() {
+            @Override
+            public Object[] valueOf(ChecksumEntry entry) {
+                return getUpdateParams(entry, timeUpdated);
+            }
+        });
+        int[] updateCounts = executeBatches(conn, updateSql, updateParams);
+
+        MutableList<ChecksumEntry> missingEntries = Lists.mutable.empty();
+        for (int i = 0; i < entries.size(); i++) {
+            if (updateCounts[i] == 0) {
+                missingEntries.add(entries.get(i));
+            } else if (updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                // the driver did not report the row count; fall back to the row-level update to check for existence
+                if (jdbc.update(conn, updateSql, updateParams.get(i)) == 0) {
+                    missingEntries.add(entries.get(i));
+                }
+            }
+        }
+        return missingEntries;
+    }
+
+    /**
+     * Executes the sql for the given params in batches of {@link DbPlatform#getBulkWriteBatchSize()} rows, as some
+     * platforms (e.g. Sybase ASE) cannot take a large batch.
+     *
+     * @return the update counts of the params, in order
+     */
+    private int[] executeBatches(Connection conn, String sql, RichIterable<Object[]> paramArrays) {
+        MutableIntList updateCounts = new IntArrayList(paramArrays.size());
+        for (RichIterable<Object[]> chunkParams : paramArrays.chunk(platform.getBulkWriteBatchSize())) {
+            Object[][] chunkParamArrays = chunkParams.toArray(new Object[chunkParams.size()][]);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Executing [" + sql + "] for " + chunkParamArrays.length + " rows with params: " + Arrays.deepToString(chunkParamArrays));
+            }
+            updateCounts.addAll(jdbc.batchUpdate(conn, sql, chunkParamArrays));
+        }
+        return updateCounts.toArray();
+    }
+
+    private String getInsertSql(PhysicalSchema physicalSchema) {
+        return "INSERT INTO " + platform.getSchemaPrefix(physicalSchema) + checksumTableName + " " +
+                "(OBJECTTYPE, OBJECTNAME1, OBJECTNAME2, CHECKSUM, TIME_UPDATED) " +
+                "VALUES (?, ?, ?, ?, ?)";
+    }
+
+    private Object[] getInsertParams(ChecksumEntry entry, Timestamp timeUpdated) {
+        return new Object[] {
+                entry.getObjectType(),
+                entry.getName1(),
+                entry.getName2() != null ? entry.getName2() : "",
+                entry.getChecksum(),
+                timeUpdated
+        };
+    }
+
+    private String getUpdateSql(PhysicalSchema physicalSchema) {
+        return "UPDATE " + platform.getSchemaPrefix(physicalSchema) + checksumTableName + " " +
+                "SET CHECKSUM = ?, " +
+                "TIME_UPDATED = ? " +
+                "WHERE OBJECTTYPE = ? " +
+                "AND OBJECTNAME1 = ? " +
+                "AND OBJECTNAME2 = ?";
+    }
+
+    private Object[] getUpdateParams(ChecksumEntry entry, Timestamp timeUpdated) {
+        return new Object[] {
+                entry.getChecksum(),
+                timeUpdated,
+                entry.getObjectType(),
+                entry.getName1(),
+                entry.getName2() != null ? entry.getName2() : ""
+        };
+    }
+
+    private String getDeleteSql(PhysicalSchema physicalSchema) {
+        return "DELETE FROM " + platform.getSchemaPrefix(physicalSchema) + checksumTableName + " " +
+                "WHERE OBJECTTYPE = ? " +
+                "AND OBJECTNAME1 = ? " +
+                "AND OBJECTNAME2 = ?";
+    }
+
+    private Object[] getDeleteParams(ChecksumEntry entry) {
+        return new Object[] {
+                entry.getObjectType(),
+                entry.getName1(),
+                entry.getName2() != null ? entry.getName2() : ""
+        };
+    }
 }
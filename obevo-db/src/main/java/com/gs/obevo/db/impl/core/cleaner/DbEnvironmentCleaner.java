@@ -15,6 +15,13 @@
  */
 package com.gs.obevo.db.impl.core.cleaner;
 
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.ChangeIncremental;
 import com.gs.obevo.api.appdata.ChangeRerunnable;
@@ -35,34 +42,50 @@ import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import com.gs.obevo.impl.Changeset;
 import com.gs.obevo.impl.ChangesetCreator;
 import com.gs.obevo.api.platform.CommandExecutionContext;
+import com.gs.obevo.impl.ConcurrentGraphExecutor;
 import com.gs.obevo.impl.ExecuteChangeCommand;
+import com.gs.obevo.impl.graph.GraphEnricherImpl;
 import com.gs.obevo.util.inputreader.ConsoleInputReader;
 import com.gs.obevo.util.inputreader.UserInputReader;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.eclipse.collections.api.RichIterable;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.predicate.Predicate;
+import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
 import org.eclipse.collections.api.collection.ImmutableCollection;
 import org.eclipse.collections.api.collection.MutableCollection;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
 import org.eclipse.collections.api.multimap.MutableMultimap;
 import org.eclipse.collections.api.partition.PartitionIterable;
+import org.eclipse.collections.api.partition.list.PartitionImmutableList;
 import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.api.tuple.Pair;
 import org.eclipse.collections.impl.block.factory.Functions;
 import org.eclipse.collections.impl.block.factory.HashingStrategies;
 import org.eclipse.collections.impl.block.factory.Predicates;
 import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Maps;
 import org.eclipse.collections.impl.factory.Sets;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 import org.eclipse.collections.impl.multimap.list.FastListMultimap;
 import org.eclipse.collections.impl.set.strategy.mutable.UnifiedSetWithHashingStrategy;
 import org.eclipse.collections.impl.tuple.Tuples;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Implementation to drop the objects in a schema.
+ *
+ * In the parallel clean mode (see {@link DbEnvironment#isParallelCleanEnabled()}), the schemas are crawled
+ * concurrently, and the drops are executed concurrently in phases: first the foreign keys, then the rerunnable objects
+ * (e.g. views and routines) in their dependency order, and finally the remaining objects (e.g. tables).
  */
 public class DbEnvironmentCleaner implements EnvironmentCleaner {
     private static final Logger LOG = LoggerFactory.getLogger(DbEnvironmentCleaner.class);
@@ -209,21 +232,7 @@ public class DbEnvironmentCleaner implements EnvironmentCleaner {
         MutableSet<DbCleanCommand> drops = UnifiedSetWithHashingStrategy.newSet(HashingStrategies.fromFunction(
                 DbCleanCommand.TO_KEY
         ));
-        drops.addAll(physicalSchemaToSchemaMap.keysView().flatCollect(new Function<PhysicalSchema,
-                RichIterable<DbCleanCommand>>() {
-            @Override
-            public RichIterable<DbCleanCommand> valueOf(PhysicalSchema physicalSchema) {
-                ImmutableList<DbCleanCommand> schemaDrops = getDropStatements(physicalSchema);
-
-                MutableCollection<Schema> schemas = physicalSchemaToSchemaMap.get(physicalSchema);
-
-                for (Schema schema : schemas) {
-                    schemaDrops = schemaDrops.select(schema.getObjectExclusionPredicateBuilder().build(Functions.chain(DbCleanCommand.TO_OBJECT_TYPE, ChangeType.TO_NAME), DbCleanCommand.TO_OBJECT_NAME));
-                }
-
-                return schemaDrops;
-            }
-        }).toList());
+        drops.addAll(getDropStatements(physicalSchemaToSchemaMap));
 
         // we convert the info in the DB to the Change class so that we can feed it into the
         // ChangesetCreator (i.e. to get it to trigger the logic to drop the objects)
@@ -284,15 +293,13 @@ public class DbEnvironmentCleaner implements EnvironmentCleaner {
             Validate.isTrue(input.trim().equalsIgnoreCase("Y"), "User did not enter Y. Hence, we will exit from here.");
         }
 
-        MutableList<Exception> exceptions = Lists.mutable.empty();
-        for (ExecuteChangeCommand executeChangeCommand : changeset.getInserts()) {
-            LOG.info("Executing the drop: {}", executeChangeCommand.getCommandDescription());
-            this.statementExecutor.performExtraCleanOperation(executeChangeCommand, dbMetadataManager);
-            try {
-                executeChangeCommand.execute(new CommandExecutionContext());  // no need to collect warnings here, so we ignore the ContextExecutionContext value
-            } catch (Exception exc) {
-                LOG.info("Found error {}, will proceed with other objects (stack trace to come below)", exc.getMessage());
-                exceptions.add(exc);
+        MutableList<Exception> exceptions;
+        if (isParallelClean()) {
+            exceptions = executeDropsInParallel(changeset.getInserts());
+        } else {
+            exceptions = Lists.mutable.empty();
+            for (ExecuteChangeCommand executeChangeCommand : changeset.getInserts()) {
+                executeDrop(executeChangeCommand, exceptions);
             }
         }
 
@@ -304,4 +311,189 @@ public class DbEnvironmentCleaner implements EnvironmentCleaner {
             return Tuples.pair(false, exceptions);
         }
     }
+
+    private boolean isParallelClean() {
+        return env.isParallelCleanEnabled() && env.getNumThreads() > 1;
+    }
+
+    private MutableList<DbCleanCommand> getDropStatements(final MutableMultimap<PhysicalSchema, Schema> physicalSchemaToSchemaMap) {
+        final Function<PhysicalSchema, ImmutableList<DbCleanCommand>> toSchemaDrops = new Function<PhysicalSchema, ImmutableList<DbCleanCommand>>() {
+            @Override
+            public ImmutableList<DbCleanCommand> valueOf(PhysicalSchema physicalSchema) {
+                ImmutableList<DbCleanCommand> schemaDrops = getDropStatements(physicalSchema);
+
+                MutableCollection<Schema> schemas = physicalSchemaToSchemaMap.get(physicalSchema);
+
+                for (Schema schema : schemas) {
+                    schemaDrops = schemaDrops.select(schema.getObjectExclusionPredicateBuilder().build(Functions.chain(DbCleanCommand.TO_OBJECT_TYPE, ChangeType.TO_NAME), DbCleanCommand.TO_OBJECT_NAME));
+                }
+
+                return schemaDrops;
+            }
+        };
+
+        RichIterable<PhysicalSchema> physicalSchemas = physicalSchemaToSchemaMap.keysView().toList();
+        if (!isParallelClean() || physicalSchemas.size() <= 1) {
+            return physicalSchemas.flatCollect(toSchemaDrops).toList();
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(env.getNumThreads(), physicalSchemas.size()));
+        try {
+            MutableList<Future<ImmutableList<DbCleanCommand>>> futures = Lists.mutable.empty();
+            for (final PhysicalSchema physicalSchema : physicalSchemas) {
+                futures.add(executorService.submit(new Callable<ImmutableList<DbCleanCommand>>() {
+                    @Override
+                    public ImmutableList<DbCleanCommand> call() throws Exception {
+                        return toSchemaDrops.valueOf(physicalSchema);
+                    }
+                }));
+            }
+
+            MutableList<DbCleanCommand> drops = Lists.mutable.empty();
+            for (Future<ImmutableList<DbCleanCommand>> future : futures) {
+                drops.addAllIterable(future.get());
+            }
+            return drops;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void executeDrop(ExecuteChangeCommand executeChangeCommand, MutableList<Exception> exceptions) {
+        LOG.info("Executing the drop: {}", executeChangeCommand.getCommandDescription());
+        this.statementExecutor.performExtraCleanOperation(executeChangeCommand, dbMetadataManager);
+        try {
+            executeChangeCommand.execute(new CommandExecutionContext());  // no need to collect warnings here, so we ignore the ContextExecutionContext value
+        } catch (Exception exc) {
+            LOG.info("Found error {}, will proceed with other objects (stack trace to come below)", exc.getMessage());
+            exceptions.add(exc);
+        }
+    }
+
+    private MutableList<Exception> executeDropsInParallel(ImmutableList<ExecuteChangeCommand> dropCommands) {
+        LOG.info("Dropping the objects in parallel mode using {} threads", env.getNumThreads());
+        final MutableList<Exception> exceptions = Lists.mutable.<Exception>empty().asSynchronized();
+
+        // keep the serial sort order as the tie-breaker so that the execution order is consistent across runs
+        final MutableObjectIntMap<ExecuteChangeCommand> commandOrder = ObjectIntHashMap.newMap();
+        dropCommands.forEachWithIndex(new ObjectIntProcedure<ExecuteChangeCommand>() {
+            @Override
+            public void value(ExecuteChangeCommand changeCommand, int index) {
+                commandOrder.put(changeCommand, index);
+            }
+        });
+        Comparator<ExecuteChangeCommand> commandOrderComparator = new Comparator<ExecuteChangeCommand>() {
+            @Override
+            public int compare(ExecuteChangeCommand o1, ExecuteChangeCommand o2) {
+                return Integer.compare(commandOrder.get(o1), commandOrder.get(o2));
+            }
+        };
+
+        ConcurrentGraphExecutor graphExecutor = new ConcurrentGraphExecutor(env.getNumThreads());
+        for (DirectedGraph<ExecuteChangeCommand, DefaultEdge> dropPhase : createDropPhases(dropCommands)) {
+            graphExecutor.execute(dropPhase, commandOrderComparator, new ConcurrentGraphExecutor.VertexTask<ExecuteChangeCommand>() {
+                @Override
+                public boolean execute(ExecuteChangeCommand changeCommand) {
+                    executeDrop(changeCommand, exceptions);
+                    // we attempt all drops regardless of failures; the failed ones get retried by cleanEnvironment
+                    return true;
+                }
+
+                @Override
+                public void skip(ExecuteChangeCommand changeCommand) {
+                }
+            });
+        }
+
+        return exceptions;
+    }
+
+    /**
+     * Splits the drops into the phases to execute one after the other; the drops within a phase are executed
+     * concurrently, subject to the edges of the phase's graph.
+     */
+    private MutableList<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> createDropPhases(ImmutableList<ExecuteChangeCommand> dropCommands) {
+        PartitionImmutableList<ExecuteChangeCommand> rerunnablePartition = dropCommands.partition(IS_RERUNNABLE_COMMAND);
+        PartitionImmutableList<ExecuteChangeCommand> foreignKeyPartition = rerunnablePartition.getRejected().partition(IS_FOREIGN_KEY_COMMAND);
+
+        MutableList<DirectedGraph<ExecuteChangeCommand, DefaultEdge>> dropPhases = Lists.mutable.empty();
+
+        // dropping the foreign keys first frees up the tables to be dropped in any order
+        dropPhases.add(createGraph(foreignKeyPartition.getSelected()));
+
+        ImmutableList<ExecuteChangeCommand> rerunnableDrops = rerunnablePartition.getSelected();
+        if (env.getPlatform().isDropOrderRequired()) {
+            dropPhases.add(createRerunnableDropGraph(rerunnableDrops));
+        } else {
+            // without the object dependencies, we follow the serial order of dropping the object types by priority
+            for (final Integer deployOrderPriority : rerunnableDrops.collect(TO_DEPLOY_ORDER_PRIORITY).distinct()) {
+                dropPhases.add(createGraph(rerunnableDrops.select(Predicates.attributeEqual(TO_DEPLOY_ORDER_PRIORITY, deployOrderPriority))));
+            }
+        }
+
+        dropPhases.add(createGraph(foreignKeyPartition.getRejected()));
+
+        return dropPhases;
+    }
+
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> createGraph(RichIterable<ExecuteChangeCommand> dropCommands) {
+        DefaultDirectedGraph<ExecuteChangeCommand, DefaultEdge> graph = new DefaultDirectedGraph<ExecuteChangeCommand, DefaultEdge>(DefaultEdge.class);
+        for (ExecuteChangeCommand dropCommand : dropCommands) {
+            graph.addVertex(dropCommand);
+        }
+        return graph;
+    }
+
+    /**
+     * Creates the graph for the rerunnable drops from the object dependencies that the ChangeCommandSorter calculated
+     * when sorting the drops. The edges are reversed from the deploy order, as a dependent object must be dropped before
+     * the objects that it depends on.
+     */
+    private DirectedGraph<ExecuteChangeCommand, DefaultEdge> createRerunnableDropGraph(ImmutableList<ExecuteChangeCommand> dropCommands) {
+        MutableMap<Change, ExecuteChangeCommand> commandsByChange = Maps.mutable.empty();
+        for (ExecuteChangeCommand dropCommand : dropCommands) {
+            commandsByChange.put(dropCommand.getChanges().getFirst(), dropCommand);
+        }
+
+        DirectedGraph<Change, DefaultEdge> changeGraph = new GraphEnricherImpl(env.getPlatform().convertDbObjectName())
+                .createDependencyGraph(commandsByChange.keysView(), false);
+
+        DirectedGraph<ExecuteChangeCommand, DefaultEdge> graph = createGraph(dropCommands);
+        for (DefaultEdge edge : changeGraph.edgeSet()) {
+            ExecuteChangeCommand dependency = commandsByChange.get(changeGraph.getEdgeSource(edge));
+            ExecuteChangeCommand dependent = commandsByChange.get(changeGraph.getEdgeTarget(edge));
+            if (dependency != dependent) {
+                graph.addEdge(dependent, dependency);
+            }
+        }
+        return graph;
+    }
+
+    private static final Predicate<ExecuteChangeCommand> IS_RERUNNABLE_COMMAND = new Predicate<ExecuteChangeCommand>() {
+        @Override
+        public boolean accept(ExecuteChangeCommand changeCommand) {
+            return changeCommand.getChanges().getFirst().getChangeType().isRerunnable();
+        }
+    };
+
+    private static final Predicate<ExecuteChangeCommand> IS_FOREIGN_KEY_COMMAND = new Predicate<ExecuteChangeCommand>() {
+        @Override
+        public boolean accept(ExecuteChangeCommand changeCommand) {
+            return changeCommand.getChanges().getFirst().getChangeType().getName().equals(ChangeType.FOREIGN_KEY_STR);
+        }
+    };
+
+    private static final Function<ExecuteChangeCommand, Integer> TO_DEPLOY_ORDER_PRIORITY = new Function<ExecuteChangeCommand, Integer>() {
+        @Override
+        public Integer valueOf(ExecuteChangeCommand changeCommand) {
+            return changeCommand.getChanges().getFirst().getChangeType().getDeployOrderPriority();
+        }
+    };
 }
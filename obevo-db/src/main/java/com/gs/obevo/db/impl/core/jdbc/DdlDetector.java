@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.jdbc;
+
+import org.eclipse.collections.api.set.ImmutableSet;
+import org.eclipse.collections.impl.factory.Sets;
+
+/**
+ * Classifies the statements executed via {@link JdbcHelper}, for the {@link JdbcUpdateListener}s that need to react to
+ * DDL (e.g. to drop their cached metadata or prepared statements).
+ */
+public final class DdlDetector {
+    private static final ImmutableSet<String> NON_DDL_KEYWORDS = Sets.immutable.with(
+            "SELECT", "INSERT", "UPDATE", "DELETE", "MERGE", "WITH", "TRUNCATE", "SET", "USE", "GRANT", "REVOKE", "COMMIT", "ROLLBACK");
+
+    private DdlDetector() {
+    }
+
+    /**
+     * Returns whether the sql is a DDL statement, based on its first keyword. Anything that is not a known DML, query
+     * or session statement is considered DDL, as it is safer to assume that it changes the metadata.
+     */
+    public static boolean isDdl(String sql) {
+        int i = 0;
+        int length = sql.length();
+        // skip the leading whitespace and comments to find the first keyword
+        while (i < length) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int lineEnd = sql.indexOf('\n', i);
+                i = lineEnd < 0 ? length : lineEnd + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int commentEnd = sql.indexOf("*/", i + 2);
+                i = commentEnd < 0 ? length : commentEnd + 2;
+            } else {
+                break;
+            }
+        }
+        if (i == length) {
+            return false;
+        }
+
+        int keywordEnd = i;
+        while (keywordEnd < length && Character.isLetter(sql.charAt(keywordEnd))) {
+            keywordEnd++;
+        }
+        return !NON_DDL_KEYWORDS.contains(sql.substring(i, keywordEnd).toUpperCase());
+    }
+}
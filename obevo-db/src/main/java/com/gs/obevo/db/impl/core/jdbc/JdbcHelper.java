@@ -24,10 +24,12 @@ import java.util.Map;
 
 import javax.sql.DataSource;
 
+import com.gs.obevo.impl.DeployMetricsCollector;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.MapHandler;
 import org.apache.commons.dbutils.handlers.MapListHandler;
+import org.eclipse.collections.api.list.ListIterable;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.map.MutableMap;
 import org.eclipse.collections.impl.list.mutable.ListAdapter;
@@ -52,14 +54,40 @@ public class JdbcHelper {
 
     private final JdbcHandler jdbcHandler;
     private final boolean parameterTypeEnabled;
+    private final JdbcUpdateListener updateListener;
+    private final PreparedStatementCache statementCache;
+    private final DeployMetricsCollector deployMetricsCollector;
 
     public JdbcHelper() {
         this(null, true);
     }
 
     public JdbcHelper(JdbcHandler jdbcHandler, boolean parameterTypeEnabled) {
+        this(jdbcHandler, parameterTypeEnabled, null);
+    }
+
+    public JdbcHelper(JdbcHandler jdbcHandler, boolean parameterTypeEnabled, JdbcUpdateListener updateListener) {
+        this(jdbcHandler, parameterTypeEnabled, updateListener, null);
+    }
+
+    /**
+     * @param statementCache The cache to share across the JdbcHelper instances of an executor; if null, the statements
+     * are not cached and the parameter types are only cached within this instance.
+     */
+    public JdbcHelper(JdbcHandler jdbcHandler, boolean parameterTypeEnabled, JdbcUpdateListener updateListener, PreparedStatementCache statementCache) {
+        this(jdbcHandler, parameterTypeEnabled, updateListener, statementCache, null);
+    }
+
+    /**
+     * @param deployMetricsCollector If not null, the durations of the updates, batch updates, and queries are recorded
+     * as timings in this collector (including any retries).
+     */
+    public JdbcHelper(JdbcHandler jdbcHandler, boolean parameterTypeEnabled, JdbcUpdateListener updateListener, PreparedStatementCache statementCache, DeployMetricsCollector deployMetricsCollector) {
         this.jdbcHandler = jdbcHandler != null ? jdbcHandler : new DefaultJdbcHandler();
         this.parameterTypeEnabled = parameterTypeEnabled;
+        this.updateListener = updateListener;
+        this.statementCache = statementCache != null ? statementCache : new PreparedStatementCache(0);
+        this.deployMetricsCollector = deployMetricsCollector;
     }
 
     public void execute(Connection conn, String sql) {
@@ -67,11 +95,16 @@ public class JdbcHelper {
     }
 
     public int update(Connection conn, String sql) {
-        return this.updateInternal(conn, 0, sql, new Object[0]);
+        return this.update(conn, sql, new Object[0]);
     }
 
     public int update(Connection conn, String sql, Object... args) {
-        return this.updateInternal(conn, 0, sql, args);
+        long startNanos = System.nanoTime();
+        try {
+            return this.updateInternal(conn, 0, sql, args);
+        } finally {
+            recordTiming("jdbc.update", startNanos);
+        }
     }
 
     private int updateInternal(Connection conn, int retryCount, String sql, Object... args) {
@@ -92,20 +125,21 @@ public class JdbcHelper {
                 // which is what spring-jdbc did (this product had used spring-jdbc in an early incarnation, which was
                 // when we discovered this issue)
                 statement = conn.createStatement();
-                return statement.executeUpdate(sql);
+                int updateCount = statement.executeUpdate(sql);
+                notifyUpdate(conn, sql);
+                return updateCount;
             } else {
-                ps = conn.prepareStatement(sql);
-                for (int j = 0; j < args.length; j++) {
-                    if (!parameterTypeEnabled || args[j] != null) {
-                        ps.setObject(j + 1, args[j]);
-                    } else {
-                        ps.setNull(j + 1, ps.getParameterMetaData().getParameterType(j + 1));
-                    }
-                }
+                ps = this.statementCache.prepareStatement(conn, sql);
+                setParams(sql, ps, args);
 
-                return ps.executeUpdate();
+                int updateCount = ps.executeUpdate();
+                notifyUpdate(conn, sql);
+                return updateCount;
             }
         } catch (SQLException e) {
+            if (ps != null) {
+                this.statementCache.evictStatement(conn, sql, ps);
+            }
             DataAccessException dataAccessException = new DataAccessException(e);
             boolean retry = this.jdbcHandler.handleException(this, conn, retryCount, dataAccessException);
             if (retry) {
@@ -115,12 +149,19 @@ public class JdbcHelper {
             }
         } finally {
             DbUtils.closeQuietly(statement);
-            DbUtils.closeQuietly(ps);
+            if (ps != null) {
+                this.statementCache.closeStatement(conn, sql, ps);
+            }
         }
     }
 
     public int[] batchUpdate(Connection conn, String sql, Object[][] argsArray) {
-        return batchUpdateInternal(conn, 0, sql, argsArray);
+        long startNanos = System.nanoTime();
+        try {
+            return batchUpdateInternal(conn, 0, sql, argsArray);
+        } finally {
+            recordTiming("jdbc.batchUpdate", startNanos);
+        }
     }
 
     private int[] batchUpdateInternal(Connection conn, int retryCount, String sql, Object[][] argsArray) {
@@ -131,20 +172,19 @@ public class JdbcHelper {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Executing batch update on {}: {} with args: {}", displayConnection(conn), sql, argsArray);
             }
-            ps = conn.prepareStatement(sql);
+            ps = this.statementCache.prepareStatement(conn, sql);
             for (Object[] args : argsArray) {
-                for (int j = 0; j < args.length; j++) {
-                    if (!parameterTypeEnabled || args[j] != null) {
-                        ps.setObject(j + 1, args[j]);
-                    } else {
-                        ps.setNull(j + 1, ps.getParameterMetaData().getParameterType(j + 1));
-                    }
-                }
+                setParams(sql, ps, args);
                 ps.addBatch();
             }
 
-            return ps.executeBatch();
+            int[] updateCounts = ps.executeBatch();
+            notifyUpdate(conn, sql);
+            return updateCounts;
         } catch (SQLException e) {
+            if (ps != null) {
+                this.statementCache.evictStatement(conn, sql, ps);
+            }
             DataAccessException dataAccessException = new DataAccessException(e);
             boolean retry = this.jdbcHandler.handleException(this, conn, retryCount, dataAccessException);
             if (retry) {
@@ -154,7 +194,70 @@ public class JdbcHelper {
                 throw dataAccessException;
             }
         } finally {
-            DbUtils.closeQuietly(ps);
+            if (ps != null) {
+                this.statementCache.closeStatement(conn, sql, ps);
+            }
+        }
+    }
+
+    /**
+     * Executes the given parameterless sqls on a single Statement via {@link Statement#addBatch(String)}, saving a round
+     * trip per statement (e.g. for the many grants applied per object).
+     *
+     * Unlike {@link #update(Connection, String)}, a failure is not passed to the {@link JdbcHandler} for retries, as we
+     * cannot tell which statements of the batch were already executed; callers are expected to fall back to executing
+     * the statements individually if they need to handle the failures per statement.
+     */
+    public int[] batchExecute(Connection conn, ListIterable<String> sqls) {
+        long startNanos = System.nanoTime();
+        Statement statement = null;
+        try {
+            this.jdbcHandler.preUpdate(conn, this);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Executing statement batch on {}: {}", displayConnection(conn), sqls);
+            }
+            statement = conn.createStatement();
+            for (String sql : sqls) {
+                statement.addBatch(sql);
+            }
+
+            int[] updateCounts = statement.executeBatch();
+            for (String sql : sqls) {
+                notifyUpdate(conn, sql);
+            }
+            return updateCounts;
+        } catch (SQLException e) {
+            // some of the statements may have been executed before the failure
+            for (String sql : sqls) {
+                notifyUpdate(conn, sql);
+            }
+            throw new DataAccessException(e);
+        } finally {
+            DbUtils.closeQuietly(statement);
+            recordTiming("jdbc.batchExecute", startNanos);
+        }
+    }
+
+    private void setParams(String sql, PreparedStatement ps, Object[] args) throws SQLException {
+        for (int j = 0; j < args.length; j++) {
+            if (!parameterTypeEnabled || args[j] != null) {
+                ps.setObject(j + 1, args[j]);
+            } else {
+                ps.setNull(j + 1, this.statementCache.getParameterType(sql, ps, j + 1, args.length));
+            }
+        }
+    }
+
+    private void recordTiming(String key, long startNanos) {
+        if (this.deployMetricsCollector != null) {
+            this.deployMetricsCollector.addTiming(key, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void notifyUpdate(Connection conn, String sql) {
+        if (this.updateListener != null) {
+            this.updateListener.afterUpdate(conn, sql);
         }
     }
 
@@ -168,6 +271,7 @@ public class JdbcHelper {
 
 
     public <T> T query(Connection conn, String sql, ResultSetHandler<T> resultSetHandler) {
+        long startNanos = System.nanoTime();
         Statement statement = null;
         ResultSet resultSet = null;
         try {
@@ -182,6 +286,7 @@ public class JdbcHelper {
         } finally {
             DbUtils.closeQuietly(resultSet);
             DbUtils.closeQuietly(statement);
+            recordTiming("jdbc.query", startNanos);
         }
     }
 
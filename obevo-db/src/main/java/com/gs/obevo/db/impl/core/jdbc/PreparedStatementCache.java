@@ -0,0 +1,177 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.dbutils.DbUtils;
+
+/**
+ * Caches the {@link PreparedStatement}s and parameter types used by {@link JdbcHelper}, as the DAOs and the static data
+ * deployer issue the same few sqls many times over a deploy.
+ *
+ * Statements are only cached for connections that have been {@link #register(Connection) registered}, as the cache has
+ * to know when the connection is released so that it can close the statements. Each connection keeps up to
+ * maxStatementsPerConnection statements, evicting the least recently used one beyond that.
+ *
+ * {@link SchemaAwareConnectionManager} registers a connection for as long as it holds it. Hence, the statements are
+ * reused across all the calls within a pinned connection (i.e. across the changes and audit writes of a deploy, see
+ * {@link SchemaAwareConnectionManager#executeWithPinnedConnection}); outside of that, the reuse is limited to the
+ * statements issued within a single executeWithinContext call (e.g. the batches of a static data change).
+ *
+ * The parameter types (only needed when binding nulls) are cached per sql across all connections.
+ */
+public class PreparedStatementCache implements JdbcUpdateListener {
+    private static final int UNKNOWN_TYPE = Integer.MIN_VALUE;
+
+    private final int maxStatementsPerConnection;
+    private final ConcurrentHashMap<Connection, StatementMap> statementsByConnection = new ConcurrentHashMap<Connection, StatementMap>();
+    private final ConcurrentHashMap<String, int[]> parameterTypesBySql = new ConcurrentHashMap<String, int[]>();
+
+    public PreparedStatementCache(int maxStatementsPerConnection) {
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    /**
+     * Starts caching the statements for the given connection.
+     *
+     * @return true if the connection was newly registered, i.e. the caller is responsible for calling
+     * {@link #release(Connection)}; false if caching is disabled or the connection was already registered.
+     */
+    public boolean register(Connection conn) {
+        return maxStatementsPerConnection > 0
+                && statementsByConnection.putIfAbsent(conn, new StatementMap(maxStatementsPerConnection)) == null;
+    }
+
+    /**
+     * Stops caching the statements for the given connection and closes them. To be called before the connection is
+     * closed or returned to its pool.
+     */
+    public void release(Connection conn) {
+        StatementMap statements = statementsByConnection.remove(conn);
+        if (statements != null) {
+            statements.closeAll();
+        }
+    }
+
+    PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+        StatementMap statements = statementsByConnection.get(conn);
+        if (statements == null) {
+            return conn.prepareStatement(sql);
+        }
+
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            return ps;
+        }
+
+        ps = conn.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    /**
+     * Closes the statement unless it is held in the cache.
+     */
+    void closeStatement(Connection conn, String sql, PreparedStatement ps) {
+        StatementMap statements = statementsByConnection.get(conn);
+        if (statements == null || statements.get(sql) != ps) {
+            DbUtils.closeQuietly(ps);
+        }
+    }
+
+    /**
+     * Removes and closes the statement, e.g. after it failed, so that a retry starts from a fresh statement.
+     */
+    void evictStatement(Connection conn, String sql, PreparedStatement ps) {
+        StatementMap statements = statementsByConnection.get(conn);
+        if (statements != null && statements.get(sql) == ps) {
+            statements.remove(sql);
+        }
+        DbUtils.closeQuietly(ps);
+    }
+
+    int getParameterType(String sql, PreparedStatement ps, int paramIndex, int numParams) throws SQLException {
+        int[] parameterTypes = parameterTypesBySql.get(sql);
+        if (parameterTypes == null) {
+            parameterTypes = new int[numParams];
+            Arrays.fill(parameterTypes, UNKNOWN_TYPE);
+            int[] existingTypes = parameterTypesBySql.putIfAbsent(sql, parameterTypes);
+            if (existingTypes != null) {
+                parameterTypes = existingTypes;
+            }
+        }
+
+        if (paramIndex > parameterTypes.length) {
+            // should not happen for the same sql, but we fall back to the metadata lookup just in case
+            return ps.getParameterMetaData().getParameterType(paramIndex);
+        }
+
+        int parameterType = parameterTypes[paramIndex - 1];
+        if (parameterType == UNKNOWN_TYPE) {
+            // concurrent threads may both look this up; that is harmless as they get the same value
+            parameterType = ps.getParameterMetaData().getParameterType(paramIndex);
+            parameterTypes[paramIndex - 1] = parameterType;
+        }
+        return parameterType;
+    }
+
+    /**
+     * Drops the cached statements of the connection after DDL, as the DDL may invalidate them (e.g. if it altered a
+     * table that the statements refer to).
+     */
+    @Override
+    public void afterUpdate(Connection conn, String sql) {
+        StatementMap statements = statementsByConnection.get(conn);
+        if (statements != null && DdlDetector.isDdl(sql)) {
+            statements.closeAll();
+        }
+    }
+
+    /**
+     * LRU map of the statements for a single connection; only accessed by the thread using that connection.
+     */
+    private static class StatementMap extends LinkedHashMap<String, PreparedStatement> {
+        private final int maxSize;
+
+        StatementMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() > maxSize) {
+                DbUtils.closeQuietly(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+
+        void closeAll() {
+            for (PreparedStatement ps : values()) {
+                DbUtils.closeQuietly(ps);
+            }
+            clear();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.jdbc;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.api.platform.DeployerRuntimeException;
+import org.apache.commons.dbutils.DbUtils;
+import org.eclipse.collections.api.block.function.Function0;
+import org.eclipse.collections.api.block.procedure.Procedure2;
+import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
+
+/**
+ * Provides the connections for the executeWithinContext calls of the SqlExecutor, avoiding the statements to switch
+ * the schema of the connection where possible, as those otherwise double the statement count for the small, frequent
+ * calls like the audit table writes.
+ *
+ * A connection can be pinned to the current thread via {@link #executeWithPinnedConnection(Function0)}, so that the
+ * calls made within it reuse that connection instead of borrowing one from the pool each time. The schema that the
+ * pinned connection was last switched to is tracked, and the switch is skipped if it is already on the requested
+ * schema.
+ *
+ * The schema is only tracked while the connection is pinned, as no other code can use it in that time. Once a
+ * connection is back in the pool, other code may borrow it and switch its schema without going through this class
+ * (e.g. the metadata reads, or a "use db" statement on Sybase ASE and SQL Server); hence, the connections borrowed
+ * outside of a pinned call are always switched.
+ *
+ * The tracked schema of the pinned connection is cleared when a statement that may switch the schema is executed on it
+ * (see {@link #afterUpdate(Connection, String)}) or when a call on it fails, so that the next call switches it again.
+ *
+ * If schema tracking is disabled, every call borrows a connection and switches its schema, i.e. the behavior prior to
+ * this class; this is needed for data sources whose schema switch does not act on the connection (e.g. Sybase IQ).
+ */
+public class SchemaAwareConnectionManager implements JdbcUpdateListener {
+    /**
+     * Deliberately broad, as a false positive only costs an extra schema switch on the next call.
+     */
+    private static final Pattern SCHEMA_SWITCH_PATTERN = Pattern.compile(
+            "\\b(use\\s+\\w|set\\s+(initial\\s+|current\\s+)?schema|set\\s+search_path|set\\s+(current\\s+)?path|current_schema|set\\s+current\\s+sqlid)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final DataSource ds;
+    private final Procedure2<Connection, PhysicalSchema> schemaSetter;
+    private final PreparedStatementCache statementCache;
+    private final boolean schemaTrackingEnabled;
+    private final Map<Connection, PhysicalSchema> contextSchemas = Collections.synchronizedMap(new IdentityHashMap<Connection, PhysicalSchema>());
+    private final ThreadLocal<PinnedConnection> pinnedConnections = new ThreadLocal<PinnedConnection>();
+
+    /**
+     * @param schemaSetter switches the schema of the given connection
+     * @param statementCache the cache to register the connections with while they are in use
+     * @param schemaTrackingEnabled whether to pin the connections and track their schema
+     */
+    public SchemaAwareConnectionManager(DataSource ds, Procedure2<Connection, PhysicalSchema> schemaSetter, PreparedStatementCache statementCache, boolean schemaTrackingEnabled) {
+        this.ds = ds;
+        this.schemaSetter = schemaSetter;
+        this.statementCache = statementCache;
+        this.schemaTrackingEnabled = schemaTrackingEnabled;
+    }
+
+    /**
+     * Executes the callable on a connection that is set to the given schema.
+     */
+    public <T> T executeWithinContext(PhysicalSchema schema, ThrowingFunction<Connection, T> callable) {
+        PinnedConnection pinnedConnection = pinnedConnections.get();
+        if (pinnedConnection != null && pinnedConnection.isUsableFor(schema)) {
+            return pinnedConnection.execute(schema, callable);
+        }
+
+        // Either no connection is pinned, or the pinned one is already in use on another schema by an outer call on
+        // this thread, which we must not switch from under it; hence, we use a separate connection from the pool
+        Connection conn = null;
+        boolean statementCacheRegistered = false;
+        try {
+            conn = ds.getConnection();
+            statementCacheRegistered = statementCache.register(conn);
+            return execute(conn, schema, callable, null);
+        } catch (DeployerRuntimeException e) {
+            throw e;  // rethrowing DeployerRuntimeException to avoid excessive stack trace outputs
+        } catch (Exception e) {
+            throw new DeployerRuntimeException(e);
+        } finally {
+            if (statementCacheRegistered) {
+                statementCache.release(conn);
+            }
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Executes the function with a connection pinned to the current thread, i.e. the
+     * {@link #executeWithinContext(PhysicalSchema, ThrowingFunction)} calls on this thread within the function reuse
+     * the same connection, which is borrowed on the first call and returned to the pool once the function completes.
+     * Nested calls to this method reuse the outer pinned connection.
+     */
+    public <T> T executeWithPinnedConnection(Function0<T> function) {
+        if (!schemaTrackingEnabled || pinnedConnections.get() != null) {
+            return function.value();
+        }
+
+        PinnedConnection pinnedConnection = new PinnedConnection();
+        pinnedConnections.set(pinnedConnection);
+        try {
+            return function.value();
+        } finally {
+            pinnedConnections.remove();
+            pinnedConnection.close();
+        }
+    }
+
+    /**
+     * Returns the schema that the connection was set to by the enclosing
+     * {@link #executeWithinContext(PhysicalSchema, ThrowingFunction)} call, or null if the connection is not in use by
+     * such a call or if a statement on it may have switched the schema since.
+     */
+    public PhysicalSchema getContextSchema(Connection conn) {
+        return contextSchemas.get(conn);
+    }
+
+    /**
+     * Clears the tracked schema of the connection if the sql may have switched its schema, e.g. a "use db" statement
+     * within a change.
+     */
+    @Override
+    public void afterUpdate(Connection conn, String sql) {
+        if (SCHEMA_SWITCH_PATTERN.matcher(sql).find()) {
+            contextSchemas.remove(conn);
+            PinnedConnection pinnedConnection = pinnedConnections.get();
+            if (pinnedConnection != null && pinnedConnection.conn == conn) {
+                pinnedConnection.currentSchema = null;
+            }
+        }
+    }
+
+    /**
+     * @param pinnedConnection the pinned connection that conn belongs to, or null if conn was borrowed for this call
+     */
+    private <T> T execute(Connection conn, PhysicalSchema schema, ThrowingFunction<Connection, T> callable, PinnedConnection pinnedConnection) throws Exception {
+        boolean success = false;
+        PhysicalSchema outerContextSchema = contextSchemas.put(conn, schema);
+        try {
+            if (pinnedConnection == null) {
+                schemaSetter.value(conn, schema);
+            } else if (!schema.equals(pinnedConnection.currentSchema)) {
+                pinnedConnection.currentSchema = null;
+                schemaSetter.value(conn, schema);
+                pinnedConnection.currentSchema = schema;
+            }
+            T result = callable.safeValueOf(conn);
+            success = true;
+            return result;
+        } finally {
+            if (outerContextSchema != null) {
+                contextSchemas.put(conn, outerContextSchema);
+            } else {
+                contextSchemas.remove(conn);
+            }
+            if (!success && pinnedConnection != null) {
+                // the connection state is unknown after a failure; we let the next call switch the schema again
+                pinnedConnection.currentSchema = null;
+            }
+        }
+    }
+
+    /**
+     * Connection pinned to a thread; only accessed by that thread.
+     */
+    private class PinnedConnection {
+        private Connection conn;
+        private PhysicalSchema currentSchema;
+        private boolean statementCacheRegistered;
+        private int activeCalls;
+
+        /**
+         * The connection can be used if it is not in use by an outer call on this thread, or if it is already on the
+         * given schema.
+         */
+        boolean isUsableFor(PhysicalSchema schema) {
+            return conn == null || activeCalls == 0 || schema.equals(currentSchema);
+        }
+
+        <T> T execute(PhysicalSchema schema, ThrowingFunction<Connection, T> callable) {
+            activeCalls++;
+            try {
+                if (conn == null) {
+                    conn = ds.getConnection();
+                    statementCacheRegistered = statementCache.register(conn);
+                }
+                return SchemaAwareConnectionManager.this.execute(conn, schema, callable, this);
+            } catch (DeployerRuntimeException e) {
+                throw e;  // rethrowing DeployerRuntimeException to avoid excessive stack trace outputs
+            } catch (Exception e) {
+                throw new DeployerRuntimeException(e);
+            } finally {
+                activeCalls--;
+            }
+        }
+
+        void close() {
+            if (conn != null) {
+                if (statementCacheRegistered) {
+                    statementCache.release(conn);
+                }
+                DbUtils.closeQuietly(conn);
+            }
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.metadata;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.db.impl.core.jdbc.DdlDetector;
+import com.gs.obevo.db.impl.core.jdbc.JdbcUpdateListener;
+import com.gs.obevo.dbmetadata.api.DaCatalog;
+import com.gs.obevo.dbmetadata.api.DaRoutine;
+import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
+import com.gs.obevo.dbmetadata.api.DaTable;
+import com.gs.obevo.dbmetadata.api.DbMetadataManager;
+import org.eclipse.collections.api.RichIterable;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.collection.ImmutableCollection;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.block.factory.Predicates;
+import org.eclipse.collections.impl.factory.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link DbMetadataManager} decorator that crawls each schema once and keeps the resulting catalog in memory, as many
+ * callers (e.g. the audit DAOs, the static data deployer, the checksum manager) otherwise crawl the same schema
+ * repeatedly.
+ *
+ * The caching rules are:
+ * <ul>
+ * <li>Catalog requests are served from the cache if the cached crawl covered the requested info level. Otherwise,
+ * the schema is crawled at the union of the cached and requested levels, so that each schema converges on a single
+ * crawl at the widest level needed.</li>
+ * <li>Catalogs are cached separately for each combination of the searchAllTables and searchAllRoutines flags, as
+ * those affect the routines that are returned.</li>
+ * <li>Single-table lookups are served from any cached catalog of the schema; a miss crawls the whole schema. However,
+ * once DDL has been executed on the schema (i.e. during a deployment), misses are passed to the underlying manager
+ * instead, so that we do not re-crawl whole schemas while they are being modified.</li>
+ * <li>Routine lookups and existence checks are passed through, as their matching rules are dialect-specific.</li>
+ * <li>When a DDL statement is executed (see the {@link JdbcUpdateListener} callback), the entries of the schema that
+ * the statement ran against are invalidated, along with those of any other cached schema named in the statement. If
+ * the schema of the connection is not known, all entries are invalidated.</li>
+ * </ul>
+ */
+public class CachingDbMetadataManager implements DbMetadataManager, JdbcUpdateListener {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingDbMetadataManager.class);
+
+    /**
+     * Table names that {@link #getTableInfo(PhysicalSchema, String, DaSchemaInfoLevel)} can serve from the cached
+     * catalog. Names that are not simple go to the delegate, which treats them as search patterns.
+     */
+    private static final Pattern SIMPLE_OBJECT_NAME = Pattern.compile("\\w+");
+
+    private final DbMetadataManager delegate;
+    private final int numThreads;
+    private final Function<Connection, PhysicalSchema> connectionSchemaResolver;
+    private final ConcurrentHashMap<CatalogKey, CatalogEntry> catalogs = new ConcurrentHashMap<CatalogKey, CatalogEntry>();
+    private final ConcurrentHashMap<CatalogKey, Object> crawlLocks = new ConcurrentHashMap<CatalogKey, Object>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Set<PhysicalSchema> ddlExecutedSchemas = Collections.newSetFromMap(new ConcurrentHashMap<PhysicalSchema, Boolean>());
+    private volatile boolean ddlExecutedOnUnknownSchema = false;
+
+    public CachingDbMetadataManager(DbMetadataManager delegate, int numThreads) {
+        this(delegate, numThreads, null);
+    }
+
+    /**
+     * @param connectionSchemaResolver returns the schema that the given connection is being used for, or null if not
+     * known; used to limit the invalidation on DDL to that schema. If null, all entries are invalidated on DDL.
+     */
+    public CachingDbMetadataManager(DbMetadataManager delegate, int numThreads, Function<Connection, PhysicalSchema> connectionSchemaResolver) {
+        this.delegate = delegate;
+        this.numThreads = numThreads;
+        this.connectionSchemaResolver = connectionSchemaResolver;
+    }
+
+    @Override
+    public void setDataSource(DataSource ds) {
+        delegate.setDataSource(ds);
+        reset();
+    }
+
+    /**
+     * Clears the cache, e.g. at the start of a new deployer operation in case the schemas were modified externally.
+     */
+    public void reset() {
+        invalidateAll();
+        ddlExecutedSchemas.clear();
+        ddlExecutedOnUnknownSchema = false;
+    }
+
+    /**
+     * Drops all cached catalogs.
+     */
+    public void invalidateAll() {
+        synchronized (catalogs) {
+            generation.incrementAndGet();
+            catalogs.clear();
+        }
+    }
+
+    /**
+     * Drops the cached catalogs of the given schemas.
+     */
+    private void invalidate(Set<PhysicalSchema> physicalSchemas) {
+        synchronized (catalogs) {
+            // the generation is shared across the schemas; a crawl of another schema that is running concurrently is
+            // then not cached, which is merely conservative
+            generation.incrementAndGet();
+            for (Iterator<CatalogKey> iterator = catalogs.keySet().iterator(); iterator.hasNext(); ) {
+                if (physicalSchemas.contains(iterator.next().physicalSchema)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterUpdate(Connection conn, String sql) {
+        if (!DdlDetector.isDdl(sql)) {
+            return;
+        }
+
+        PhysicalSchema targetSchema = connectionSchemaResolver != null && conn != null ? connectionSchemaResolver.valueOf(conn) : null;
+        if (targetSchema == null) {
+            ddlExecutedOnUnknownSchema = true;
+            if (!catalogs.isEmpty()) {
+                LOG.debug("Invalidating the metadata cache after executing DDL on an unknown schema");
+            }
+            invalidateAll();
+            return;
+        }
+
+        ddlExecutedSchemas.add(targetSchema);
+        Set<PhysicalSchema> schemasToInvalidate = new HashSet<PhysicalSchema>();
+        schemasToInvalidate.add(targetSchema);
+        // the statement may also refer to objects in other schemas via qualified names
+        String upperSql = sql.toUpperCase();
+        for (CatalogKey cachedKey : catalogs.keySet()) {
+            if (upperSql.contains(cachedKey.physicalSchema.getPhysicalName().toUpperCase())) {
+                schemasToInvalidate.add(cachedKey.physicalSchema);
+                ddlExecutedSchemas.add(cachedKey.physicalSchema);
+            }
+        }
+        LOG.debug("Invalidating the metadata cache of schemas {} after executing DDL", schemasToInvalidate);
+        invalidate(schemasToInvalidate);
+    }
+
+    private boolean isDdlExecuted(PhysicalSchema physicalSchema) {
+        return ddlExecutedOnUnknownSchema || ddlExecutedSchemas.contains(physicalSchema);
+    }
+
+    /**
+     * Crawls the given schemas in parallel so that subsequent lookups can be served from the cache. This is
+     * best-effort; schemas that cannot be crawled are left to be looked up on demand.
+     */
+    public void prefetch(RichIterable<PhysicalSchema> physicalSchemas, final DaSchemaInfoLevel schemaInfoLevel) {
+        if (physicalSchemas.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, physicalSchemas.size())));
+        try {
+            MutableList<Future<Void>> futures = Lists.mutable.empty();
+            for (final PhysicalSchema physicalSchema : physicalSchemas) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            getCatalog(new CatalogKey(physicalSchema, true, false), schemaInfoLevel);
+                        } catch (RuntimeException e) {
+                            LOG.debug("Could not prefetch the metadata for schema {}; will look it up on demand", physicalSchema, e);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.debug("Metadata prefetch failed; will look up the schemas on demand", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public DaCatalog getDatabase(String physicalSchema, DaSchemaInfoLevel schemaInfoLevel, boolean searchAllTables, boolean searchAllRoutines) {
+        return getDatabase(new PhysicalSchema(physicalSchema), schemaInfoLevel, searchAllTables, searchAllRoutines);
+    }
+
+    @Override
+    public DaCatalog getDatabase(PhysicalSchema physicalSchema, DaSchemaInfoLevel schemaInfoLevel, boolean searchAllTables, boolean searchAllRoutines) {
+        return getCatalog(new CatalogKey(physicalSchema, searchAllTables, searchAllRoutines), schemaInfoLevel);
+    }
+
+    @Override
+    @Deprecated
+    public DaCatalog getDatabase(String physicalSchema) {
+        return getDatabaseOptional(physicalSchema);
+    }
+
+    @Override
+    @Deprecated
+    public DaCatalog getDatabaseOptional(String physicalSchema) {
+        return getDatabaseOptional(new PhysicalSchema(physicalSchema));
+    }
+
+    @Override
+    public DaCatalog getDatabaseOptional(PhysicalSchema physicalSchema) {
+        // the underlying lookup searches neither all tables nor all routines
+        CatalogEntry entry = catalogs.get(new CatalogKey(physicalSchema, false, false));
+        return entry != null ? entry.catalog : delegate.getDatabaseOptional(physicalSchema);
+    }
+
+    @Override
+    @Deprecated
+    public DaTable getTableInfo(String physicalSchema, String tableName) {
+        return getTableInfo(new PhysicalSchema(physicalSchema), tableName);
+    }
+
+    @Override
+    @Deprecated
+    public DaTable getTableInfo(String physicalSchema, String tableName, DaSchemaInfoLevel schemaInfoLevel) {
+        return getTableInfo(new PhysicalSchema(physicalSchema), tableName, schemaInfoLevel);
+    }
+
+    @Override
+    public DaTable getTableInfo(PhysicalSchema physicalSchema, String tableName) {
+        return getTableInfo(physicalSchema, tableName, new DaSchemaInfoLevel().setRetrieveTableAndColumnDetails());
+    }
+
+    @Override
+    public DaTable getTableInfo(PhysicalSchema physicalSchema, String tableName, DaSchemaInfoLevel schemaInfoLevel) {
+        if (!SIMPLE_OBJECT_NAME.matcher(tableName).matches()) {
+            // the underlying lookup treats the name as a pattern; leave those cases to it
+            return delegate.getTableInfo(physicalSchema, tableName, schemaInfoLevel);
+        }
+
+        // the search flags do not affect the tables in the catalog, so any cached catalog of the schema will do
+        DaCatalog catalog = null;
+        for (CatalogKey key : CatalogKey.allFor(physicalSchema)) {
+            CatalogEntry entry = catalogs.get(key);
+            if (entry != null && covers(entry.schemaInfoLevel, schemaInfoLevel)) {
+                catalog = entry.catalog;
+                break;
+            }
+        }
+        if (catalog == null) {
+            if (isDdlExecuted(physicalSchema)) {
+                return delegate.getTableInfo(physicalSchema, tableName, schemaInfoLevel);
+            }
+            catalog = getCatalog(new CatalogKey(physicalSchema, true, false), schemaInfoLevel);
+        }
+
+        ImmutableCollection<DaTable> tables = catalog.getTables().select(Predicates.attributeEqual(DaTable.TO_NAME, tableName));
+        switch (tables.size()) {
+        case 0:
+            return null;
+        case 1:
+            return tables.iterator().next();
+        default:
+            // let the underlying manager report the ambiguity in its usual way
+            return delegate.getTableInfo(physicalSchema, tableName, schemaInfoLevel);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public ImmutableCollection<DaRoutine> getProcedureInfo(String physicalSchema, String procedureName) {
+        return delegate.getProcedureInfo(physicalSchema, procedureName);
+    }
+
+    @Override
+    @Deprecated
+    public ImmutableCollection<DaRoutine> getProcedureInfo(String physicalSchema, String procedureName, DaSchemaInfoLevel schemaInfoLevel) {
+        return delegate.getProcedureInfo(physicalSchema, procedureName, schemaInfoLevel);
+    }
+
+    @Override
+    public ImmutableCollection<DaRoutine> getRoutineInfo(PhysicalSchema physicalSchema, String routineName) {
+        return delegate.getRoutineInfo(physicalSchema, routineName);
+    }
+
+    @Override
+    public ImmutableCollection<DaRoutine> getRoutineInfo(PhysicalSchema physicalSchema, String routineName, DaSchemaInfoLevel schemaInfoLevel) {
+        return delegate.getRoutineInfo(physicalSchema, routineName, schemaInfoLevel);
+    }
+
+    private DaCatalog getCatalog(CatalogKey key, DaSchemaInfoLevel schemaInfoLevel) {
+        CatalogEntry entry = catalogs.get(key);
+        if (entry != null && covers(entry.schemaInfoLevel, schemaInfoLevel)) {
+            return entry.catalog;
+        }
+
+        Object crawlLock = crawlLocks.get(key);
+        if (crawlLock == null) {
+            Object newLock = new Object();
+            crawlLock = crawlLocks.putIfAbsent(key, newLock);
+            if (crawlLock == null) {
+                crawlLock = newLock;
+            }
+        }
+
+        synchronized (crawlLock) {
+            // check again in case another thread crawled the schema while we were waiting
+            entry = catalogs.get(key);
+            if (entry != null && covers(entry.schemaInfoLevel, schemaInfoLevel)) {
+                return entry.catalog;
+            }
+
+            DaSchemaInfoLevel crawlLevel = union(entry != null ? entry.schemaInfoLevel : new DaSchemaInfoLevel(), schemaInfoLevel);
+            long crawlGeneration = generation.get();
+            LOG.debug("Crawling the metadata for schema {}", key.physicalSchema);
+            DaCatalog catalog = delegate.getDatabase(key.physicalSchema, crawlLevel, key.searchAllTables, key.searchAllRoutines);
+
+            synchronized (catalogs) {
+                // do not cache the result if DDL was executed during the crawl, as it may already be stale
+                if (generation.get() == crawlGeneration) {
+                    catalogs.put(key, new CatalogEntry(crawlLevel, catalog));
+                }
+            }
+            return catalog;
+        }
+    }
+
+    private static boolean covers(DaSchemaInfoLevel cached, DaSchemaInfoLevel requested) {
+        return (!requested.isRetrieveTables() || cached.isRetrieveTables())
+                && (!requested.isRetrieveTableColumns() || cached.isRetrieveTableColumns())
+                && (!requested.isRetrieveTableForeignKeys() || cached.isRetrieveTableForeignKeys())
+                && (!requested.isRetrieveTableIndexes() || cached.isRetrieveTableIndexes())
+                && (!requested.isRetrieveTableCheckConstraints() || cached.isRetrieveTableCheckConstraints())
+                && (!requested.isRetrieveViewDetails() || cached.isRetrieveViewDetails())
+                && (!requested.isRetrieveRoutines() || cached.isRetrieveRoutines())
+                && (!requested.isRetrieveRoutineDetails() || cached.isRetrieveRoutineDetails())
+                && (!requested.isRetrieveSequences() || cached.isRetrieveSequences())
+                && (!requested.isRetrieveSynonyms() || cached.isRetrieveSynonyms())
+                && (!requested.isRetrieveRules() || cached.isRetrieveRules())
+                && (!requested.isRetrieveRuleBindings() || cached.isRetrieveRuleBindings())
+                && (!requested.isRetrieveUserDefinedColumnDataTypes() || cached.isRetrieveUserDefinedColumnDataTypes());
+    }
+
+    private static DaSchemaInfoLevel union(DaSchemaInfoLevel level1, DaSchemaInfoLevel level2) {
+        return new DaSchemaInfoLevel()
+                .setRetrieveTables(level1.isRetrieveTables() || level2.isRetrieveTables())
+                .setRetrieveTableColumns(level1.isRetrieveTableColumns() || level2.isRetrieveTableColumns())
+                .setRetrieveTableForeignKeys(level1.isRetrieveTableForeignKeys() || level2.isRetrieveTableForeignKeys())
+                .setRetrieveTableIndexes(level1.isRetrieveTableIndexes() || level2.isRetrieveTableIndexes())
+                .setRetrieveTableCheckConstraints(level1.isRetrieveTableCheckConstraints() || level2.isRetrieveTableCheckConstraints())
+                .setRetrieveViewDetails(level1.isRetrieveViewDetails() || level2.isRetrieveViewDetails())
+                .setRetrieveRoutines(level1.isRetrieveRoutines() || level2.isRetrieveRoutines())
+                .setRetrieveRoutineDetails(level1.isRetrieveRoutineDetails() || level2.isRetrieveRoutineDetails())
+                .setRetrieveSequences(level1.isRetrieveSequences() || level2.isRetrieveSequences())
+                .setRetrieveSynonyms(level1.isRetrieveSynonyms() || level2.isRetrieveSynonyms())
+                .setRetrieveRules(level1.isRetrieveRules() || level2.isRetrieveRules())
+                .setRetrieveRuleBindings(level1.isRetrieveRuleBindings() || level2.isRetrieveRuleBindings())
+                .setRetrieveUserDefinedColumnDataTypes(level1.isRetrieveUserDefinedColumnDataTypes() || level2.isRetrieveUserDefinedColumnDataTypes());
+    }
+
+    private static class CatalogKey {
+        private final PhysicalSchema physicalSchema;
+        private final boolean searchAllTables;
+        private final boolean searchAllRoutines;
+
+        CatalogKey(PhysicalSchema physicalSchema, boolean searchAllTables, boolean searchAllRoutines) {
+            this.physicalSchema = physicalSchema;
+            this.searchAllTables = searchAllTables;
+            this.searchAllRoutines = searchAllRoutines;
+        }
+
+        static ImmutableList<CatalogKey> allFor(PhysicalSchema physicalSchema) {
+            return Lists.immutable.with(
+                    new CatalogKey(physicalSchema, true, false),
+                    new CatalogKey(physicalSchema, true, true),
+                    new CatalogKey(physicalSchema, false, false),
+                    new CatalogKey(physicalSchema, false, true));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CatalogKey)) {
+                return false;
+            }
+            CatalogKey that = (CatalogKey) o;
+            return searchAllTables == that.searchAllTables
+                    && searchAllRoutines == that.searchAllRoutines
+                    && physicalSchema.equals(that.physicalSchema);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = physicalSchema.hashCode();
+            result = 31 * result + (searchAllTables ? 1 : 0);
+            result = 31 * result + (searchAllRoutines ? 1 : 0);
+            return result;
+        }
+    }
+
+    private static class CatalogEntry {
+        private final DaSchemaInfoLevel schemaInfoLevel;
+        private final DaCatalog catalog;
+
+        CatalogEntry(DaSchemaInfoLevel schemaInfoLevel, DaCatalog catalog) {
+            this.schemaInfoLevel = schemaInfoLevel;
+            this.catalog = catalog;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.metadata;
+
+import javax.sql.DataSource;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.dbmetadata.api.DaCatalog;
+import com.gs.obevo.dbmetadata.api.DaRoutine;
+import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
+import com.gs.obevo.dbmetadata.api.DaTable;
+import com.gs.obevo.dbmetadata.api.DbMetadataManager;
+import com.gs.obevo.impl.DeployMetricsCollector;
+import org.eclipse.collections.api.collection.ImmutableCollection;
+
+/**
+ * {@link DbMetadataManager} decorator that records the duration of each metadata crawl in the
+ * {@link DeployMetricsCollector}, under the "metadata.getDatabase", "metadata.getDatabaseOptional",
+ * "metadata.getTableInfo", and "metadata.getRoutineInfo" timing keys.
+ *
+ * This wraps the platform's manager directly (i.e. underneath {@link CachingDbMetadataManager}), so that only the
+ * actual crawls are timed and not the cache hits.
+ */
+public class TimedDbMetadataManager implements DbMetadataManager {
+    private final DbMetadataManager delegate;
+    private final DeployMetricsCollector deployMetricsCollector;
+
+    public TimedDbMetadataManager(DbMetadataManager delegate, DeployMetricsCollector deployMetricsCollector) {
+        this.delegate = delegate;
+        this.deployMetricsCollector = deployMetricsCollector;
+    }
+
+    @Override
+    public void setDataSource(DataSource ds) {
+        delegate.setDataSource(ds);
+    }
+
+    @Override
+    @Deprecated
+    public DaCatalog getDatabase(String physicalSchema, DaSchemaInfoLevel schemaInfoLevel, boolean searchAllTables, boolean searchAllRoutines) {
+        return getDatabase(new PhysicalSchema(physicalSchema), schemaInfoLevel, searchAllTables, searchAllRoutines);
+    }
+
+    @Override
+    public DaCatalog getDatabase(PhysicalSchema physicalSchema, DaSchemaInfoLevel schemaInfoLevel, boolean searchAllTables, boolean searchAllRoutines) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getDatabase(physicalSchema, schemaInfoLevel, searchAllTables, searchAllRoutines);
+        } finally {
+            recordTiming("metadata.getDatabase", startNanos);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public DaCatalog getDatabase(String physicalSchema) {
+        return getDatabaseOptional(physicalSchema);
+    }
+
+    @Override
+    @Deprecated
+    public DaCatalog getDatabaseOptional(String physicalSchema) {
+        return getDatabaseOptional(new PhysicalSchema(physicalSchema));
+    }
+
+    @Override
+    public DaCatalog getDatabaseOptional(PhysicalSchema physicalSchema) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getDatabaseOptional(physicalSchema);
+        } finally {
+            recordTiming("metadata.getDatabaseOptional", startNanos);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public DaTable getTableInfo(String physicalSchema, String tableName) {
+        return getTableInfo(new PhysicalSchema(physicalSchema), tableName);
+    }
+
+    @Override
+    @Deprecated
+    public DaTable getTableInfo(String physicalSchema, String tableName, DaSchemaInfoLevel schemaInfoLevel) {
+        return getTableInfo(new PhysicalSchema(physicalSchema), tableName, schemaInfoLevel);
+    }
+
+    @Override
+    public DaTable getTableInfo(PhysicalSchema physicalSchema, String tableName) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getTableInfo(physicalSchema, tableName);
+        } finally {
+            recordTiming("metadata.getTableInfo", startNanos);
+        }
+    }
+
+    @Override
+    public DaTable getTableInfo(PhysicalSchema physicalSchema, String tableName, DaSchemaInfoLevel schemaInfoLevel) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getTableInfo(physicalSchema, tableName, schemaInfoLevel);
+        } finally {
+            recordTiming("metadata.getTableInfo", startNanos);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public ImmutableCollection<DaRoutine> getProcedureInfo(String physicalSchema, String procedureName) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getProcedureInfo(physicalSchema, procedureName);
+        } finally {
+            recordTiming("metadata.getRoutineInfo", startNanos);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public ImmutableCollection<DaRoutine> getProcedureInfo(String physicalSchema, String procedureName, DaSchemaInfoLevel schemaInfoLevel) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getProcedureInfo(physicalSchema, procedureName, schemaInfoLevel);
+        } finally {
+            recordTiming("metadata.getRoutineInfo", startNanos);
+        }
+    }
+
+    @Override
+    public ImmutableCollection<DaRoutine> getRoutineInfo(PhysicalSchema physicalSchema, String routineName) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getRoutineInfo(physicalSchema, routineName);
+        } finally {
+            recordTiming("metadata.getRoutineInfo", startNanos);
+        }
+    }
+
+    @Override
+    public ImmutableCollection<DaRoutine> getRoutineInfo(PhysicalSchema physicalSchema, String routineName, DaSchemaInfoLevel schemaInfoLevel) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.getRoutineInfo(physicalSchema, routineName, schemaInfoLevel);
+        } finally {
+            recordTiming("metadata.getRoutineInfo", startNanos);
+        }
+    }
+
+    private void recordTiming(String key, long startNanos) {
+        deployMetricsCollector.addTiming(key, System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.gs.obevo.api.appdata.doc.TextMarkupDocumentSection;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.ConcurrentMutableMap;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Maps;
+import org.eclipse.collections.impl.factory.Sets;
+import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link TextMarkupDocumentReader} that keeps the parsed sections in a file on disk, keyed by the hash of the text,
+ * so that unchanged files do not have to be parsed again on subsequent runs.
+ *
+ * The cache is loaded on the first parse and written back on {@link #saveCache()}; only the entries used in the
+ * current run are written back, so that the entries for deleted or modified files do not accumulate. The whole cache
+ * is discarded if it was written by a different {@link #CACHE_VERSION} or reader mode.
+ */
+public class CachingTextMarkupDocumentReader extends TextMarkupDocumentReader {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingTextMarkupDocumentReader.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final String CACHE_FILE_NAME = "obevo-parse-cache.bin";
+
+    /**
+     * Increment this whenever the format of the cache file changes or when the parser changes the sections it returns
+     * for the same text, as the entries written by the previous code would otherwise still be used.
+     *
+     * Note that we cannot rely on the jar version for this, as it is not available when running from the class files
+     * and would not change across snapshot builds anyway.
+     */
+    private static final int CACHE_VERSION = 2;
+
+    private final File cacheFile;
+    private final String cacheVersion;
+    private MutableMap<String, byte[]> previousEntries;
+    private final ConcurrentMutableMap<String, byte[]> usedEntries = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger cacheMisses = new AtomicInteger();
+
+    public CachingTextMarkupDocumentReader(boolean legacyMode, File cacheFile) {
+        super(legacyMode);
+        this.cacheFile = cacheFile;
+        this.cacheVersion = CACHE_VERSION + ":" + legacyMode;
+    }
+
+    @Override
+    protected ImmutableList<TextMarkupDocumentSection> parseSections(String text) {
+        if (text == null) {
+            return super.parseSections(text);
+        }
+
+        String key = DigestUtils.sha1Hex(text);
+        byte[] entry = usedEntries.get(key);
+        if (entry == null) {
+            entry = this.getPreviousEntries().get(key);
+        }
+
+        if (entry != null) {
+            cacheHits.incrementAndGet();
+            usedEntries.put(key, entry);
+            return readEntry(entry);
+        }
+
+        cacheMisses.incrementAndGet();
+        ImmutableList<TextMarkupDocumentSection> sections = super.parseSections(text);
+        usedEntries.put(key, writeEntry(sections));
+        return sections;
+    }
+
+    int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    int getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    private synchronized MutableMap<String, byte[]> getPreviousEntries() {
+        if (previousEntries == null) {
+            previousEntries = this.loadCache();
+        }
+        return previousEntries;
+    }
+
+    private MutableMap<String, byte[]> loadCache() {
+        MutableMap<String, byte[]> entries = Maps.mutable.empty();
+        if (!cacheFile.exists()) {
+            return entries;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            String fileVersion = in.readUTF();
+            if (!cacheVersion.equals(fileVersion)) {
+                LOG.info("Ignoring the parse cache at {} as it was written for version {}; current version is {}", cacheFile, fileVersion, cacheVersion);
+                return entries;
+            }
+
+            int numEntries = in.readInt();
+            for (int i = 0; i < numEntries; i++) {
+                String key = in.readUTF();
+                byte[] entry = new byte[in.readInt()];
+                in.readFully(entry);
+                entries.put(key, entry);
+            }
+            LOG.info("Loaded {} entries from the parse cache at {}", numEntries, cacheFile);
+            return entries;
+        } catch (IOException e) {
+            LOG.warn("Could not read the parse cache at {}; will parse all files", cacheFile, e);
+            return Maps.mutable.empty();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the entries used so far to the cache file. Failures are logged rather than thrown, as the cache is only
+     * an optimization.
+     */
+    public synchronized void saveCache() {
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            File cacheDir = cacheFile.getAbsoluteFile().getParentFile();
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                throw new IOException("Could not create directory " + cacheDir);
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeUTF(cacheVersion);
+
+            MutableList<Pair<String, byte[]>> entries = usedEntries.keyValuesView().toList();
+            out.writeInt(entries.size());
+            for (Pair<String, byte[]> entry : entries) {
+                out.writeUTF(entry.getOne());
+                out.writeInt(entry.getTwo().length);
+                out.write(entry.getTwo());
+            }
+            out.close();
+            out = null;
+
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            LOG.info("Saved {} entries to the parse cache at {} ({} files read from the cache, {} parsed)", entries.size(), cacheFile, cacheHits.get(), cacheMisses.get());
+        } catch (IOException e) {
+            LOG.warn("Could not write the parse cache to {}; the next run will parse all files", cacheFile, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (tempFile.exists() && !tempFile.delete()) {
+                LOG.debug("Could not delete {}", tempFile);
+            }
+        }
+    }
+
+    private static byte[] writeEntry(ImmutableList<TextMarkupDocumentSection> sections) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeSections(out, sections);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Not expecting an IOException when writing to a byte array", e);
+        }
+    }
+
+    private static ImmutableList<TextMarkupDocumentSection> readEntry(byte[] entry) {
+        try {
+            return readSections(new DataInputStream(new ByteArrayInputStream(entry)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Not expecting an IOException when reading from a byte array", e);
+        }
+    }
+
+    private static void writeSections(DataOutputStream out, ImmutableList<TextMarkupDocumentSection> sections) throws IOException {
+        out.writeInt(sections.size());
+        for (TextMarkupDocumentSection section : sections) {
+            writeString(out, section.getName());
+            writeString(out, section.getContent());
+
+            out.writeInt(section.getAttrs().size());
+            for (Pair<String, String> attr : section.getAttrs().keyValuesView()) {
+                writeString(out, attr.getOne());
+                writeString(out, attr.getTwo());
+            }
+
+            out.writeInt(section.getToggles().size());
+            for (String toggle : section.getToggles()) {
+                writeString(out, toggle);
+            }
+
+            writeSections(out, section.getSubsections());
+        }
+    }
+
+    private static ImmutableList<TextMarkupDocumentSection> readSections(DataInputStream in) throws IOException {
+        int numSections = in.readInt();
+        MutableList<TextMarkupDocumentSection> sections = Lists.mutable.empty();
+        for (int i = 0; i < numSections; i++) {
+            String name = readString(in);
+            String content = readString(in);
+
+            int numAttrs = in.readInt();
+            MutableMap<String, String> attrs = Maps.mutable.empty();
+            for (int j = 0; j < numAttrs; j++) {
+                attrs.put(readString(in), readString(in));
+            }
+
+            int numToggles = in.readInt();
+            MutableSet<String> toggles = Sets.mutable.empty();
+            for (int j = 0; j < numToggles; j++) {
+                toggles.add(readString(in));
+            }
+
+            TextMarkupDocumentSection section = new TextMarkupDocumentSection(name, content, attrs.toImmutable());
+            section.setToggles(toggles.toImmutable());
+            section.setSubsections(readSections(in));
+            sections.add(section);
+        }
+        return sections.toImmutable();
+    }
+
+    /**
+     * Strings are written as length-prefixed UTF-8 as {@link DataOutputStream#writeUTF(String)} is limited to 64KB.
+     */
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = str.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
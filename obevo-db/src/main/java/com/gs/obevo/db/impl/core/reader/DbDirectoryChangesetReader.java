@@ -15,8 +15,12 @@
  */
 package com.gs.obevo.db.impl.core.reader;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 import com.gs.obevo.api.appdata.ArtifactRestrictions;
 import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.ChangeContentSource;
 import com.gs.obevo.api.appdata.doc.TextMarkupDocumentSection;
 import com.gs.obevo.api.platform.ChangeType;
 import com.gs.obevo.api.platform.DeployMetrics;
@@ -25,7 +29,8 @@ import com.gs.obevo.impl.DeployMetricsCollector;
 import com.gs.obevo.impl.DeployMetricsCollectorImpl;
 import com.gs.obevo.impl.OnboardingStrategy;
 import com.gs.obevo.util.VisibleForTesting;
-import com.gs.obevo.util.hash.OldWhitespaceAgnosticDbChangeHashStrategy;
+import com.gs.obevo.util.hash.DbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingOldWhitespaceAgnosticDbChangeHashStrategy;
 import com.gs.obevo.util.vfs.BasicFileSelector;
 import com.gs.obevo.util.vfs.CharsetStrategy;
 import com.gs.obevo.util.vfs.CharsetStrategyFactory;
@@ -68,6 +73,12 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
      */
     static final FileFilter CHANGES_WILDCARD_FILTER = new WildcardFileFilter("*.changes.*");
 
+    /**
+     * Max number of files to read within a single fork/join task in the parallel read mode. Kept small as the work is
+     * mainly I/O-bound.
+     */
+    private static final int FILES_PER_TASK = 4;
+
     private final Function<String, String> convertDbObjectName;
     private final PackageMetadataReader packageMetadataReader;
     private final ConcurrentMutableMap<FileObject, PackageMetadata> packageMetadataCache = new ConcurrentHashMap<>();
@@ -82,9 +93,10 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
         this.convertDbObjectName = convertDbObjectName;
         final ChangeType fkChangeType = env.getPlatform().getChangeType(ChangeType.FOREIGN_KEY_STR);
         final ChangeType triggerChangeType = env.getPlatform().getChangeType(ChangeType.TRIGGER_INCREMENTAL_OLD_STR);
-        this.tableChangeParser = new TableChangeParser(new OldWhitespaceAgnosticDbChangeHashStrategy(), fkChangeType, triggerChangeType, backwardsCompatibleMode, deployMetricsCollector, textMarkupDocumentReader);
-        this.baselineTableChangeParser = new BaselineTableChangeParser(new OldWhitespaceAgnosticDbChangeHashStrategy(), fkChangeType, triggerChangeType);
-        this.rerunnableChangeParser = new RerunnableChangeParser(backwardsCompatibleMode, deployMetricsCollector, textMarkupDocumentReader);
+        final DbChangeHashStrategy contentHashStrategy = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(env.getContentHashAlgorithm());
+        this.tableChangeParser = new TableChangeParser(contentHashStrategy, fkChangeType, triggerChangeType, backwardsCompatibleMode, deployMetricsCollector, textMarkupDocumentReader);
+        this.baselineTableChangeParser = new BaselineTableChangeParser(contentHashStrategy, fkChangeType, triggerChangeType);
+        this.rerunnableChangeParser = new RerunnableChangeParser(backwardsCompatibleMode, deployMetricsCollector, textMarkupDocumentReader, contentHashStrategy);
         this.env = env;
         this.deployMetricsCollector = deployMetricsCollector;
     }
@@ -108,7 +120,22 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
      */
     @Override
     public ImmutableList<Change> readChanges(boolean useBaseline) {
+        if (!env.isParallelSourceReadEnabled()) {
+            return readChanges(useBaseline, null);
+        }
 
+        ForkJoinPool forkJoinPool = new ForkJoinPool(Math.max(1, env.getNumThreads()));
+        try {
+            return readChanges(useBaseline, forkJoinPool);
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * @param forkJoinPool the pool to read the files with, or null to read them sequentially
+     */
+    private ImmutableList<Change> readChanges(boolean useBaseline, ForkJoinPool forkJoinPool) {
         MutableList<Change> allChanges = Lists.mutable.empty();
 
         ImmutableSet<String> envSchemas = env.getSchemaNames().collect(this.convertDbObjectName);
@@ -126,9 +153,9 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
                         if (changeTypeDir != null) {
                             ImmutableList<Change> changes;
                             if (changeType.isRerunnable()) {
-                                changes = findChanges(changeType, changeTypeDir, this.rerunnableChangeParser, TrueFileFilter.INSTANCE, schema);
+                                changes = findChanges(changeType, changeTypeDir, this.rerunnableChangeParser, TrueFileFilter.INSTANCE, schema, forkJoinPool);
                             } else {
-                                changes = findTableChanges(changeType, changeTypeDir, schema, useBaseline);
+                                changes = findTableChanges(changeType, changeTypeDir, schema, useBaseline, forkJoinPool);
                             }
                             schemaChanges.withAll(changes);
                         }
@@ -153,6 +180,10 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
                     }
 
 
+                    for (Change change : schemaChanges) {
+                        change.setContentHashAlgorithm(env.getContentHashAlgorithm());
+                    }
+
                     allChanges.addAll(schemaChanges);
                 } else {
                     LOG.info("Skipping schema directory [{}] as it was not defined among the schemas in your system-config.xml file: {}", schema, envSchemas);
@@ -189,13 +220,13 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
         return null;
     }
 
-    private ImmutableList<Change> findTableChanges(ChangeType changeType, FileObject tableDir, String schema, boolean useBaseline) {
+    private ImmutableList<Change> findTableChanges(ChangeType changeType, FileObject tableDir, String schema, boolean useBaseline, ForkJoinPool forkJoinPool) {
         WildcardFileFilter baselineFilter = new WildcardFileFilter("*.baseline.*");
 
         ImmutableList<FileObject> nonBaselineFiles = findFiles(tableDir,
                 this.isUsingChangesConvention(tableDir) ? CHANGES_WILDCARD_FILTER : new NotFileFilter(baselineFilter));
 
-        ImmutableList<Change> nonBaselineChanges = parseChanges(changeType, nonBaselineFiles, this.tableChangeParser, schema);
+        ImmutableList<Change> nonBaselineChanges = parseChanges(changeType, nonBaselineFiles, this.tableChangeParser, schema, forkJoinPool);
         ImmutableListMultimap<String, Change> nonBaselineChangeMap = nonBaselineChanges
                 .groupBy(Change.TO_DB_OBJECT_KEY);
 
@@ -203,7 +234,7 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
             LOG.info("Using the 'useBaseline' mode to read in the db changes");
             ImmutableList<FileObject> baselineFiles = findFiles(tableDir,
                     this.isUsingChangesConvention(tableDir) ? CHANGES_WILDCARD_FILTER : baselineFilter);
-            ImmutableList<Change> baselineChanges = parseChanges(changeType, baselineFiles, this.baselineTableChangeParser, schema);
+            ImmutableList<Change> baselineChanges = parseChanges(changeType, baselineFiles, this.baselineTableChangeParser, schema, forkJoinPool);
 
             for (Change baselineChange : baselineChanges) {
                 ImmutableList<Change> regularChanges = nonBaselineChangeMap.get(baselineChange
@@ -272,8 +303,8 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
     }
 
     private ImmutableList<Change> parseChanges(final ChangeType changeType, ImmutableList<FileObject> files,
-            final DbChangeFileParser changeParser, final String schema) {
-        return files.flatCollect(new Function<FileObject, ImmutableList<Change>>() {
+            final DbChangeFileParser changeParser, final String schema, ForkJoinPool forkJoinPool) {
+        Function<FileObject, ImmutableList<Change>> parseFile = new Function<FileObject, ImmutableList<Change>>() {
             @Override
             public ImmutableList<Change> valueOf(FileObject file) {
                 PackageMetadata packageMetadata = getPackageMetadata(file);
@@ -287,12 +318,48 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
                 final String objectName = file.getName().getBaseName().split("\\.")[0];
                 try {
                     LOG.debug("Attempting to read file {}", file);
-                    return changeParser.value(changeType, file, file.getStringContent(charsetStrategy), objectName, schema, metadataSection);
+                    String fileContent = file.getStringContent(charsetStrategy);
+                    ImmutableList<Change> changes = changeParser.value(changeType, file, fileContent, objectName, schema, metadataSection);
+                    if (env.isLazyChangeContentEnabled()) {
+                        referenceContentInFile(changes, new ChangeContentSource(file, charsetStrategy, fileContent), fileContent);
+                    }
+                    return changes;
                 } catch (RuntimeException e) {
                     throw new IllegalArgumentException("Error while parsing file " + file + " of change type " + changeType.getName() + "; please see the cause in the stack trace below: " + e.getMessage(), e);
                 }
             }
-        });
+        };
+
+        if (forkJoinPool == null) {
+            return files.flatCollect(parseFile);
+        } else {
+            return forkJoinPool.invoke(new ParseFilesTask(files, 0, files.size(), parseFile)).toImmutable();
+        }
+    }
+
+    /**
+     * Replaces the content of the given changes with references to where it appears in the file that they were parsed
+     * from. Changes whose content does not appear verbatim in the file (i.e. if the parser had modified it) keep their
+     * content as is.
+     */
+    private static void referenceContentInFile(ImmutableList<Change> changes, ChangeContentSource contentSource, String fileContent) {
+        int fromIndex = 0;
+        for (Change change : changes) {
+            String content = change.getContent();
+            if (content == null || content.isEmpty()) {
+                continue;
+            }
+            // the changes normally appear in the file in the order returned by the parser; fall back to searching from
+            // the start otherwise
+            int offset = fileContent.indexOf(content, fromIndex);
+            if (offset < 0) {
+                offset = fileContent.indexOf(content);
+            }
+            if (offset >= 0) {
+                change.setContentSource(contentSource, offset, content.length());
+                fromIndex = offset + content.length();
+            }
+        }
     }
 
     private PackageMetadata getPackageMetadata(final FileObject file) {
@@ -313,8 +380,8 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
     }
 
     private ImmutableList<Change> findChanges(final ChangeType changeType, FileObject dir, final DbChangeFileParser changeParser,
-            FileFilter fileFilter, final String schema) {
-        return parseChanges(changeType, findFiles(dir, fileFilter), changeParser, schema);
+            FileFilter fileFilter, final String schema, ForkJoinPool forkJoinPool) {
+        return parseChanges(changeType, findFiles(dir, fileFilter), changeParser, schema, forkJoinPool);
     }
 
     /**
@@ -336,4 +403,41 @@ public class DbDirectoryChangesetReader implements DbChangeReader {
 
         return changesConventionUsed;
     }
+
+    /**
+     * Parses the files in the [start, end) range of the list, splitting the range in half until it is within
+     * {@link #FILES_PER_TASK}. The results are concatenated in the order of the files so that the output matches the
+     * sequential read.
+     */
+    private static class ParseFilesTask extends RecursiveTask<MutableList<Change>> {
+        private final ImmutableList<FileObject> files;
+        private final int start;
+        private final int end;
+        private final Function<FileObject, ImmutableList<Change>> parseFile;
+
+        ParseFilesTask(ImmutableList<FileObject> files, int start, int end, Function<FileObject, ImmutableList<Change>> parseFile) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+            this.parseFile = parseFile;
+        }
+
+        @Override
+        protected MutableList<Change> compute() {
+            if (end - start <= FILES_PER_TASK) {
+                MutableList<Change> changes = Lists.mutable.empty();
+                for (int i = start; i < end; i++) {
+                    changes.addAllIterable(parseFile.valueOf(files.get(i)));
+                }
+                return changes;
+            }
+
+            int mid = (start + end) >>> 1;
+            ParseFilesTask left = new ParseFilesTask(files, start, mid, parseFile);
+            ParseFilesTask right = new ParseFilesTask(files, mid, end, parseFile);
+            left.fork();
+            MutableList<Change> rightChanges = right.compute();
+            return left.join().withAll(rightChanges);
+        }
+    }
 }
@@ -26,7 +26,8 @@ import com.gs.obevo.api.platform.ChangeType;
 import com.gs.obevo.impl.DeployMetricsCollector;
 import com.gs.obevo.impl.DeployMetricsCollectorImpl;
 import com.gs.obevo.util.VisibleForTesting;
-import com.gs.obevo.util.hash.OldWhitespaceAgnosticDbChangeHashStrategy;
+import com.gs.obevo.util.hash.DbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingOldWhitespaceAgnosticDbChangeHashStrategy;
 import com.gs.obevo.util.vfs.FileObject;
 import org.eclipse.collections.api.bag.MutableBag;
 import org.eclipse.collections.api.list.ImmutableList;
@@ -45,14 +46,14 @@ import org.slf4j.LoggerFactory;
 public class RerunnableChangeParser extends AbstractDbChangeFileParser {
     private static final Logger LOG = LoggerFactory.getLogger(RerunnableChangeParser.class);
     private static final String ATTR_ORDER = "order";
-    private final OldWhitespaceAgnosticDbChangeHashStrategy contentHashStrategy = new OldWhitespaceAgnosticDbChangeHashStrategy();
+    private final DbChangeHashStrategy contentHashStrategy;
 
     @VisibleForTesting
     public RerunnableChangeParser() {
-        this(false, new DeployMetricsCollectorImpl(), new TextMarkupDocumentReader(false));
+        this(false, new DeployMetricsCollectorImpl(), new TextMarkupDocumentReader(false), new StreamingOldWhitespaceAgnosticDbChangeHashStrategy());
     }
 
-    public RerunnableChangeParser(boolean backwardsCompatibleMode, DeployMetricsCollector deployMetricsCollector, TextMarkupDocumentReader textMarkupDocumentReader) {
+    public RerunnableChangeParser(boolean backwardsCompatibleMode, DeployMetricsCollector deployMetricsCollector, TextMarkupDocumentReader textMarkupDocumentReader, DbChangeHashStrategy contentHashStrategy) {
         super(backwardsCompatibleMode, deployMetricsCollector,
                 Sets.immutable.with(
                         TextMarkupDocumentReader.ATTR_DEPENDENCIES,
@@ -73,6 +74,7 @@ public class RerunnableChangeParser extends AbstractDbChangeFileParser {
                 Sets.immutable.with(TextMarkupDocumentReader.TAG_CHANGE),
                 textMarkupDocumentReader
         );
+        this.contentHashStrategy = contentHashStrategy;
     }
 
     @Override
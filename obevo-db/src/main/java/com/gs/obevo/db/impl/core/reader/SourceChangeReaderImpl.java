@@ -15,13 +15,23 @@
  */
 package com.gs.obevo.db.impl.core.reader;
 
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.db.api.appdata.DbEnvironment;
 import com.gs.obevo.impl.SourceChangeReader;
 import com.gs.obevo.impl.text.TextDependencyExtractor;
 import com.gs.obevo.util.CollectionUtil;
+import org.eclipse.collections.api.block.function.Function2;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.factory.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,12 +42,22 @@ public class SourceChangeReaderImpl implements SourceChangeReader<DbEnvironment>
     private final DbChangeReader dbChangeReader;
     private final TextDependencyExtractor textDependencyExtractor;
     private final ImmutableList<PrepareDbChange> artifactTranslators;
+    private final File translationCacheFile;
 
     public SourceChangeReaderImpl(DbEnvironment env, DbChangeReader dbChangeReader, TextDependencyExtractor textDependencyExtractor, ImmutableList<PrepareDbChange> artifactTranslators) {
+        this(env, dbChangeReader, textDependencyExtractor, artifactTranslators, null);
+    }
+
+    /**
+     * @param translationCacheFile the file to load the {@link TranslationCache} from and to save it to, or null if
+     * the translations should only be cached in memory
+     */
+    public SourceChangeReaderImpl(DbEnvironment env, DbChangeReader dbChangeReader, TextDependencyExtractor textDependencyExtractor, ImmutableList<PrepareDbChange> artifactTranslators, File translationCacheFile) {
         this.env = env;
         this.dbChangeReader = dbChangeReader;
         this.textDependencyExtractor = textDependencyExtractor;
         this.artifactTranslators = artifactTranslators;
+        this.translationCacheFile = translationCacheFile;
     }
 
     @Override
@@ -56,23 +76,73 @@ public class SourceChangeReaderImpl implements SourceChangeReader<DbEnvironment>
         // here was if the original hash was taken from the untokenized value, but later we change the SQL text to
         // tokenize it -> we don't want that to count as a hash different as the end result of tokenization is still
         // the same
-        for (Change change : sourceChanges) {
-            this.tokenizeChange(change, env);
+        if (translationCacheFile != null) {
+            TranslationCache.getInstance().loadFrom(translationCacheFile);
+        }
+        if (env.isLazyChangeContentEnabled()) {
+            // the changes convert their content on demand instead, including for the hash comparison (see
+            // Change.getAcceptableHashes())
+            Function2<String, Change, String> contentConverter = new Function2<String, Change, String>() {
+                @Override
+                public String value(String content, Change change) {
+                    return convertContent(content, change);
+                }
+            };
+            for (Change change : sourceChanges) {
+                change.setContentConverter(contentConverter);
+            }
+        } else if (env.isParallelSourceReadEnabled() && env.getNumThreads() > 1 && sourceChanges.size() > 1) {
+            this.tokenizeChangesConcurrently(sourceChanges);
+        } else {
+            for (Change change : sourceChanges) {
+                this.tokenizeChange(change, env);
+            }
+        }
+        if (translationCacheFile != null) {
+            TranslationCache.getInstance().saveTo(translationCacheFile);
         }
 
         return sourceChanges;
     }
 
+    /**
+     * Translates the changes using {@link DbEnvironment#getNumThreads()} threads; each change is only modified by the
+     * thread that translates it.
+     */
+    private void tokenizeChangesConcurrently(ImmutableList<Change> sourceChanges) {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(env.getNumThreads(), sourceChanges.size()));
+        try {
+            MutableList<Future<Void>> futures = Lists.mutable.empty();
+            for (final Change change : sourceChanges) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        tokenizeChange(change, env);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     private void tokenizeChange(Change change, DbEnvironment env) {
-        String content = change.getContent();
+        String content = this.convertContent(change.getContent(), change);
         String rollbackContent = change.getRollbackContent();
-        for (PrepareDbChange translator : this.artifactTranslators) {
-            content = translator.prepare(content, change, env);
-        }
         if (rollbackContent != null) {
-            for (PrepareDbChange translator : this.artifactTranslators) {
-                rollbackContent = translator.prepare(rollbackContent, change, env);
-            }
+            rollbackContent = this.convertContent(rollbackContent, change);
         }
 
         change.setConvertedContent(content);
@@ -82,4 +152,11 @@ public class SourceChangeReaderImpl implements SourceChangeReader<DbEnvironment>
             LOG.trace("Content for {} was converted to {}", change.getDisplayString(), content);
         }
     }
+
+    private String convertContent(String content, Change change) {
+        for (PrepareDbChange translator : this.artifactTranslators) {
+            content = translator.prepare(content, change, this.env);
+        }
+        return content;
+    }
 }
@@ -70,7 +70,7 @@ public class TextMarkupDocumentReader {
     }
 
     public TextMarkupDocument parseString(String text, TextMarkupDocumentSection otherSection) {
-        ImmutableList<TextMarkupDocumentSection> textMarkupDocumentSections = this.parseString(text, this.firstLevelElements, true, "////");
+        ImmutableList<TextMarkupDocumentSection> textMarkupDocumentSections = this.parseSections(text);
 
         if (otherSection != null) {
             TextMarkupDocumentSection thisSection = textMarkupDocumentSections.detect(Predicates.attributeEqual(TextMarkupDocumentSection.TO_NAME, otherSection.getName()));
@@ -84,6 +84,14 @@ public class TextMarkupDocumentReader {
         return new TextMarkupDocument(textMarkupDocumentSections);
     }
 
+    /**
+     * Parses the text into its sections. The returned sections may be modified by the caller (i.e. to merge in the
+     * package metadata), so implementations must return new instances on each call.
+     */
+    protected ImmutableList<TextMarkupDocumentSection> parseSections(String text) {
+        return this.parseString(text, this.firstLevelElements, true, "////");
+    }
+
     private ImmutableList<TextMarkupDocumentSection> parseString(String text, ImmutableList<String> elementsToCheck, final boolean recurse,
             final String elementPrefix) {
 
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.gs.obevo.util.VisibleForTesting;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Maps;
+import org.eclipse.collections.impl.tuple.Tuples;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the SQL translations done by the {@link PrepareDbChange} implementations (notably the translation to the
+ * in-memory database dialects), keyed by the hash of the statement and of everything else that the translation
+ * depends on (see {@link #createKey(String...)}).
+ *
+ * The entries are kept in a JVM-wide LRU map (see {@link #getInstance()}) so that the many contexts created within a
+ * test JVM share their translations. The map can also be loaded from and saved to a file in the work directory so that
+ * subsequent JVMs can reuse the translations; the file is discarded if it was written for a different
+ * {@link #CACHE_VERSION}.
+ */
+public class TranslationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(TranslationCache.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final String CACHE_FILE_NAME = "obevo-translation-cache.bin";
+
+    /**
+     * Increment this whenever the format of the cache file changes or when a translator changes its output for the same
+     * input, as the entries saved by the previous code would otherwise still be used.
+     *
+     * Note that we cannot rely on the jar version for this, as it is not available when running from the class files
+     * and would not change across snapshot builds anyway.
+     */
+    private static final int CACHE_VERSION = 2;
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final TranslationCache INSTANCE = new TranslationCache(DEFAULT_MAX_ENTRIES);
+
+    public static TranslationCache getInstance() {
+        return INSTANCE;
+    }
+
+    private final String cacheVersion;
+    private final Map<String, String> entries;
+    /**
+     * The modification count of {@link #entries} when each file was last loaded or saved, so that files are only read
+     * once and only written if there are new entries.
+     */
+    private final MutableMap<File, Integer> fileModCounts = Maps.mutable.empty();
+    private int modCount;
+    private int cacheHits;
+    private int cacheMisses;
+
+    @VisibleForTesting
+    TranslationCache(final int maxEntries) {
+        this.cacheVersion = String.valueOf(CACHE_VERSION);
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache key from the given parts, which must together identify the translation, e.g. the statement,
+     * the target dialect, the translators applied, and any attributes of the change that the translators read.
+     */
+    public static String createKey(String... keyParts) {
+        StringBuilder sb = new StringBuilder();
+        for (String keyPart : keyParts) {
+            // length-prefixing the parts so that different splits of the same text do not produce the same key
+            String part = keyPart != null ? keyPart : "";
+            sb.append(part.length()).append(':').append(part);
+        }
+        return DigestUtils.sha1Hex(sb.toString());
+    }
+
+    /**
+     * Returns the translation for the given key, or null if it is not cached.
+     */
+    public synchronized String get(String key) {
+        String translation = entries.get(key);
+        if (translation != null) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+        return translation;
+    }
+
+    public synchronized void put(String key, String translation) {
+        entries.put(key, translation);
+        modCount++;
+    }
+
+    synchronized int getCacheHits() {
+        return cacheHits;
+    }
+
+    synchronized int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Adds the entries from the given file to this cache, if the file exists and was written by this cache version.
+     * Entries already in this cache take precedence. Each file is only read once.
+     */
+    public synchronized void loadFrom(File cacheFile) {
+        if (fileModCounts.containsKey(cacheFile) || !cacheFile.exists()) {
+            return;
+        }
+        fileModCounts.put(cacheFile, -1);  // marking as read even if the file is unusable, so that we do not retry
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            String fileVersion = in.readUTF();
+            if (!cacheVersion.equals(fileVersion)) {
+                LOG.info("Ignoring the translation cache at {} as it was written for version {}; current version is {}", cacheFile, fileVersion, cacheVersion);
+                return;
+            }
+
+            int numEntries = in.readInt();
+            MutableList<Pair<String, String>> fileEntries = Lists.mutable.empty();
+            for (int i = 0; i < numEntries; i++) {
+                fileEntries.add(Tuples.pair(in.readUTF(), readString(in)));
+            }
+
+            for (Pair<String, String> fileEntry : fileEntries) {
+                if (!entries.containsKey(fileEntry.getOne())) {
+                    entries.put(fileEntry.getOne(), fileEntry.getTwo());
+                }
+            }
+            fileModCounts.put(cacheFile, modCount);
+            LOG.info("Loaded {} entries from the translation cache at {}", numEntries, cacheFile);
+        } catch (IOException e) {
+            LOG.warn("Could not read the translation cache at {}; will translate all statements", cacheFile, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the entries of this cache to the given file if entries were added since the file was last loaded or
+     * saved. Failures are logged rather than thrown, as the cache is only an optimization.
+     */
+    public synchronized void saveTo(File cacheFile) {
+        Integer fileModCount = fileModCounts.get(cacheFile);
+        if (fileModCount != null && fileModCount == modCount) {
+            return;
+        }
+
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            File cacheDir = cacheFile.getAbsoluteFile().getParentFile();
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                throw new IOException("Could not create directory " + cacheDir);
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeUTF(cacheVersion);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.close();
+            out = null;
+
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            fileModCounts.put(cacheFile, modCount);
+            LOG.info("Saved {} entries to the translation cache at {} ({} statements read from the cache, {} translated)", entries.size(), cacheFile, cacheHits, cacheMisses);
+        } catch (IOException e) {
+            LOG.warn("Could not write the translation cache to {}; the next run will translate all statements", cacheFile, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (tempFile.exists() && !tempFile.delete()) {
+                LOG.debug("Could not delete {}", tempFile);
+            }
+        }
+    }
+
+    /**
+     * Strings are written as length-prefixed UTF-8 as {@link DataOutputStream#writeUTF(String)} is limited to 64KB.
+     */
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
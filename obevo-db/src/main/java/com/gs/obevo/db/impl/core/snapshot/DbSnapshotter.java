@@ -0,0 +1,43 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.snapshot;
+
+import java.io.File;
+
+/**
+ * Captures the state of the environment's schemas (objects and data) to a file and restores it later, so that callers
+ * that repeatedly need a freshly deployed database (notably unit tests on in-memory databases) can avoid redeploying.
+ *
+ * Only the schemas of the environment are covered; other schemas in the same database instance are left untouched.
+ */
+public interface DbSnapshotter {
+    /**
+     * Returns true if this platform can snapshot and restore the environment. If false, the other methods should not
+     * be called.
+     */
+    boolean isSnapshotSupported();
+
+    /**
+     * Writes the current state of the environment schemas to the given file, overwriting it if it exists.
+     */
+    void takeSnapshot(File snapshotFile);
+
+    /**
+     * Replaces the current state of the environment schemas with the one written earlier by
+     * {@link #takeSnapshot(File)}.
+     */
+    void restoreSnapshot(File snapshotFile);
+}
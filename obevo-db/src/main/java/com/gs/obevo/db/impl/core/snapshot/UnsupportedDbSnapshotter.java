@@ -0,0 +1,39 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.snapshot;
+
+import java.io.File;
+
+/**
+ * Default implementation for platforms that do not support snapshots; clients are expected to fall back to a regular
+ * clean and deploy.
+ */
+public class UnsupportedDbSnapshotter implements DbSnapshotter {
+    @Override
+    public boolean isSnapshotSupported() {
+        return false;
+    }
+
+    @Override
+    public void takeSnapshot(File snapshotFile) {
+        throw new UnsupportedOperationException("Snapshots are not supported for this platform");
+    }
+
+    @Override
+    public void restoreSnapshot(File snapshotFile) {
+        throw new UnsupportedOperationException("Snapshots are not supported for this platform");
+    }
+}
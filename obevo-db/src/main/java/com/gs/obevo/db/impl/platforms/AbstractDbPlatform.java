@@ -157,6 +157,11 @@ public abstract class AbstractDbPlatform implements DbPlatform {
         return "";
     }
 
+    @Override
+    public int getBulkWriteBatchSize() {
+        return 25;  // some platforms (e.g. Sybase ASE) cannot take a large batch
+    }
+
     @Override
     public ObjectTypeAndNamePredicateBuilder getObjectExclusionPredicateBuilder() {
         return new ObjectTypeAndNamePredicateBuilder(ObjectTypeAndNamePredicateBuilder.FilterType.EXCLUDE);
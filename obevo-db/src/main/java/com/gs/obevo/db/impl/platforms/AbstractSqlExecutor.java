@@ -16,26 +16,65 @@
 package com.gs.obevo.db.impl.platforms;
 
 import java.sql.Connection;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.sql.DataSource;
 
 import com.gs.obevo.api.appdata.PhysicalSchema;
-import com.gs.obevo.api.platform.DeployerRuntimeException;
 import com.gs.obevo.db.api.platform.SqlExecutor;
 import com.gs.obevo.db.impl.core.jdbc.DefaultJdbcHandler;
 import com.gs.obevo.db.impl.core.jdbc.JdbcHandler;
 import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
+import com.gs.obevo.db.impl.core.jdbc.JdbcUpdateListener;
+import com.gs.obevo.db.impl.core.jdbc.PreparedStatementCache;
+import com.gs.obevo.db.impl.core.jdbc.SchemaAwareConnectionManager;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
+import com.gs.obevo.impl.DeployMetricsCollector;
 import com.gs.obevo.impl.ExecuteChangeCommand;
-import org.apache.commons.dbutils.DbUtils;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.procedure.Procedure;
+import org.eclipse.collections.api.block.procedure.Procedure2;
 import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
 
 public abstract class AbstractSqlExecutor implements SqlExecutor {
+    /**
+     * The DAOs and static data deployer reuse only a handful of sqls on each connection, so a small cache suffices.
+     */
+    private static final int STATEMENT_CACHE_SIZE = 20;
+
     private final DataSource ds;
+    private final PreparedStatementCache statementCache = new PreparedStatementCache(STATEMENT_CACHE_SIZE);
+    private final CopyOnWriteArrayList<JdbcUpdateListener> updateListeners = new CopyOnWriteArrayList<JdbcUpdateListener>();
+    private final JdbcUpdateListener compositeUpdateListener = new JdbcUpdateListener() {
+        @Override
+        public void afterUpdate(Connection conn, String sql) {
+            for (JdbcUpdateListener updateListener : updateListeners) {
+                updateListener.afterUpdate(conn, sql);
+            }
+        }
+    };
+    private volatile DeployMetricsCollector deployMetricsCollector;
+    private SchemaAwareConnectionManager connectionManager;
 
     protected AbstractSqlExecutor(DataSource ds) {
         this.ds = ds;
+        this.updateListeners.add(statementCache);
+    }
+
+    /**
+     * Created lazily as {@link #isSchemaTrackingSupported()} may depend on fields of the subclass.
+     */
+    private synchronized SchemaAwareConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            connectionManager = new SchemaAwareConnectionManager(ds, new Procedure2<Connection, PhysicalSchema>() {
+                @Override
+                public void value(Connection conn, PhysicalSchema schema) {
+                    setDataSourceSchema(conn, schema);
+                }
+            }, statementCache, isSchemaTrackingSupported());
+            updateListeners.add(connectionManager);
+        }
+        return connectionManager;
     }
 
     @Override
@@ -50,39 +89,43 @@ public abstract class AbstractSqlExecutor implements SqlExecutor {
      * Overload to facilitate creating the JdbcHelper given any datasource.
      */
     public JdbcHelper createJdbcHelper(DataSource ds) {
-        return new JdbcHelper(this.getJdbcHandler(), this.isParameterTypeEnabled());
+        return new JdbcHelper(this.getJdbcHandler(), this.isParameterTypeEnabled(), compositeUpdateListener, statementCache, deployMetricsCollector);
     }
 
     @Override
-    public void executeWithinContext(PhysicalSchema schema, Procedure<Connection> runnable) {
-        Connection conn = null;
-        try {
-            conn = ds.getConnection();
-            setDataSourceSchema(conn, schema);
-            runnable.value(conn);
-        } catch (DeployerRuntimeException e) {
-            throw e;  // rethrowing DeployerRuntimeException to avoid excessive stack trace outputs
-        } catch (Exception e) {
-            throw new DeployerRuntimeException(e);
-        } finally {
-            DbUtils.closeQuietly(conn);
-        }
+    public void addUpdateListener(JdbcUpdateListener updateListener) {
+        this.updateListeners.add(updateListener);
+    }
+
+    @Override
+    public PhysicalSchema getContextSchema(Connection conn) {
+        return getConnectionManager().getContextSchema(conn);
+    }
+
+    @Override
+    public void setDeployMetricsCollector(DeployMetricsCollector deployMetricsCollector) {
+        this.deployMetricsCollector = deployMetricsCollector;
+    }
+
+    @Override
+    public void executeWithinContext(PhysicalSchema schema, final Procedure<Connection> runnable) {
+        getConnectionManager().executeWithinContext(schema, new ThrowingFunction<Connection, Void>() {
+            @Override
+            public Void safeValueOf(Connection conn) throws Exception {
+                runnable.value(conn);
+                return null;
+            }
+        });
     }
 
     @Override
     public <T> T executeWithinContext(PhysicalSchema schema, ThrowingFunction<Connection, T> callable) {
-        Connection conn = null;
-        try {
-            conn = ds.getConnection();
-            setDataSourceSchema(conn, schema);
-            return callable.safeValueOf(conn);
-        } catch (DeployerRuntimeException e) {
-            throw e;  // rethrowing DeployerRuntimeException to avoid excessive stack trace outputs
-        } catch (Exception e) {
-            throw new DeployerRuntimeException(e);
-        } finally {
-            DbUtils.closeQuietly(conn);
-        }
+        return getConnectionManager().executeWithinContext(schema, callable);
+    }
+
+    @Override
+    public <T> T executeWithPinnedConnection(Function0<T> function) {
+        return getConnectionManager().executeWithPinnedConnection(function);
     }
 
     @Override
@@ -97,6 +140,14 @@ public abstract class AbstractSqlExecutor implements SqlExecutor {
      */
     protected abstract void setDataSourceSchema(Connection conn, PhysicalSchema schema);
 
+    /**
+     * Whether {@link #setDataSourceSchema(Connection, PhysicalSchema)} acts on the given connection, so that the schema
+     * of a pinned connection can be tracked to skip redundant switches; see {@link SchemaAwareConnectionManager}.
+     */
+    protected boolean isSchemaTrackingSupported() {
+        return true;
+    }
+
     protected JdbcHandler getJdbcHandler() {
         return new DefaultJdbcHandler();
     }
@@ -0,0 +1,28 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.platforms.sqltranslator;
+
+/**
+ * Implemented by the translators whose output depends on how the instance was configured, and not only on its class,
+ * so that the configuration can be included in the translation cache key (see InMemoryTranslator).
+ */
+public interface ConfigurableSqlTranslator {
+    /**
+     * Returns a description of the configuration that affects the translation output. This must be the same across
+     * JVMs for the same configuration, as the cache may be saved to a file.
+     */
+    String getTranslationConfigKey();
+}
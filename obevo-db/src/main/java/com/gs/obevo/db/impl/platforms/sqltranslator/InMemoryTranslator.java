@@ -20,10 +20,12 @@ import java.util.List;
 import java.util.Objects;
 
 import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.doc.TextMarkupDocumentSection;
 import com.gs.obevo.api.platform.ChangeType;
 import com.gs.obevo.db.api.appdata.DbEnvironment;
 import com.gs.obevo.db.impl.core.changetypes.StaticDataChangeTypeBehavior;
 import com.gs.obevo.db.impl.core.reader.PrepareDbChange;
+import com.gs.obevo.db.impl.core.reader.TranslationCache;
 import com.gs.obevo.db.impl.core.util.MultiLineStringSplitter;
 import com.gs.obevo.db.impl.platforms.sqltranslator.impl.DefaultSqlTranslatorNameMapper;
 import com.gs.obevo.db.sqlparser.syntaxparser.AlterTableDrop;
@@ -41,6 +43,7 @@ import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.function.Function2;
 import org.eclipse.collections.api.list.ListIterable;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.block.factory.Functions;
 import org.eclipse.collections.impl.factory.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +57,7 @@ public class InMemoryTranslator implements PrepareDbChange {
     private final ListIterable<ColumnSqlTranslator> columnSqlTranslators;
     private final ListIterable<PostColumnSqlTranslator> postColumnSqlTranslators;
     private final ListIterable<PostParsedSqlTranslator> postParsedSqlTranslators;
+    private final TranslationCache translationCache = TranslationCache.getInstance();
 
     public InMemoryTranslator() {
         this.nameMapper = new DefaultSqlTranslatorNameMapper();
@@ -83,16 +87,69 @@ public class InMemoryTranslator implements PrepareDbChange {
         sql = CommentRemover.removeComments(sql, change != null ? change.getChangeKey().toString() : sql);
         MutableList<String> sqls = MultiLineStringSplitter.createSplitterOnSpaceAndLine("GO").valueOf(sql);
 
+        final String translationContextKey = this.getTranslationContextKey(change, env);
         MutableList<String> convertedSqls = sqls.collect(new Function<String, String>() {
             @Override
             public String valueOf(String object) {
-                return InMemoryTranslator.this.translateStatement(object, change);
+                String cacheKey = TranslationCache.createKey(translationContextKey, object);
+                String convertedSql = translationCache.get(cacheKey);
+                if (convertedSql == null) {
+                    convertedSql = InMemoryTranslator.this.translateStatement(object, change);
+                    if (convertedSql != null) {
+                        translationCache.put(cacheKey, convertedSql);
+                    }
+                }
+                return convertedSql;
             }
         });
 
         return convertedSqls.makeString("\n\nGO\n\n");
     }
 
+    /**
+     * Returns the part of the translation cache key that is common to all statements of the change, i.e. everything
+     * other than the statement text that the translation output depends on: the target dialect, the translators
+     * applied, and the change attributes that the translators read.
+     *
+     * The translators are identified by their class names, plus their configuration for those that implement
+     * {@link ConfigurableSqlTranslator}.
+     */
+    private String getTranslationContextKey(Change change, DbEnvironment env) {
+        String dialect = env != null && env.getDbTranslationDialect() != null ? env.getDbTranslationDialect().getClass().getName() : null;
+
+        MutableList<Object> translators = Lists.mutable.<Object>with(this.nameMapper)
+                .withAll(this.preParsedSqlTranslators)
+                .withAll(this.unparsedSqlTranslators)
+                .withAll(this.columnSqlTranslators)
+                .withAll(this.postColumnSqlTranslators)
+                .withAll(this.postParsedSqlTranslators);
+        String translatorChain = translators.collect(new Function<Object, String>() {
+            @Override
+            public String valueOf(Object translator) {
+                String translatorKey = translator.getClass().getName();
+                if (translator instanceof ConfigurableSqlTranslator) {
+                    translatorKey += "[" + ((ConfigurableSqlTranslator) translator).getTranslationConfigKey() + "]";
+                }
+                return translatorKey;
+            }
+        }).makeString(",");
+
+        String changeTypeName = null;
+        String objectName = null;
+        String metadata = null;
+        if (change != null) {
+            changeTypeName = change.getChangeType().getName();
+            objectName = change.getObjectName();
+            TextMarkupDocumentSection metadataSection = change.getMetadataSection();
+            if (metadataSection != null) {
+                metadata = metadataSection.getToggles().toSortedList().makeString(",") + ";"
+                        + metadataSection.getAttrs().keyValuesView().collect(Functions.<Object>getToString()).toSortedList().makeString(",");
+            }
+        }
+
+        return TranslationCache.createKey(dialect, translatorChain, changeTypeName, objectName, metadata);
+    }
+
     protected final String translateStatement(String sql, final Change change) {
         sql = this.preParsedSqlTranslators.injectInto(sql, new Function2<String, PreParsedSqlTranslator, String>() {
             @Override
@@ -23,11 +23,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.db.impl.platforms.sqltranslator.ConfigurableSqlTranslator;
 import com.gs.obevo.db.impl.platforms.sqltranslator.PostParsedSqlTranslator;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.list.ImmutableList;
 
-public class DateFormatterPostParsedSqlTranslator implements PostParsedSqlTranslator {
+public class DateFormatterPostParsedSqlTranslator implements PostParsedSqlTranslator, ConfigurableSqlTranslator {
     private static final ThreadLocal<DateFormat> COMMON_OUTPUT_DATE_FORMAT = new ThreadLocal<DateFormat>() {
         @Override
         protected DateFormat initialValue() {
@@ -37,6 +38,7 @@ public class DateFormatterPostParsedSqlTranslator implements PostParsedSqlTransl
 
     private final Pattern datetimeConstantPattern = Pattern.compile("(?i)default\\s+'([A-Za-z 0-9:\\-/\\.]+)'");
 
+    private final ImmutableList<String> dateFormatStrings;
     private final ImmutableList<ThreadLocal<DateFormat>> dateFormats;
 
     /**
@@ -45,6 +47,7 @@ public class DateFormatterPostParsedSqlTranslator implements PostParsedSqlTransl
      * on this class need to pass).
      */
     public DateFormatterPostParsedSqlTranslator(ImmutableList<String> dateFormatStrings) {
+        this.dateFormatStrings = dateFormatStrings;
         this.dateFormats = dateFormatStrings.collect(new Function<String, ThreadLocal<DateFormat>>() {
             @Override
             public ThreadLocal<DateFormat> valueOf(final String dateFormat) {
@@ -58,6 +61,11 @@ public class DateFormatterPostParsedSqlTranslator implements PostParsedSqlTransl
         });
     }
 
+    @Override
+    public String getTranslationConfigKey() {
+        return this.dateFormatStrings.makeString("|");
+    }
+
     @Override
     public String handleAnySqlPostTranslation(String string, Change change) {
         Matcher matcher = this.datetimeConstantPattern.matcher(string);
@@ -200,6 +200,11 @@ public class DbEnvironmentXmlEnricherTest1DbPlatform implements DbPlatform {
         return null;
     }
 
+    @Override
+    public int getBulkWriteBatchSize() {
+        return 0;
+    }
+
     @Override
     public Long getLongValue(Object obj) {
         return null;
@@ -20,6 +20,7 @@ import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Map;
 
+import com.gs.obevo.api.appdata.Change;
 import com.gs.obevo.api.appdata.DeployExecution;
 import com.gs.obevo.api.appdata.PhysicalSchema;
 import com.gs.obevo.api.platform.ChangeAuditDao;
@@ -32,7 +33,9 @@ import org.apache.commons.dbutils.DbUtils;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.function.primitive.IntToObjectFunction;
 import org.eclipse.collections.api.collection.ImmutableCollection;
+import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.impl.block.factory.Predicates;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -41,7 +44,9 @@ import org.junit.Test;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests around the {@link ChangeAuditDao} class and verifying that we can upgrade successfully between versions.
@@ -105,6 +110,51 @@ public abstract class SameSchemaChangeAuditDaoTest {
         artifactDeployerDao.init();
     }
 
+    @Test
+    public void testDeployedChangesLoadRollbackContentLazily() {
+        updateAndIgnoreError("DROP TABLE " + getTestPhysicalSchema() + "ARTIFACTDEPLOYMENT");
+        updateAndIgnoreError("DROP TABLE " + getTestPhysicalSchema() + "ARTIFACTEXECUTION");
+        updateAndIgnoreError("DROP TABLE " + getTestPhysicalSchema() + "ARTIFACTEXECUTIONATTR");
+
+        deployExecutionDao.init();
+        artifactDeployerDao.init();
+        jdbcHelper.update(conn, "DELETE FROM " + getTestPhysicalSchema() + "ARTIFACTDEPLOYMENT");
+
+        String insertSql = "INSERT INTO " + getTestPhysicalSchema() + "ARTIFACTDEPLOYMENT (ARTFTYPE, ARTIFACTPATH, OBJECTNAME, ACTIVE, " + CHANGETYPE_COL + ", CONTENTHASH, DBSCHEMA, ROLLBACKCONTENT, TIME_INSERTED, TIME_UPDATED)" +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        Timestamp now = new Timestamp(new Date().getTime());
+        jdbcHelper.update(conn, insertSql, "I", "chng1", "OBJ1", 1, "TABLE", "hash1", logicalSchema1, "DROP TABLE OBJ1", now, now);
+        jdbcHelper.update(conn, insertSql, "I", "chng2", "OBJ1", 1, "TABLE", "hash2", logicalSchema1, "", now, now);
+        jdbcHelper.update(conn, insertSql, "R", "n/a", "VIEW1", 0, "VIEW", "hash3", logicalSchema1, "", now, now);
+
+        ImmutableList<Change> changes = artifactDeployerDao.getDeployedChanges()
+                .select(Predicates.attributeEqual(Change.TO_SCHEMA, logicalSchema1));
+        assertThat(changes.toList(), hasSize(3));
+
+        Change chng1 = findChange(changes, "OBJ1", "chng1");
+        assertEquals("OBJ1", chng1.getObjectName());
+        assertEquals("hash1", chng1.getContentHash());
+        assertTrue(chng1.isActive());
+        assertEquals("DROP TABLE OBJ1", chng1.getRollbackContent());
+
+        Change chng2 = findChange(changes, "OBJ1", "chng2");
+        assertEquals("", chng2.getRollbackContent());
+
+        Change view = findChange(changes, "VIEW1", "n/a");
+        assertEquals("VIEW", view.getChangeType().getName());
+        assertFalse(view.isActive());
+        assertEquals("", view.getRollbackContent());
+    }
+
+    private Change findChange(ImmutableList<Change> changes, String objectName, String changeName) {
+        for (Change change : changes) {
+            if (change.getObjectName().equals(objectName) && change.getChangeName().equals(changeName)) {
+                return change;
+            }
+        }
+        throw new AssertionError("Change not found: " + objectName + "." + changeName);
+    }
+
     private void updateAndIgnoreError(String sql) {
         try {
             jdbcHelper.update(conn, sql);
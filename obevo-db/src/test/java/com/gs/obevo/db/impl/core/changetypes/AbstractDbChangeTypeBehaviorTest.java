@@ -15,10 +15,110 @@
  */
 package com.gs.obevo.db.impl.core.changetypes;
 
+import java.sql.Connection;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.DeployExecution;
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.api.platform.ChangeAuditDao;
+import com.gs.obevo.api.platform.ChangeTypeCommandCalculator;
+import com.gs.obevo.db.api.appdata.DbEnvironment;
+import com.gs.obevo.db.api.appdata.Grant;
+import com.gs.obevo.db.api.appdata.GrantTargetType;
+import com.gs.obevo.db.api.appdata.Permission;
+import com.gs.obevo.db.api.platform.DbChangeType;
+import com.gs.obevo.db.api.platform.DbPlatform;
+import com.gs.obevo.db.api.platform.SqlExecutor;
+import com.gs.obevo.db.impl.core.jdbc.DataAccessException;
+import com.gs.obevo.db.impl.core.jdbc.JdbcHelper;
+import com.gs.obevo.db.impl.core.reader.PrepareDbChange;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.Multimaps;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 /**
  * Test methods in DbChangeIncrementalCommand.
  */
 public class AbstractDbChangeTypeBehaviorTest {
+    private static final String SELECT_GRANT = "GRANT SELECT ON   SCH.TAB_A TO GROUP grp1";
+    private static final String INSERT_GRANT = "GRANT INSERT ON   SCH.TAB_A TO GROUP grp1";
+
+    private final Connection conn = mock(Connection.class);
+    private final PhysicalSchema schema = new PhysicalSchema("SCH");
+    private final ImmutableList<Permission> permissions = Lists.immutable.with(new Permission("scheme",
+            Lists.immutable.with(new Grant(Lists.immutable.with("SELECT", "INSERT"), Multimaps.immutable.list.with(GrantTargetType.GROUP, "grp1")))));
+    private JdbcHelper jdbc;
+    private AbstractDbChangeTypeBehavior changeTypeBehavior;
+
+    @Before
+    public void setup() {
+        DbPlatform platform = mock(DbPlatform.class);
+        when(platform.getSubschemaPrefix(schema)).thenReturn("SCH.");
+        when(platform.getGrantTargetTypeStr(GrantTargetType.GROUP, "grp1")).thenReturn("GROUP");
+        DbEnvironment env = new DbEnvironment();
+        env.setPlatform(platform);
+
+        DbChangeType dbChangeType = mock(DbChangeType.class);
+        when(dbChangeType.getGrantObjectQualifier()).thenReturn("");
+
+        jdbc = mock(JdbcHelper.class);
+        SqlExecutor sqlExecutor = mock(SqlExecutor.class);
+        when(sqlExecutor.getJdbcTemplate()).thenReturn(jdbc);
+
+        changeTypeBehavior = new AbstractDbChangeTypeBehavior(env, dbChangeType, sqlExecutor, null, new GrantChangeParser(env, Lists.immutable.<PrepareDbChange>empty())) {
+            @Override
+            protected boolean shouldApplyGrants(Change artifact) {
+                return true;
+            }
+
+            @Override
+            public void undeploy(Change change) {
+            }
+
+            @Override
+            public void manage(Change change, ChangeAuditDao changeAuditDao, DeployExecution deployExecution) {
+            }
+
+            @Override
+            public ChangeTypeCommandCalculator getChangeTypeCalculator() {
+                return null;
+            }
+
+            @Override
+            public String getDefinitionFromEnvironment(Change exampleChange) {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void testGrantsAppliedAsBatch() {
+        changeTypeBehavior.applyGrants(conn, schema, "TAB_A", permissions);
+
+        verify(jdbc).batchExecute(conn, Lists.immutable.with(SELECT_GRANT, INSERT_GRANT));
+        verify(jdbc, never()).update(any(Connection.class), any(String.class));
+    }
+
+    @Test
+    public void testFailedBatchFallsBackToIndividualGrants() {
+        when(jdbc.batchExecute(conn, Lists.immutable.with(SELECT_GRANT, INSERT_GRANT))).thenThrow(new DataAccessException("batch failed"));
+        doThrow(new DataAccessException("grant failed")).when(jdbc).update(conn, SELECT_GRANT);
+
+        changeTypeBehavior.applyGrants(conn, schema, "TAB_A", permissions);
+
+        // a failing grant does not prevent the subsequent ones from being applied
+        verify(jdbc).update(conn, SELECT_GRANT);
+        verify(jdbc).update(conn, INSERT_GRANT);
+    }
     
 /*  TODO put this back
     @Test
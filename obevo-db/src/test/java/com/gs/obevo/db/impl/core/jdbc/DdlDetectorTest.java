@@ -0,0 +1,33 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.jdbc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DdlDetectorTest {
+    @Test
+    public void testIsDdl() {
+        assertTrue(DdlDetector.isDdl("create table A (id int)"));
+        assertTrue(DdlDetector.isDdl("/* header */ ALTER TABLE A ADD B INT"));
+        assertTrue(DdlDetector.isDdl("sp_bindrule 'rule1', 'A.B'"));
+        assertFalse(DdlDetector.isDdl("  update A set B = 1"));
+        assertFalse(DdlDetector.isDdl("SET SCHEMA MYSCHEMA"));
+        assertFalse(DdlDetector.isDdl("-- only a comment"));
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.jdbc;
+
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PreparedStatementCacheTest {
+    private static final String SQL_A = "INSERT INTO TAB_A (ID) VALUES (?)";
+    private static final String SQL_B = "INSERT INTO TAB_B (ID) VALUES (?)";
+    private static final String SQL_C = "INSERT INTO TAB_C (ID) VALUES (?)";
+
+    private Connection conn;
+    private PreparedStatement psA;
+    private PreparedStatement psB;
+    private PreparedStatement psC;
+
+    @Before
+    public void setup() throws Exception {
+        conn = mock(Connection.class);
+        psA = mock(PreparedStatement.class);
+        psB = mock(PreparedStatement.class);
+        psC = mock(PreparedStatement.class);
+        when(conn.prepareStatement(SQL_A)).thenReturn(psA);
+        when(conn.prepareStatement(SQL_B)).thenReturn(psB);
+        when(conn.prepareStatement(SQL_C)).thenReturn(psC);
+    }
+
+    @Test
+    public void testUnregisteredConnectionIsNotCached() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(5);
+
+        PreparedStatement ps = cache.prepareStatement(conn, SQL_A);
+        cache.closeStatement(conn, SQL_A, ps);
+        cache.prepareStatement(conn, SQL_A);
+
+        verify(conn, times(2)).prepareStatement(SQL_A);
+        verify(psA).close();
+    }
+
+    @Test
+    public void testRegisteredConnectionReusesStatements() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(5);
+        assertTrue(cache.register(conn));
+        assertFalse("registering again should leave the release to the first registrant", cache.register(conn));
+
+        PreparedStatement ps1 = cache.prepareStatement(conn, SQL_A);
+        cache.closeStatement(conn, SQL_A, ps1);
+        PreparedStatement ps2 = cache.prepareStatement(conn, SQL_A);
+        cache.closeStatement(conn, SQL_A, ps2);
+
+        assertSame(ps1, ps2);
+        verify(conn, times(1)).prepareStatement(SQL_A);
+        verify(psA, never()).close();
+
+        cache.release(conn);
+        verify(psA).close();
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(0);
+        assertFalse(cache.register(conn));
+
+        cache.prepareStatement(conn, SQL_A);
+        cache.prepareStatement(conn, SQL_A);
+        verify(conn, times(2)).prepareStatement(SQL_A);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedStatementIsEvicted() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(2);
+        cache.register(conn);
+
+        cache.prepareStatement(conn, SQL_A);
+        cache.prepareStatement(conn, SQL_B);
+        cache.prepareStatement(conn, SQL_A);
+        cache.prepareStatement(conn, SQL_C);  // B is the least recently used
+
+        verify(psB).close();
+        verify(psA, never()).close();
+
+        cache.prepareStatement(conn, SQL_A);
+        verify(conn, times(1)).prepareStatement(SQL_A);
+        cache.prepareStatement(conn, SQL_B);
+        verify(conn, times(2)).prepareStatement(SQL_B);
+    }
+
+    @Test
+    public void testEvictedAndClosedStatementsArePreparedAgain() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(5);
+        cache.register(conn);
+
+        PreparedStatement ps = cache.prepareStatement(conn, SQL_A);
+        cache.evictStatement(conn, SQL_A, ps);
+        verify(psA).close();
+        cache.prepareStatement(conn, SQL_A);
+        verify(conn, times(2)).prepareStatement(SQL_A);
+
+        when(psA.isClosed()).thenReturn(true);
+        cache.prepareStatement(conn, SQL_A);
+        verify(conn, times(3)).prepareStatement(SQL_A);
+    }
+
+    @Test
+    public void testDdlClearsTheStatements() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(5);
+        cache.register(conn);
+        cache.prepareStatement(conn, SQL_A);
+
+        cache.afterUpdate(conn, "INSERT INTO TAB_A (ID) VALUES (1)");
+        verify(psA, never()).close();
+
+        cache.afterUpdate(conn, "ALTER TABLE TAB_A ADD COLUMN ID2 INT");
+        verify(psA).close();
+        cache.prepareStatement(conn, SQL_A);
+        verify(conn, times(2)).prepareStatement(SQL_A);
+    }
+
+    @Test
+    public void testParameterTypesAreCachedPerSql() throws Exception {
+        ParameterMetaData metaData = mock(ParameterMetaData.class);
+        when(metaData.getParameterType(1)).thenReturn(Types.INTEGER);
+        when(psA.getParameterMetaData()).thenReturn(metaData);
+
+        PreparedStatementCache cache = new PreparedStatementCache(5);
+        assertEquals(Types.INTEGER, cache.getParameterType(SQL_A, psA, 1, 1));
+        assertEquals(Types.INTEGER, cache.getParameterType(SQL_A, psA, 1, 1));
+        verify(psA, times(1)).getParameterMetaData();
+    }
+
+    @Test
+    public void testJdbcHelperReusesStatementsForRegisteredConnection() throws Exception {
+        ParameterMetaData metaData = mock(ParameterMetaData.class);
+        when(metaData.getParameterType(1)).thenReturn(Types.INTEGER);
+        when(psA.getParameterMetaData()).thenReturn(metaData);
+
+        PreparedStatementCache cache = new PreparedStatementCache(5);
+        JdbcHelper jdbc = new JdbcHelper(null, true, null, cache);
+        cache.register(conn);
+
+        jdbc.update(conn, SQL_A, 1);
+        jdbc.update(conn, SQL_A, new Object[] { null });
+        jdbc.batchUpdate(conn, SQL_A, new Object[][] { { 2 }, { null } });
+
+        verify(conn, times(1)).prepareStatement(SQL_A);
+        verify(psA, times(1)).getParameterMetaData();
+        verify(psA, times(2)).setNull(1, Types.INTEGER);
+        verify(psA, never()).close();
+
+        // a new helper with the same cache shares the statements, as the executors create a helper per call
+        new JdbcHelper(null, true, null, cache).update(conn, SQL_A, 3);
+        verify(conn, times(1)).prepareStatement(SQL_A);
+    }
+}
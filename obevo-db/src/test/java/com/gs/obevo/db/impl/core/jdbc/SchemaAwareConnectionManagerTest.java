@@ -0,0 +1,279 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.api.platform.DeployerRuntimeException;
+import org.eclipse.collections.api.block.function.Function0;
+import org.eclipse.collections.api.block.procedure.Procedure2;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.block.function.checked.ThrowingFunction;
+import org.eclipse.collections.impl.factory.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchemaAwareConnectionManagerTest {
+    private static final PhysicalSchema SCHEMA_A = new PhysicalSchema("SCHEMA_A");
+    private static final PhysicalSchema SCHEMA_B = new PhysicalSchema("SCHEMA_B");
+
+    private DataSource ds;
+    private Connection conn1;
+    private Connection conn2;
+    private final MutableList<String> schemaSwitches = Lists.mutable.empty();
+    private final Procedure2<Connection, PhysicalSchema> schemaSetter = new Procedure2<Connection, PhysicalSchema>() {
+        @Override
+        public void value(Connection conn, PhysicalSchema schema) {
+            schemaSwitches.add((conn == conn1 ? "conn1:" : "conn2:") + schema.getPhysicalName());
+        }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        ds = mock(DataSource.class);
+        conn1 = mock(Connection.class);
+        conn2 = mock(Connection.class);
+    }
+
+    @Test
+    public void testSwitchIsSkippedWhenPinnedConnectionIsOnSchema() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), true);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                manager.executeWithinContext(SCHEMA_B, noOp());
+                manager.executeWithinContext(SCHEMA_B, noOp());
+                return null;
+            }
+        });
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn1:SCHEMA_B"), schemaSwitches);
+        verify(conn1, times(1)).close();
+    }
+
+    /**
+     * Once returned to the pool, a connection may be borrowed by other code that switches its schema, e.g. the
+     * metadata reads or a "use db" statement on Sybase ASE and SQL Server; hence, the unpinned calls always switch.
+     */
+    @Test
+    public void testUnpinnedCallsAlwaysSwitchSchema() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1);
+        SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), true);
+
+        manager.executeWithinContext(SCHEMA_A, noOp());
+        readMetadataOnOtherSchema();
+        manager.executeWithinContext(SCHEMA_A, noOp());
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn1:SCHEMA_B", "conn1:SCHEMA_A"), schemaSwitches);
+        verify(conn1, times(3)).close();
+    }
+
+    /**
+     * The metadata read between the two deploy statements cannot get the pinned connection from the pool, so the
+     * pinned connection stays on its schema.
+     */
+    @Test
+    public void testMetadataReadBetweenPinnedCalls() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1, conn2);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), true);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                readMetadataOnOtherSchema();
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                return null;
+            }
+        });
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn2:SCHEMA_B"), schemaSwitches);
+        verify(conn1, times(1)).close();
+        verify(conn2, times(1)).close();
+    }
+
+    @Test
+    public void testSchemaSwitchStatementClearsTrackedSchema() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), true);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                manager.afterUpdate(conn1, "insert into ARTIFACTEXECUTION values (?, ?)");
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                manager.afterUpdate(conn1, "/* switching */ USE otherdb");
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                return null;
+            }
+        });
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn1:SCHEMA_A"), schemaSwitches);
+    }
+
+    @Test
+    public void testFailureClearsTrackedSchema() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), true);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                try {
+                    manager.executeWithinContext(SCHEMA_A, new ThrowingFunction<Connection, Void>() {
+                        @Override
+                        public Void safeValueOf(Connection conn) throws Exception {
+                            throw new IllegalStateException("failed");
+                        }
+                    });
+                    fail("expecting an exception");
+                } catch (DeployerRuntimeException expected) {
+                }
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                return null;
+            }
+        });
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn1:SCHEMA_A"), schemaSwitches);
+    }
+
+    @Test
+    public void testPinnedConnectionIsReused() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1, conn2);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), true);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                manager.executeWithinContext(SCHEMA_B, noOp());
+                manager.executeWithinContext(SCHEMA_B, new ThrowingFunction<Connection, Void>() {
+                    @Override
+                    public Void safeValueOf(Connection conn) throws Exception {
+                        assertSame(conn1, conn);
+                        // the pinned connection is in use on another schema, so a separate one is needed
+                        manager.executeWithinContext(SCHEMA_A, new ThrowingFunction<Connection, Void>() {
+                            @Override
+                            public Void safeValueOf(Connection innerConn) throws Exception {
+                                assertSame(conn2, innerConn);
+                                return null;
+                            }
+                        });
+                        return null;
+                    }
+                });
+                return null;
+            }
+        });
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn1:SCHEMA_B", "conn2:SCHEMA_A"), schemaSwitches);
+        verify(conn1, times(1)).close();
+        verify(conn2, times(1)).close();
+    }
+
+    @Test
+    public void testStatementsAreCachedForThePinnedConnection() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1);
+        final PreparedStatement ps = mock(PreparedStatement.class);
+        PreparedStatement otherPs = mock(PreparedStatement.class);
+        when(conn1.prepareStatement("select 1")).thenReturn(ps, otherPs);
+        final PreparedStatementCache statementCache = new PreparedStatementCache(5);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, statementCache, true);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                for (int i = 0; i < 2; i++) {
+                    manager.executeWithinContext(SCHEMA_A, new ThrowingFunction<Connection, Void>() {
+                        @Override
+                        public Void safeValueOf(Connection conn) throws Exception {
+                            assertSame(ps, statementCache.prepareStatement(conn, "select 1"));
+                            return null;
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+
+        verify(conn1, times(1)).prepareStatement("select 1");
+        verify(ps).close();  // closed once the pinned connection is released
+    }
+
+    @Test
+    public void testTrackingDisabled() throws Exception {
+        when(ds.getConnection()).thenReturn(conn1);
+        final SchemaAwareConnectionManager manager = new SchemaAwareConnectionManager(ds, schemaSetter, new PreparedStatementCache(5), false);
+
+        manager.executeWithPinnedConnection(new Function0<Void>() {
+            @Override
+            public Void value() {
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                manager.executeWithinContext(SCHEMA_A, noOp());
+                return null;
+            }
+        });
+
+        assertEquals(Lists.mutable.with("conn1:SCHEMA_A", "conn1:SCHEMA_A"), schemaSwitches);
+        verify(conn1, times(2)).close();
+        verify(conn2, never()).close();
+    }
+
+    /**
+     * Borrows a connection and switches its schema directly, as DbMetadataManagerImpl does for its reads.
+     */
+    private void readMetadataOnOtherSchema() {
+        try {
+            Connection conn = ds.getConnection();
+            try {
+                schemaSetter.value(conn, SCHEMA_B);
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ThrowingFunction<Connection, Void> noOp() {
+        return new ThrowingFunction<Connection, Void>() {
+            @Override
+            public Void safeValueOf(Connection conn) throws Exception {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.metadata;
+
+import java.sql.Connection;
+
+import com.gs.obevo.api.appdata.PhysicalSchema;
+import com.gs.obevo.dbmetadata.api.DaCatalog;
+import com.gs.obevo.dbmetadata.api.DaSchemaInfoLevel;
+import com.gs.obevo.dbmetadata.api.DaTable;
+import com.gs.obevo.dbmetadata.api.DbMetadataManager;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.impl.factory.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingDbMetadataManagerTest {
+    private final PhysicalSchema schema = new PhysicalSchema("MYSCHEMA");
+
+    private DbMetadataManager delegate;
+    private CachingDbMetadataManager cache;
+    private DaTable tableA;
+    private DaTable tableB;
+
+    @Before
+    public void setup() {
+        delegate = mock(DbMetadataManager.class);
+        cache = new CachingDbMetadataManager(delegate, 2);
+
+        tableA = table("TABLE_A");
+        tableB = table("TABLE_B");
+        DaCatalog catalog = mock(DaCatalog.class);
+        when(catalog.getTables()).thenReturn(Lists.immutable.with(tableA, tableB));
+        when(delegate.getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean())).thenReturn(catalog);
+    }
+
+    @Test
+    public void testTableLookupsShareOneCrawl() {
+        assertSame(tableA, cache.getTableInfo(schema, "TABLE_A", new DaSchemaInfoLevel().setRetrieveTables(true)));
+        assertSame(tableB, cache.getTableInfo(schema, "TABLE_B", new DaSchemaInfoLevel().setRetrieveTables(true)));
+        assertNull(cache.getTableInfo(schema, "TABLE_C", new DaSchemaInfoLevel().setRetrieveTables(true)));
+
+        verify(delegate, times(1)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void testWiderLevelTriggersRecrawl() {
+        cache.getTableInfo(schema, "TABLE_A", new DaSchemaInfoLevel().setRetrieveTables(true));
+        cache.getTableInfo(schema, "TABLE_A", new DaSchemaInfoLevel().setRetrieveTableColumns(true));
+        // the narrower level is now covered by the wider crawl
+        cache.getTableInfo(schema, "TABLE_B", new DaSchemaInfoLevel().setRetrieveTables(true));
+
+        verify(delegate, times(2)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void testDdlInvalidatesCache() {
+        cache.getDatabase(schema, new DaSchemaInfoLevel().setRetrieveTables(true), true, false);
+        cache.afterUpdate(null, "INSERT INTO TABLE_A VALUES (1)");
+        cache.getDatabase(schema, new DaSchemaInfoLevel().setRetrieveTables(true), true, false);
+        verify(delegate, times(1)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+
+        cache.afterUpdate(null, "-- comment\nCREATE TABLE TABLE_C (C_ID INT)");
+        cache.getDatabase(schema, new DaSchemaInfoLevel().setRetrieveTables(true), true, false);
+        verify(delegate, times(2)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+
+        // once DDL is executed, single-table misses go directly to the underlying manager
+        cache.afterUpdate(null, "DROP TABLE TABLE_C");
+        cache.getTableInfo(schema, "TABLE_A", new DaSchemaInfoLevel().setRetrieveTables(true));
+        verify(delegate, times(1)).getTableInfo(eq(schema), eq("TABLE_A"), any(DaSchemaInfoLevel.class));
+        verify(delegate, times(2)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void testSearchFlagsAreCachedSeparately() {
+        DaSchemaInfoLevel level = new DaSchemaInfoLevel().setRetrieveTables(true).setRetrieveRoutines(true);
+        cache.getDatabase(schema, level, true, false);
+        cache.getDatabase(schema, level, true, true);
+        cache.getDatabase(schema, level, true, true);
+
+        verify(delegate, times(1)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), eq(true), eq(false));
+        verify(delegate, times(1)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), eq(true), eq(true));
+
+        // the table lookups can use either catalog
+        assertSame(tableA, cache.getTableInfo(schema, "TABLE_A", new DaSchemaInfoLevel().setRetrieveTables(true)));
+        verify(delegate, times(2)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void testDdlOnlyInvalidatesTargetSchema() {
+        final PhysicalSchema otherSchema = new PhysicalSchema("OTHERSCHEMA");
+        final PhysicalSchema thirdSchema = new PhysicalSchema("THIRDSCHEMA");
+        DaCatalog otherCatalog = mock(DaCatalog.class);
+        when(otherCatalog.getTables()).thenReturn(Lists.immutable.<DaTable>empty());
+        when(delegate.getDatabase(eq(otherSchema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean())).thenReturn(otherCatalog);
+        when(delegate.getDatabase(eq(thirdSchema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean())).thenReturn(otherCatalog);
+
+        final Connection conn = mock(Connection.class);
+        cache = new CachingDbMetadataManager(delegate, 2, new Function<Connection, PhysicalSchema>() {
+            @Override
+            public PhysicalSchema valueOf(Connection object) {
+                return object == conn ? schema : null;
+            }
+        });
+
+        DaSchemaInfoLevel level = new DaSchemaInfoLevel().setRetrieveTables(true);
+        cache.getDatabase(schema, level, true, false);
+        cache.getDatabase(otherSchema, level, true, false);
+        cache.getDatabase(thirdSchema, level, true, false);
+
+        // DDL on MYSCHEMA that also refers to THIRDSCHEMA; OTHERSCHEMA stays cached
+        cache.afterUpdate(conn, "CREATE VIEW V1 AS SELECT * FROM thirdschema.TABLE_X");
+        cache.getDatabase(schema, level, true, false);
+        cache.getDatabase(otherSchema, level, true, false);
+        cache.getDatabase(thirdSchema, level, true, false);
+
+        verify(delegate, times(2)).getDatabase(eq(schema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+        verify(delegate, times(1)).getDatabase(eq(otherSchema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+        verify(delegate, times(2)).getDatabase(eq(thirdSchema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+
+        // DDL on a connection whose schema is not known invalidates everything
+        cache.afterUpdate(mock(Connection.class), "DROP TABLE TABLE_X");
+        cache.getDatabase(otherSchema, level, true, false);
+        verify(delegate, times(2)).getDatabase(eq(otherSchema), any(DaSchemaInfoLevel.class), anyBoolean(), anyBoolean());
+    }
+
+    private DaTable table(String name) {
+        DaTable table = mock(DaTable.class);
+        when(table.getName()).thenReturn(name);
+        return table;
+    }
+}
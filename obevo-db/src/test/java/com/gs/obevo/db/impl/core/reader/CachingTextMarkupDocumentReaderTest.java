@@ -0,0 +1,134 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.reader;
+
+import java.io.File;
+
+import com.gs.obevo.api.appdata.doc.TextMarkupDocument;
+import com.gs.obevo.api.appdata.doc.TextMarkupDocumentSection;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.impl.factory.Maps;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CachingTextMarkupDocumentReaderTest {
+    private static final String TEXT1 = "//// METADATA k1=v1 toggle1\n" +
+            "//// CHANGE name=chng1\n" +
+            "create table mytable (a int)\n" +
+            "// ROLLBACK-IF-ALREADY-DEPLOYED\n" +
+            "drop table mytable\n" +
+            "GO\n" +
+            "//// CHANGE name=chng2 comment=\"some comment\" INACTIVE\n" +
+            "alter table mytable add b varchar(10)  -- with unicode: 禅\n";
+    private static final String TEXT2 = "create view myview as select * from mytable\n";
+
+    private final File cacheDir = new File("./target/CachingTextMarkupDocumentReaderTest");
+    private final File cacheFile = new File(cacheDir, CachingTextMarkupDocumentReader.CACHE_FILE_NAME);
+
+    @Before
+    public void setup() {
+        FileUtils.deleteQuietly(cacheDir);
+    }
+
+    @Test
+    public void testCachedDocumentMatchesParsedDocument() {
+        CachingTextMarkupDocumentReader reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        reader.parseString(TEXT1, null);
+        reader.parseString(TEXT2, null);
+        reader.saveCache();
+        assertEquals(0, reader.getCacheHits());
+        assertEquals(2, reader.getCacheMisses());
+
+        CachingTextMarkupDocumentReader nextReader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        TextMarkupDocumentReader uncachedReader = new TextMarkupDocumentReader(false);
+        assertDocumentEquals(uncachedReader.parseString(TEXT1, null), nextReader.parseString(TEXT1, null));
+        assertDocumentEquals(uncachedReader.parseString(TEXT2, null), nextReader.parseString(TEXT2, null));
+        assertEquals(2, nextReader.getCacheHits());
+        assertEquals(0, nextReader.getCacheMisses());
+    }
+
+    @Test
+    public void testCachedSectionsAreNotShared() {
+        CachingTextMarkupDocumentReader reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        TextMarkupDocumentSection packageMetadata = new TextMarkupDocumentSection(TextMarkupDocumentReader.TAG_METADATA, null, Maps.immutable.of("k2", "v2"));
+
+        TextMarkupDocument doc1 = reader.parseString(TEXT1, packageMetadata);
+        assertEquals("v2", doc1.findSectionWithElementName(TextMarkupDocumentReader.TAG_METADATA).getAttr("k2"));
+
+        TextMarkupDocument doc2 = reader.parseString(TEXT1, null);
+        assertEquals(1, reader.getCacheHits());
+        assertFalse(doc2.findSectionWithElementName(TextMarkupDocumentReader.TAG_METADATA).getAttrs().containsKey("k2"));
+    }
+
+    @Test
+    public void testOnlyUsedEntriesAreSaved() {
+        CachingTextMarkupDocumentReader reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        reader.parseString(TEXT1, null);
+        reader.saveCache();
+
+        reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        reader.parseString(TEXT2, null);
+        reader.saveCache();
+
+        reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        reader.parseString(TEXT1, null);
+        reader.parseString(TEXT2, null);
+        assertEquals(1, reader.getCacheHits());
+        assertEquals(1, reader.getCacheMisses());
+    }
+
+    @Test
+    public void testCacheIgnoredForDifferentMode() {
+        CachingTextMarkupDocumentReader reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        reader.parseString(TEXT1, null);
+        reader.saveCache();
+
+        reader = new CachingTextMarkupDocumentReader(true, cacheFile);
+        reader.parseString(TEXT1, null);
+        assertEquals(0, reader.getCacheHits());
+        assertEquals(1, reader.getCacheMisses());
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws Exception {
+        FileUtils.writeStringToFile(cacheFile, "not a cache file");
+
+        CachingTextMarkupDocumentReader reader = new CachingTextMarkupDocumentReader(false, cacheFile);
+        assertDocumentEquals(new TextMarkupDocumentReader(false).parseString(TEXT1, null), reader.parseString(TEXT1, null));
+        assertEquals(1, reader.getCacheMisses());
+    }
+
+    private void assertDocumentEquals(TextMarkupDocument expected, TextMarkupDocument actual) {
+        assertSectionsEquals(expected.getSections(), actual.getSections());
+    }
+
+    private void assertSectionsEquals(ImmutableList<TextMarkupDocumentSection> expected, ImmutableList<TextMarkupDocumentSection> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            TextMarkupDocumentSection expectedSection = expected.get(i);
+            TextMarkupDocumentSection actualSection = actual.get(i);
+            assertEquals(expectedSection.getName(), actualSection.getName());
+            assertEquals(expectedSection.getContent(), actualSection.getContent());
+            assertEquals(expectedSection.getAttrs(), actualSection.getAttrs());
+            assertEquals(expectedSection.getToggles(), actualSection.getToggles());
+            assertSectionsEquals(expectedSection.getSubsections(), actualSection.getSubsections());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.db.impl.core.reader;
+
+import java.io.File;
+
+import com.gs.obevo.db.impl.platforms.sqltranslator.InMemoryTranslator;
+import com.gs.obevo.db.impl.platforms.sqltranslator.SqlTranslatorConfigHelper;
+import com.gs.obevo.db.impl.platforms.sqltranslator.impl.DateFormatterPostParsedSqlTranslator;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.collections.impl.factory.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TranslationCacheTest {
+    private final File cacheDir = new File("./target/TranslationCacheTest");
+    private final File cacheFile = new File(cacheDir, TranslationCache.CACHE_FILE_NAME);
+
+    @Before
+    public void setup() {
+        FileUtils.deleteQuietly(cacheDir);
+    }
+
+    @Test
+    public void testKeyDependsOnAllParts() {
+        assertEquals(TranslationCache.createKey("a", "bc"), TranslationCache.createKey("a", "bc"));
+        assertFalse(TranslationCache.createKey("a", "bc").equals(TranslationCache.createKey("ab", "c")));
+        assertFalse(TranslationCache.createKey("a", null).equals(TranslationCache.createKey("a", "b")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        TranslationCache cache = new TranslationCache(2);
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        assertEquals("v1", cache.get("k1"));  // k2 is now the least recently used
+        cache.put("k3", "v3");
+
+        assertEquals("v1", cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertEquals("v3", cache.get("k3"));
+        assertEquals(3, cache.getCacheHits());
+        assertEquals(1, cache.getCacheMisses());
+    }
+
+    @Test
+    public void testSavedEntriesAreLoaded() {
+        TranslationCache cache = new TranslationCache(10);
+        cache.put("k1", "create table a (b int)  -- with unicode: 禅");
+        cache.put("k2", "v2");
+        cache.saveTo(cacheFile);
+
+        TranslationCache nextCache = new TranslationCache(10);
+        nextCache.put("k2", "newer");
+        nextCache.loadFrom(cacheFile);
+        assertEquals("create table a (b int)  -- with unicode: 禅", nextCache.get("k1"));
+        assertEquals("newer", nextCache.get("k2"));
+    }
+
+    @Test
+    public void testFileOnlyWrittenWithNewEntries() {
+        TranslationCache cache = new TranslationCache(10);
+        cache.put("k1", "v1");
+        cache.saveTo(cacheFile);
+        assertTrue(cacheFile.delete());
+
+        cache.saveTo(cacheFile);
+        assertFalse("nothing new to save", cacheFile.exists());
+
+        cache.put("k2", "v2");
+        cache.saveTo(cacheFile);
+        TranslationCache nextCache = new TranslationCache(10);
+        nextCache.loadFrom(cacheFile);
+        assertEquals("v1", nextCache.get("k1"));
+        assertEquals("v2", nextCache.get("k2"));
+    }
+
+    @Test
+    public void testTranslatorConfigIsPartOfKey() {
+        String sql = "create table a (b timestamp default '2017-01-02-03.04.05.000')";
+        assertThat(newDateFormatTranslator("yyyy-MM-dd-HH.mm.ss.SSS").prepare(sql, null, null), containsString("'2017-01-02 03:04:05.000'"));
+
+        // same translator classes, but configured such that the date is not converted
+        assertThat(newDateFormatTranslator("dd/MM/yyyy").prepare(sql, null, null), containsString("'2017-01-02-03.04.05.000'"));
+    }
+
+    private InMemoryTranslator newDateFormatTranslator(String dateFormat) {
+        SqlTranslatorConfigHelper configHelper = SqlTranslatorConfigHelper.createInMemoryDefault();
+        configHelper.getPostParsedSqlTranslators().add(new DateFormatterPostParsedSqlTranslator(Lists.immutable.with(dateFormat)));
+        return new InMemoryTranslator(configHelper);
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws Exception {
+        FileUtils.writeStringToFile(cacheFile, "not a cache file");
+
+        TranslationCache cache = new TranslationCache(10);
+        cache.loadFrom(cacheFile);
+        assertNull(cache.get("k1"));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.DeployExecution;
+import com.gs.obevo.api.platform.ChangeAuditDao;
+import com.gs.obevo.api.platform.ChangeType;
+import com.gs.obevo.api.platform.ChangeTypeBehavior;
+import com.gs.obevo.api.platform.ChangeTypeBehaviorRegistry;
+import com.gs.obevo.api.platform.ChangeTypeCommandCalculator;
+import com.gs.obevo.api.platform.CommandExecutionContext;
+import com.gs.obevo.impl.Changeset;
+import com.gs.obevo.impl.ChangesetCreator;
+import com.gs.obevo.impl.DeployMetricsCollectorImpl;
+import com.gs.obevo.impl.changecalc.ChangesetCreatorImpl;
+import com.gs.obevo.impl.changesorter.ChangeCommandSorterImpl;
+import com.gs.obevo.impl.changetypes.IncrementalChangeTypeCommandCalculator;
+import com.gs.obevo.impl.changetypes.RerunnableChangeTypeCommandCalculator;
+import com.gs.obevo.impl.graph.GraphEnricherImpl;
+import com.gs.obevo.impl.text.TextDependencyExtractor;
+import com.gs.obevo.impl.text.TextDependencyExtractorImpl;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.impl.factory.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ChangesetCreatorImpl#determineChangeset(org.eclipse.collections.api.RichIterable, org.eclipse.collections.api.RichIterable, boolean, boolean, org.eclipse.collections.api.block.predicate.Predicate)},
+ * i.e. pairing the source changes with the deployed ones, calculating the commands, and sorting them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChangesetCreatorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int numObjects;
+
+    private ChangesetCreator changesetCreator;
+    private ImmutableList<Change> sourceChanges;
+    private ImmutableList<Change> deployedChanges;
+
+    @Setup
+    public void setup() {
+        SyntheticSchema schema = new SyntheticSchema(numObjects);
+        sourceChanges = schema.getChanges();
+        deployedChanges = schema.getDeployedChanges();
+
+        TextDependencyExtractor textDependencyExtractor = new TextDependencyExtractorImpl(schema.getPlatform().convertDbObjectName());
+        textDependencyExtractor.calculateDependencies(sourceChanges);
+        textDependencyExtractor.calculateDependencies(deployedChanges);
+
+        GraphEnricherImpl graphEnricher = new GraphEnricherImpl(schema.getPlatform().convertDbObjectName());
+        MutableMap<String, ChangeTypeBehavior> changeTypeBehaviors = Maps.mutable.empty();
+        for (ChangeType changeType : schema.getPlatform().getChangeTypes()) {
+            ChangeTypeCommandCalculator calculator = changeType.isRerunnable()
+                    ? new RerunnableChangeTypeCommandCalculator(graphEnricher)
+                    : new IncrementalChangeTypeCommandCalculator(new DeployMetricsCollectorImpl(), 1);
+            changeTypeBehaviors.put(changeType.getName(), new CalculatorOnlyChangeTypeBehavior(calculator));
+        }
+
+        changesetCreator = new ChangesetCreatorImpl(new ChangeCommandSorterImpl(schema.getPlatform()), new ChangeTypeBehaviorRegistry(changeTypeBehaviors));
+    }
+
+    @Benchmark
+    public Changeset determineChangeset() {
+        return changesetCreator.determineChangeset(deployedChanges, sourceChanges, false, false, null);
+    }
+
+    /**
+     * Only the command calculation is needed for the changeset; nothing gets deployed in this benchmark.
+     */
+    private static class CalculatorOnlyChangeTypeBehavior implements ChangeTypeBehavior {
+        private final ChangeTypeCommandCalculator changeTypeCalculator;
+
+        CalculatorOnlyChangeTypeBehavior(ChangeTypeCommandCalculator changeTypeCalculator) {
+            this.changeTypeCalculator = changeTypeCalculator;
+        }
+
+        @Override
+        public ChangeTypeCommandCalculator getChangeTypeCalculator() {
+            return changeTypeCalculator;
+        }
+
+        @Override
+        public void deploy(Change change, CommandExecutionContext cec) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void undeploy(Change change) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void dropObject(Change change, boolean dropForRecreate) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void manage(Change change, ChangeAuditDao changeAuditDao, DeployExecution deployExecution) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unmanage(Change change, ChangeAuditDao changeAuditDao) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unmanageObject(Change change, ChangeAuditDao changeAuditDao) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getDefinitionFromEnvironment(Change exampleChange) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
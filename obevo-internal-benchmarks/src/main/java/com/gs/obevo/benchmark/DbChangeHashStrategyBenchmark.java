@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.util.hash.ContentHashAlgorithm;
+import com.gs.obevo.util.hash.DbChangeHashStrategy;
+import com.gs.obevo.util.hash.ExactDbChangeHashStrategy;
+import com.gs.obevo.util.hash.OldWhitespaceAgnosticDbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingExactDbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingOldWhitespaceAgnosticDbChangeHashStrategy;
+import com.gs.obevo.util.hash.StreamingWhitespaceAgnosticDbChangeHashStrategy;
+import com.gs.obevo.util.hash.WhitespaceAgnosticDbChangeHashStrategy;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the {@link DbChangeHashStrategy} implementations over the content of all the changes in the schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DbChangeHashStrategyBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int numObjects;
+
+    @Param({"exact", "whitespaceAgnostic", "oldWhitespaceAgnostic",
+            "streamingExact", "streamingWhitespaceAgnostic", "streamingOldWhitespaceAgnostic", "streamingOldWhitespaceAgnosticMurmur3"})
+    public String hashStrategyName;
+
+    private DbChangeHashStrategy hashStrategy;
+    private ImmutableList<String> contents;
+
+    @Setup
+    public void setup() {
+        if (hashStrategyName.equals("exact")) {
+            hashStrategy = new ExactDbChangeHashStrategy();
+        } else if (hashStrategyName.equals("whitespaceAgnostic")) {
+            hashStrategy = new WhitespaceAgnosticDbChangeHashStrategy();
+        } else if (hashStrategyName.equals("oldWhitespaceAgnostic")) {
+            hashStrategy = new OldWhitespaceAgnosticDbChangeHashStrategy();
+        } else if (hashStrategyName.equals("streamingExact")) {
+            hashStrategy = new StreamingExactDbChangeHashStrategy();
+        } else if (hashStrategyName.equals("streamingWhitespaceAgnostic")) {
+            hashStrategy = new StreamingWhitespaceAgnosticDbChangeHashStrategy();
+        } else if (hashStrategyName.equals("streamingOldWhitespaceAgnostic")) {
+            hashStrategy = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy();
+        } else if (hashStrategyName.equals("streamingOldWhitespaceAgnosticMurmur3")) {
+            hashStrategy = new StreamingOldWhitespaceAgnosticDbChangeHashStrategy(ContentHashAlgorithm.MURMUR3_128);
+        } else {
+            throw new IllegalArgumentException("Unknown hash strategy: " + hashStrategyName);
+        }
+
+        contents = new SyntheticSchema(numObjects).getChanges().collect(Change.TO_CONTENT);
+    }
+
+    @Benchmark
+    public void hashContent(Blackhole blackhole) {
+        for (String content : contents) {
+            blackhole.consume(hashStrategy.hashContent(content));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.impl.graph.CompactDependencyGraph;
+import com.gs.obevo.impl.graph.GraphEnricher;
+import com.gs.obevo.impl.graph.GraphEnricherImpl;
+import com.gs.obevo.impl.graph.GraphSorter;
+import com.gs.obevo.impl.graph.SortableDependencyGroup;
+import com.gs.obevo.impl.text.TextDependencyExtractorImpl;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link GraphEnricherImpl#createDependencyGraph(org.eclipse.collections.api.RichIterable, boolean)} and
+ * {@link GraphSorter#sortChanges(DirectedGraph, java.util.Comparator)}, along with their
+ * {@link CompactDependencyGraph} counterparts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int numObjects;
+
+    private final GraphSorter graphSorter = new GraphSorter();
+    private GraphEnricher graphEnricher;
+    private ImmutableList<Change> changes;
+    private DirectedGraph<Change, DefaultEdge> graph;
+    private CompactDependencyGraph<Change> compactGraph;
+
+    @Setup
+    public void setup() {
+        SyntheticSchema schema = new SyntheticSchema(numObjects);
+        changes = schema.getChanges();
+        new TextDependencyExtractorImpl(schema.getPlatform().convertDbObjectName()).calculateDependencies(changes);
+
+        graphEnricher = new GraphEnricherImpl(schema.getPlatform().convertDbObjectName());
+        graph = graphEnricher.createDependencyGraph(changes, false);
+        compactGraph = graphEnricher.createCompactDependencyGraph(changes, false);
+    }
+
+    @Benchmark
+    public DirectedGraph<Change, DefaultEdge> createDependencyGraph() {
+        return graphEnricher.createDependencyGraph(changes, false);
+    }
+
+    @Benchmark
+    public ImmutableList<Change> sortChanges() {
+        return graphSorter.sortChanges(graph, SortableDependencyGroup.GRAPH_SORTER_COMPARATOR);
+    }
+
+    @Benchmark
+    public CompactDependencyGraph<Change> createCompactDependencyGraph() {
+        return graphEnricher.createCompactDependencyGraph(changes, false);
+    }
+
+    @Benchmark
+    public ImmutableList<Change> sortCompactChanges() {
+        return graphSorter.sortChanges(compactGraph, SortableDependencyGroup.GRAPH_SORTER_COMPARATOR);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.benchmark;
+
+import java.util.Random;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.api.appdata.ChangeIncremental;
+import com.gs.obevo.api.appdata.ChangeRerunnable;
+import com.gs.obevo.api.platform.ChangeType;
+import com.gs.obevo.db.api.platform.DbPlatform;
+import com.gs.obevo.db.impl.platforms.h2.H2DbPlatform;
+import com.gs.obevo.util.hash.DbChangeHashStrategy;
+import com.gs.obevo.util.hash.ExactDbChangeHashStrategy;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.factory.Lists;
+
+/**
+ * Generates a synthetic schema of tables, views, and stored procedures that reference each other, for use in the
+ * benchmarks. The output is deterministic for a given size so that results are comparable across runs and releases.
+ *
+ * Half of the objects are tables (each with two incremental changes, the second adding a foreign key to an earlier
+ * table), a fifth are views, and the rest are stored procedures. Views and procedures only reference objects created
+ * before them so that the dependency graph stays acyclic.
+ */
+public class SyntheticSchema {
+    public static final String SCHEMA = "SCHEMA1";
+    private static final long SEED = 20170101L;
+
+    private final DbPlatform platform = new H2DbPlatform();
+    private final DbChangeHashStrategy hashStrategy = new ExactDbChangeHashStrategy();
+    private final Random rand = new Random(SEED);
+
+    private final int numTables;
+    private final int numViews;
+    private final int numSps;
+
+    private final MutableList<Change> changes = Lists.mutable.empty();
+    private final MutableList<String> files = Lists.mutable.empty();
+
+    public SyntheticSchema(int numObjects) {
+        this.numTables = Math.max(1, numObjects / 2);
+        this.numViews = Math.max(1, numObjects / 5);
+        this.numSps = Math.max(1, numObjects - numTables - numViews);
+
+        generateTables();
+        generateViews();
+        generateSps();
+    }
+
+    public DbPlatform getPlatform() {
+        return platform;
+    }
+
+    /**
+     * Returns new change instances for the schema on each call, as the dependency calculation modifies the changes.
+     * The dependencies are not yet calculated on them.
+     */
+    public ImmutableList<Change> getChanges() {
+        MutableList<Change> copies = Lists.mutable.empty();
+        for (Change change : changes) {
+            copies.add(copy(change, change.getContent()));
+        }
+        return copies.toImmutable();
+    }
+
+    /**
+     * Returns the file contents for the schema in the text markup format, i.e. one file per object.
+     */
+    public ImmutableList<String> getFiles() {
+        return files.toImmutable();
+    }
+
+    /**
+     * Returns the changes as they would be read from the audit table of a previously-deployed environment: every
+     * twentieth table is missing its latest change and every twentieth view or procedure has a different hash, so that
+     * the changeset calculation has some work to do.
+     */
+    public ImmutableList<Change> getDeployedChanges() {
+        MutableList<Change> deployedChanges = Lists.mutable.empty();
+        for (int i = 0; i < changes.size(); i++) {
+            Change change = changes.get(i);
+            if (i % 20 == 0) {
+                if (change instanceof ChangeIncremental) {
+                    continue;
+                }
+                deployedChanges.add(copy(change, change.getContent() + "\n-- previous version"));
+            } else {
+                deployedChanges.add(copy(change, change.getContent()));
+            }
+        }
+        return deployedChanges.toImmutable();
+    }
+
+    private void generateTables() {
+        ChangeType tableType = platform.getChangeType(ChangeType.TABLE_STR);
+        for (int i = 0; i < numTables; i++) {
+            String table = "TABLE" + i;
+            String init = "CREATE TABLE " + table + " (\n" +
+                    "    ID INT NOT NULL,\n" +
+                    "    NAME VARCHAR(32) NULL,  -- the display name\n" +
+                    "    PARENT_ID INT NULL,\n" +
+                    "    PRIMARY KEY (ID)\n" +
+                    ")\n";
+            String fk = "ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_FK FOREIGN KEY (PARENT_ID) REFERENCES "
+                    + "TABLE" + rand.nextInt(i + 1) + "(ID)\n";
+            changes.add(newIncremental(tableType, table, "init", 0, init));
+            changes.add(newIncremental(tableType, table, "fk", 1, fk));
+            files.add("//// CHANGE name=init\n" + init + "GO\n\n" +
+                    "//// CHANGE name=fk\n" + fk + "GO\n");
+        }
+    }
+
+    private void generateViews() {
+        ChangeType viewType = platform.getChangeType(ChangeType.VIEW_STR);
+        for (int i = 0; i < numViews; i++) {
+            String view = "VIEW" + i;
+            StringBuilder sb = new StringBuilder();
+            sb.append("/* view over a few tables\n   and possibly an earlier view */\n");
+            sb.append("CREATE VIEW ").append(view).append(" AS\n");
+            sb.append("SELECT t1.ID, t1.NAME, t2.NAME AS OTHER_NAME\n");
+            sb.append("FROM TABLE").append(rand.nextInt(numTables)).append(" t1\n");
+            sb.append("JOIN TABLE").append(rand.nextInt(numTables)).append(" t2 ON t1.PARENT_ID = t2.ID\n");
+            if (i > 0 && rand.nextBoolean()) {
+                sb.append("WHERE t1.ID IN (SELECT ID FROM VIEW").append(rand.nextInt(i)).append(")\n");
+            }
+            String content = sb.toString();
+            changes.add(newRerunnable(viewType, view, content));
+            files.add("//// METADATA\n" + content);
+        }
+    }
+
+    private void generateSps() {
+        ChangeType spType = platform.getChangeType(ChangeType.SP_STR);
+        for (int i = 0; i < numSps; i++) {
+            String sp = "SP" + i;
+            StringBuilder sb = new StringBuilder();
+            sb.append("CREATE PROCEDURE ").append(sp).append("()\n");
+            sb.append("BEGIN\n");
+            sb.append("    -- reads from a table and a view, then calls an earlier procedure\n");
+            sb.append("    SELECT * FROM TABLE").append(rand.nextInt(numTables)).append(" WHERE NAME = 'TABLE_NAME';\n");
+            sb.append("    SELECT * FROM VIEW").append(rand.nextInt(numViews)).append(";\n");
+            if (i > 0) {
+                sb.append("    CALL SP").append(rand.nextInt(i)).append("();\n");
+            }
+            sb.append("END\n");
+            String content = sb.toString();
+            changes.add(newRerunnable(spType, sp, content));
+            files.add(content);
+        }
+    }
+
+    private Change copy(Change change, String content) {
+        if (change instanceof ChangeIncremental) {
+            return newIncremental(change.getChangeType(), change.getObjectName(), change.getChangeName(), change.getOrderWithinObject(), content);
+        } else {
+            return newRerunnable(change.getChangeType(), change.getObjectName(), content);
+        }
+    }
+
+    private Change newIncremental(ChangeType changeType, String objectName, String changeName, int orderWithinObject, String content) {
+        return new ChangeIncremental(changeType, SCHEMA, objectName, changeName, orderWithinObject, hashStrategy.hashContent(content), content);
+    }
+
+    private Change newRerunnable(ChangeType changeType, String objectName, String content) {
+        return new ChangeRerunnable(changeType, SCHEMA, objectName, hashStrategy.hashContent(content), content);
+    }
+}
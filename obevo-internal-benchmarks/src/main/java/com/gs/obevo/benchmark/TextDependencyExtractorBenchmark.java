@@ -0,0 +1,73 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gs.obevo.api.appdata.Change;
+import com.gs.obevo.impl.text.TextDependencyExtractor;
+import com.gs.obevo.impl.text.TextDependencyExtractorImpl;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link TextDependencyExtractorImpl#calculateDependencies(org.eclipse.collections.api.RichIterable)}.
+ *
+ * The extractor skips changes whose dependencies are already set, so each invocation gets fresh change instances.
+ * Each invocation covers the whole schema, so the per-invocation setup cost is not significant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextDependencyExtractorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int numObjects;
+
+    private SyntheticSchema schema;
+    private TextDependencyExtractor textDependencyExtractor;
+    private ImmutableList<Change> changes;
+
+    @Setup
+    public void setup() {
+        schema = new SyntheticSchema(numObjects);
+        textDependencyExtractor = new TextDependencyExtractorImpl(schema.getPlatform().convertDbObjectName());
+    }
+
+    @Setup(Level.Invocation)
+    public void resetChanges() {
+        changes = schema.getChanges();
+    }
+
+    @Benchmark
+    public ImmutableList<Change> calculateDependencies() {
+        textDependencyExtractor.calculateDependencies(changes);
+        return changes;
+    }
+}
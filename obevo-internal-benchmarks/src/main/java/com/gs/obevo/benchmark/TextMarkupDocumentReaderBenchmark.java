@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.gs.obevo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.gs.obevo.api.appdata.doc.TextMarkupDocument;
+import com.gs.obevo.db.impl.core.reader.TextMarkupDocumentReader;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link TextMarkupDocumentReader#parseString(String, com.gs.obevo.api.appdata.doc.TextMarkupDocumentSection)}
+ * over all the files of the schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextMarkupDocumentReaderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int numObjects;
+
+    private final TextMarkupDocumentReader textMarkupDocumentReader = new TextMarkupDocumentReader(false);
+    private ImmutableList<String> files;
+
+    @Setup
+    public void setup() {
+        files = new SyntheticSchema(numObjects).getFiles();
+    }
+
+    @Benchmark
+    public void parseString(Blackhole blackhole) {
+        for (String file : files) {
+            TextMarkupDocument document = textMarkupDocumentReader.parseString(file, null);
+            blackhole.consume(document);
+        }
+    }
+}
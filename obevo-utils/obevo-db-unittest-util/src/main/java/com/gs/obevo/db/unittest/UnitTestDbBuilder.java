@@ -16,6 +16,7 @@
 package com.gs.obevo.db.unittest;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Set;
 
 import com.gs.obevo.api.appdata.Change;
@@ -29,6 +30,7 @@ import com.gs.obevo.db.api.platform.DbPlatform;
 import com.gs.obevo.impl.changepredicate.ChangeKeyPredicateBuilder;
 import com.gs.obevo.util.inputreader.Credential;
 import org.apache.commons.lang3.Validate;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.map.MutableMap;
@@ -59,6 +61,12 @@ public class UnitTestDbBuilder {
      */
     private static final MutableMap<String, DbDeployerAppContext> cachedContexts = Maps.mutable.empty();
 
+    /**
+     * Snapshot files for the contexts, keyed by the context and the tables/views that it deploys. These are only valid
+     * for the lifetime of this JVM, as the in-memory databases that they were taken from do not outlive it.
+     */
+    private static final MutableMap<String, File> cachedSnapshotFiles = Maps.mutable.empty();
+
     private String sourcePath;
     private String envName;
     private String referenceEnvName;
@@ -67,6 +75,7 @@ public class UnitTestDbBuilder {
     private ImmutableSet<String> tables;
     private ImmutableSet<String> views;
     private boolean persistToFile = false;
+    private boolean snapshotEnabled = false;
     private boolean grantsDisabled = true;  // disabling grants by default for unit tests as in practice, most teams
     private File workDir = new File("./target/unitdb");
     private Credential credential = new Credential("sa", "");
@@ -152,6 +161,22 @@ public class UnitTestDbBuilder {
         return this;
     }
 
+    /**
+     * If true, the first cleanAndDeploy call on the built context will snapshot the deployed schemas, and subsequent
+     * cleanAndDeploy calls will restore that snapshot instead of redeploying from the source files. This saves the
+     * translation and deployment cost for test suites that reset the database before each test.
+     *
+     * Only platforms that support snapshots will use this (currently H2); others fall back to the regular clean and
+     * deploy. Note that changes to the source files made while the JVM is running will not be picked up once the
+     * snapshot is taken.
+     *
+     * Defaults to false
+     */
+    public UnitTestDbBuilder setSnapshotEnabled(boolean snapshotEnabled) {
+        this.snapshotEnabled = snapshotEnabled;
+        return this;
+    }
+
     private boolean isPersistToFile() {
         // We support this system property here to facilitate easy debugging for
         // unit tests (i.e. if we don't want to change the code accidentally when running/debugging)
@@ -214,8 +239,30 @@ public class UnitTestDbBuilder {
             cachedContexts.put(instanceLookupKey, baseContext);
         }
 
+        File snapshotFile = snapshotEnabled ? getSnapshotFile(baseContext.getWorkDir()) : null;
+
         // set the arguments that should be used as defined in this builder class, e.g. for limiting by specific tables
-        return new UnitTestDbDeployerAppContext(baseContext, getMainDeployerArgs());
+        return new UnitTestDbDeployerAppContext(baseContext, getMainDeployerArgs(), snapshotFile);
+    }
+
+    private File getSnapshotFile(final File snapshotDir) {
+        String snapshotLookupKey = instanceLookupKey()
+                + ":" + (tables != null ? tables.toSortedList().makeString(",") : "")
+                + ":" + (views != null ? views.toSortedList().makeString(",") : "");
+
+        return cachedSnapshotFiles.getIfAbsentPut(snapshotLookupKey, new Function0<File>() {
+            @Override
+            public File value() {
+                try {
+                    snapshotDir.mkdirs();
+                    File snapshotFile = File.createTempFile("unittest-snapshot-", ".sql", snapshotDir);
+                    snapshotFile.deleteOnExit();
+                    return snapshotFile;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
     }
 
     /**
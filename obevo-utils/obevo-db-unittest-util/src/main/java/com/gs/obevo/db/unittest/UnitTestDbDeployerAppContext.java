@@ -26,10 +26,16 @@ import com.gs.obevo.api.platform.MainDeployerArgs;
 import com.gs.obevo.db.api.appdata.DbEnvironment;
 import com.gs.obevo.db.api.platform.DbDeployerAppContext;
 import com.gs.obevo.db.api.platform.SqlExecutor;
+import com.gs.obevo.db.impl.core.DbDeployerAppContextImpl;
 import com.gs.obevo.db.impl.core.checksum.DbChecksumDao;
+import com.gs.obevo.db.impl.core.snapshot.DbSnapshotter;
 import com.gs.obevo.dbmetadata.api.DbMetadataManager;
 import com.gs.obevo.util.inputreader.Credential;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.impl.factory.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Context that takes in a {@link MainDeployerArgs} instance and uses it as the default arguments to pass to the
@@ -41,12 +47,21 @@ import org.eclipse.collections.api.list.ImmutableList;
  */
 @Deprecated
 class UnitTestDbDeployerAppContext implements DbDeployerAppContext {
+    private static final Logger LOG = LoggerFactory.getLogger(UnitTestDbDeployerAppContext.class);
+
+    /**
+     * The snapshot files that have been written in this JVM; files left over from previous runs are not trusted.
+     */
+    private static final MutableSet<File> takenSnapshots = Sets.mutable.<File>empty().asSynchronized();
+
     private final DbDeployerAppContext delegate;
     private final MainDeployerArgs defaultArgs;
+    private final File snapshotFile;
 
-    public UnitTestDbDeployerAppContext(DbDeployerAppContext delegate, MainDeployerArgs defaultArgs) {
+    public UnitTestDbDeployerAppContext(DbDeployerAppContext delegate, MainDeployerArgs defaultArgs, File snapshotFile) {
         this.delegate = delegate;
         this.defaultArgs = defaultArgs;
+        this.snapshotFile = snapshotFile;
     }
 
     /**
@@ -59,14 +74,40 @@ class UnitTestDbDeployerAppContext implements DbDeployerAppContext {
 
     /**
      * non-delegate method; must refer to the deploy method in this class.
+     *
+     * If a snapshot file was given and the platform supports it, the first call snapshots the deployed schemas and
+     * subsequent calls restore that snapshot instead of redeploying.
      */
     @Override
     public DbDeployerAppContext cleanAndDeploy() {
+        DbSnapshotter dbSnapshotter = getDbSnapshotter();
+        if (dbSnapshotter != null && takenSnapshots.contains(snapshotFile)) {
+            LOG.info("Restoring the environment from snapshot {}", snapshotFile);
+            dbSnapshotter.restoreSnapshot(snapshotFile);
+            return this;
+        }
+
         this.cleanEnvironment();
         this.deploy();
+
+        if (dbSnapshotter != null) {
+            dbSnapshotter.takeSnapshot(snapshotFile);
+            takenSnapshots.add(snapshotFile);
+        }
         return this;
     }
 
+    /**
+     * Returns the snapshotter to use, or null if snapshots are not enabled or not supported by the platform.
+     */
+    private DbSnapshotter getDbSnapshotter() {
+        if (snapshotFile == null || !(delegate instanceof DbDeployerAppContextImpl)) {
+            return null;
+        }
+        DbSnapshotter dbSnapshotter = ((DbDeployerAppContextImpl) delegate).getDbSnapshotter();
+        return dbSnapshotter.isSnapshotSupported() ? dbSnapshotter : null;
+    }
+
     /**
      * non-delegate method; must refer to the deploy method in this class.
      */